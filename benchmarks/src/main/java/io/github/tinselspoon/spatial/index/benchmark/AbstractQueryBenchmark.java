@@ -0,0 +1,96 @@
+package io.github.tinselspoon.spatial.index.benchmark;
+
+import io.github.tinselspoon.spatial.index.GeoPointIndex;
+import io.github.tinselspoon.spatial.index.GeoPointIndex.WithinDistanceConsumer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Measures the time taken to query an index within various distances of a rotating set of search points. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms8g", "-Xmx8g", "--add-modules", "jdk.incubator.vector" })
+public abstract class AbstractQueryBenchmark {
+
+    /** The number of distinct search points to cycle through, so no single path through the index is favoured. */
+    private static final int SEARCH_POINT_COUNT = 1024;
+
+    /** A distance that covers the entire surface of the earth. */
+    private static final String WHOLE_WORLD = "20015087";
+
+    /** The distance in meters to query within. */
+    @Param({ "500", "30000", "1000000", WHOLE_WORLD })
+    private double distanceMeters;
+
+    /** The engine with which to build the index. */
+    @Param({ "KD_TREE", "CELL_GRID" })
+    private GeoPointIndex.Engine engine;
+
+    /** Whether the index tests points several at a time using the Vector API. */
+    @Param({ "false", "true" })
+    private boolean vectorised;
+
+    /** The index under test. */
+    private GeoPointIndex<Point> index;
+
+    /** The points to search around. */
+    private Point[] searchPoints;
+
+    /** The position of the next search point to use. */
+    private int next;
+
+    /** The consumer of query results, created once so that it is not counted against each query's allocations. */
+    private WithinDistanceConsumer<Point> consumer;
+
+    /**
+     * Prepare the index for querying.
+     *
+     * @param points the points to place in the index.
+     * @param searchDistribution the distribution from which to draw the search points.
+     * @param blackhole the sink for query results.
+     */
+    protected void setUp(final List<Point> points, final Distribution searchDistribution, final Blackhole blackhole) {
+        final GeoPointIndex.Builder<Point> builder = GeoPointIndex.builder(Point::latitude, Point::longitude)
+                                                                  .parallel()
+                                                                  .engine(engine);
+        index = configure(vectorised ? builder.vectorised() : builder).build(points);
+        searchPoints = searchDistribution.generate(SEARCH_POINT_COUNT, 2).toArray(new Point[0]);
+        consumer = (item, distance) -> blackhole.consume(item);
+    }
+
+    /**
+     * Set any further options with which to build the index.
+     *
+     * @param builder the builder of the index.
+     * @return the builder.
+     */
+    protected GeoPointIndex.Builder<Point> configure(final GeoPointIndex.Builder<Point> builder) {
+        return builder;
+    }
+
+    @Benchmark
+    public boolean queryWithinDistance() {
+        final Point searchPoint = searchPoints[next++ & (SEARCH_POINT_COUNT - 1)];
+        return index.queryWithinDistance(searchPoint.latitude(), searchPoint.longitude(), distanceMeters, consumer);
+    }
+
+    @Benchmark
+    public long countWithinDistance() {
+        final Point searchPoint = searchPoints[next++ & (SEARCH_POINT_COUNT - 1)];
+        return index.countWithinDistance(searchPoint.latitude(), searchPoint.longitude(), distanceMeters);
+    }
+}
@@ -0,0 +1,13 @@
+package io.github.tinselspoon.spatial.index.benchmark;
+
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Measures query performance against the real-world sample dataset of airports. */
+public class AirportQueryBenchmark extends AbstractQueryBenchmark {
+
+    @Setup
+    public void setUp(final Blackhole blackhole) {
+        setUp(Airports.load(), Distribution.UNIFORM, blackhole);
+    }
+}
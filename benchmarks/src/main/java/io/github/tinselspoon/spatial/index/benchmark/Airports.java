@@ -0,0 +1,48 @@
+package io.github.tinselspoon.spatial.index.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Loads the real-world sample dataset of airport locations used by the library's own tests. */
+final class Airports {
+
+    /** The system property that may be used to specify the location of the dataset. */
+    static final String PATH_PROPERTY = "airports.csv";
+
+    /** The default location of the dataset, relative to the benchmarks directory. */
+    private static final String DEFAULT_PATH = "../src/test/resources/ourairports.csv";
+
+    /** Prevent instantiation. */
+    private Airports() {
+    }
+
+    /**
+     * Load the locations of the airports.
+     *
+     * @return the points.
+     * @throws UncheckedIOException if the dataset cannot be read.
+     */
+    static List<Point> load() {
+        final Path path = Path.of(System.getProperty(PATH_PROPERTY, DEFAULT_PATH));
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            // Skip the header; the remaining lines are simple enough that no general CSV parser is needed
+            reader.readLine();
+
+            final List<Point> points = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] fields = line.split(",");
+                points.add(new Point(Double.parseDouble(fields[1]), Double.parseDouble(fields[2])));
+            }
+            return points;
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Unable to read airports from " + path.toAbsolutePath()
+                                                   + "; specify the location with -D" + PATH_PROPERTY, e);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package io.github.tinselspoon.spatial.index.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+
+/**
+ * Runs the benchmarks, accepting the usual JMH command line options. The GC profiler is always enabled, so that the
+ * allocation rate of each benchmark is reported alongside its timings.
+ */
+public final class BenchmarkMain {
+
+    /** Prevent instantiation. */
+    private BenchmarkMain() {
+    }
+
+    /**
+     * Run the benchmarks.
+     *
+     * @param args JMH command line options, such as a regular expression to select the benchmarks to run, or
+     * {@code -p size=10000} to restrict a parameter to certain values.
+     * @throws CommandLineOptionException if the options are invalid.
+     * @throws RunnerException if a benchmark fails.
+     * @throws IOException if an I/O error occurs.
+     */
+    public static void main(final String[] args) throws CommandLineOptionException, RunnerException, IOException {
+        final CommandLineOptions commandLine = new CommandLineOptions(args);
+        if (commandLine.shouldHelp() || commandLine.shouldList() || commandLine.shouldListProfilers()
+                || commandLine.shouldListResultFormats() || commandLine.shouldListWithParams()) {
+            // Defer to the standard entry point for anything other than running benchmarks
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+
+        new Runner(new OptionsBuilder().parent(commandLine).addProfiler(GCProfiler.class).build()).run();
+    }
+}
@@ -0,0 +1,52 @@
+package io.github.tinselspoon.spatial.index.benchmark;
+
+import io.github.tinselspoon.spatial.index.GeoPointIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Measures the time taken to construct an index from synthetic datasets of increasing size. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xms8g", "-Xmx8g" })
+public class BuildBenchmark {
+
+    /** The number of points in the dataset. */
+    @Param({ "10000", "100000", "1000000", "10000000", "100000000" })
+    private int size;
+
+    /** How the points in the dataset are distributed. */
+    @Param({ "UNIFORM", "CLUSTERED", "POLAR" })
+    private Distribution distribution;
+
+    /** The number of threads used to construct the index. */
+    @Param({ "1", "4" })
+    private int parallelism;
+
+    /** The points to build the index from. */
+    private List<Point> points;
+
+    @Setup
+    public void setUp() {
+        points = distribution.generate(size, 1);
+    }
+
+    @Benchmark
+    public GeoPointIndex<Point> build() {
+        return GeoPointIndex.builder(Point::latitude, Point::longitude).parallelism(parallelism).build(points);
+    }
+}
@@ -0,0 +1,106 @@
+package io.github.tinselspoon.spatial.index.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/** The ways in which synthetic points can be distributed over the surface of the earth. */
+public enum Distribution {
+
+    /** Points spread evenly over the whole surface of the sphere. */
+    UNIFORM {
+        @Override
+        Point next(final SplittableRandom random) {
+            // Taking the arcsine gives an even spread by area rather than bunching points up towards the poles
+            final double latitude = Math.toDegrees(Math.asin(random.nextDouble(-1, 1)));
+            return new Point(latitude, random.nextDouble(-180, 180));
+        }
+    },
+
+    /** Points tightly grouped around a small number of centres, as with populations around cities. */
+    CLUSTERED {
+        @Override
+        Point next(final SplittableRandom random) {
+            final Point centre = CLUSTER_CENTRES.get(random.nextInt(CLUSTER_CENTRES.size()));
+            return new Point(clampLatitude(centre.latitude() + gaussian(random) * CLUSTER_SPREAD_DEGREES),
+                             wrapLongitude(centre.longitude() + gaussian(random) * CLUSTER_SPREAD_DEGREES));
+        }
+    },
+
+    /** Points concentrated near the poles, where lines of longitude converge. */
+    POLAR {
+        @Override
+        Point next(final SplittableRandom random) {
+            final double fromPole = Math.abs(gaussian(random)) * POLAR_SPREAD_DEGREES;
+            final double latitude = random.nextBoolean() ? 90 - fromPole : fromPole - 90;
+            return new Point(clampLatitude(latitude), random.nextDouble(-180, 180));
+        }
+    };
+
+    /** The number of clusters in the {@link #CLUSTERED} distribution. */
+    private static final int CLUSTER_COUNT = 200;
+
+    /** The standard deviation in degrees of points around the centre of each cluster. */
+    private static final double CLUSTER_SPREAD_DEGREES = 0.25;
+
+    /** The standard deviation in degrees of points from the poles in the {@link #POLAR} distribution. */
+    private static final double POLAR_SPREAD_DEGREES = 5;
+
+    /** The centres of the clusters in the {@link #CLUSTERED} distribution. */
+    private static final List<Point> CLUSTER_CENTRES = UNIFORM.generate(CLUSTER_COUNT, 0);
+
+    /**
+     * Generate a list of points.
+     *
+     * @param count the number of points to generate.
+     * @param seed the seed of the random sequence, such that the same seed always produces the same points.
+     * @return the points.
+     */
+    public List<Point> generate(final int count, final long seed) {
+        final SplittableRandom random = new SplittableRandom(seed);
+        final List<Point> points = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            points.add(next(random));
+        }
+        return points;
+    }
+
+    /**
+     * Generate the next point in the distribution.
+     *
+     * @param random the source of randomness.
+     * @return the point.
+     */
+    abstract Point next(SplittableRandom random);
+
+    /**
+     * Generate a normally distributed random value.
+     *
+     * @param random the source of randomness.
+     * @return a value with a mean of zero and standard deviation of one.
+     */
+    private static double gaussian(final SplittableRandom random) {
+        // Box-Muller transform, since SplittableRandom does not provide this itself on Java 17
+        return Math.sqrt(-2 * Math.log(1 - random.nextDouble())) * Math.cos(2 * Math.PI * random.nextDouble());
+    }
+
+    /**
+     * Restrict a latitude to the valid range.
+     *
+     * @param latitude the latitude.
+     * @return the latitude within [-90, +90].
+     */
+    private static double clampLatitude(final double latitude) {
+        return Math.max(-90, Math.min(90, latitude));
+    }
+
+    /**
+     * Wrap a longitude into the valid range.
+     *
+     * @param longitude the longitude.
+     * @return the longitude within [-180, +180].
+     */
+    private static double wrapLongitude(final double longitude) {
+        return longitude > 180 ? longitude - 360 : longitude < -180 ? longitude + 360 : longitude;
+    }
+}
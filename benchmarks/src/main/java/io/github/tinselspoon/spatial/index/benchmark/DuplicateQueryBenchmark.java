@@ -0,0 +1,44 @@
+package io.github.tinselspoon.spatial.index.benchmark;
+
+import io.github.tinselspoon.spatial.index.GeoPointIndex;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures queries against datasets in which several points share each location, as with several businesses geocoded
+ * to the same building, with and without the index collapsing them into a single point.
+ */
+public class DuplicateQueryBenchmark extends AbstractQueryBenchmark {
+
+    /** The number of points in the dataset. */
+    @Param({ "1000000" })
+    private int size;
+
+    /** The number of points sharing each location. */
+    @Param({ "2", "10" })
+    private int copies;
+
+    /** Whether the index collapses the points sharing each location. */
+    @Param({ "false", "true" })
+    private boolean collapsing;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) {
+        final List<Point> points = new ArrayList<>(size);
+        for (final Point location : Distribution.CLUSTERED.generate(size / copies, 1)) {
+            for (int copy = 0; copy < copies; copy++) {
+                points.add(new Point(location.latitude(), location.longitude()));
+            }
+        }
+        setUp(points, Distribution.CLUSTERED, blackhole);
+    }
+
+    @Override
+    protected GeoPointIndex.Builder<Point> configure(final GeoPointIndex.Builder<Point> builder) {
+        return collapsing ? builder.collapsing() : builder;
+    }
+}
@@ -0,0 +1,85 @@
+package io.github.tinselspoon.spatial.index.benchmark;
+
+import io.github.tinselspoon.spatial.index.GeoPointIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time taken to find every pair of points within a distance between two synthetic datasets, by joining
+ * their indexes compared with querying one index for every point of the other.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xms8g", "-Xmx8g" })
+public class JoinBenchmark {
+
+    /** The number of points in the larger dataset. */
+    @Param({ "100000", "1000000", "5000000" })
+    private int size;
+
+    /** How the points in both datasets are distributed. */
+    @Param({ "UNIFORM", "CLUSTERED" })
+    private Distribution distribution;
+
+    /** The distance in meters within which to find pairs. */
+    @Param({ "2000", "30000" })
+    private double distanceMeters;
+
+    /** The larger dataset. */
+    private List<Point> points;
+
+    /** The index of the larger dataset. */
+    private GeoPointIndex<Point> index;
+
+    /** The index of the smaller dataset, which is a twenty-fifth of the size of the larger. */
+    private GeoPointIndex<Point> otherIndex;
+
+    @Setup
+    public void setUp() {
+        points = distribution.generate(size, 3);
+        index = GeoPointIndex.builder(Point::latitude, Point::longitude).parallel().build(points);
+        otherIndex = GeoPointIndex.builder(Point::latitude, Point::longitude)
+                                  .parallel()
+                                  .build(distribution.generate(size / 25, 4));
+    }
+
+    @Benchmark
+    public void join(final Blackhole blackhole) {
+        index.joinWithinDistance(otherIndex, distanceMeters, (point, other, distance) -> blackhole.consume(other));
+    }
+
+    @Benchmark
+    public void parallelJoin(final Blackhole blackhole) {
+        index.joinWithinDistance(otherIndex,
+                                 distanceMeters,
+                                 ForkJoinPool.commonPool(),
+                                 (point, other, distance) -> blackhole.consume(other));
+    }
+
+    @Benchmark
+    public void queryEachPoint(final Blackhole blackhole) {
+        for (final Point point : points) {
+            otherIndex.queryWithinDistance(point.latitude(),
+                                           point.longitude(),
+                                           distanceMeters,
+                                           (other, distance) -> blackhole.consume(other));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package io.github.tinselspoon.spatial.index.benchmark;
+
+import io.github.tinselspoon.spatial.index.GeoPointIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time taken to find every point within a distance of a route across a synthetic dataset, by querying
+ * within a distance of the path as a whole compared with querying around each of its vertices and removing the points
+ * found more than once. The latter misses points near the middle of long arcs, so is only a guide to the cost.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class PathQueryBenchmark {
+
+    /** The number of points in the dataset. */
+    @Param({ "1000000" })
+    private int size;
+
+    /** The number of vertices of the route. */
+    @Param({ "100", "1000" })
+    private int vertexCount;
+
+    /** The distance in meters from the route within which to find points. */
+    @Param({ "5000", "30000" })
+    private double distanceMeters;
+
+    /** The index of the dataset. */
+    private GeoPointIndex<Point> index;
+
+    /** The latitudes of the vertices of the route. */
+    private double[] latitudes;
+
+    /** The longitudes of the vertices of the route. */
+    private double[] longitudes;
+
+    @Setup
+    public void setUp() {
+        index = GeoPointIndex.builder(Point::latitude, Point::longitude)
+                             .parallel()
+                             .build(Distribution.UNIFORM.generate(size, 5));
+
+        // A route wandering eastward across mid-latitudes, with steps of around 10 km
+        final SplittableRandom random = new SplittableRandom(6);
+        latitudes = new double[vertexCount];
+        longitudes = new double[vertexCount];
+        latitudes[0] = 45;
+        for (int i = 1; i < vertexCount; i++) {
+            latitudes[i] = Math.max(-80, Math.min(80, latitudes[i - 1] + random.nextDouble(-0.06, 0.06)));
+            longitudes[i] = longitudes[i - 1] + random.nextDouble(0, 0.12);
+        }
+    }
+
+    @Benchmark
+    public void queryPath(final Blackhole blackhole) {
+        index.queryWithinDistanceOfPath(latitudes,
+                                        longitudes,
+                                        distanceMeters,
+                                        (point, distance) -> blackhole.consume(point));
+    }
+
+    @Benchmark
+    public void queryEachVertex(final Blackhole blackhole) {
+        final Set<Point> found = new HashSet<>();
+        for (int i = 0; i < vertexCount; i++) {
+            index.queryWithinDistance(latitudes[i], longitudes[i], distanceMeters, (point, distance) -> {
+                if (found.add(point)) {
+                    blackhole.consume(point);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package io.github.tinselspoon.spatial.index.benchmark;
+
+/**
+ * A simple item to place in an index.
+ *
+ * @param latitude the latitude of the point.
+ * @param longitude the longitude of the point.
+ */
+record Point(double latitude, double longitude) {
+}
@@ -0,0 +1,22 @@
+package io.github.tinselspoon.spatial.index.benchmark;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Measures how query performance scales with the size and distribution of synthetic datasets. */
+public class SyntheticQueryBenchmark extends AbstractQueryBenchmark {
+
+    /** The number of points in the dataset. */
+    @Param({ "10000", "100000", "1000000", "10000000", "100000000" })
+    private int size;
+
+    /** How the points in the dataset, and the search points, are distributed. */
+    @Param({ "UNIFORM", "CLUSTERED", "POLAR" })
+    private Distribution distribution;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) {
+        setUp(distribution.generate(size, 1), distribution, blackhole);
+    }
+}
@@ -8,20 +8,6 @@ package io.github.tinselspoon.spatial.index;
  */
 record CartBox3D(CartPoint3D lower, CartPoint3D upper) {
 
-    /**
-     * Constructs a {@code GeoBox3D} that by expanding the given point on all sides by the given WGS84 distance.
-     *
-     * @param point the point to base the box around.
-     * @param distanceMeters the distance by which to expand the box in all directions.
-     * @return a new {@code GeoBox3D}.
-     */
-    static CartBox3D distanceAround(final CartPoint3D point, final double distanceMeters) {
-        // Normalise the distance to be that on a unit sphere
-        final double distance = distanceMeters / CartPoint3D.WGS84_RADIUS_METERS;
-        return new CartBox3D(new CartPoint3D(point.x() - distance, point.y() - distance, point.z() - distance),
-                             new CartPoint3D(point.x() + distance, point.y() + distance, point.z() + distance));
-    }
-
     /**
      * Determines whether the range represented by this {@code GeoBox3D} would include the given point.
      *
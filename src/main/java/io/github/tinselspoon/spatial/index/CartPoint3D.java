@@ -24,24 +24,50 @@ record CartPoint3D(double x, double y, double z) {
      * @throws IllegalArgumentException if input coordinates are invalid or out of range.
      */
     static CartPoint3D fromLatLon(final double latitude, final double longitude) {
-        // The inversion here is because it allows us to implicitly also check for NaNs
-        if (!(latitude <= 90 && latitude >= -90)) {
-            throw new IllegalArgumentException("Latitude out of range: " + longitude);
-        }
+        final double[] point = new double[DIMENSIONS];
+        fromLatLon(latitude, longitude, point);
+        return new CartPoint3D(point[0], point[1], point[2]);
+    }
 
-        if (!(longitude <= 180 && longitude >= -180)) {
-            throw new IllegalArgumentException("Longitude out of range: " + longitude);
-        }
+    /**
+     * Converts the given polar latitude and longitude coordinates to cartesian coordinates on the unit sphere, writing
+     * them to a buffer rather than allocating a point.
+     *
+     * @param latitude the latitude in degrees, [-90, +90].
+     * @param longitude the longitude in degrees, [-180, +180].
+     * @param target the buffer to write the {@code x}, {@code y} and {@code z} ordinates to, in that order, which has
+     * room for at least {@link #DIMENSIONS} ordinates.
+     * @throws IllegalArgumentException if input coordinates are invalid or out of range.
+     */
+    static void fromLatLon(final double latitude, final double longitude, final double[] target) {
+        checkLatLon(latitude, longitude);
 
         // Adapted from https://github.com/postgis/postgis/blob/master/liblwgeom/lwgeodetic.c#L423
         final double latRadians = Math.toRadians(latitude);
         final double lonRadians = Math.toRadians(longitude);
 
         final double cosLat = Math.cos(latRadians);
-        final double x = cosLat * Math.cos(lonRadians);
-        final double y = cosLat * Math.sin(lonRadians);
-        final double z = Math.sin(latRadians);
-        return new CartPoint3D(x, y, z);
+        target[0] = cosLat * Math.cos(lonRadians);
+        target[1] = cosLat * Math.sin(lonRadians);
+        target[2] = Math.sin(latRadians);
+    }
+
+    /**
+     * Checks that the given polar latitude and longitude coordinates are valid.
+     *
+     * @param latitude the latitude in degrees, [-90, +90].
+     * @param longitude the longitude in degrees, [-180, +180].
+     * @throws IllegalArgumentException if input coordinates are invalid or out of range.
+     */
+    static void checkLatLon(final double latitude, final double longitude) {
+        // The inversion here is because it allows us to implicitly also check for NaNs
+        if (!(latitude <= 90 && latitude >= -90)) {
+            throw new IllegalArgumentException("Latitude out of range: " + latitude);
+        }
+
+        if (!(longitude <= 180 && longitude >= -180)) {
+            throw new IllegalArgumentException("Longitude out of range: " + longitude);
+        }
     }
 
     /**
@@ -51,13 +77,48 @@ record CartPoint3D(double x, double y, double z) {
      * @return the calculated distance.
      */
     double distanceMeters(final CartPoint3D destination) {
+        return distanceMeters(destination.x(), destination.y(), destination.z());
+    }
+
+    /**
+     * Calculate the great-circle distance in meters to the destination point given by its ordinates.
+     *
+     * @param x the x-axis ordinate of the target point.
+     * @param y the y-axis ordinate of the target point.
+     * @param z the z-axis ordinate of the target point.
+     * @return the calculated distance.
+     */
+    double distanceMeters(final double x, final double y, final double z) {
         // Since we have cartesian coordinates we can work this out as the arc length of a chord
-        final double dX = destination.x() - this.x();
-        final double dY = destination.y() - this.y();
-        final double dZ = destination.z() - this.z();
+        final double dX = x - this.x();
+        final double dY = y - this.y();
+        final double dZ = z - this.z();
         final double hypot = Math.sqrt(dX * dX + dY * dY + dZ * dZ);
 
-        return 2 * WGS84_RADIUS_METERS * Math.asin(hypot / 2);
+        return arcMeters(hypot);
+    }
+
+    /**
+     * Calculate the great-circle distance in meters spanned by a chord of the unit sphere.
+     *
+     * @param chordLength the straight-line distance between two points on the unit sphere, [0, 2].
+     * @return the calculated distance.
+     */
+    static double arcMeters(final double chordLength) {
+        return 2 * WGS84_RADIUS_METERS * Math.asin(chordLength / 2);
+    }
+
+    /**
+     * Calculate the length of the chord of the unit sphere between two points that are the given great-circle
+     * distance apart. This is the inverse of {@link #arcMeters(double)}.
+     *
+     * @param distanceMeters the great-circle distance in meters.
+     * @return the straight-line distance between the points on the unit sphere, which will be no greater than
+     * {@code 2} (the diameter) for distances exceeding half the circumference.
+     */
+    static double chordLength(final double distanceMeters) {
+        final double halfAngle = distanceMeters / (2 * WGS84_RADIUS_METERS);
+        return halfAngle >= Math.PI / 2 ? 2 : 2 * Math.sin(halfAngle);
     }
 
     /**
@@ -0,0 +1,541 @@
+package io.github.tinselspoon.spatial.index;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Implementation of a grid of cells covering the unit sphere, indexed by {@link CartPoint3D} with arbitrary associated
+ * data.
+ * <p>
+ * The sphere is divided by projecting it onto the six faces of the cube around it, each face being the part of the
+ * sphere on which one ordinate has the greatest magnitude. Each face is divided into an equal number of rows and
+ * columns of cells using an equal-angle projection, under which the cells are much nearer to equal in area than they
+ * would be by dividing the face of the cube itself evenly. The points are held in a {@link PointStore} sorted by cell,
+ * so the points of each cell occupy a contiguous run of slots, and the bounding box of the points actually within each
+ * cell is recorded.
+ * <p>
+ * A search works out directly from its range which cells of each face it could overlap, and tests only those. Unlike a
+ * {@link KDTree} there is no hierarchy to descend, so a grid suits points spread fairly evenly over the globe, queried
+ * with a range covering only a few cells; points clustered into a small area share a few crowded cells, and a range
+ * covering many cells must test each of them.
+ *
+ * @param <T> the type of items in the grid.
+ */
+class CellGrid<T> implements SpatialBackend<T> {
+
+    /** The default number of points to aim to hold in each cell. */
+    static final int DEFAULT_CELL_SIZE = 16;
+
+    /** The number of faces of the cube onto which the sphere is projected. */
+    private static final int FACES = 6;
+
+    /**
+     * The amount by which the range of a search is padded when working out which cells it could overlap, which
+     * comfortably exceeds any rounding in assigning points to cells or in the coordinates held by the store.
+     */
+    private static final double PADDING = 1E-6;
+
+    /**
+     * A lower bound on the magnitude of the greatest ordinate of any point on the unit sphere, which is
+     * {@code 1 / sqrt(3)} at the corners of the cube.
+     */
+    private static final double MIN_DOMINANT_ORDINATE = 0.5;
+
+    /** The coordinates of the points in the grid, sorted by cell. */
+    private final PointStore points;
+
+    /** The minimum ordinates of the points within each cell, indexed by cell. */
+    private final PointStore lowerBounds;
+
+    /** The maximum ordinates of the points within each cell, indexed by cell. */
+    private final PointStore upperBounds;
+
+    /**
+     * The first slot of the points within each cell, indexed by cell, followed by the number of points, so that the
+     * points of cell {@code c} occupy the slots {@code [cellStarts[c], cellStarts[c + 1])}.
+     */
+    private final int[] cellStarts;
+
+    /** The items associated with the point at each slot. */
+    private final Object[] items;
+
+    /** The number of rows, and of columns, of cells on each face. */
+    private final int cellsPerSide;
+
+    /**
+     * Default constructor.
+     *
+     * @param points the coordinates of the points in the grid, sorted by cell.
+     * @param lowerBounds the minimum ordinates of the points within each cell.
+     * @param upperBounds the maximum ordinates of the points within each cell.
+     * @param cellStarts the first slot of the points within each cell, followed by the number of points.
+     * @param items the items associated with the point at each slot.
+     * @param cellsPerSide the number of rows, and of columns, of cells on each face.
+     */
+    private CellGrid(final PointStore points, final PointStore lowerBounds, final PointStore upperBounds,
+                     final int[] cellStarts, final Object[] items, final int cellsPerSide) {
+        this.points = points;
+        this.lowerBounds = lowerBounds;
+        this.upperBounds = upperBounds;
+        this.cellStarts = cellStarts;
+        this.items = items;
+        this.cellsPerSide = cellsPerSide;
+    }
+
+    /**
+     * Build a {@code CellGrid} instance containing the given items, optionally holding the coordinates of their points
+     * {@link PointStore#quantised(double[], double[], double[]) quantised} so as to occupy less memory.
+     * <p>
+     * Construction runs in {@code O(n)} time, by counting the points in each cell and then placing each point directly
+     * into its slot. The number of cells is chosen such that each holds {@code cellSize} points on average.
+     *
+     * @param items the items to store in the grid.
+     * @param extractor a function to extract a representative {@link CartPoint3D} on the unit sphere for each item.
+     * @param cellSize the number of points to aim to hold in each cell.
+     * @param quantised whether to quantise the coordinates of the points.
+     * @param <T> the type of items in the grid.
+     * @return a constructed instance.
+     * @throws IllegalArgumentException if {@code cellSize} is not positive.
+     */
+    static <T> CellGrid<T> create(final List<T> items, final Function<T, CartPoint3D> extractor, final int cellSize,
+                                  final boolean quantised) {
+        if (cellSize < 1) {
+            throw new IllegalArgumentException("Cell size must be positive: " + cellSize);
+        }
+
+        final Object[] source = items.toArray();
+        final double[] xs = new double[source.length];
+        final double[] ys = new double[source.length];
+        final double[] zs = new double[source.length];
+        for (int i = 0; i < source.length; i++) {
+            @SuppressWarnings("unchecked")
+            final CartPoint3D point = extractor.apply((T) source[i]);
+            xs[i] = point.x();
+            ys[i] = point.y();
+            zs[i] = point.z();
+        }
+
+        return create(source, xs, ys, zs, cellSize, quantised);
+    }
+
+    /**
+     * Build a {@code CellGrid} instance from items whose points have already been extracted into arrays of
+     * coordinates. The arrays are arranged into grid order in place and become the storage of the grid, unless it is
+     * quantised, so that building the grid needs little memory beyond that which it finally occupies.
+     *
+     * @param items the items to store in the grid.
+     * @param xs the x-axis ordinates of the points of the items, of the same length as {@code items}.
+     * @param ys the y-axis ordinates of the points of the items, of the same length as {@code items}.
+     * @param zs the z-axis ordinates of the points of the items, of the same length as {@code items}.
+     * @param cellSize the number of points to aim to hold in each cell.
+     * @param quantised whether to quantise the coordinates of the points.
+     * @param <T> the type of items in the grid.
+     * @return a constructed instance.
+     * @throws IllegalArgumentException if {@code cellSize} is not positive.
+     * @see #create(List, Function, int, boolean)
+     */
+    static <T> CellGrid<T> create(final Object[] items, final double[] xs, final double[] ys, final double[] zs,
+                                  final int cellSize, final boolean quantised) {
+        if (cellSize < 1) {
+            throw new IllegalArgumentException("Cell size must be positive: " + cellSize);
+        }
+
+        final int size = items.length;
+        final int cellsPerSide = Math.max(1, (int) Math.ceil(Math.sqrt(size / (FACES * (double) cellSize))));
+        final int cellCount = FACES * cellsPerSide * cellsPerSide;
+
+        // Count the points in each cell
+        final int[] slots = new int[size];
+        final int[] cellStarts = new int[cellCount + 1];
+        for (int i = 0; i < size; i++) {
+            slots[i] = cell(xs[i], ys[i], zs[i], cellsPerSide);
+            cellStarts[slots[i] + 1]++;
+        }
+
+        for (int cell = 0; cell < cellCount; cell++) {
+            cellStarts[cell + 1] += cellStarts[cell];
+        }
+
+        // Assign each point the next free slot of its cell, keeping the points of each cell in their given order
+        final int[] nextSlots = Arrays.copyOf(cellStarts, cellCount);
+        for (int i = 0; i < size; i++) {
+            slots[i] = nextSlots[slots[i]]++;
+        }
+
+        // Move each point into its slot in place, by following each cycle of the permutation around to its start;
+        // each slot reached is marked as done by making it negative
+        for (int start = 0; start < size; start++) {
+            if (slots[start] < 0) {
+                continue;
+            }
+
+            double x = xs[start], y = ys[start], z = zs[start];
+            Object item = items[start];
+            int slot = slots[start];
+            slots[start] = -1;
+            while (slot != start) {
+                final double nextX = xs[slot], nextY = ys[slot], nextZ = zs[slot];
+                final Object nextItem = items[slot];
+                xs[slot] = x;
+                ys[slot] = y;
+                zs[slot] = z;
+                items[slot] = item;
+                x = nextX;
+                y = nextY;
+                z = nextZ;
+                item = nextItem;
+
+                final int nextSlot = slots[slot];
+                slots[slot] = -1;
+                slot = nextSlot;
+            }
+
+            xs[start] = x;
+            ys[start] = y;
+            zs[start] = z;
+            items[start] = item;
+        }
+
+        final PointStore points = quantised ? PointStore.quantised(xs, ys, zs) : PointStore.of(xs, ys, zs);
+
+        // The bounds are of the points as held by the store, since those are what searches test; an empty cell has
+        // inverted bounds so that it intersects nothing
+        final double[][] bounds = new double[6][cellCount];
+        for (int dimension = 0; dimension < CartPoint3D.DIMENSIONS; dimension++) {
+            Arrays.fill(bounds[dimension], Double.POSITIVE_INFINITY);
+            Arrays.fill(bounds[dimension + CartPoint3D.DIMENSIONS], Double.NEGATIVE_INFINITY);
+        }
+
+        for (int cell = 0; cell < cellCount; cell++) {
+            for (int slot = cellStarts[cell]; slot < cellStarts[cell + 1]; slot++) {
+                for (int dimension = 0; dimension < CartPoint3D.DIMENSIONS; dimension++) {
+                    final double ordinate = points.ordinate(dimension, slot);
+                    bounds[dimension][cell] = Math.min(bounds[dimension][cell], ordinate);
+                    bounds[dimension + CartPoint3D.DIMENSIONS][cell] =
+                            Math.max(bounds[dimension + CartPoint3D.DIMENSIONS][cell], ordinate);
+                }
+            }
+        }
+
+        return new CellGrid<>(points,
+                              PointStore.of(bounds[0], bounds[1], bounds[2]),
+                              PointStore.of(bounds[3], bounds[4], bounds[5]),
+                              cellStarts,
+                              items,
+                              cellsPerSide);
+    }
+
+    /**
+     * Find the cell containing the given point.
+     *
+     * @param x the x-axis ordinate of the point.
+     * @param y the y-axis ordinate of the point.
+     * @param z the z-axis ordinate of the point.
+     * @param cellsPerSide the number of rows, and of columns, of cells on each face.
+     * @return the number of the cell.
+     */
+    private static int cell(final double x, final double y, final double z, final int cellsPerSide) {
+        final double absX = Math.abs(x), absY = Math.abs(y), absZ = Math.abs(z);
+        final int face;
+        final double u;
+        final double v;
+        if (absX >= absY && absX >= absZ) {
+            face = x < 0 ? 1 : 0;
+            u = y / absX;
+            v = z / absX;
+        } else if (absY >= absZ) {
+            face = y < 0 ? 3 : 2;
+            u = z / absY;
+            v = x / absY;
+        } else {
+            face = z < 0 ? 5 : 4;
+            u = x / absZ;
+            v = y / absZ;
+        }
+        return (face * cellsPerSide + cellOrdinate(v, cellsPerSide)) * cellsPerSide + cellOrdinate(u, cellsPerSide);
+    }
+
+    /**
+     * Find the row or column of the cells of a face that contains the given position on the face.
+     *
+     * @param position the position on the face of the cube, from {@code -1} to {@code +1}; any value beyond this
+     * range is taken to be the first or last row or column.
+     * @param cellsPerSide the number of rows, and of columns, of cells on each face.
+     * @return the row or column, from {@code 0} to {@code cellsPerSide - 1}.
+     */
+    private static int cellOrdinate(final double position, final int cellsPerSide) {
+        // The equal-angle projection of the face, under which each row and column spans the same angle from the centre
+        // of the sphere
+        final double angle = Math.atan(position) * (4 / Math.PI);
+        return Math.max(0, Math.min(cellsPerSide - 1, (int) Math.floor((angle + 1) * 0.5 * cellsPerSide)));
+    }
+
+    @Override
+    public int size() {
+        return points.size();
+    }
+
+    @Override
+    public PointStore points() {
+        return points;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T item(final int slot) {
+        return (T) items[slot];
+    }
+
+    @Override
+    public CellGrid<T> vectorised() {
+        final PointStore vectorised = points.vectorised();
+        return vectorised == points
+                ? this
+                : new CellGrid<>(vectorised, lowerBounds, upperBounds, cellStarts, items, cellsPerSide);
+    }
+
+    @Override
+    public boolean search(final Search search) {
+        return visitCells(search, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The grid has only node {@code 0}, which is expanded directly into an entry for each cell that the range of the
+     * search overlaps.
+     */
+    @Override
+    public void expand(final SearchSpliterator<?> search, final int node, final int lo, final int hi) {
+        visitCells(search, search);
+    }
+
+    /**
+     * Visit each cell that the range of a search could overlap, either searching it immediately or deferring it to be
+     * searched later by a lazily evaluated search.
+     *
+     * @param search the range to search on and the function to invoke for each point found.
+     * @param deferred the lazily evaluated search onto which to push each cell, or {@code null} to search each cell
+     * immediately.
+     * @return {@code true} if the search should continue; or {@code false} if it was stopped.
+     */
+    private boolean visitCells(final Search search, final SearchSpliterator<?> deferred) {
+        // Points on the unit sphere all lie on the faces of the cube after projection, so the range is bounded on each
+        // face by the extremes of the ratio of each of the other ordinates to the greatest one
+        final double minX = search.minX() - PADDING, minY = search.minY() - PADDING, minZ = search.minZ() - PADDING;
+        final double maxX = search.maxX() + PADDING, maxY = search.maxY() + PADDING, maxZ = search.maxZ() + PADDING;
+        for (int face = 0; face < FACES; face++) {
+            final boolean negative = (face & 1) == 1;
+            final double lo;
+            final double hi;
+            final double uLo;
+            final double uHi;
+            final double vLo;
+            final double vHi;
+            switch (face >>> 1) {
+                case 0 -> {
+                    lo = negative ? -maxX : minX;
+                    hi = negative ? -minX : maxX;
+                    uLo = minY;
+                    uHi = maxY;
+                    vLo = minZ;
+                    vHi = maxZ;
+                }
+                case 1 -> {
+                    lo = negative ? -maxY : minY;
+                    hi = negative ? -minY : maxY;
+                    uLo = minZ;
+                    uHi = maxZ;
+                    vLo = minX;
+                    vHi = maxX;
+                }
+                default -> {
+                    lo = negative ? -maxZ : minZ;
+                    hi = negative ? -minZ : maxZ;
+                    uLo = minX;
+                    uHi = maxX;
+                    vLo = minY;
+                    vHi = maxY;
+                }
+            }
+
+            // The magnitude of the greatest ordinate, by which the others are divided
+            final double wLo = Math.max(lo, MIN_DOMINANT_ORDINATE);
+            final double wHi = hi;
+            if (!(wLo <= wHi)) {
+                continue;
+            }
+
+            final double uMin = minRatio(uLo, wLo, wHi), uMax = maxRatio(uHi, wLo, wHi);
+            final double vMin = minRatio(vLo, wLo, wHi), vMax = maxRatio(vHi, wLo, wHi);
+            if (!(uMin <= uMax && vMin <= vMax)) {
+                continue;
+            }
+
+            final int columnMin = cellOrdinate(uMin, cellsPerSide), columnMax = cellOrdinate(uMax, cellsPerSide);
+            final int rowMin = cellOrdinate(vMin, cellsPerSide), rowMax = cellOrdinate(vMax, cellsPerSide);
+            for (int row = rowMin; row <= rowMax; row++) {
+                final int rowStart = (face * cellsPerSide + row) * cellsPerSide;
+                for (int column = columnMin; column <= columnMax; column++) {
+                    if (!visitCell(search, deferred, rowStart + column)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Visit a cell that the range of a search could overlap.
+     *
+     * @param search the range to search on and the function to invoke for each point found.
+     * @param deferred the lazily evaluated search onto which to push the cell, or {@code null} to search the cell
+     * immediately.
+     * @param cell the number of the cell.
+     * @return {@code true} if the search should continue; or {@code false} if it was stopped.
+     */
+    private boolean visitCell(final Search search, final SearchSpliterator<?> deferred, final int cell) {
+        final int lo = cellStarts[cell];
+        final int hi = cellStarts[cell + 1];
+        if (lo == hi) {
+            return true;
+        }
+
+        final double minX = lowerBounds.x(cell), minY = lowerBounds.y(cell), minZ = lowerBounds.z(cell);
+        final double maxX = upperBounds.x(cell), maxY = upperBounds.y(cell), maxZ = upperBounds.z(cell);
+        if (!search.intersects(minX, minY, minZ, maxX, maxY, maxZ)) {
+            return true;
+        }
+
+        final boolean enclosed = search.encloses(minX, minY, minZ, maxX, maxY, maxZ);
+        if (deferred != null) {
+            deferred.push(enclosed ? SearchSpliterator.TAKE : SearchSpliterator.SCAN, lo, hi);
+            return true;
+        }
+
+        if (!enclosed) {
+            return points.scan(search, lo, hi);
+        }
+
+        if (search.acceptNode(cell, lo, hi)) {
+            return true;
+        }
+
+        for (int i = lo; i < hi; i++) {
+            if (!search.accept(i, points.x(i), points.y(i), points.z(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Calculate the least ratio of an ordinate to a positive one, given the range of each.
+     *
+     * @param lo the minimum of the ordinate.
+     * @param divisorLo the minimum of the positive ordinate.
+     * @param divisorHi the maximum of the positive ordinate.
+     * @return the least ratio.
+     */
+    private static double minRatio(final double lo, final double divisorLo, final double divisorHi) {
+        return lo >= 0 ? lo / divisorHi : lo / divisorLo;
+    }
+
+    /**
+     * Calculate the greatest ratio of an ordinate to a positive one, given the range of each.
+     *
+     * @param hi the maximum of the ordinate.
+     * @param divisorLo the minimum of the positive ordinate.
+     * @param divisorHi the maximum of the positive ordinate.
+     * @return the greatest ratio.
+     */
+    private static double maxRatio(final double hi, final double divisorLo, final double divisorHi) {
+        return hi >= 0 ? hi / divisorLo : hi / divisorHi;
+    }
+
+    @Override
+    public ValueSummaries summarise(final double[] sums, final double[] mins, final double[] maxes) {
+        final int cellCount = cellStarts.length - 1;
+        final ValueSummaries summaries = new ValueSummaries(sums, mins, maxes, cellCount);
+        for (int cell = 0; cell < cellCount; cell++) {
+            summaries.summariseSlots(cell, cellStarts[cell], cellStarts[cell + 1]);
+        }
+        return summaries;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Each cell is a leaf, reached directly from the whole grid and so at a depth of {@code 1}.
+     */
+    @Override
+    public IndexStatistics statistics() {
+        final int cellCount = cellStarts.length - 1;
+        int empty = 0;
+        int min = Integer.MAX_VALUE;
+        int max = 0;
+        for (int cell = 0; cell < cellCount; cell++) {
+            final int cellSize = cellStarts[cell + 1] - cellStarts[cell];
+            if (cellSize == 0) {
+                empty++;
+            }
+            min = Math.min(min, cellSize);
+            max = Math.max(max, cellSize);
+        }
+        return new IndexStatistics(GeoPointIndex.Engine.CELL_GRID,
+                                   size(),
+                                   cellCount,
+                                   empty,
+                                   min,
+                                   max,
+                                   (double) size() / cellCount,
+                                   1,
+                                   1);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The grid has no hierarchy to prune a search for the nearest items with, so instead searches a sphere around the
+     * point, starting from the radius that would hold {@code count} items were they spread evenly over the globe, and
+     * doubling it until the sphere holds enough items. Once it does the items within it are certainly the nearest.
+     */
+    @Override
+    public Neighbours nearest(final double x, final double y, final double z, final int count,
+                              final double maxDistanceSquared) {
+        final int capacity = Math.min(count, size());
+        if (capacity <= 0) {
+            return new Neighbours(0, maxDistanceSquared);
+        }
+
+        final double maxDistance = Math.sqrt(maxDistanceSquared);
+        // A cap of chord radius r covers about r² / 4 of the sphere
+        double radius = 2 * Math.sqrt((double) capacity / size());
+        while (true) {
+            // No two points on the unit sphere are further apart than a chord of 2
+            final boolean last = radius >= maxDistance || radius >= 2;
+            final double searchRadius = last ? maxDistance : radius;
+            final Neighbours neighbours = new Neighbours(capacity, last ? maxDistanceSquared : radius * radius);
+            final Search search = new Search() {
+                @Override
+                boolean accept(final int slot, final double px, final double py, final double pz) {
+                    final double dX = px - x;
+                    final double dY = py - y;
+                    final double dZ = pz - z;
+                    neighbours.offer(slot, dX * dX + dY * dY + dZ * dZ);
+                    return true;
+                }
+            };
+            search.setSphere(x, y, z, searchRadius);
+            search(search);
+
+            if (last || neighbours.size() == capacity) {
+                neighbours.sort();
+                return neighbours;
+            }
+            radius *= 2;
+        }
+    }
+}
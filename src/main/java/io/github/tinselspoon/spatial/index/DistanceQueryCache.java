@@ -0,0 +1,269 @@
+package io.github.tinselspoon.spatial.index;
+
+import io.github.tinselspoon.spatial.index.GeoPointIndex.WithinDistanceConsumer;
+import lombok.NonNull;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A cache of the results of distance queries on a {@link GeoPointIndex}, for traffic that repeatedly queries around
+ * the same places with the same distance, but from slightly different points.
+ * <p>
+ * Search points are grouped into cubic cells of a given size. The first query in a cell with a given distance searches
+ * the index for every item that any query in that cell could find, and caches them. Each query in that cell with that
+ * distance then only checks the cached items against its exact point, so it finds exactly the same items, at exactly
+ * the same distances, as querying the index itself. Larger cells are shared by more queries, but each holds more items
+ * that a given query then rejects; a cell size of around a tenth of the distance is a reasonable starting point.
+ * <p>
+ * The cache holds a bounded number of entries, each holding the items for one cell and distance. Once it is full,
+ * adding an entry evicts one that has not been used recently, chosen by the CLOCK approximation of least recently
+ * used. Queries that hit the cache take no locks, so they scale with the number of threads. Hit and miss counts show
+ * whether the cache is paying off. As the index is immutable, entries never become stale.
+ *
+ * @param <T> the type of items contained within the index.
+ */
+public final class DistanceQueryCache<T> {
+
+    /** The index whose queries are cached. */
+    private final GeoPointIndex<T> index;
+
+    /** The maximum number of entries to hold. */
+    private final int maxEntries;
+
+    /** The length of the edge of each cell, as a distance in the coordinates of the unit sphere. */
+    private final double cellSize;
+
+    /** The entries held, by their cell and distance. */
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * The entries held, at the positions visited in turn by the clock hand to find an entry to evict. This is only
+     * accessed while holding its lock.
+     */
+    private final Entry[] clock;
+
+    /** The position of the clock hand. This is only accessed while holding the lock of {@link #clock}. */
+    private int hand;
+
+    /** The number of queries answered from the cache. */
+    private final LongAdder hits = new LongAdder();
+
+    /** The number of queries that had to search the index. */
+    private final LongAdder misses = new LongAdder();
+
+    /** The number of entries evicted to make room for others. */
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Construct a new instance.
+     *
+     * @param index the index whose queries are cached.
+     * @param maxEntries the maximum number of entries to hold.
+     * @param cellSize the length of the edge of each cell, as a distance in the coordinates of the unit sphere.
+     */
+    private DistanceQueryCache(final GeoPointIndex<T> index, final int maxEntries, final double cellSize) {
+        this.index = index;
+        this.maxEntries = maxEntries;
+        this.cellSize = cellSize;
+        this.clock = new Entry[maxEntries];
+    }
+
+    /**
+     * Create a cache of the distance queries on the given index, which is initially empty.
+     *
+     * @param index the index whose queries are cached.
+     * @param maxEntries the maximum number of entries to hold, each for one cell and distance.
+     * @param cellSizeMeters the approximate width of the cells in meters into which search points are grouped.
+     * @param <T> the type of items contained within the index.
+     * @return a new cache.
+     * @throws IllegalArgumentException if {@code maxEntries} is not positive, or {@code cellSizeMeters} is not at
+     * least 1 m.
+     */
+    public static <T> DistanceQueryCache<T> of(@NonNull final GeoPointIndex<T> index, final int maxEntries,
+                                               final double cellSizeMeters) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Maximum entries must be positive: " + maxEntries);
+        }
+
+        if (!(cellSizeMeters >= 1)) {
+            throw new IllegalArgumentException("Cell size must be at least 1 m: " + cellSizeMeters);
+        }
+
+        return new DistanceQueryCache<>(index, maxEntries, CartPoint3D.chordLength(cellSizeMeters));
+    }
+
+    /**
+     * Find all items contained in the index that are within the given great circle distance of the specified point,
+     * answering from the cache where possible.
+     *
+     * @param latitude the latitude of the point to search around.
+     * @param longitude the longitude of the point to search around.
+     * @param distanceMeters the distance in meters around the point for which to return items.
+     * @param consumer a function that will be called upon finding each suitable item.
+     * @return {@code true} if any items were found; otherwise, {@code false}.
+     * @throws IllegalArgumentException if the point is invalid.
+     * @see GeoPointIndex#queryWithinDistance(double, double, double, WithinDistanceConsumer)
+     */
+    public boolean queryWithinDistance(final double latitude, final double longitude, final double distanceMeters,
+                                       @NonNull final WithinDistanceConsumer<T> consumer) {
+        final CartPoint3D point = CartPoint3D.fromLatLon(latitude, longitude);
+        final Key key = new Key((int) Math.floor(point.x() / cellSize),
+                                (int) Math.floor(point.y() / cellSize),
+                                (int) Math.floor(point.z() / cellSize),
+                                distanceMeters);
+
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            hits.increment();
+            if (!entry.referenced) {
+                entry.referenced = true;
+            }
+        } else {
+            misses.increment();
+            entry = add(key, index.slotsWithinSphere((key.x() + 0.5) * cellSize,
+                                                     (key.y() + 0.5) * cellSize,
+                                                     (key.z() + 0.5) * cellSize,
+                                                     candidateRadius(distanceMeters)));
+        }
+        return index.queryWithinDistance(entry.slots, latitude, longitude, distanceMeters, consumer);
+    }
+
+    /**
+     * Calculate the radius of the sphere around the centre of a cell that contains the sphere searched by a query
+     * from any point within the cell.
+     *
+     * @param distanceMeters the distance in meters of the query.
+     * @return the radius.
+     */
+    private double candidateRadius(final double distanceMeters) {
+        // Any point of the cell is within half of its diagonal of the centre
+        return (index.searchRadius(distanceMeters) + cellSize * Math.sqrt(3) / 2) * (1 + 1E-9);
+    }
+
+    /**
+     * Add an entry to the cache, evicting another if it is full.
+     *
+     * @param key the cell and distance of the entry.
+     * @param slots the slots of the points that any query in the cell with the distance could find.
+     * @return the entry now held for the key, which is an existing one if another thread added it first.
+     */
+    private Entry add(final Key key, final int[] slots) {
+        synchronized (clock) {
+            final Entry existing = entries.get(key);
+            if (existing != null) {
+                return existing;
+            }
+
+            // Sweep the hand past entries used since it last passed them, giving each a second chance
+            while (clock[hand] != null && clock[hand].referenced) {
+                clock[hand].referenced = false;
+                hand = (hand + 1) % maxEntries;
+            }
+
+            if (clock[hand] != null) {
+                entries.remove(clock[hand].key);
+                evictions.increment();
+            }
+
+            final Entry entry = new Entry(key, slots);
+            clock[hand] = entry;
+            hand = (hand + 1) % maxEntries;
+            entries.put(key, entry);
+            return entry;
+        }
+    }
+
+    /**
+     * Gets the number of entries held.
+     *
+     * @return the number of entries.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Gets the number of queries answered from the cache.
+     *
+     * @return the number of hits.
+     */
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the number of queries that had to search the index, each of which added an entry to the cache.
+     *
+     * @return the number of misses.
+     */
+    public long missCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Gets the number of entries evicted to make room for others.
+     *
+     * @return the number of evictions.
+     */
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Gets the proportion of queries answered from the cache.
+     *
+     * @return the ratio, from {@code 0} to {@code 1}, which is {@code 0} if no queries have been made.
+     */
+    public double hitRatio() {
+        final long hitCount = hitCount();
+        final long total = hitCount + missCount();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /** Discard every entry, without resetting the counts of hits, misses and evictions. */
+    public void clear() {
+        synchronized (clock) {
+            entries.clear();
+            Arrays.fill(clock, null);
+            hand = 0;
+        }
+    }
+
+    /**
+     * The cell and distance of the queries whose results an entry holds.
+     *
+     * @param x the position of the cell on the x-axis, in cells.
+     * @param y the position of the cell on the y-axis, in cells.
+     * @param z the position of the cell on the z-axis, in cells.
+     * @param distanceMeters the distance in meters of the queries.
+     */
+    private record Key(int x, int y, int z, double distanceMeters) {
+    }
+
+    /** The items that any query in a cell with a given distance could find. */
+    private static final class Entry {
+
+        /** The cell and distance of the queries. */
+        private final Key key;
+
+        /** The slots of the points of the items within the index. */
+        private final int[] slots;
+
+        /** Whether the entry has been used since the clock hand last passed it. */
+        private volatile boolean referenced;
+
+        /**
+         * Construct a new instance.
+         *
+         * @param key the cell and distance of the queries.
+         * @param slots the slots of the points of the items within the index.
+         */
+        private Entry(final Key key, final int[] slots) {
+            this.key = key;
+            this.slots = slots;
+        }
+    }
+}
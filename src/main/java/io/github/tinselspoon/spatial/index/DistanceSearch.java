@@ -0,0 +1,152 @@
+package io.github.tinselspoon.spatial.index;
+
+/**
+ * A search for the points within a great circle distance of a search point, shared by the indexes so that each
+ * filters the points found in the same way.
+ * <p>
+ * Every point within the distance lies within the sphere around the search point whose radius is the chord spanning
+ * that distance. The sphere searched is padded slightly so as not to exclude points right on the boundary due to
+ * rounding, or due to the backend holding its points approximately, and so the points found are not guaranteed to be
+ * within the distance. Those close enough to the boundary for this to matter have their distance calculated precisely,
+ * while all others are certainly within it and so need nothing more than the comparison of squared chord lengths.
+ */
+abstract class DistanceSearch extends Search {
+
+    /** The buffer the search point is converted into. */
+    private final double[] point = new double[CartPoint3D.DIMENSIONS];
+
+    /** The distance in meters around the search point for which to find points. */
+    private double distanceMeters;
+
+    /**
+     * The square of a straight-line distance from the search point, within which points are certainly within
+     * {@link #distanceMeters} without needing to calculate their great circle distance precisely.
+     */
+    private double certainDistanceSquared;
+
+    /** The square of the straight-line distance to the point last {@link #withinDistance tested}. */
+    private double lastDistanceSquared;
+
+    /** The distance in meters to the point last {@link #withinDistance tested}, or {@code NaN} if not calculated. */
+    private double lastDistanceMeters;
+
+    /**
+     * Calculate the radius of the sphere around a search point that is searched to find the points within a distance
+     * of it. This is the chord spanning that distance, padded slightly so as not to exclude points right on the
+     * boundary due to rounding, or due to the backend holding its points approximately.
+     *
+     * @param sphericalMeters the distance in meters on the sphere around the point for which to find points.
+     * @param tolerance the greatest straight-line distance between a point and that held by the backend.
+     * @return the radius, which is negative or {@code NaN} if no points can be within the distance.
+     */
+    static double searchRadius(final double sphericalMeters, final double tolerance) {
+        return (CartPoint3D.chordLength(sphericalMeters) + tolerance) * (1 + 1E-9);
+    }
+
+    /**
+     * Calculate the radius of the sphere around a search point within which every point held by the backend is
+     * certainly within a distance of it. This is the chord spanning that distance, reduced slightly to allow for
+     * rounding, and for the backend holding its points approximately.
+     *
+     * @param sphericalMeters the distance in meters on the sphere around the point for which to find points.
+     * @param tolerance the greatest straight-line distance between a point and that held by the backend.
+     * @return the radius, which is {@code 0} if no point is certainly within the distance.
+     */
+    static double certainRadius(final double sphericalMeters, final double tolerance) {
+        return Math.max(0, CartPoint3D.chordLength(sphericalMeters) - tolerance) * (1 - 1E-9);
+    }
+
+    /**
+     * Sets the range to search on to the sphere around the given point.
+     *
+     * @param latitude the latitude of the point to search around.
+     * @param longitude the longitude of the point to search around.
+     * @param distanceMeters the distance in meters around the point for which to find points.
+     * @param searchRadius the radius of the sphere to search, as given by {@link #searchRadius}.
+     * @param certainRadius the radius of the sphere within which points are certainly within the distance, as given by
+     * {@link #certainRadius}.
+     * @throws IllegalArgumentException if the point is invalid.
+     */
+    final void setDistance(final double latitude, final double longitude, final double distanceMeters,
+                           final double searchRadius, final double certainRadius) {
+        CartPoint3D.fromLatLon(latitude, longitude, point);
+        setDistance(point[0], point[1], point[2], distanceMeters, searchRadius, certainRadius);
+    }
+
+    /**
+     * Sets the range to search on to the sphere around the given point.
+     *
+     * @param x the x-axis ordinate of the point to search around.
+     * @param y the y-axis ordinate of the point to search around.
+     * @param z the z-axis ordinate of the point to search around.
+     * @param distanceMeters the distance in meters around the point for which to find points.
+     * @param searchRadius the radius of the sphere to search, as given by {@link #searchRadius}.
+     * @param certainRadius the radius of the sphere within which points are certainly within the distance, as given by
+     * {@link #certainRadius}.
+     */
+    final void setDistance(final double x, final double y, final double z, final double distanceMeters,
+                           final double searchRadius, final double certainRadius) {
+        this.distanceMeters = distanceMeters;
+        certainDistanceSquared = certainRadius * certainRadius;
+        setSphere(x, y, z, searchRadius);
+        setCertainRadius(certainRadius);
+    }
+
+    /**
+     * Gets the distance in meters around the search point for which to find points.
+     *
+     * @return the distance.
+     */
+    final double distanceMeters() {
+        return distanceMeters;
+    }
+
+    /**
+     * Determines whether a point found within the sphere is within the distance of the search point.
+     *
+     * @param slot the slot of the point.
+     * @param x the x-axis ordinate of the point.
+     * @param y the y-axis ordinate of the point.
+     * @param z the z-axis ordinate of the point.
+     * @return {@code true} if the point is within the distance; otherwise, {@code false}.
+     */
+    final boolean withinDistance(final int slot, final double x, final double y, final double z) {
+        final double dX = x - centreX();
+        final double dY = y - centreY();
+        final double dZ = z - centreZ();
+        lastDistanceSquared = dX * dX + dY * dY + dZ * dZ;
+        lastDistanceMeters = Double.NaN;
+        if (lastDistanceSquared <= certainDistanceSquared) {
+            return true;
+        }
+
+        lastDistanceMeters = distanceMeters(slot, lastDistanceSquared);
+        return lastDistanceMeters <= distanceMeters;
+    }
+
+    /**
+     * Gets the distance to the point last {@link #withinDistance found} to be within the distance, calculating it only
+     * if it was not already.
+     *
+     * @param slot the slot of the point.
+     * @return the distance in meters.
+     */
+    final double lastDistanceMeters(final int slot) {
+        if (Double.isNaN(lastDistanceMeters)) {
+            lastDistanceMeters = distanceMeters(slot, lastDistanceSquared);
+        }
+        return lastDistanceMeters;
+    }
+
+    /**
+     * Calculate the distance between the search point and a point precisely, which by default is the great circle
+     * distance spanned by the chord between them.
+     *
+     * @param slot the slot of the point.
+     * @param distanceSquared the square of the straight-line distance between the points.
+     * @return the distance in meters.
+     */
+    double distanceMeters(final int slot, final double distanceSquared) {
+        return CartPoint3D.arcMeters(Math.sqrt(distanceSquared));
+    }
+}
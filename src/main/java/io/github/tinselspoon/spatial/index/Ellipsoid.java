@@ -0,0 +1,115 @@
+package io.github.tinselspoon.spatial.index;
+
+/**
+ * Distances on the WGS84 ellipsoid, for an index measuring distances on the ellipsoid rather than on a sphere.
+ * <p>
+ * Points are given as the {@link CartPoint3D} on the unit sphere of their latitude and longitude, as held by an index,
+ * and the distance between them is found by Vincenty's inverse method, which is accurate to within a millimetre. For
+ * points that are very nearly antipodal, where the method may not converge, the distance is that reached after a fixed
+ * number of iterations and may be less accurate.
+ * <p>
+ * The distance between two points on the ellipsoid is within a small factor of the great circle distance between them
+ * on the sphere of {@link CartPoint3D#WGS84_RADIUS_METERS mean radius}, since the radius of curvature of the ellipsoid
+ * in any direction lies between its meridional radius at the equator and its radius at the poles. An index can
+ * therefore search a sphere padded by that factor, and need only calculate the ellipsoidal distance to points near its
+ * boundary.
+ */
+final class Ellipsoid {
+
+    /** The semi-major axis of the WGS84 ellipsoid, in meters. */
+    static final double SEMI_MAJOR_AXIS_METERS = 6378137;
+
+    /** The flattening of the WGS84 ellipsoid. */
+    static final double FLATTENING = 1 / 298.257223563;
+
+    /** The semi-minor axis of the WGS84 ellipsoid, in meters. */
+    static final double SEMI_MINOR_AXIS_METERS = SEMI_MAJOR_AXIS_METERS * (1 - FLATTENING);
+
+    /**
+     * A factor, rounded down, no greater than the ratio of the distance between any two points on the ellipsoid to the
+     * great circle distance between them on the sphere, being the least radius of curvature of the ellipsoid, at the
+     * equator along the meridian, over the radius of the sphere.
+     */
+    static final double MIN_SCALE = 0.9944;
+
+    /**
+     * A factor, rounded up, no less than the ratio of the distance between any two points on the ellipsoid to the
+     * great circle distance between them on the sphere, being the greatest radius of curvature of the ellipsoid, at the
+     * poles, over the radius of the sphere.
+     */
+    static final double MAX_SCALE = 1.0045;
+
+    /** The most iterations of Vincenty's method to make, which converges in far fewer except for antipodal points. */
+    private static final int MAX_ITERATIONS = 200;
+
+    /** The change in longitude on the auxiliary sphere between iterations below which the method has converged. */
+    private static final double CONVERGENCE = 1E-12;
+
+    /** Not instantiable. */
+    private Ellipsoid() {
+    }
+
+    /**
+     * Calculate the distance along the surface of the ellipsoid between two points, by Vincenty's inverse method.
+     *
+     * @param x1 the x-axis ordinate of the first point on the unit sphere.
+     * @param y1 the y-axis ordinate of the first point on the unit sphere.
+     * @param z1 the z-axis ordinate of the first point on the unit sphere.
+     * @param x2 the x-axis ordinate of the second point on the unit sphere.
+     * @param y2 the y-axis ordinate of the second point on the unit sphere.
+     * @param z2 the z-axis ordinate of the second point on the unit sphere.
+     * @return the distance in meters.
+     */
+    static double distanceMeters(final double x1, final double y1, final double z1, final double x2, final double y2,
+                                 final double z2) {
+        // The reduced latitude of each point, whose tangent is that of the latitude scaled by 1 - f, is found directly
+        // from the ordinates, which remains well defined at the poles
+        final double h1 = Math.sqrt(x1 * x1 + y1 * y1), h2 = Math.sqrt(x2 * x2 + y2 * y2);
+        final double n1 = Math.hypot((1 - FLATTENING) * z1, h1), n2 = Math.hypot((1 - FLATTENING) * z2, h2);
+        final double sinU1 = (1 - FLATTENING) * z1 / n1, cosU1 = h1 / n1;
+        final double sinU2 = (1 - FLATTENING) * z2 / n2, cosU2 = h2 / n2;
+
+        double longitudeDifference = Math.atan2(y2, x2) - Math.atan2(y1, x1);
+        if (longitudeDifference > Math.PI) {
+            longitudeDifference -= 2 * Math.PI;
+        } else if (longitudeDifference < -Math.PI) {
+            longitudeDifference += 2 * Math.PI;
+        }
+
+        double lambda = longitudeDifference;
+        double sinSigma, cosSigma, sigma, cosSqAlpha, cos2SigmaM;
+        int iterations = 0;
+        while (true) {
+            final double sinLambda = Math.sin(lambda), cosLambda = Math.cos(lambda);
+            final double p = cosU2 * sinLambda, q = cosU1 * sinU2 - sinU1 * cosU2 * cosLambda;
+            sinSigma = Math.sqrt(p * p + q * q);
+            cosSigma = sinU1 * sinU2 + cosU1 * cosU2 * cosLambda;
+            if (sinSigma == 0 && cosSigma > 0) {
+                // The points coincide
+                return 0;
+            }
+
+            sigma = Math.atan2(sinSigma, cosSigma);
+            final double sinAlpha = sinSigma == 0 ? 0 : cosU1 * cosU2 * sinLambda / sinSigma;
+            cosSqAlpha = 1 - sinAlpha * sinAlpha;
+
+            // On the equator the geodesic has no vertex, and the term does not apply
+            cos2SigmaM = cosSqAlpha == 0 ? 0 : cosSigma - 2 * sinU1 * sinU2 / cosSqAlpha;
+            final double c = FLATTENING / 16 * cosSqAlpha * (4 + FLATTENING * (4 - 3 * cosSqAlpha));
+            final double previousLambda = lambda;
+            lambda = longitudeDifference + (1 - c) * FLATTENING * sinAlpha
+                    * (sigma + c * sinSigma * (cos2SigmaM + c * cosSigma * (-1 + 2 * cos2SigmaM * cos2SigmaM)));
+            if (Math.abs(lambda - previousLambda) <= CONVERGENCE || ++iterations >= MAX_ITERATIONS) {
+                break;
+            }
+        }
+
+        final double uSq = cosSqAlpha * (SEMI_MAJOR_AXIS_METERS * SEMI_MAJOR_AXIS_METERS
+                - SEMI_MINOR_AXIS_METERS * SEMI_MINOR_AXIS_METERS) / (SEMI_MINOR_AXIS_METERS * SEMI_MINOR_AXIS_METERS);
+        final double a = 1 + uSq / 16384 * (4096 + uSq * (-768 + uSq * (320 - 175 * uSq)));
+        final double b = uSq / 1024 * (256 + uSq * (-128 + uSq * (74 - 47 * uSq)));
+        final double deltaSigma = b * sinSigma * (cos2SigmaM + b / 4 * (cosSigma * (-1 + 2 * cos2SigmaM * cos2SigmaM)
+                - b / 6 * cos2SigmaM * (-3 + 4 * sinSigma * sinSigma) * (-3 + 4 * cos2SigmaM * cos2SigmaM)));
+        return SEMI_MINOR_AXIS_METERS * a * (sigma - deltaSigma);
+    }
+}
@@ -2,39 +2,104 @@ package io.github.tinselspoon.spatial.index;
 
 import lombok.NonNull;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.DoubleSummaryStatistics;
+import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.Spliterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.IntToDoubleFunction;
 import java.util.function.ObjDoubleConsumer;
 import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * A spatial index for data items that can each be represented as geographic WGS84 latitude-longitude points. Provides
  * functionality to query the index to find items that are within a specified distance to a given search point. The
- * index is immutable once constructed.
+ * index is immutable once constructed; see {@link MutableGeoPointIndex} for an index that can be modified.
  * <p>
  * The index handles points in a geographic rather than a planar context, and as a result correctly handles issues such
  * as wrapping at the 180° antimeridian without requiring queries to be split.
  * <p>
- * Note that as with many such libraries distance calculations are based on a sphere and not a spheroid. This leads to
- * small inaccuracies of up to 0.56% at extremes (near a pole or meridional near the equator). If this extra precision
- * is needed, it is suggested to add a small percentage buffer to the given distance and then filter using a more
- * precise spheroid distance calculation on the returned items.
+ * By default, as with many such libraries, distances are measured on a sphere and not a spheroid. This leads to small
+ * inaccuracies of up to 0.56% at extremes (near a pole or meridional near the equator). If this extra precision is
+ * needed, build the index with {@link Builder#ellipsoidal()} to measure distances on the WGS84 ellipsoid instead.
  *
  * @param <T> the type of items contained within the index.
  */
 public class GeoPointIndex<T> {
 
-    /** The underlying k-d tree that backs this index. */
-    private final KDTree<T> tree;
+    /** The fewest points in a batch query that will be divided into a separate task. */
+    private static final int MIN_BATCH_BLOCK_SIZE = 256;
+
+    /** The underlying engine that backs this index. */
+    private final SpatialBackend<T> backend;
+
+    /**
+     * A function to obtain the exact point of each item where the backend holds its points only approximately, or
+     * {@code null} if the backend holds them exactly.
+     */
+    private final Function<T, CartPoint3D> exactPoints;
+
+    /** The listener to report the statistics of each query to, or {@code null} if they are not to be measured. */
+    private final QueryListener listener;
+
+    /** The summaries of the value of each item, or {@code null} if the index was built without a value to summarise. */
+    private final ValueSummaries summaries;
+
+    /** Whether distances are measured on the WGS84 ellipsoid rather than on a sphere. */
+    private final boolean ellipsoidal;
+
+    /**
+     * The items sharing each point held by the backend, or {@code null} if the backend holds a point for every item.
+     */
+    private final ItemGroups groups;
+
+    /**
+     * Construct a new instance whose backend holds its points exactly, without measuring its queries.
+     *
+     * @param backend the underlying engine that backs this index.
+     */
+    private GeoPointIndex(final SpatialBackend<T> backend) {
+        this(backend, null, null, null, false, null);
+    }
 
     /**
-     * Construct a new instance.
+     * Default constructor.
      *
-     * @param tree the underlying k-d tree that backs this index.
+     * @param backend the underlying engine that backs this index.
+     * @param exactPoints a function to obtain the exact point of each item where the backend holds its points only
+     * approximately, or {@code null} if the backend holds them exactly.
+     * @param listener the listener to report the statistics of each query to, or {@code null} if they are not to be
+     * measured.
+     * @param summaries the summaries of the value of each item, or {@code null} if there is no value to summarise.
+     * @param ellipsoidal whether distances are measured on the WGS84 ellipsoid rather than on a sphere.
+     * @param groups the items sharing each point held by the backend, or {@code null} if the backend holds a point for
+     * every item.
      */
-    private GeoPointIndex(final KDTree<T> tree) {
-        this.tree = tree;
+    private GeoPointIndex(final SpatialBackend<T> backend, final Function<T, CartPoint3D> exactPoints,
+                          final QueryListener listener, final ValueSummaries summaries, final boolean ellipsoidal,
+                          final ItemGroups groups) {
+        this.backend = backend;
+        this.exactPoints = exactPoints;
+        this.listener = listener;
+        this.summaries = summaries;
+        this.ellipsoidal = ellipsoidal;
+        this.groups = groups;
     }
 
     /**
@@ -51,9 +116,78 @@ public class GeoPointIndex<T> {
     public static <T> GeoPointIndex<T> buildFrom(@NonNull final List<T> items,
                                                  @NonNull final ToDoubleFunction<T> latitudeExtractor,
                                                  @NonNull final ToDoubleFunction<T> longitudeExtractor) {
-        return new GeoPointIndex<>(KDTree.create(items,
-                                                 t -> CartPoint3D.fromLatLon(latitudeExtractor.applyAsDouble(t),
-                                                                             longitudeExtractor.applyAsDouble(t))));
+        return builder(latitudeExtractor, longitudeExtractor).build(items);
+    }
+
+    /**
+     * Create a {@link Builder} that allows options to be specified for the construction of a {@code PointIndex}.
+     *
+     * @param latitudeExtractor a function that will extract the latitude value from each of the items. This must
+     * provide a value between -90 and +90.
+     * @param longitudeExtractor a function that will extract the longitude value from each of the items, This must
+     * provide a value between -180 and +180.
+     * @param <T> the type of items in the index.
+     * @return a new builder.
+     */
+    public static <T> Builder<T> builder(@NonNull final ToDoubleFunction<T> latitudeExtractor,
+                                         @NonNull final ToDoubleFunction<T> longitudeExtractor) {
+        return new Builder<>(latitudeExtractor, longitudeExtractor);
+    }
+
+    /**
+     * Open a {@code PointIndex} previously written to a file by {@link #writeTo(Path, ToIntFunction)}.
+     * <p>
+     * The file is mapped into memory and queried in place rather than being read, so opening even a very large index
+     * is almost instantaneous, and multiple processes opening the same file share the same memory. The file must not
+     * be modified while the index is in use.
+     *
+     * @param path the path of the file.
+     * @param itemResolver a function to obtain the item identified by each ordinal in the file. This is called each
+     * time an item is found by a query, and so should be inexpensive, such as looking up an element in a list.
+     * @param <T> the type of items in the index.
+     * @return a spatial index backed by the file.
+     * @throws IOException if an I/O error occurs, or if the file is not a spatial index in a supported format.
+     */
+    public static <T> GeoPointIndex<T> open(@NonNull final Path path,
+                                            @NonNull final IntFunction<? extends T> itemResolver)
+            throws IOException {
+        return new GeoPointIndex<>(IndexFile.open(path, itemResolver));
+    }
+
+    /**
+     * Write this index to a file, from which it can later be opened using {@link #open(Path, IntFunction)}. The items
+     * themselves are not written; instead each is identified by an ordinal, such as its position within a list.
+     *
+     * @param path the path of the file, which will be replaced if it already exists.
+     * @param ordinalFunction a function to obtain the ordinal that identifies each item.
+     * @throws IOException if an I/O error occurs.
+     * @throws UnsupportedOperationException if the index was not built with the {@link Engine#KD_TREE} engine, or
+     * has {@link Builder#collapsing() collapsed} items at the same location.
+     */
+    public void writeTo(@NonNull final Path path, @NonNull final ToIntFunction<? super T> ordinalFunction)
+            throws IOException {
+        if (!(backend instanceof KDTree<T> tree)) {
+            throw new UnsupportedOperationException("Only an index built with the " + Engine.KD_TREE
+                                                            + " engine can be written to a file");
+        }
+
+        if (groups != null) {
+            throw new UnsupportedOperationException("An index that has collapsed items at the same location cannot be "
+                                                            + "written to a file");
+        }
+
+        IndexFile.write(tree, path, ordinalFunction);
+    }
+
+    /**
+     * Describe the shape of the index as it was built, such as how the points are divided into leaves and how deep and
+     * well balanced it is. This walks over the index, so takes time in proportion to its size. Where the index has
+     * {@link Builder#collapsing() collapsed} items at the same location, it describes the distinct locations.
+     *
+     * @return the statistics.
+     */
+    public IndexStatistics statistics() {
+        return backend.statistics();
     }
 
     /**
@@ -67,26 +201,1751 @@ public class GeoPointIndex<T> {
      */
     public boolean queryWithinDistance(final double latitude, final double longitude, final double distanceMeters,
                                        @NonNull final WithinDistanceConsumer<T> consumer) {
-        // This approach is adapted from PostGIS, which converts the latitude/longitude polar coordinates to cartesian
-        // x/y/z coordinates to form a 3D bounding box, which is then expanded by the given distance in meters
-        // (it also multiplies by a 1% "fudge factor" to account for sphere/spheroid calculation differences -
-        // since we are not calculating spheroid distances, we will not do this here)
-        // See https://github.com/postgis/postgis/blob/master/postgis/geography_measurement.c#L454
+        final WithinDistanceSearch<T> search = WithinDistanceSearch.acquire(this);
+        try {
+            search.consumer = consumer;
+            return search.run(latitude, longitude, distanceMeters, Integer.MAX_VALUE) > 0;
+        } finally {
+            search.release();
+        }
+    }
+
+    /**
+     * Find all items contained in the index that are within the given great circle distance of the specified point,
+     * without calculating the distance to each. This is faster than
+     * {@link #queryWithinDistance(double, double, double, WithinDistanceConsumer)} where the distance is not needed.
+     *
+     * @param latitude the latitude of the point to search around.
+     * @param longitude the longitude of the point to search around.
+     * @param distanceMeters the distance in meters around the point for which to return items.
+     * @param consumer a function that will be called upon finding each suitable item.
+     * @return {@code true} if any items were found; otherwise, {@code false}.
+     */
+    public boolean queryItemsWithinDistance(final double latitude, final double longitude,
+                                            final double distanceMeters, @NonNull final Consumer<? super T> consumer) {
+        final WithinDistanceSearch<T> search = WithinDistanceSearch.acquire(this);
+        try {
+            search.itemConsumer = consumer;
+            return search.run(latitude, longitude, distanceMeters, Integer.MAX_VALUE) > 0;
+        } finally {
+            search.release();
+        }
+    }
+
+    /**
+     * Find up to a given number of items contained in the index that are within the given great circle distance of the
+     * specified point. The search stops as soon as the limit is reached.
+     * <p>
+     * The items found are not necessarily the nearest to the point; use
+     * {@link #queryNearest(double, double, int, double)} if this is needed.
+     *
+     * @param latitude the latitude of the point to search around.
+     * @param longitude the longitude of the point to search around.
+     * @param distanceMeters the distance in meters around the point for which to return items.
+     * @param limit the maximum number of items to find.
+     * @param consumer a function that will be called upon finding each suitable item.
+     * @return the number of items found.
+     * @throws IllegalArgumentException if {@code limit} is not positive.
+     */
+    public int queryWithinDistance(final double latitude, final double longitude, final double distanceMeters,
+                                   final int limit, @NonNull final WithinDistanceConsumer<T> consumer) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit must be positive: " + limit);
+        }
+
+        final WithinDistanceSearch<T> search = WithinDistanceSearch.acquire(this);
+        try {
+            search.consumer = consumer;
+            return search.run(latitude, longitude, distanceMeters, limit);
+        } finally {
+            search.release();
+        }
+    }
+
+    /**
+     * Determine whether there are any items contained in the index within the given great circle distance of the
+     * specified point. The search stops as soon as one is found.
+     *
+     * @param latitude the latitude of the point to search around.
+     * @param longitude the longitude of the point to search around.
+     * @param distanceMeters the distance in meters around the point in which to look for items.
+     * @return {@code true} if any items were found; otherwise, {@code false}.
+     */
+    public boolean anyWithinDistance(final double latitude, final double longitude, final double distanceMeters) {
+        return visitWithinDistance(latitude, longitude, distanceMeters, (item, distance) -> false);
+    }
+
+    /**
+     * Count the items contained in the index that are within the given great circle distance of the specified point.
+     * <p>
+     * This is much faster than counting the items found by a query where the distance is large: each part of the index
+     * that lies entirely within the distance is counted as a whole, so only the items near the boundary are visited
+     * individually.
+     *
+     * @param latitude the latitude of the point to search around.
+     * @param longitude the longitude of the point to search around.
+     * @param distanceMeters the distance in meters around the point in which to count items.
+     * @return the number of items within the distance.
+     * @throws IllegalArgumentException if the point is invalid.
+     */
+    public long countWithinDistance(final double latitude, final double longitude, final double distanceMeters) {
+        final AggregateSearch<T> search = new AggregateSearch<>(this, null);
+        search.run(latitude, longitude, distanceMeters);
+        return search.count;
+    }
+
+    /**
+     * Summarise the value of each item contained in the index that is within the given great circle distance of the
+     * specified point, as given by the function set with {@link Builder#summarising(ToDoubleFunction)}.
+     * <p>
+     * The sum, minimum and maximum of the values within each part of the index are calculated when it is built, so
+     * that, as with {@link #countWithinDistance}, each part that lies entirely within the distance contributes them as
+     * a whole. The sum may therefore differ by rounding from that of adding up the values of the items one by one.
+     *
+     * @param latitude the latitude of the point to search around.
+     * @param longitude the longitude of the point to search around.
+     * @param distanceMeters the distance in meters around the point in which to summarise items.
+     * @return the count, sum, minimum, maximum and average of the values of the items within the distance.
+     * @throws IllegalArgumentException if the point is invalid.
+     * @throws IllegalStateException if the index was built without a function to extract the value to summarise.
+     */
+    public DoubleSummaryStatistics summariseWithinDistance(final double latitude, final double longitude,
+                                                           final double distanceMeters) {
+        if (summaries == null) {
+            throw new IllegalStateException("The index was not built with a value to summarise");
+        }
+
+        final AggregateSearch<T> search = new AggregateSearch<>(this, summaries);
+        search.run(latitude, longitude, distanceMeters);
+        return new DoubleSummaryStatistics(search.count, search.min, search.max, search.sum);
+    }
+
+    /**
+     * Find items contained in the index that are within the given great circle distance of the specified point, until
+     * the visitor signals that it has found what it needs, at which point the search stops.
+     *
+     * @param latitude the latitude of the point to search around.
+     * @param longitude the longitude of the point to search around.
+     * @param distanceMeters the distance in meters around the point for which to return items.
+     * @param visitor a function that will be called upon finding each suitable item, until it returns {@code false}.
+     * @return {@code true} if any items were found; otherwise, {@code false}.
+     */
+    public boolean visitWithinDistance(final double latitude, final double longitude, final double distanceMeters,
+                                       @NonNull final WithinDistanceVisitor<T> visitor) {
+        final WithinDistanceSearch<T> search = WithinDistanceSearch.acquire(this);
+        try {
+            search.visitor = visitor;
+            return search.run(latitude, longitude, distanceMeters, Integer.MAX_VALUE) > 0;
+        } finally {
+            search.release();
+        }
+    }
+
+    /**
+     * Obtain a lazily evaluated stream of the items contained in the index that are within the given great circle
+     * distance of the specified point.
+     * <p>
+     * The index is searched only as the stream is consumed, so short-circuiting operations such as
+     * {@link Stream#findFirst() findFirst}, {@link Stream#anyMatch anyMatch} and {@link Stream#limit limit} stop the
+     * search once they are satisfied. If the stream is made {@link Stream#parallel() parallel}, the search is divided
+     * among tasks by parts of the index, so a single query covering a large area can make use of multiple cores.
+     * The items are streamed in no particular order.
+     *
+     * @param latitude the latitude of the point to search around.
+     * @param longitude the longitude of the point to search around.
+     * @param distanceMeters the distance in meters around the point for which to return items.
+     * @return a sequential stream of the items found.
+     * @throws IllegalArgumentException if the point is invalid.
+     */
+    public Stream<Match<T>> streamWithinDistance(final double latitude, final double longitude,
+                                                 final double distanceMeters) {
+        final CartPoint3D point = CartPoint3D.fromLatLon(latitude, longitude);
+        if (groups != null) {
+            // Each point found gives the stream of the items sharing it
+            final SearchSpliterator<Stream<Match<T>>> spliterator = backend.spliterator((slot, x, y, z) -> {
+                final double distance = distanceMeters(slot, x, y, z, point);
+                if (!(distance <= distanceMeters)) {
+                    return null;
+                }
+                return IntStream.range(groups.start(slot), groups.end(slot))
+                                .mapToObj(position -> new Match<>(groups.<T>item(position), distance));
+            });
+            spliterator.setSphere(point.x(), point.y(), point.z(), searchRadius(distanceMeters));
+            return StreamSupport.stream(spliterator, false).flatMap(Function.identity());
+        }
+
+        final SearchSpliterator<Match<T>> spliterator = backend.spliterator((slot, x, y, z) -> {
+            final double distance = distanceMeters(slot, x, y, z, point);
+            return distance <= distanceMeters ? new Match<>(backend.item(slot), distance) : null;
+        });
+
+        // As with a query, the sphere is padded slightly and the exact distance of each point found is then checked
+        spliterator.setSphere(point.x(), point.y(), point.z(), searchRadius(distanceMeters));
+        return StreamSupport.stream(spliterator, false);
+    }
+
+    /**
+     * Find all items contained in the index that are within a box bounded by a pair of parallels and a pair of
+     * meridians, such as the viewport of a map.
+     * <p>
+     * Where the minimum longitude is greater than the maximum, the box crosses the antimeridian, running eastwards from
+     * the minimum longitude through 180° to the maximum. Items lying exactly on the edge of the box may or may not be
+     * found due to rounding.
+     *
+     * @param minLatitude the latitude of the southern edge of the box.
+     * @param minLongitude the longitude of the western edge of the box.
+     * @param maxLatitude the latitude of the northern edge of the box.
+     * @param maxLongitude the longitude of the eastern edge of the box.
+     * @param consumer a function that will be called upon finding each suitable item.
+     * @return {@code true} if any items were found; otherwise, {@code false}.
+     * @throws IllegalArgumentException if any coordinate is out of range, or the minimum latitude is greater than the
+     * maximum.
+     */
+    public boolean queryWithinBox(final double minLatitude, final double minLongitude, final double maxLatitude,
+                                  final double maxLongitude, @NonNull final Consumer<? super T> consumer) {
+        return queryWithinRegion(new LatLonBox(minLatitude, minLongitude, maxLatitude, maxLongitude),
+                                 QueryStatistics.QueryType.WITHIN_BOX,
+                                 consumer);
+    }
+
+    /**
+     * Find all items contained in the index that are within a polygon, such as a delivery zone.
+     * <p>
+     * The edges of the polygon are taken to be the shortest great circle arcs between its vertices, rather than lines
+     * of constant bearing; for small polygons the difference is negligible. The polygon may be concave, but must not
+     * intersect itself, and must lie within the hemisphere centred on the average of its vertices. Items lying exactly
+     * on the edge of the polygon may or may not be found due to rounding.
+     *
+     * @param latitudes the latitudes of the vertices of the polygon, in order around its boundary in either direction.
+     * @param longitudes the longitudes of the vertices of the polygon, of the same length as {@code latitudes}.
+     * @param consumer a function that will be called upon finding each suitable item.
+     * @return {@code true} if any items were found; otherwise, {@code false}.
+     * @throws IllegalArgumentException if the arrays are of differing lengths, any vertex is invalid, there are fewer
+     * than three vertices, or the polygon is too large.
+     */
+    public boolean queryWithinPolygon(@NonNull final double[] latitudes, @NonNull final double[] longitudes,
+                                      @NonNull final Consumer<? super T> consumer) {
+        return queryWithinRegion(new SphericalPolygon(latitudes, longitudes),
+                                 QueryStatistics.QueryType.WITHIN_POLYGON,
+                                 consumer);
+    }
+
+    /**
+     * Find all items contained in the index that are within the given great circle distance of a path, such as a
+     * route, made up of the shortest great circle arcs between consecutive vertices. Each item is found once, along
+     * with its distance to the nearest point of the path, which may lie part way along an arc rather than at a vertex.
+     * <p>
+     * This is much faster than querying around each vertex of a long path in turn: the index is searched once for the
+     * whole path, visiting only the parts of it near the corridor around the path, and the distance from each item to
+     * the path is found by measuring only the arcs near it. Distances to the path are measured on a sphere, even where
+     * the index was built {@link Builder#ellipsoidal() ellipsoidal}.
+     *
+     * @param latitudes the latitudes of the vertices of the path, in order along it.
+     * @param longitudes the longitudes of the vertices of the path, of the same length as {@code latitudes}.
+     * @param distanceMeters the distance in meters around the path for which to return items.
+     * @param consumer a function that will be called upon finding each suitable item.
+     * @return {@code true} if any items were found; otherwise, {@code false}.
+     * @throws IllegalArgumentException if the arrays are of differing lengths, there are no vertices, any vertex is
+     * invalid, or any two consecutive vertices are antipodal, such that the arc between them is undefined.
+     */
+    public boolean queryWithinDistanceOfPath(@NonNull final double[] latitudes, @NonNull final double[] longitudes,
+                                             final double distanceMeters,
+                                             @NonNull final WithinDistanceConsumer<T> consumer) {
+        final PathCorridor corridor = new PathCorridor(latitudes, longitudes, distanceMeters);
+        final long start = listener != null ? System.nanoTime() : 0;
+
+        // The number of candidates and the number of hits
+        final int[] counts = new int[2];
+        final Search search = new Search() {
+            @Override
+            boolean accept(final int slot, final double x, final double y, final double z) {
+                final int itemCount = groups != null ? groups.end(slot) - groups.start(slot) : 1;
+                counts[0] += itemCount;
+                final CartPoint3D point = exactPoints != null ? exactPoints.apply(backend.item(slot)) : null;
+                final double distance = point != null
+                        ? corridor.distanceMeters(point.x(), point.y(), point.z())
+                        : corridor.distanceMeters(x, y, z);
+                if (!(distance <= distanceMeters)) {
+                    return true;
+                }
+
+                counts[1] += itemCount;
+                if (groups == null) {
+                    consumer.accept(backend.item(slot), distance);
+                } else {
+                    for (int position = groups.start(slot); position < groups.end(slot); position++) {
+                        consumer.accept(groups.<T>item(position), distance);
+                    }
+                }
+                return true;
+            }
+        };
+        corridor.bound(search, backend.tolerance());
+        backend.search(search);
+
+        if (listener != null) {
+            listener.queryCompleted(new QueryStatistics(QueryStatistics.QueryType.WITHIN_PATH,
+                                                        search.nodesVisited(),
+                                                        counts[0],
+                                                        counts[1],
+                                                        System.nanoTime() - start));
+        }
+        return counts[1] > 0;
+    }
+
+    /**
+     * Find all items contained in the index that are within a region.
+     *
+     * @param region the region to search.
+     * @param type the type of query, as reported to the listener.
+     * @param consumer a function that will be called upon finding each suitable item.
+     * @return {@code true} if any items were found; otherwise, {@code false}.
+     */
+    private boolean queryWithinRegion(final Region region, final QueryStatistics.QueryType type,
+                                      final Consumer<? super T> consumer) {
+        final long start = listener != null ? System.nanoTime() : 0;
+
+        // The number of candidates and the number of hits
+        final int[] counts = new int[2];
+        final Search search = new Search() {
+            @Override
+            boolean accept(final int slot, final double x, final double y, final double z) {
+                final int itemCount = groups != null ? groups.end(slot) - groups.start(slot) : 1;
+                counts[0] += itemCount;
+                if (exactPoints != null) {
+                    final CartPoint3D point = exactPoints.apply(backend.item(slot));
+                    if (!region.contains(point.x(), point.y(), point.z())) {
+                        return true;
+                    }
+                } else if (!region.contains(x, y, z)) {
+                    return true;
+                }
+
+                counts[1] += itemCount;
+                if (groups == null) {
+                    consumer.accept(backend.item(slot));
+                } else {
+                    for (int position = groups.start(slot); position < groups.end(slot); position++) {
+                        consumer.accept(groups.<T>item(position));
+                    }
+                }
+                return true;
+            }
+        };
+        region.bound(search, backend.tolerance());
+        backend.search(search);
+
+        if (listener != null) {
+            listener.queryCompleted(new QueryStatistics(type,
+                                                        search.nodesVisited(),
+                                                        counts[0],
+                                                        counts[1],
+                                                        System.nanoTime() - start));
+        }
+        return counts[1] > 0;
+    }
+
+    /**
+     * Find all items contained in the index that are within the given great circle distance of each of a batch of
+     * points.
+     * <p>
+     * This is equivalent to calling {@link #queryWithinDistance(double, double, double, WithinDistanceConsumer)} for
+     * each point, but is considerably faster for large batches. The points are searched in an order that visits nearby
+     * points consecutively, and the batch is divided among tasks run on the {@link ForkJoinPool#commonPool() common
+     * pool}. As a result the {@code consumer} may be called concurrently from multiple threads, and in no particular
+     * order.
+     *
+     * @param latitudes the latitudes of the points to search around.
+     * @param longitudes the longitudes of the points to search around, of the same length as {@code latitudes}.
+     * @param distanceMeters the distance in meters around each point for which to return items.
+     * @param consumer a thread-safe function that will be called upon finding each suitable item for each point.
+     * @throws IllegalArgumentException if the arrays are of differing lengths, or any point is invalid.
+     */
+    public void queryWithinDistance(@NonNull final double[] latitudes, @NonNull final double[] longitudes,
+                                    final double distanceMeters,
+                                    @NonNull final BatchWithinDistanceConsumer<T> consumer) {
+        queryWithinDistance(latitudes, longitudes, distanceMeters, ForkJoinPool.commonPool(), consumer);
+    }
+
+    /**
+     * Find all items contained in the index that are within the given great circle distance of each of a batch of
+     * points, dividing the work among tasks run on the given {@link Executor}.
+     *
+     * @param latitudes the latitudes of the points to search around.
+     * @param longitudes the longitudes of the points to search around, of the same length as {@code latitudes}.
+     * @param distanceMeters the distance in meters around each point for which to return items.
+     * @param executor the executor on which to run the search. Small batches may instead be run on the calling
+     * thread.
+     * @param consumer a thread-safe function that will be called upon finding each suitable item for each point.
+     * @throws IllegalArgumentException if the arrays are of differing lengths, or any point is invalid.
+     * @see #queryWithinDistance(double[], double[], double, BatchWithinDistanceConsumer)
+     */
+    public void queryWithinDistance(@NonNull final double[] latitudes, @NonNull final double[] longitudes,
+                                    final double distanceMeters, @NonNull final Executor executor,
+                                    @NonNull final BatchWithinDistanceConsumer<T> consumer) {
+        queryBatch(latitudes, longitudes, i -> distanceMeters, executor, consumer);
+    }
+
+    /**
+     * Find all items contained in the index that are within a given great circle distance of each of a batch of
+     * points, where each point has its own distance.
+     *
+     * @param latitudes the latitudes of the points to search around.
+     * @param longitudes the longitudes of the points to search around, of the same length as {@code latitudes}.
+     * @param distancesMeters the distance in meters around each point for which to return items, of the same length
+     * as {@code latitudes}.
+     * @param consumer a thread-safe function that will be called upon finding each suitable item for each point.
+     * @throws IllegalArgumentException if the arrays are of differing lengths, or any point is invalid.
+     * @see #queryWithinDistance(double[], double[], double, BatchWithinDistanceConsumer)
+     */
+    public void queryWithinDistance(@NonNull final double[] latitudes, @NonNull final double[] longitudes,
+                                    @NonNull final double[] distancesMeters,
+                                    @NonNull final BatchWithinDistanceConsumer<T> consumer) {
+        queryWithinDistance(latitudes, longitudes, distancesMeters, ForkJoinPool.commonPool(), consumer);
+    }
+
+    /**
+     * Find all items contained in the index that are within a given great circle distance of each of a batch of
+     * points, where each point has its own distance, dividing the work among tasks run on the given
+     * {@link Executor}.
+     *
+     * @param latitudes the latitudes of the points to search around.
+     * @param longitudes the longitudes of the points to search around, of the same length as {@code latitudes}.
+     * @param distancesMeters the distance in meters around each point for which to return items, of the same length
+     * as {@code latitudes}.
+     * @param executor the executor on which to run the search. Small batches may instead be run on the calling
+     * thread.
+     * @param consumer a thread-safe function that will be called upon finding each suitable item for each point.
+     * @throws IllegalArgumentException if the arrays are of differing lengths, or any point is invalid.
+     * @see #queryWithinDistance(double[], double[], double, BatchWithinDistanceConsumer)
+     */
+    public void queryWithinDistance(@NonNull final double[] latitudes, @NonNull final double[] longitudes,
+                                    @NonNull final double[] distancesMeters, @NonNull final Executor executor,
+                                    @NonNull final BatchWithinDistanceConsumer<T> consumer) {
+        if (distancesMeters.length != latitudes.length) {
+            throw new IllegalArgumentException("Distances length " + distancesMeters.length
+                                                       + " does not match latitudes length " + latitudes.length);
+        }
+
+        queryBatch(latitudes, longitudes, i -> distancesMeters[i], executor, consumer);
+    }
+
+    /**
+     * Run a batch of distance queries.
+     *
+     * @param latitudes the latitudes of the points to search around.
+     * @param longitudes the longitudes of the points to search around.
+     * @param distances a function to obtain the distance in meters for the point at the given index.
+     * @param executor the executor on which to run the search.
+     * @param consumer a function that will be called upon finding each suitable item for each point.
+     */
+    private void queryBatch(final double[] latitudes, final double[] longitudes, final IntToDoubleFunction distances,
+                            final Executor executor, final BatchWithinDistanceConsumer<T> consumer) {
+        if (longitudes.length != latitudes.length) {
+            throw new IllegalArgumentException("Longitudes length " + longitudes.length
+                                                       + " does not match latitudes length " + latitudes.length);
+        }
+
+        // Convert every point up front, both so that invalid input is rejected before any results are produced and so
+        // that the points can be ordered along a space-filling curve; searching nearby points consecutively means
+        // the same parts of the index tend to be in the cache
+        final int size = latitudes.length;
+        final double[] xs = new double[size];
+        final double[] ys = new double[size];
+        final double[] zs = new double[size];
+        for (int i = 0; i < size; i++) {
+            final CartPoint3D point = CartPoint3D.fromLatLon(latitudes[i], longitudes[i]);
+            xs[i] = point.x();
+            ys[i] = point.y();
+            zs[i] = point.z();
+        }
+        final int[] order = MortonOrder.sort(xs, ys, zs);
+
+        final int blockCount = Math.min(Runtime.getRuntime().availableProcessors() * 4,
+                                        (size + MIN_BATCH_BLOCK_SIZE - 1) / MIN_BATCH_BLOCK_SIZE);
+        if (blockCount <= 1) {
+            queryBatchBlock(order, 0, size, xs, ys, zs, distances, consumer);
+            return;
+        }
+
+        final List<Runnable> blocks = new ArrayList<>(blockCount);
+        for (int block = 0; block < blockCount; block++) {
+            final int from = (int) ((long) size * block / blockCount);
+            final int to = (int) ((long) size * (block + 1) / blockCount);
+            blocks.add(() -> queryBatchBlock(order, from, to, xs, ys, zs, distances, consumer));
+        }
+        runAll(blocks, executor);
+    }
+
+    /**
+     * Run tasks on an executor and wait for them all to complete.
+     *
+     * @param tasks the tasks to run.
+     * @param executor the executor on which to run them.
+     */
+    private static void runAll(final List<Runnable> tasks, final Executor executor) {
+        final CompletableFuture<?>[] futures = new CompletableFuture<?>[tasks.size()];
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = CompletableFuture.runAsync(tasks.get(i), executor);
+        }
+
+        try {
+            CompletableFuture.allOf(futures).join();
+        } catch (final CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Run a contiguous block of a batch of distance queries.
+     *
+     * @param order the indices of the points in the order in which they should be searched.
+     * @param from the first position within {@code order} to search, inclusive.
+     * @param to the last position within {@code order} to search, exclusive.
+     * @param xs the x-axis ordinates of the points.
+     * @param ys the y-axis ordinates of the points.
+     * @param zs the z-axis ordinates of the points.
+     * @param distances a function to obtain the distance in meters for the point at the given index.
+     * @param consumer a function that will be called upon finding each suitable item for each point.
+     */
+    private void queryBatchBlock(final int[] order, final int from, final int to, final double[] xs,
+                                 final double[] ys, final double[] zs, final IntToDoubleFunction distances,
+                                 final BatchWithinDistanceConsumer<T> consumer) {
+        final WithinDistanceSearch<T> search = WithinDistanceSearch.acquire(this);
+        try {
+            search.batchConsumer = consumer;
+            for (int i = from; i < to; i++) {
+                final int queryIndex = order[i];
+                search.queryIndex = queryIndex;
+                search.run(xs[queryIndex],
+                           ys[queryIndex],
+                           zs[queryIndex],
+                           distances.applyAsDouble(queryIndex),
+                           Integer.MAX_VALUE);
+            }
+        } finally {
+            search.release();
+        }
+    }
+
+    /**
+     * Find every pair of items, one from this index and one from another, that are within the given great circle
+     * distance of each other.
+     * <p>
+     * This is equivalent to calling {@link #queryWithinDistance(double, double, double, WithinDistanceConsumer)} on the
+     * other index for every item in this one, but is dramatically faster, since whole groups of items that are far
+     * apart are dismissed at once. The join runs on the calling thread.
+     *
+     * @param other the other index, which may be this index itself.
+     * @param distanceMeters the distance in meters within which to find pairs.
+     * @param consumer a function that will be called upon finding each pair.
+     * @param <U> the type of items in the other index.
+     */
+    public <U> void joinWithinDistance(@NonNull final GeoPointIndex<U> other, final double distanceMeters,
+                                       @NonNull final JoinConsumer<T, U> consumer) {
+        for (final Runnable task : join(other, distanceMeters, consumer, 1)) {
+            task.run();
+        }
+    }
+
+    /**
+     * Find every pair of items, one from this index and one from another, that are within the given great circle
+     * distance of each other, dividing the work among tasks run on the given {@link Executor}. As a result the
+     * {@code consumer} may be called concurrently from multiple threads, and in no particular order.
+     *
+     * @param other the other index, which may be this index itself.
+     * @param distanceMeters the distance in meters within which to find pairs.
+     * @param executor the executor on which to run the join.
+     * @param consumer a thread-safe function that will be called upon finding each pair.
+     * @param <U> the type of items in the other index.
+     * @see #joinWithinDistance(GeoPointIndex, double, JoinConsumer)
+     */
+    public <U> void joinWithinDistance(@NonNull final GeoPointIndex<U> other, final double distanceMeters,
+                                       @NonNull final Executor executor, @NonNull final JoinConsumer<T, U> consumer) {
+        runAll(join(other, distanceMeters, consumer, Runtime.getRuntime().availableProcessors() * 4), executor);
+    }
+
+    /**
+     * Prepare a join between this index and another.
+     *
+     * @param other the other index.
+     * @param distanceMeters the distance in meters within which to find pairs.
+     * @param consumer a function that will be called upon finding each pair.
+     * @param partitions the number of tasks into which to try to divide the join.
+     * @param <U> the type of items in the other index.
+     * @return the tasks which together perform the join.
+     */
+    private <U> List<Runnable> join(final GeoPointIndex<U> other, final double distanceMeters,
+                                    final JoinConsumer<T, U> consumer, final int partitions) {
+        // As with a single query, the backends find the pairs within a slightly padded chord length and the exact
+        // distance of each is then checked
+        final double chordLength = searchRadius(distanceMeters) + other.backend.tolerance() * (1 + 1E-9);
+        if (!(chordLength >= 0)) {
+            return List.of();
+        }
+
+        final boolean exact = exactPoints == null && other.exactPoints == null && !ellipsoidal;
+        final double maxDistanceSquared = chordLength * chordLength;
+        return SpatialBackend.join(backend, other.backend, maxDistanceSquared, (slot, otherSlot, distanceSquared) -> {
+            final double distance = exact
+                    ? CartPoint3D.arcMeters(Math.sqrt(distanceSquared))
+                    : distanceMeters(exactPoint(slot), other.exactPoint(otherSlot));
+            if (!(distance <= distanceMeters)) {
+                return;
+            }
+
+            if (groups == null && other.groups == null) {
+                consumer.accept(backend.item(slot), other.backend.item(otherSlot), distance);
+                return;
+            }
+
+            // Every item sharing the point on one side pairs with every item sharing the point on the other
+            final int end = groups != null ? groups.end(slot) : 1;
+            final int otherEnd = other.groups != null ? other.groups.end(otherSlot) : 1;
+            for (int position = groups != null ? groups.start(slot) : 0; position < end; position++) {
+                final T item = groups != null ? groups.item(position) : backend.item(slot);
+                for (int otherPosition = other.groups != null ? other.groups.start(otherSlot) : 0;
+                     otherPosition < otherEnd; otherPosition++) {
+                    consumer.accept(item,
+                                    other.groups != null
+                                            ? other.groups.item(otherPosition)
+                                            : other.backend.item(otherSlot),
+                                    distance);
+                }
+            }
+        }, partitions);
+    }
+
+    /**
+     * Find the items contained in the index that are nearest to the specified point.
+     *
+     * @param latitude the latitude of the point to search around.
+     * @param longitude the longitude of the point to search around.
+     * @param count the maximum number of items to return.
+     * @return the nearest items, in order of increasing great circle distance from the point. This will contain fewer
+     * than {@code count} items only if the index itself contains fewer items.
+     * @throws IllegalArgumentException if {@code count} is not positive.
+     */
+    public List<Match<T>> queryNearest(final double latitude, final double longitude, final int count) {
+        return queryNearest(latitude, longitude, count, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Find the items contained in the index that are nearest to the specified point, up to a maximum distance.
+     * <p>
+     * If the index is {@link Builder#ellipsoidal() ellipsoidal}, the nearest items on the sphere are found first, and
+     * then a second, internal, distance search within the furthest of them finds any items that are nearer on the
+     * ellipsoid. Nearest queries are not reported to the {@link Builder#listener listener}, including any such internal
+     * search.
+     *
+     * @param latitude the latitude of the point to search around.
+     * @param longitude the longitude of the point to search around.
+     * @param count the maximum number of items to return.
+     * @param maxDistanceMeters the great circle distance in meters from the point beyond which items will not be
+     * returned.
+     * @return the nearest items, in order of increasing great circle distance from the point.
+     * @throws IllegalArgumentException if {@code count} is not positive.
+     */
+    public List<Match<T>> queryNearest(final double latitude, final double longitude, final int count,
+                                       final double maxDistanceMeters) {
+        if (count < 1) {
+            throw new IllegalArgumentException("Count must be positive: " + count);
+        }
+
+        // Ordering by the chord length between points on the unit sphere is the same as ordering by great circle
+        // distance, so the backend can search on the former and we only need to convert the final results; the chord is
+        // padded slightly so as not to exclude items right on the boundary due to rounding
         final CartPoint3D searchPoint = CartPoint3D.fromLatLon(latitude, longitude);
-        final CartBox3D range = CartBox3D.distanceAround(searchPoint, distanceMeters);
-        final AtomicBoolean found = new AtomicBoolean();
-
-        tree.rangeSearch(range, (item, point) -> {
-            // The index is inexact; items returned are not guaranteed to be within the originally given distance
-            // Calculate the distance and ensure it is within tolerance before handing it to the consumer
-            final double distanceToSearchPoint = point.distanceMeters(searchPoint);
-            if (distanceToSearchPoint <= distanceMeters) {
-                consumer.accept(item, distanceToSearchPoint);
-                found.set(true);
+        final double maxChord = searchRadius(maxDistanceMeters);
+        final Neighbours neighbours = backend.nearest(searchPoint.x(),
+                                                      searchPoint.y(),
+                                                      searchPoint.z(),
+                                                      count,
+                                                      maxChord * maxChord);
+
+        final List<Match<T>> matches = new ArrayList<>(neighbours.size());
+        for (int i = 0; i < neighbours.size(); i++) {
+            final int slot = neighbours.slot(i);
+            final double distanceToSearchPoint = distanceMeters(slot,
+                                                                neighbours.distanceSquared(i),
+                                                                searchPoint.x(),
+                                                                searchPoint.y(),
+                                                                searchPoint.z());
+            if (!(distanceToSearchPoint <= maxDistanceMeters)) {
+                continue;
             }
-        });
 
-        return found.get();
+            if (groups == null) {
+                matches.add(new Match<>(backend.item(slot), distanceToSearchPoint));
+            } else {
+                for (int position = groups.start(slot); position < groups.end(slot); position++) {
+                    matches.add(new Match<>(groups.item(position), distanceToSearchPoint));
+                }
+            }
+        }
+
+        if (exactPoints != null || ellipsoidal) {
+            // The exact distances may order items that are almost equally distant differently to the backend
+            matches.sort(Comparator.comparingDouble(Match::distanceMeters));
+        }
+
+        if (matches.size() > count) {
+            // The nearest points are shared by more items than were asked for, which are all equally distant
+            matches.subList(count, matches.size()).clear();
+        }
+
+        if (ellipsoidal) {
+            // Ordering by chord length only approximates ordering by distance on the ellipsoid, so an item further
+            // along the chord may yet be nearer; the nearest items are certainly among those no further than the
+            // furthest of the items found so far, which can be found by a query of that distance
+            final double bound = matches.size() < count
+                    ? maxDistanceMeters
+                    : matches.get(matches.size() - 1).distanceMeters();
+            final List<Match<T>> candidates = new ArrayList<>();
+            final WithinDistanceSearch<T> search = WithinDistanceSearch.acquire(this);
+            try {
+                search.unreported = true;
+                search.consumer = (item, distance) -> candidates.add(new Match<>(item, distance));
+                search.run(searchPoint.x(), searchPoint.y(), searchPoint.z(), bound, Integer.MAX_VALUE);
+            } finally {
+                search.release();
+            }
+            candidates.sort(Comparator.comparingDouble(Match::distanceMeters));
+            return new ArrayList<>(candidates.subList(0, Math.min(count, candidates.size())));
+        }
+        return matches;
+    }
+
+    /**
+     * Calculate the radius of the sphere around a search point that is searched to find the items within a distance of
+     * it. This is the chord spanning that distance, padded slightly so as not to exclude points right on the boundary
+     * due to rounding, or due to the backend holding its points approximately.
+     *
+     * @param distanceMeters the distance in meters around the point for which to find items.
+     * @return the radius, which is negative or {@code NaN} if no items can be within the distance.
+     */
+    double searchRadius(final double distanceMeters) {
+        // On the ellipsoid, every point within the distance is within a somewhat greater distance on the sphere
+        final double sphericalMeters = ellipsoidal ? distanceMeters / Ellipsoid.MIN_SCALE : distanceMeters;
+        return DistanceSearch.searchRadius(sphericalMeters, backend.tolerance());
+    }
+
+    /**
+     * Calculate the radius of the sphere around a search point within which every point held by the backend is
+     * certainly within a distance of it, so that its distance need not be calculated precisely to know so. This is the
+     * chord spanning that distance, reduced slightly to allow for rounding, and for the backend holding its points
+     * approximately.
+     *
+     * @param distanceMeters the distance in meters around the point for which to find items.
+     * @return the radius, which is {@code 0} if no point is certainly within the distance.
+     */
+    private double certainRadius(final double distanceMeters) {
+        // On the ellipsoid, every point within a somewhat smaller distance on the sphere is within the distance
+        final double sphericalMeters = ellipsoidal ? distanceMeters / Ellipsoid.MAX_SCALE : distanceMeters;
+        return DistanceSearch.certainRadius(sphericalMeters, backend.tolerance());
+    }
+
+    /**
+     * Find the slots of all points held by the backend within a sphere, which need not be centred on the unit sphere.
+     *
+     * @param x the x-axis ordinate of the centre of the sphere.
+     * @param y the y-axis ordinate of the centre of the sphere.
+     * @param z the z-axis ordinate of the centre of the sphere.
+     * @param radius the radius of the sphere.
+     * @return the slots, in no particular order.
+     */
+    int[] slotsWithinSphere(final double x, final double y, final double z, final double radius) {
+        final class SlotCollector extends Search {
+
+            /** The slots found so far, followed by unused space. */
+            private int[] slots = new int[16];
+
+            /** The number of slots found so far. */
+            private int count;
+
+            @Override
+            boolean accept(final int slot, final double x, final double y, final double z) {
+                if (count == slots.length) {
+                    slots = Arrays.copyOf(slots, count * 2);
+                }
+                slots[count++] = slot;
+                return true;
+            }
+        }
+
+        final SlotCollector collector = new SlotCollector();
+        collector.setSphere(x, y, z, radius);
+        backend.search(collector);
+        return Arrays.copyOf(collector.slots, collector.count);
+    }
+
+    /**
+     * Find all items within the given great circle distance of the specified point, considering only the points at the
+     * given slots rather than searching the whole index. If the slots include every point within the sphere that
+     * {@link #queryWithinDistance(double, double, double, WithinDistanceConsumer) queryWithinDistance} would search,
+     * the same items are found at the same distances.
+     *
+     * @param candidateSlots the slots of the points to consider.
+     * @param latitude the latitude of the point to search around.
+     * @param longitude the longitude of the point to search around.
+     * @param distanceMeters the distance in meters around the point for which to return items.
+     * @param consumer a function that will be called upon finding each suitable item.
+     * @return {@code true} if any items were found; otherwise, {@code false}.
+     * @throws IllegalArgumentException if the point is invalid.
+     */
+    boolean queryWithinDistance(final int[] candidateSlots, final double latitude, final double longitude,
+                                final double distanceMeters, final WithinDistanceConsumer<T> consumer) {
+        final WithinDistanceSearch<T> search = WithinDistanceSearch.acquire(this);
+        try {
+            search.consumer = consumer;
+            search.candidateSlots = candidateSlots;
+            return search.run(latitude, longitude, distanceMeters, Integer.MAX_VALUE) > 0;
+        } finally {
+            search.release();
+        }
+    }
+
+    /**
+     * Gets the point of the item at the given slot of the backend as it was originally given, which the backend itself
+     * may hold only approximately.
+     *
+     * @param slot the slot of the item.
+     * @return the point.
+     */
+    private CartPoint3D exactPoint(final int slot) {
+        return exactPoints != null ? exactPoints.apply(backend.item(slot)) : backend.point(slot);
+    }
+
+    /**
+     * Calculate the great circle distance between a point and the point of the item at the given slot of the backend.
+     *
+     * @param slot the slot of the item.
+     * @param distanceSquared the square of the straight-line distance between the points as held by the backend.
+     * @param x the x-axis ordinate of the other point.
+     * @param y the y-axis ordinate of the other point.
+     * @param z the z-axis ordinate of the other point.
+     * @return the distance in meters, calculated from the exact point of the item if the backend holds it only
+     * approximately.
+     */
+    private double distanceMeters(final int slot, final double distanceSquared, final double x, final double y,
+                                  final double z) {
+        if (ellipsoidal) {
+            if (exactPoints != null) {
+                final CartPoint3D point = exactPoints.apply(backend.item(slot));
+                return Ellipsoid.distanceMeters(point.x(), point.y(), point.z(), x, y, z);
+            }
+
+            final PointStore points = backend.points();
+            return Ellipsoid.distanceMeters(points.x(slot), points.y(slot), points.z(slot), x, y, z);
+        }
+
+        return exactPoints != null
+                ? exactPoints.apply(backend.item(slot)).distanceMeters(x, y, z)
+                : CartPoint3D.arcMeters(Math.sqrt(distanceSquared));
+    }
+
+    /**
+     * Calculate the great circle distance between a point and the point of the item at the given slot of the backend.
+     *
+     * @param slot the slot of the item.
+     * @param x the x-axis ordinate of the point held by the backend at the slot.
+     * @param y the y-axis ordinate of the point held by the backend at the slot.
+     * @param z the z-axis ordinate of the point held by the backend at the slot.
+     * @param point the other point.
+     * @return the distance in meters, calculated from the exact point of the item if the backend holds it only
+     * approximately.
+     */
+    private double distanceMeters(final int slot, final double x, final double y, final double z,
+                                  final CartPoint3D point) {
+        final double dX = x - point.x();
+        final double dY = y - point.y();
+        final double dZ = z - point.z();
+        return distanceMeters(slot, dX * dX + dY * dY + dZ * dZ, point.x(), point.y(), point.z());
+    }
+
+    /**
+     * Calculate the distance between two points, as measured by the index.
+     *
+     * @param point the first point.
+     * @param other the second point.
+     * @return the distance in meters, on the WGS84 ellipsoid or on the sphere as the index measures distances.
+     */
+    private double distanceMeters(final CartPoint3D point, final CartPoint3D other) {
+        return ellipsoidal
+                ? Ellipsoid.distanceMeters(point.x(), point.y(), point.z(), other.x(), other.y(), other.z())
+                : point.distanceMeters(other);
+    }
+
+    /** Defines a function to iteratively receive the results of a batch of distance queries on the index. */
+    @FunctionalInterface
+    public interface BatchWithinDistanceConsumer<T> {
+
+        /**
+         * Receive notification that a given item was located in the index for one of the points in the batch.
+         *
+         * @param queryIndex the index within the batch of the point the item was found for.
+         * @param item the item that was found.
+         * @param distanceMeters the great circle distance in meters from the search point to the item.
+         */
+        void accept(int queryIndex, T item, double distanceMeters);
+    }
+
+    /** Defines a function to iteratively receive the pairs of items found by joining two indexes. */
+    @FunctionalInterface
+    public interface JoinConsumer<T, U> {
+
+        /**
+         * Receive notification that a pair of items within the distance of each other was found.
+         *
+         * @param item the item from this index.
+         * @param otherItem the item from the other index.
+         * @param distanceMeters the great circle distance in meters between the items.
+         */
+        void accept(T item, U otherItem, double distanceMeters);
+    }
+
+    /** The engines with which a {@link GeoPointIndex} can be built. */
+    public enum Engine {
+
+        /**
+         * A k-d tree, which adapts to however the points are distributed and answers queries of any size efficiently.
+         * This is the default, and the only engine whose indexes can be {@link GeoPointIndex#writeTo written to a
+         * file}.
+         */
+        KD_TREE,
+
+        /**
+         * A grid of cells covering the globe, searched by testing each cell that a query overlaps. This can answer
+         * small queries faster than a k-d tree over points spread fairly evenly over the globe, but slows down where
+         * points are densely clustered or a query covers a large area. It is built in linear time on a single thread,
+         * regardless of {@link Builder#parallelism(int) parallelism}.
+         */
+        CELL_GRID
+    }
+
+    /**
+     * Allows options to be specified for the construction of a {@link GeoPointIndex}.
+     *
+     * @param <T> the type of items in the index.
+     */
+    public static final class Builder<T> {
+
+        /** A function that will extract the latitude value from each of the items. */
+        private final ToDoubleFunction<T> latitudeExtractor;
+
+        /** A function that will extract the longitude value from each of the items. */
+        private final ToDoubleFunction<T> longitudeExtractor;
+
+        /** The number of threads to use to construct the index. */
+        private int parallelism = 1;
+
+        /** Whether to hold the points of the index compactly. */
+        private boolean compact;
+
+        /** The engine with which to build the index. */
+        private Engine engine = Engine.KD_TREE;
+
+        /** The listener to report the statistics of each query to, or {@code null}. */
+        private QueryListener listener;
+
+        /** Whether to test the points of the index several at a time using the Vector API, where available. */
+        private boolean vectorised;
+
+        /** Whether to measure distances on the WGS84 ellipsoid rather than on a sphere. */
+        private boolean ellipsoidal;
+
+        /** A function that will extract the value to summarise from each of the items, or {@code null}. */
+        private ToDoubleFunction<T> valueExtractor;
+
+        /** The expected number of items streamed into the index, or {@code -1} if unknown. */
+        private int sizeHint = -1;
+
+        /** Whether to hold a single point for all of the items at the same location. */
+        private boolean collapsing;
+
+        /**
+         * Construct a new instance.
+         *
+         * @param latitudeExtractor a function that will extract the latitude value from each of the items.
+         * @param longitudeExtractor a function that will extract the longitude value from each of the items.
+         */
+        private Builder(final ToDoubleFunction<T> latitudeExtractor, final ToDoubleFunction<T> longitudeExtractor) {
+            this.latitudeExtractor = latitudeExtractor;
+            this.longitudeExtractor = longitudeExtractor;
+        }
+
+        /**
+         * Sets the number of threads used to construct the index. The default is {@code 1}, in which case the index is
+         * constructed entirely on the calling thread. The latitude and longitude extractors are always invoked on the
+         * calling thread, so need not be thread-safe; only arranging the points is shared between the threads. The
+         * index produced is the same regardless of this setting.
+         *
+         * @param parallelism the number of threads to use.
+         * @return this builder.
+         * @throws IllegalArgumentException if {@code parallelism} is not positive.
+         */
+        public Builder<T> parallelism(final int parallelism) {
+            if (parallelism < 1) {
+                throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+            }
+
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Sets the number of threads used to construct the index to the number of available processors.
+         *
+         * @return this builder.
+         */
+        public Builder<T> parallel() {
+            return parallelism(Runtime.getRuntime().availableProcessors());
+        }
+
+        /**
+         * Sets the index to hold the coordinates of its points compactly, in half of the memory that they would
+         * otherwise occupy. The coordinates are quantised such that each point is held no more than 3 mm from where
+         * it truly is.
+         * <p>
+         * Queries nonetheless return exactly the same items as they would from an index that is not compact: any item
+         * close enough to the boundary of a query for the approximation to matter has its true latitude and longitude
+         * extracted from it again to check it precisely, as does every item whose distance is returned. Only
+         * {@link GeoPointIndex#queryNearest queryNearest} may choose arbitrarily between items whose distances differ
+         * by less than the approximation. The items must therefore not change their location while in the index, and
+         * an index written to a file holds only the approximate points.
+         *
+         * @return this builder.
+         */
+        public Builder<T> compact() {
+            compact = true;
+            return this;
+        }
+
+        /**
+         * Sets the index to measure distances on the WGS84 ellipsoid, rather than on a sphere of the mean radius of the
+         * earth, which can be wrong by up to 0.56%. Every query of the index then finds the items within a distance on
+         * the ellipsoid, and gives their distances on the ellipsoid, as do joins with another index.
+         * <p>
+         * Since the distance between two points on the ellipsoid is within a small factor of that on the sphere, the
+         * index still searches a sphere, only slightly larger. The distance on the ellipsoid is calculated only for
+         * the items near its boundary, to check whether they are within the distance, and for those whose distance is
+         * returned; items found by {@link GeoPointIndex#queryItemsWithinDistance queryItemsWithinDistance} or counted
+         * by {@link GeoPointIndex#countWithinDistance countWithinDistance} mostly need none. The calculation is
+         * several times slower than on the sphere.
+         * <p>
+         * An index written to a file is opened measuring distances on the sphere.
+         *
+         * @return this builder.
+         */
+        public Builder<T> ellipsoidal() {
+            ellipsoidal = true;
+            return this;
+        }
+
+        /**
+         * Sets the index to test the points of each leaf or cell that a query searches several at a time, using the
+         * Vector API, rather than one at a time. This benefits queries of large areas, which test many points; those
+         * of small areas may be no faster. Queries return exactly the same results either way.
+         * <p>
+         * The Vector API is an incubating feature of the JDK, which is only available when the JVM is started with
+         * {@code --add-modules jdk.incubator.vector}, and when the library was built with the Vector API, as its
+         * published artifacts are. Otherwise, or if the index is {@link #compact()}, points are tested one at a time
+         * as usual.
+         *
+         * @return this builder.
+         */
+        public Builder<T> vectorised() {
+            vectorised = true;
+            return this;
+        }
+
+        /**
+         * Sets the index to hold a single point for all of the items at exactly the same location, such as several
+         * businesses geocoded to the same building, rather than a point for each. Where many items share locations,
+         * the index is then smaller and shallower, and each query tests each location once, finding all of the items
+         * there together; where few do, building the index merely takes a little longer. Queries return the same
+         * items at the same distances either way, though items at the same location are found consecutively, in the
+         * order in which they were given.
+         * <p>
+         * Items are at the same location only if their latitudes and longitudes are identical; items merely very close
+         * together are held apart, so that the distance to each remains exact. The {@link GeoPointIndex#statistics()
+         * statistics} of the index describe its distinct locations, and it cannot be {@link GeoPointIndex#writeTo
+         * written} to a file.
+         *
+         * @return this builder.
+         */
+        public Builder<T> collapsing() {
+            collapsing = true;
+            return this;
+        }
+
+        /**
+         * Sets the engine with which the index is built, which determines how its points are organised to be searched.
+         * The default is {@link Engine#KD_TREE}. Queries return the same results whichever engine is used; only their
+         * performance differs, along with the features noted on each engine.
+         *
+         * @param engine the engine to use.
+         * @return this builder.
+         */
+        public Builder<T> engine(@NonNull final Engine engine) {
+            this.engine = engine;
+            return this;
+        }
+
+        /**
+         * Sets a listener to receive the statistics of each query made on the index, as described by
+         * {@link QueryStatistics}. Distance queries, including each query of a batch, and box, polygon and path queries
+         * are reported; other queries, such as nearest queries, are not. By default there is no listener, and queries
+         * are neither timed nor reported.
+         *
+         * @param listener the listener.
+         * @return this builder.
+         * @see QueryStatisticsCollector
+         */
+        public Builder<T> listener(@NonNull final QueryListener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        /**
+         * Sets a function to extract a value from each item, such as its population or price, whose sum, minimum and
+         * maximum are calculated for each part of the index as it is built, so that they can be found for the items
+         * within any distance by {@link GeoPointIndex#summariseWithinDistance}. This occupies a further {@code double}
+         * of memory for each item, and three for each part of the index. The items must not change their value while
+         * in the index.
+         *
+         * @param valueExtractor a function that will extract the value to summarise from each of the items.
+         * @return this builder.
+         */
+        public Builder<T> summarising(@NonNull final ToDoubleFunction<T> valueExtractor) {
+            this.valueExtractor = valueExtractor;
+            return this;
+        }
+
+        /**
+         * Sets the number of items expected to be given to {@link #build(Iterator)} or {@link #build(Stream)}, so that
+         * storage of the right size can be allocated before they arrive. Without a hint, storage grows as items
+         * arrive, and is copied each time it does. The hint need not be exact, though the index is built with the
+         * least memory when it is. It has no effect when building from a {@link List}.
+         *
+         * @param sizeHint the expected number of items.
+         * @return this builder.
+         * @throws IllegalArgumentException if {@code sizeHint} is negative.
+         */
+        public Builder<T> sizeHint(final int sizeHint) {
+            if (sizeHint < 0) {
+                throw new IllegalArgumentException("Size hint must not be negative: " + sizeHint);
+            }
+
+            this.sizeHint = sizeHint;
+            return this;
+        }
+
+        /**
+         * Construct a new {@code PointIndex} that contains the specified items.
+         *
+         * @param items the items to represent in the index.
+         * @return a new spatial index.
+         */
+        public GeoPointIndex<T> build(@NonNull final List<T> items) {
+            if (collapsing) {
+                // The locations must be extracted up front to find those that are shared
+                final PointBuffer<T> buffer = new PointBuffer<>(points(), items.size());
+                items.forEach(buffer);
+                return build(buffer);
+            }
+
+            final Function<T, CartPoint3D> points = points();
+            final SpatialBackend<T> backend = switch (engine) {
+                case KD_TREE -> KDTree.create(items, points, KDTree.DEFAULT_LEAF_SIZE, parallelism, compact);
+                case CELL_GRID -> CellGrid.create(items, points, CellGrid.DEFAULT_CELL_SIZE, compact);
+            };
+            return build(backend, points);
+        }
+
+        /**
+         * Construct a new {@code PointIndex} that contains the items returned by an iterator, such as one reading them
+         * from a file. The point of each item is extracted as it arrives, directly into the storage of the index,
+         * rather than the items first being collected into a list; so the memory needed to build the index is little
+         * more than that which it finally occupies, particularly when given a {@link #sizeHint(int) size hint}.
+         *
+         * @param items an iterator of the items to represent in the index, which is exhausted.
+         * @return a new spatial index.
+         * @throws IllegalArgumentException if the location of any item is invalid.
+         */
+        public GeoPointIndex<T> build(@NonNull final Iterator<? extends T> items) {
+            final PointBuffer<T> buffer = new PointBuffer<>(points(), sizeHint);
+            items.forEachRemaining(buffer);
+            return build(buffer);
+        }
+
+        /**
+         * Construct a new {@code PointIndex} that contains the items of a stream, such as one reading them from a file,
+         * or one flattening a feed of chunks. The point of each item is extracted as it arrives, directly into the
+         * storage of the index, as described by {@link #build(Iterator)}. Where no {@link #sizeHint(int) size hint} is
+         * given but the stream knows its exact size, that size is used instead.
+         *
+         * @param items a stream of the items to represent in the index, which is consumed but not closed.
+         * @return a new spatial index.
+         * @throws IllegalArgumentException if the location of any item is invalid.
+         */
+        public GeoPointIndex<T> build(@NonNull final Stream<? extends T> items) {
+            final Spliterator<? extends T> spliterator = items.spliterator();
+            final long exactSize = spliterator.getExactSizeIfKnown();
+            final int expectedSize = sizeHint >= 0 || exactSize > Integer.MAX_VALUE ? sizeHint : (int) exactSize;
+            final PointBuffer<T> buffer = new PointBuffer<>(points(), expectedSize);
+            spliterator.forEachRemaining(buffer);
+            return build(buffer);
+        }
+
+        /**
+         * Construct a new {@code PointIndex} that contains the items collected in a buffer. The storage of the buffer
+         * becomes that of the index.
+         *
+         * @param buffer the buffer.
+         * @return a new spatial index.
+         */
+        private GeoPointIndex<T> build(final PointBuffer<T> buffer) {
+            buffer.trim();
+            if (collapsing) {
+                final ItemGroups.Collapser collapser = new ItemGroups.Collapser(buffer.items,
+                                                                                buffer.xs,
+                                                                                buffer.ys,
+                                                                                buffer.zs);
+                if (collapser.hasDuplicates()) {
+                    final SpatialBackend<T> backend = create(collapser.keys(),
+                                                             collapser.xs(),
+                                                             collapser.ys(),
+                                                             collapser.zs());
+                    return build(backend, buffer.points, collapser.finish());
+                }
+            }
+
+            return build(create(buffer.items, buffer.xs, buffer.ys, buffer.zs), buffer.points, null);
+        }
+
+        /**
+         * Create a backend with the engine of this builder from items whose points have already been extracted into
+         * arrays of coordinates, which are arranged in place.
+         *
+         * @param items the items.
+         * @param xs the x-axis ordinates of the points of the items.
+         * @param ys the y-axis ordinates of the points of the items.
+         * @param zs the z-axis ordinates of the points of the items.
+         * @return the backend.
+         */
+        private SpatialBackend<T> create(final Object[] items, final double[] xs, final double[] ys,
+                                         final double[] zs) {
+            return switch (engine) {
+                case KD_TREE -> KDTree.create(items, xs, ys, zs, KDTree.DEFAULT_LEAF_SIZE, parallelism, compact);
+                case CELL_GRID -> CellGrid.create(items, xs, ys, zs, CellGrid.DEFAULT_CELL_SIZE, compact);
+            };
+        }
+
+        /**
+         * Construct a new {@code PointIndex} on a backend built with the options of this builder.
+         *
+         * @param backend the backend.
+         * @param points the function that extracted the point of each item.
+         * @return a new spatial index.
+         */
+        private GeoPointIndex<T> build(final SpatialBackend<T> backend, final Function<T, CartPoint3D> points) {
+            return build(backend, points, null);
+        }
+
+        /**
+         * Construct a new {@code PointIndex} on a backend built with the options of this builder.
+         *
+         * @param backend the backend.
+         * @param points the function that extracted the point of each item.
+         * @param groups the items sharing each point held by the backend, or {@code null} if the backend holds a point
+         * for every item.
+         * @return a new spatial index.
+         */
+        private GeoPointIndex<T> build(final SpatialBackend<T> backend, final Function<T, CartPoint3D> points,
+                                       final ItemGroups groups) {
+            ValueSummaries summaries = null;
+            if (valueExtractor != null) {
+                summaries = groups == null ? backend.summarise(values(backend)) : summarise(backend, groups);
+            }
+
+            return new GeoPointIndex<>(vectorised ? backend.vectorised() : backend,
+                                       compact ? points : null,
+                                       listener,
+                                       summaries,
+                                       ellipsoidal,
+                                       groups);
+        }
+
+        /**
+         * Extract the value to summarise from the item at each slot of a backend.
+         *
+         * @param backend the backend.
+         * @return the values, by slot.
+         */
+        private double[] values(final SpatialBackend<T> backend) {
+            final double[] values = new double[backend.size()];
+            for (int slot = 0; slot < values.length; slot++) {
+                values[slot] = valueExtractor.applyAsDouble(backend.item(slot));
+            }
+            return values;
+        }
+
+        /**
+         * Summarise the values of the items sharing each point of a backend.
+         *
+         * @param backend the backend.
+         * @param groups the items sharing each point held by the backend.
+         * @return the summaries.
+         */
+        private ValueSummaries summarise(final SpatialBackend<T> backend, final ItemGroups groups) {
+            final int size = backend.size();
+            final double[] sums = new double[size];
+            final double[] mins = new double[size];
+            final double[] maxes = new double[size];
+            for (int slot = 0; slot < size; slot++) {
+                mins[slot] = Double.POSITIVE_INFINITY;
+                maxes[slot] = Double.NEGATIVE_INFINITY;
+                for (int position = groups.start(slot); position < groups.end(slot); position++) {
+                    final double value = valueExtractor.applyAsDouble(groups.item(position));
+                    sums[slot] += value;
+                    mins[slot] = Math.min(mins[slot], value);
+                    maxes[slot] = Math.max(maxes[slot], value);
+                }
+            }
+            return backend.summarise(sums, mins, maxes);
+        }
+
+        /**
+         * Create a function that extracts the point of an item on the unit sphere.
+         *
+         * @return the function.
+         */
+        private Function<T, CartPoint3D> points() {
+            return t -> CartPoint3D.fromLatLon(latitudeExtractor.applyAsDouble(t), longitudeExtractor.applyAsDouble(t));
+        }
+    }
+
+    /**
+     * Collects items as they arrive along with the coordinates of their points, in arrays that grow as needed.
+     *
+     * @param <T> the type of items in the index.
+     */
+    private static final class PointBuffer<T> implements Consumer<T> {
+
+        /** The capacity to start with when the number of items expected is unknown. */
+        private static final int INITIAL_CAPACITY = 1024;
+
+        /** The greatest capacity of the arrays, being the greatest length of an array that is reliably allocated. */
+        private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+        /** A function that will extract the point of each item. */
+        private final Function<T, CartPoint3D> points;
+
+        /** The items collected. */
+        private Object[] items;
+
+        /** The x-axis ordinates of the points of the items. */
+        private double[] xs;
+
+        /** The y-axis ordinates of the points of the items. */
+        private double[] ys;
+
+        /** The z-axis ordinates of the points of the items. */
+        private double[] zs;
+
+        /** The number of items collected. */
+        private int size;
+
+        /**
+         * Construct a new instance.
+         *
+         * @param points a function that will extract the point of each item.
+         * @param expectedSize the number of items expected, or {@code -1} if unknown.
+         */
+        private PointBuffer(final Function<T, CartPoint3D> points, final int expectedSize) {
+            this.points = points;
+            final int capacity = expectedSize >= 0 ? Math.min(expectedSize, MAX_CAPACITY) : INITIAL_CAPACITY;
+            this.items = new Object[capacity];
+            this.xs = new double[capacity];
+            this.ys = new double[capacity];
+            this.zs = new double[capacity];
+        }
+
+        @Override
+        public void accept(final T item) {
+            if (size == items.length) {
+                grow();
+            }
+
+            final CartPoint3D point = points.apply(item);
+            items[size] = item;
+            xs[size] = point.x();
+            ys[size] = point.y();
+            zs[size] = point.z();
+            size++;
+        }
+
+        /**
+         * Enlarge the arrays by half again.
+         *
+         * @throws IllegalArgumentException if the arrays are already as large as they can be.
+         */
+        private void grow() {
+            if (size == MAX_CAPACITY) {
+                throw new IllegalArgumentException("Too many items: an index holds at most " + MAX_CAPACITY);
+            }
+
+            resize((int) Math.min(MAX_CAPACITY, size + (size >> 1) + 16L));
+        }
+
+        /** Shrink the arrays to hold exactly the items collected. */
+        private void trim() {
+            if (size < items.length) {
+                resize(size);
+            }
+        }
+
+        /**
+         * Copy the arrays to ones of the given length.
+         *
+         * @param capacity the length, which is at least the number of items collected.
+         */
+        private void resize(final int capacity) {
+            items = Arrays.copyOf(items, capacity);
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            zs = Arrays.copyOf(zs, capacity);
+        }
+    }
+
+    /**
+     * The state of a query counting, and optionally summarising the values of, the items within a distance of a point.
+     * Parts of the backend certainly within the distance are taken as a whole, and only the points of the others are
+     * received individually.
+     *
+     * @param <T> the type of items in the index.
+     */
+    private static final class AggregateSearch<T> extends DistanceSearch {
+
+        /** The index being searched. */
+        private final GeoPointIndex<T> index;
+
+        /** The summaries of the value of each item, or {@code null} if only items are to be counted. */
+        private final ValueSummaries summaries;
+
+        /** The number of items found so far. */
+        private long count;
+
+        /** The sum of the values of the items found so far. */
+        private double sum;
+
+        /** The least value of the items found so far. */
+        private double min = Double.POSITIVE_INFINITY;
+
+        /** The greatest value of the items found so far. */
+        private double max = Double.NEGATIVE_INFINITY;
+
+        /**
+         * Construct a new instance.
+         *
+         * @param index the index to search.
+         * @param summaries the summaries of the value of each item, or {@code null} if only items are to be counted.
+         */
+        private AggregateSearch(final GeoPointIndex<T> index, final ValueSummaries summaries) {
+            this.index = index;
+            this.summaries = summaries;
+        }
+
+        /**
+         * Run a query around the given point.
+         *
+         * @param latitude the latitude of the point to search around.
+         * @param longitude the longitude of the point to search around.
+         * @param distanceMeters the distance in meters around the point for which to find items.
+         * @throws IllegalArgumentException if the point is invalid.
+         */
+        void run(final double latitude, final double longitude, final double distanceMeters) {
+            // Only parts of the backend within the certain sphere are taken as a whole
+            setDistance(latitude, longitude, distanceMeters, index.searchRadius(distanceMeters),
+                        index.certainRadius(distanceMeters));
+            index.backend.search(this);
+        }
+
+        @Override
+        boolean acceptNode(final int node, final int lo, final int hi) {
+            count += index.groups != null ? index.groups.count(lo, hi) : hi - lo;
+            if (summaries != null) {
+                sum += summaries.sum(node);
+                min = Math.min(min, summaries.min(node));
+                max = Math.max(max, summaries.max(node));
+            }
+            return true;
+        }
+
+        @Override
+        double distanceMeters(final int slot, final double distanceSquared) {
+            return index.distanceMeters(slot, distanceSquared, centreX(), centreY(), centreZ());
+        }
+
+        @Override
+        boolean accept(final int slot, final double x, final double y, final double z) {
+            if (!withinDistance(slot, x, y, z)) {
+                return true;
+            }
+
+            count += index.groups != null ? index.groups.count(slot, slot + 1) : 1;
+            if (summaries != null) {
+                sum += summaries.slotSum(slot);
+                min = Math.min(min, summaries.slotMin(slot));
+                max = Math.max(max, summaries.slotMax(slot));
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The state of a distance query on the index, which receives the points found within the bounding sphere of the
+     * query and passes on those that are truly within the distance to the function that was given. Each thread reuses a
+     * single instance for its successive queries, so that in steady state a query allocates nothing.
+     *
+     * @param <T> the type of items in the index.
+     */
+    private static final class WithinDistanceSearch<T> extends DistanceSearch {
+
+        /** The instance reused by each thread. */
+        private static final ThreadLocal<WithinDistanceSearch<?>> CURRENT =
+                ThreadLocal.withInitial(WithinDistanceSearch::new);
+
+        /** The index being searched. */
+        private GeoPointIndex<T> index;
+
+        /** The maximum number of items to find. */
+        private int limit;
+
+        /** The number of items found so far. */
+        private int found;
+
+        /** The number of points found within the sphere so far, whether or not they were within the distance. */
+        private int candidates;
+
+        /** The slots of the only points to search, or {@code null} to search the whole backend. */
+        private int[] candidateSlots;
+
+        /** The function to call for each item found when running a single query, or {@code null}. */
+        private WithinDistanceConsumer<T> consumer;
+
+        /** The function to call for each item found when distances are not needed, or {@code null}. */
+        private Consumer<? super T> itemConsumer;
+
+        /** The function to call for each item found when running a stoppable query, or {@code null}. */
+        private WithinDistanceVisitor<T> visitor;
+
+        /** The function to call for each item found when running a batch of queries, or {@code null}. */
+        private BatchWithinDistanceConsumer<T> batchConsumer;
+
+        /** The index within the batch of the query being run. */
+        private int queryIndex;
+
+        /** Whether the query is run as part of another, such that its statistics are not reported to the listener. */
+        private boolean unreported;
+
+        /** Whether the instance is being used by a query. */
+        private boolean inUse;
+
+        /**
+         * Obtain an instance for the calling thread to run queries with, which must be released once they are done.
+         *
+         * @param index the index to search.
+         * @param <T> the type of items in the index.
+         * @return an instance with no function set.
+         */
+        @SuppressWarnings("unchecked")
+        static <T> WithinDistanceSearch<T> acquire(final GeoPointIndex<T> index) {
+            WithinDistanceSearch<T> search = (WithinDistanceSearch<T>) CURRENT.get();
+            if (search.inUse) {
+                // A query is being made from within the function of another on the same thread, so it cannot share
+                // the state of that query
+                search = new WithinDistanceSearch<>();
+            }
+
+            search.inUse = true;
+            search.index = index;
+            return search;
+        }
+
+        /** Release the instance so that it may be acquired again, without retaining anything from the query. */
+        void release() {
+            index = null;
+            consumer = null;
+            itemConsumer = null;
+            visitor = null;
+            batchConsumer = null;
+            candidateSlots = null;
+            unreported = false;
+            inUse = false;
+        }
+
+        /**
+         * Run a query around the given point.
+         *
+         * @param latitude the latitude of the point to search around.
+         * @param longitude the longitude of the point to search around.
+         * @param distanceMeters the distance in meters around the point for which to find items.
+         * @param limit the maximum number of items to find.
+         * @return the number of items found.
+         * @throws IllegalArgumentException if the point is invalid.
+         */
+        int run(final double latitude, final double longitude, final double distanceMeters, final int limit) {
+            setDistance(latitude, longitude, distanceMeters, index.searchRadius(distanceMeters),
+                        index.certainRadius(distanceMeters));
+            return run(limit);
+        }
+
+        /**
+         * Run a query around the given point.
+         *
+         * @param x the x-axis ordinate of the point to search around.
+         * @param y the y-axis ordinate of the point to search around.
+         * @param z the z-axis ordinate of the point to search around.
+         * @param distanceMeters the distance in meters around the point for which to find items.
+         * @param limit the maximum number of items to find.
+         * @return the number of items found.
+         */
+        int run(final double x, final double y, final double z, final double distanceMeters, final int limit) {
+            setDistance(x, y, z, distanceMeters, index.searchRadius(distanceMeters),
+                        index.certainRadius(distanceMeters));
+            return run(limit);
+        }
+
+        /**
+         * Run a query around the point and distance that have been set.
+         *
+         * @param limit the maximum number of items to find.
+         * @return the number of items found.
+         */
+        private int run(final int limit) {
+            this.limit = limit;
+            found = 0;
+
+            final QueryListener listener = unreported ? null : index.listener;
+            final long start = listener != null ? System.nanoTime() : 0;
+            resetNodesVisited();
+            candidates = 0;
+            if (candidateSlots == null) {
+                index.backend.search(this);
+            } else {
+                searchCandidates();
+            }
+            if (listener != null) {
+                listener.queryCompleted(new QueryStatistics(QueryStatistics.QueryType.WITHIN_DISTANCE,
+                                                            nodesVisited(),
+                                                            candidates,
+                                                            found,
+                                                            System.nanoTime() - start));
+            }
+            return found;
+        }
+
+        /** Search only the points at {@link #candidateSlots}, rather than the whole backend. */
+        private void searchCandidates() {
+            final PointStore points = index.backend.points();
+            for (final int slot : candidateSlots) {
+                final double x = points.x(slot), y = points.y(slot), z = points.z(slot);
+                if (contains(x, y, z) && !accept(slot, x, y, z)) {
+                    return;
+                }
+            }
+        }
+
+        @Override
+        double distanceMeters(final int slot, final double distanceSquared) {
+            return index.distanceMeters(slot, distanceSquared, centreX(), centreY(), centreZ());
+        }
+
+        @Override
+        boolean accept(final int slot, final double x, final double y, final double z) {
+            final ItemGroups groups = index.groups;
+            candidates += groups != null ? groups.count(slot, slot + 1) : 1;
+            if (!withinDistance(slot, x, y, z)) {
+                return true;
+            }
+
+            // The distance is not needed when the function does not take it
+            final double distanceToSearchPoint = itemConsumer == null ? lastDistanceMeters(slot) : Double.NaN;
+
+            if (groups == null) {
+                return found(index.backend.item(slot), distanceToSearchPoint);
+            }
+
+            // The items sharing the point are all at the same distance
+            for (int position = groups.start(slot); position < groups.end(slot); position++) {
+                if (!found(groups.item(position), distanceToSearchPoint)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Pass on an item found within the distance to the function that was given.
+         *
+         * @param item the item.
+         * @param distanceToSearchPoint the distance in meters from the search point to the item, which is only needed
+         * if the function takes the distance.
+         * @return {@code true} if the search should continue; or {@code false} if it should stop.
+         */
+        private boolean found(final T item, final double distanceToSearchPoint) {
+            found++;
+            if (itemConsumer != null) {
+                itemConsumer.accept(item);
+                return found < limit;
+            }
+
+            if (visitor != null) {
+                return visitor.visit(item, distanceToSearchPoint);
+            }
+
+            if (batchConsumer != null) {
+                batchConsumer.accept(queryIndex, item, distanceToSearchPoint);
+            } else {
+                consumer.accept(item, distanceToSearchPoint);
+            }
+            return found < limit;
+        }
+    }
+
+    /**
+     * An item located by a query on the index.
+     *
+     * @param item the item that was found.
+     * @param distanceMeters the great circle distance in meters from the search point to the item.
+     * @param <T> the type of items contained within the index.
+     */
+    public record Match<T>(T item, double distanceMeters) {
+    }
+
+    /**
+     * Defines a function to iteratively receive the results of a distance query on the index, which can stop the
+     * query once it has found what it needs.
+     */
+    @FunctionalInterface
+    public interface WithinDistanceVisitor<T> {
+
+        /**
+         * Receive notification that a given item was located in the index.
+         *
+         * @param item the item that was found.
+         * @param distanceMeters the great circle distance in meters from the search point to the item.
+         * @return {@code true} to continue searching for further items; or {@code false} to stop the search.
+         */
+        boolean visit(T item, double distanceMeters);
     }
 
     /** Defines a function to iteratively receive the results of a distance query on the index. */
@@ -0,0 +1,218 @@
+package io.github.tinselspoon.spatial.index;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * Reads and writes the binary file format in which a {@link KDTree} can be persisted.
+ * <p>
+ * The format is laid out such that a tree can be queried directly from a memory-mapped file without deserialising it.
+ * All values are little-endian. The file begins with a header of six {@code int} values: the magic number
+ * {@value #MAGIC}, the format version {@value #VERSION}, the leaf size of the tree, the number of points, the number of
+ * node bounds, and an unused value of zero that keeps the sections that follow aligned. This is followed by the x-axis,
+ * then y-axis, then z-axis ordinates of every point in tree order, each as a {@code double}. Next come the minimum
+ * x-axis, y-axis and z-axis ordinates, then the maximum x-axis, y-axis and z-axis ordinates, of the points within each
+ * node of the tree, again each as a {@code double}. Finally there is an {@code int} ordinal for every point in tree
+ * order, identifying the item associated with that point.
+ */
+final class IndexFile {
+
+    /** The magic number identifying the file format, {@code GPIX} in ASCII. */
+    static final int MAGIC = 0x47504958;
+
+    /** The version of the file format. */
+    static final int VERSION = 2;
+
+    /** The size in bytes of the file header. */
+    private static final int HEADER_BYTES = 6 * Integer.BYTES;
+
+    /** The most points or nodes a file may hold, such that each section can be mapped as a single buffer. */
+    static final int MAX_POINTS = Integer.MAX_VALUE / Double.BYTES;
+
+    /** The byte order of all values in the file. */
+    private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    /** The size in bytes of the buffer used to write files. */
+    private static final int WRITE_BUFFER_BYTES = 1 << 16;
+
+    /** Prevent instantiation. */
+    private IndexFile() {
+    }
+
+    /**
+     * Write a tree to a file, replacing the file if it already exists.
+     *
+     * @param tree the tree to write.
+     * @param path the path of the file to write.
+     * @param ordinalFunction a function to obtain the ordinal that identifies each item.
+     * @param <T> the type of items in the tree.
+     * @throws IOException if an I/O error occurs.
+     * @throws IllegalArgumentException if the tree holds more than {@link #MAX_POINTS} points or nodes.
+     */
+    static <T> void write(final KDTree<T> tree, final Path path, final ToIntFunction<? super T> ordinalFunction)
+            throws IOException {
+        final int size = tree.size();
+        if (size > MAX_POINTS) {
+            throw new IllegalArgumentException("Too many points to write to a file: " + size);
+        }
+
+        final PointStore points = tree.points();
+        final PointStore lowerBounds = tree.lowerBounds();
+        final PointStore upperBounds = tree.upperBounds();
+        final int nodeCount = lowerBounds.size();
+        if (nodeCount > MAX_POINTS) {
+            throw new IllegalArgumentException("Too many nodes to write to a file: " + nodeCount);
+        }
+
+        try (FileChannel channel = FileChannel.open(path,
+                                                    StandardOpenOption.CREATE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING,
+                                                    StandardOpenOption.WRITE)) {
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES).order(ORDER);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(tree.leafSize()).putInt(size).putInt(nodeCount).putInt(0);
+
+            putOrdinates(points, buffer, channel);
+            putOrdinates(lowerBounds, buffer, channel);
+            putOrdinates(upperBounds, buffer, channel);
+
+            for (int slot = 0; slot < size; slot++) {
+                if (buffer.remaining() < Integer.BYTES) {
+                    drain(buffer, channel);
+                }
+                buffer.putInt(ordinalFunction.applyAsInt(tree.item(slot)));
+            }
+
+            drain(buffer, channel);
+        }
+    }
+
+    /**
+     * Open a tree from a file by mapping it into memory. The file must not be modified while the tree is in use.
+     *
+     * @param path the path of the file to read.
+     * @param itemResolver a function to obtain the item identified by each ordinal in the file.
+     * @param <T> the type of items in the tree.
+     * @return the tree.
+     * @throws IOException if an I/O error occurs, or if the file is not in the expected format.
+     */
+    static <T> KDTree<T> open(final Path path, final IntFunction<? extends T> itemResolver) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ORDER);
+            read(channel, header, path);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("File is not a spatial index: " + path);
+            }
+
+            final int version = header.getInt(Integer.BYTES);
+            if (version != VERSION) {
+                throw new IOException("Unsupported spatial index file version " + version + ": " + path);
+            }
+
+            final int leafSize = header.getInt(2 * Integer.BYTES);
+            final int size = header.getInt(3 * Integer.BYTES);
+            final int nodeCount = header.getInt(4 * Integer.BYTES);
+            final int reserved = header.getInt(5 * Integer.BYTES);
+            if (leafSize < 1 || size < 0 || size > MAX_POINTS || reserved != 0
+                    || nodeCount != KDTree.nodeCount(size, leafSize)) {
+                throw new IOException("Spatial index file is corrupt: " + path);
+            }
+
+            final long sectionBytes = (long) size * Double.BYTES;
+            final long boundsSectionBytes = (long) nodeCount * Double.BYTES;
+            final long expectedLength = HEADER_BYTES + CartPoint3D.DIMENSIONS * (sectionBytes + 2 * boundsSectionBytes)
+                    + (long) size * Integer.BYTES;
+            if (channel.size() != expectedLength) {
+                throw new IOException("Spatial index file is corrupt: " + path);
+            }
+
+            // The mappings remain valid after the channel is closed, until they are garbage collected
+            long position = HEADER_BYTES;
+            final DoubleBuffer[] sections = new DoubleBuffer[3 * CartPoint3D.DIMENSIONS];
+            for (int i = 0; i < sections.length; i++) {
+                final long bytes = i < CartPoint3D.DIMENSIONS ? sectionBytes : boundsSectionBytes;
+                sections[i] = map(channel, position, bytes).asDoubleBuffer();
+                position += bytes;
+            }
+            final IntBuffer ordinals = map(channel, position, (long) size * Integer.BYTES).asIntBuffer();
+
+            return new KDTree<>(PointStore.of(sections[0], sections[1], sections[2]),
+                                PointStore.of(sections[3], sections[4], sections[5]),
+                                PointStore.of(sections[6], sections[7], sections[8]),
+                                slot -> itemResolver.apply(ordinals.get(slot)),
+                                leafSize);
+        }
+    }
+
+    /**
+     * Read from the start of a file until the given buffer is full.
+     *
+     * @param channel the channel of the file.
+     * @param buffer the buffer to fill, whose position is the offset within the file from which to read.
+     * @param path the path of the file.
+     * @throws IOException if an I/O error occurs, or if the file ends before the buffer is full.
+     */
+    private static void read(final FileChannel channel, final ByteBuffer buffer, final Path path) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) < 0) {
+                throw new IOException("File is too short to be a spatial index: " + path);
+            }
+        }
+    }
+
+    /**
+     * Write out every ordinate of a store, ordered by dimension and then by slot.
+     *
+     * @param store the store.
+     * @param buffer the buffer through which to write.
+     * @param channel the channel to write to.
+     * @throws IOException if an I/O error occurs.
+     */
+    private static void putOrdinates(final PointStore store, final ByteBuffer buffer, final FileChannel channel)
+            throws IOException {
+        for (int dimension = 0; dimension < CartPoint3D.DIMENSIONS; dimension++) {
+            for (int slot = 0; slot < store.size(); slot++) {
+                if (buffer.remaining() < Double.BYTES) {
+                    drain(buffer, channel);
+                }
+                buffer.putDouble(store.ordinate(dimension, slot));
+            }
+        }
+    }
+
+    /**
+     * Map a section of a file into memory.
+     *
+     * @param channel the channel of the file.
+     * @param position the offset of the section within the file.
+     * @param length the length of the section.
+     * @return the mapped section.
+     * @throws IOException if an I/O error occurs.
+     */
+    private static ByteBuffer map(final FileChannel channel, final long position, final long length)
+            throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, length).order(ORDER);
+    }
+
+    /**
+     * Write out the contents of a buffer to a channel, leaving the buffer empty.
+     *
+     * @param buffer the buffer.
+     * @param channel the channel.
+     * @throws IOException if an I/O error occurs.
+     */
+    private static void drain(final ByteBuffer buffer, final FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,23 @@
+package io.github.tinselspoon.spatial.index;
+
+/**
+ * The shape of a built {@link GeoPointIndex}, as obtained from {@link GeoPointIndex#statistics()}.
+ * <p>
+ * The points of an index are divided into leaves, which are searched by testing each of their points: the leaf buckets
+ * of a k-d tree, or the cells of a grid. The depth of a leaf is the number of levels of the index above it, so the
+ * difference between the least and greatest depths shows how well balanced the index is. A k-d tree also holds a point
+ * at each node above its leaves, so the sizes of its leaves do not add up to the size of the index.
+ *
+ * @param engine the engine with which the index was built.
+ * @param size the number of points in the index.
+ * @param leafCount the number of leaves.
+ * @param emptyLeafCount the number of leaves holding no points.
+ * @param minLeafSize the fewest points held by any leaf.
+ * @param maxLeafSize the most points held by any leaf.
+ * @param meanLeafSize the mean number of points held by each leaf.
+ * @param minDepth the least depth of any leaf.
+ * @param maxDepth the greatest depth of any leaf.
+ */
+public record IndexStatistics(GeoPointIndex.Engine engine, int size, int leafCount, int emptyLeafCount,
+                              int minLeafSize, int maxLeafSize, double meanLeafSize, int minDepth, int maxDepth) {
+}
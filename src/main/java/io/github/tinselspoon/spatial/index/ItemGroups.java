@@ -0,0 +1,265 @@
+package io.github.tinselspoon.spatial.index;
+
+import java.util.Arrays;
+
+/**
+ * The items sharing each point held in a {@link SpatialBackend}, where items at exactly the same location have been
+ * collapsed into a single point. The backend then holds each distinct location once, and its item at each slot is the
+ * first of the items sharing that point; the others are only reached through here.
+ * <p>
+ * The items are held in a single array in slot order, with the items of each slot contiguous and in the order in which
+ * they were given, so the items of any range of slots are also contiguous.
+ */
+final class ItemGroups {
+
+    /** The items, in order of the slots of their points. */
+    private final Object[] items;
+
+    /** The position within {@link #items} of the first item of each slot, followed by the number of items. */
+    private final int[] starts;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param items the items, in order of the slots of their points.
+     * @param starts the position within {@code items} of the first item of each slot, followed by the number of items.
+     */
+    private ItemGroups(final Object[] items, final int[] starts) {
+        this.items = items;
+        this.starts = starts;
+    }
+
+    /**
+     * Gets the position of the first item of the given slot.
+     *
+     * @param slot the slot.
+     * @return the position, inclusive.
+     */
+    int start(final int slot) {
+        return starts[slot];
+    }
+
+    /**
+     * Gets the position after the last item of the given slot.
+     *
+     * @param slot the slot.
+     * @return the position, exclusive.
+     */
+    int end(final int slot) {
+        return starts[slot + 1];
+    }
+
+    /**
+     * Gets the number of items sharing the points of a range of slots.
+     *
+     * @param lo the first slot, inclusive.
+     * @param hi the last slot, exclusive.
+     * @return the number of items.
+     */
+    int count(final int lo, final int hi) {
+        return starts[hi] - starts[lo];
+    }
+
+    /**
+     * Gets the item at the given position.
+     *
+     * @param position the position, between the {@link #start} and {@link #end} of its slot.
+     * @param <T> the type of items.
+     * @return the item.
+     */
+    @SuppressWarnings("unchecked")
+    <T> T item(final int position) {
+        return (T) items[position];
+    }
+
+    /**
+     * Finds the items at exactly the same locations as one another, so that a backend can be built holding each
+     * distinct location once and the items can then be grouped by the slots of the backend.
+     * <p>
+     * Locations are compared by their exact coordinates, using a hash table over the positions of the items, so this
+     * takes time in proportion to the number of items and allocates no object for each.
+     */
+    static final class Collapser {
+
+        /** The items, in the order in which they were given. */
+        private final Object[] items;
+
+        /** The distinct location of each item, numbered in order of first appearance. */
+        private final int[] locations;
+
+        /** The number of items at each distinct location. */
+        private final int[] counts;
+
+        /** The number of each distinct location, to be arranged into slot order by the backend. */
+        private final Object[] keys;
+
+        /** The x-axis ordinates of the distinct locations. */
+        private final double[] xs;
+
+        /** The y-axis ordinates of the distinct locations. */
+        private final double[] ys;
+
+        /** The z-axis ordinates of the distinct locations. */
+        private final double[] zs;
+
+        /**
+         * Find the distinct locations of the given items.
+         *
+         * @param items the items.
+         * @param xs the x-axis ordinates of the points of the items, of the same length as {@code items}.
+         * @param ys the y-axis ordinates of the points of the items, of the same length as {@code items}.
+         * @param zs the z-axis ordinates of the points of the items, of the same length as {@code items}.
+         */
+        Collapser(final Object[] items, final double[] xs, final double[] ys, final double[] zs) {
+            this.items = items;
+            final int size = items.length;
+            locations = new int[size];
+
+            // An open addressing table of the position of the first item at each location, at most half full
+            final int[] table = new int[(int) Math.min(1 << 30, (long) Integer.highestOneBit(Math.max(1, size)) << 2)];
+            final int mask = table.length - 1;
+            Arrays.fill(table, -1);
+            final int[] firsts = new int[size];
+            int locationCount = 0;
+            for (int i = 0; i < size; i++) {
+                int bucket = hash(xs[i], ys[i], zs[i]) & mask;
+                while (table[bucket] >= 0 && !sameLocation(xs, ys, zs, table[bucket], i)) {
+                    bucket = (bucket + 1) & mask;
+                }
+
+                if (table[bucket] >= 0) {
+                    locations[i] = locations[table[bucket]];
+                } else {
+                    table[bucket] = i;
+                    firsts[locationCount] = i;
+                    locations[i] = locationCount++;
+                }
+            }
+
+            counts = new int[locationCount];
+            for (final int location : locations) {
+                counts[location]++;
+            }
+
+            keys = new Object[locationCount];
+            this.xs = new double[locationCount];
+            this.ys = new double[locationCount];
+            this.zs = new double[locationCount];
+            for (int location = 0; location < locationCount; location++) {
+                keys[location] = location;
+                this.xs[location] = xs[firsts[location]];
+                this.ys[location] = ys[firsts[location]];
+                this.zs[location] = zs[firsts[location]];
+            }
+        }
+
+        /**
+         * Calculate the hash of a location from the bits of its coordinates.
+         *
+         * @param x the x-axis ordinate.
+         * @param y the y-axis ordinate.
+         * @param z the z-axis ordinate.
+         * @return the hash.
+         */
+        private static int hash(final double x, final double y, final double z) {
+            long hash = Double.doubleToLongBits(x);
+            hash = hash * 31 + Double.doubleToLongBits(y);
+            hash = hash * 31 + Double.doubleToLongBits(z);
+            hash *= 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ hash >>> 32);
+        }
+
+        /**
+         * Determine whether two items are at exactly the same location.
+         *
+         * @param xs the x-axis ordinates of the points of the items.
+         * @param ys the y-axis ordinates of the points of the items.
+         * @param zs the z-axis ordinates of the points of the items.
+         * @param i the position of one item.
+         * @param j the position of the other item.
+         * @return {@code true} if the coordinates are identical; otherwise, {@code false}.
+         */
+        private static boolean sameLocation(final double[] xs, final double[] ys, final double[] zs, final int i,
+                                            final int j) {
+            return Double.doubleToLongBits(xs[i]) == Double.doubleToLongBits(xs[j])
+                    && Double.doubleToLongBits(ys[i]) == Double.doubleToLongBits(ys[j])
+                    && Double.doubleToLongBits(zs[i]) == Double.doubleToLongBits(zs[j]);
+        }
+
+        /**
+         * Determine whether any two items are at the same location, without which there is nothing to collapse.
+         *
+         * @return {@code true} if there are fewer distinct locations than items; otherwise, {@code false}.
+         */
+        boolean hasDuplicates() {
+            return keys.length < items.length;
+        }
+
+        /**
+         * Gets the numbers of the distinct locations, from which to build the backend in place of the items. The
+         * backend must arrange this array into slot order in place and hold it as its items, as
+         * {@link KDTree#create(Object[], double[], double[], double[], int, int, boolean)} and
+         * {@link CellGrid#create(Object[], double[], double[], double[], int, boolean)} do, so that
+         * {@link #finish()} can then replace each with the first item at that location.
+         *
+         * @return the numbers of the locations.
+         */
+        Object[] keys() {
+            return keys;
+        }
+
+        /**
+         * Gets the x-axis ordinates of the distinct locations, in the same order as {@link #keys()}.
+         *
+         * @return the ordinates.
+         */
+        double[] xs() {
+            return xs;
+        }
+
+        /**
+         * Gets the y-axis ordinates of the distinct locations, in the same order as {@link #keys()}.
+         *
+         * @return the ordinates.
+         */
+        double[] ys() {
+            return ys;
+        }
+
+        /**
+         * Gets the z-axis ordinates of the distinct locations, in the same order as {@link #keys()}.
+         *
+         * @return the ordinates.
+         */
+        double[] zs() {
+            return zs;
+        }
+
+        /**
+         * Group the items by the slots of their locations, once a backend has arranged the {@link #keys()} into slot
+         * order, and replace each key with the first item at its location so that the backend holds items again.
+         *
+         * @return the groups.
+         */
+        ItemGroups finish() {
+            final int[] slots = new int[keys.length];
+            final int[] starts = new int[keys.length + 1];
+            for (int slot = 0; slot < keys.length; slot++) {
+                final int location = (Integer) keys[slot];
+                slots[location] = slot;
+                starts[slot + 1] = starts[slot] + counts[location];
+            }
+
+            final Object[] grouped = new Object[items.length];
+            final int[] next = Arrays.copyOf(starts, keys.length);
+            for (int i = 0; i < items.length; i++) {
+                grouped[next[slots[locations[i]]]++] = items[i];
+            }
+
+            for (int slot = 0; slot < keys.length; slot++) {
+                keys[slot] = grouped[starts[slot]];
+            }
+            return new ItemGroups(grouped, starts);
+        }
+    }
+}
@@ -1,24 +1,102 @@
 package io.github.tinselspoon.spatial.index;
 
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.List;
-import java.util.function.BiConsumer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
 
-/** Implementation of a k-d tree indexed by {@link CartPoint3D} with arbitrary associated data. */
-class KDTree<T> {
+/**
+ * Implementation of a k-d tree indexed by {@link CartPoint3D} with arbitrary associated data.
+ * <p>
+ * The tree is stored in a flat, array-backed layout rather than as a graph of node objects. The coordinates of the
+ * points are held in a {@link PointStore}, ordered such that the tree is implicit in the slot indices: the
+ * subtree covering the slots {@code [lo, hi)} has the point at slot {@code mid = (lo + hi) / 2} as its node, with all
+ * the points in {@code [lo, mid)} having an ordinate on the splitting dimension less than or equal to that of the node
+ * point, and all the points in {@code [mid + 1, hi)} having an ordinate greater than or equal to it. Once a subtree
+ * contains no more than {@link #leafSize} points it is not split further and is instead scanned linearly as a leaf
+ * bucket.
+ * <p>
+ * Each subtree, including each leaf bucket, is numbered as a node: the whole tree is node {@code 0}, and the subtrees
+ * {@code [lo, mid)} and {@code [mid + 1, hi)} of node {@code i} are nodes {@code 2i + 1} and {@code 2i + 2}
+ * respectively. The bounding box of the points actually within each node is recorded, so that a search can skip
+ * subtrees lying entirely outside of its range, and can take every point of a subtree lying entirely inside of it
+ * without testing them individually.
+ */
+class KDTree<T> implements SpatialBackend<T> {
 
-    /** The root node of the tree. */
-    private final KDNode<T> root;
+    /** The default maximum number of points held in a single leaf bucket. */
+    static final int DEFAULT_LEAF_SIZE = 16;
+
+    /** The number of points below which construction of a subtree is not split into further parallel tasks. */
+    static final int PARALLEL_THRESHOLD = 8192;
+
+    /** The coordinates of the points in the tree, in tree order. */
+    private final PointStore points;
+
+    /** The minimum ordinates of the points within each node, indexed by node. */
+    private final PointStore lowerBounds;
+
+    /** The maximum ordinates of the points within each node, indexed by node. */
+    private final PointStore upperBounds;
+
+    /** A function to obtain the item associated with the point at each slot. */
+    private final IntFunction<T> items;
+
+    /** The maximum number of points held in a single leaf bucket. */
+    private final int leafSize;
+
+    /**
+     * Construct a tree from points already in tree order, calculating the bounds of its nodes.
+     *
+     * @param points the coordinates of the points in the tree, which must already be in tree order for the given
+     * {@code leafSize}.
+     * @param items a function to obtain the item associated with the point at each slot.
+     * @param leafSize the maximum number of points held in a single leaf bucket.
+     */
+    KDTree(final PointStore points, final IntFunction<T> items, final int leafSize) {
+        this(points, calculateBounds(points, leafSize), items, leafSize);
+    }
+
+    /**
+     * Construct a tree from points already in tree order, with the bounds of its nodes given as six arrays.
+     *
+     * @param points the coordinates of the points in the tree.
+     * @param bounds the minimum x-axis, y-axis and z-axis ordinates, followed by the maximum x-axis, y-axis and z-axis
+     * ordinates, of the points within each node.
+     * @param items a function to obtain the item associated with the point at each slot.
+     * @param leafSize the maximum number of points held in a single leaf bucket.
+     */
+    private KDTree(final PointStore points, final double[][] bounds, final IntFunction<T> items,
+                   final int leafSize) {
+        this(points,
+             PointStore.of(bounds[0], bounds[1], bounds[2]),
+             PointStore.of(bounds[3], bounds[4], bounds[5]),
+             items,
+             leafSize);
+    }
 
     /**
      * Default constructor.
      *
-     * @param root the root node of the tree.
+     * @param points the coordinates of the points in the tree, which must already be in tree order for the given
+     * {@code leafSize}.
+     * @param lowerBounds the minimum ordinates of the points within each node, of which there must be
+     * {@link #nodeCount(int, int)}.
+     * @param upperBounds the maximum ordinates of the points within each node.
+     * @param items a function to obtain the item associated with the point at each slot.
+     * @param leafSize the maximum number of points held in a single leaf bucket.
      */
-    private KDTree(final KDNode<T> root) {
-        this.root = root;
+    KDTree(final PointStore points, final PointStore lowerBounds, final PointStore upperBounds,
+           final IntFunction<T> items, final int leafSize) {
+        this.points = points;
+        this.lowerBounds = lowerBounds;
+        this.upperBounds = upperBounds;
+        this.items = items;
+        this.leafSize = leafSize;
     }
 
     /**
@@ -30,98 +108,1020 @@ class KDTree<T> {
      * @return a constructed instance.
      */
     static <T> KDTree<T> create(final List<T> items, final Function<T, CartPoint3D> extractor) {
-        final List<KDData<T>> data = items.stream().map(d -> new KDData<>(d, extractor.apply(d))).toList();
-        return new KDTree<>(createNode(data, 0));
+        return create(items, extractor, DEFAULT_LEAF_SIZE, 1);
+    }
+
+    /**
+     * Build a {@code KDTree} instance containing the given items.
+     * <p>
+     * Construction runs in {@code O(n log n)} time by selecting the median of each subtree in place rather than fully
+     * sorting it. When a {@code parallelism} greater than one is requested, subtrees above a size threshold are
+     * arranged concurrently on a dedicated {@link ForkJoinPool}; the extractor is always invoked on the calling thread.
+     * Since each subtree is arranged independently of the others, the resulting tree is identical regardless of the
+     * parallelism used.
+     *
+     * @param items the items to store in the index.
+     * @param extractor a function to extract a representative {@link CartPoint3D} for each item.
+     * @param leafSize the maximum number of points to hold in a single leaf bucket.
+     * @param parallelism the number of threads to use for construction, where {@code 1} builds on the calling thread.
+     * @param <T> the type of items in the index.
+     * @return a constructed instance.
+     * @throws IllegalArgumentException if {@code leafSize} or {@code parallelism} are not positive.
+     */
+    static <T> KDTree<T> create(final List<T> items, final Function<T, CartPoint3D> extractor, final int leafSize,
+                                final int parallelism) {
+        return create(items, extractor, leafSize, parallelism, false);
     }
 
     /**
-     * Recursively build a tree of nodes to represent the given items.
+     * Build a {@code KDTree} instance containing the given items, optionally holding the coordinates of their points
+     * {@link PointStore#quantised(double[], double[], double[]) quantised} so as to occupy less memory. The points of
+     * a quantised tree are no further than {@link #tolerance()} from those given, and all searches of it operate on
+     * these approximate points.
      *
-     * @param items the items to represent within the node.
-     * @param depth the zero-based depth of the current level of the tree.
+     * @param items the items to store in the index.
+     * @param extractor a function to extract a representative {@link CartPoint3D} on the unit sphere for each item.
+     * @param leafSize the maximum number of points to hold in a single leaf bucket.
+     * @param parallelism the number of threads to use for construction, where {@code 1} builds on the calling thread.
+     * @param quantised whether to quantise the coordinates of the points.
      * @param <T> the type of items in the index.
-     * @return the node, or {@code null} if there are no items in the supplied list.
+     * @return a constructed instance.
+     * @throws IllegalArgumentException if {@code leafSize} or {@code parallelism} are not positive.
+     * @see #create(List, Function, int, int)
+     */
+    @SuppressWarnings("unchecked")
+    static <T> KDTree<T> create(final List<T> items, final Function<T, CartPoint3D> extractor, final int leafSize,
+                                final int parallelism, final boolean quantised) {
+        checkOptions(leafSize, parallelism);
+
+        final Object[] treeItems = items.toArray();
+        final int size = treeItems.length;
+        final Construction construction = new Construction(new double[size],
+                                                           new double[size],
+                                                           new double[size],
+                                                           treeItems,
+                                                           null,
+                                                           leafSize);
+
+        // Points are extracted on the calling thread, so the extractor need not be thread-safe; only arranging them
+        // is parallelised
+        construction.extract(extractor, 0, size);
+        arrange(construction, parallelism);
+
+        final PointStore points = quantised
+                ? PointStore.quantised(construction.xs(), construction.ys(), construction.zs())
+                : PointStore.of(construction.xs(), construction.ys(), construction.zs());
+        return new KDTree<>(points, slot -> (T) treeItems[slot], leafSize);
+    }
+
+    /**
+     * Build a {@code KDTree} instance from points given as arrays of coordinates, each identified by a {@code long}
+     * rather than by an item. The arrays are arranged into tree order in place and become the storage of the tree, so
+     * that no object is created for any point; the identifier of the point at each slot is then at that position of
+     * {@code ids}. The tree itself has no items.
+     *
+     * @param xs the x-axis ordinates of the points.
+     * @param ys the y-axis ordinates of the points, of the same length as {@code xs}.
+     * @param zs the z-axis ordinates of the points, of the same length as {@code xs}.
+     * @param ids the identifiers of the points, of the same length as {@code xs}.
+     * @param leafSize the maximum number of points to hold in a single leaf bucket.
+     * @param parallelism the number of threads to use for construction, where {@code 1} builds on the calling thread.
+     * @return a constructed instance.
+     * @throws IllegalArgumentException if {@code leafSize} or {@code parallelism} are not positive.
+     * @see #create(List, Function, int, int)
+     */
+    static KDTree<Void> create(final double[] xs, final double[] ys, final double[] zs, final long[] ids,
+                               final int leafSize, final int parallelism) {
+        checkOptions(leafSize, parallelism);
+
+        arrange(new Construction(xs, ys, zs, null, ids, leafSize), parallelism);
+        return new KDTree<>(PointStore.of(xs, ys, zs), slot -> null, leafSize);
+    }
+
+    /**
+     * Build a {@code KDTree} instance from items whose points have already been extracted into arrays of coordinates.
+     * The arrays are arranged into tree order in place and become the storage of the tree, unless it is quantised, so
+     * that building the tree needs no memory beyond that which it finally occupies.
+     *
+     * @param items the items to store in the index.
+     * @param xs the x-axis ordinates of the points of the items, of the same length as {@code items}.
+     * @param ys the y-axis ordinates of the points of the items, of the same length as {@code items}.
+     * @param zs the z-axis ordinates of the points of the items, of the same length as {@code items}.
+     * @param leafSize the maximum number of points to hold in a single leaf bucket.
+     * @param parallelism the number of threads to use for construction, where {@code 1} builds on the calling thread.
+     * @param quantised whether to quantise the coordinates of the points.
+     * @param <T> the type of items in the index.
+     * @return a constructed instance.
+     * @throws IllegalArgumentException if {@code leafSize} or {@code parallelism} are not positive.
+     * @see #create(List, Function, int, int, boolean)
+     */
+    @SuppressWarnings("unchecked")
+    static <T> KDTree<T> create(final Object[] items, final double[] xs, final double[] ys, final double[] zs,
+                                final int leafSize, final int parallelism, final boolean quantised) {
+        checkOptions(leafSize, parallelism);
+
+        arrange(new Construction(xs, ys, zs, items, null, leafSize), parallelism);
+        final PointStore points = quantised ? PointStore.quantised(xs, ys, zs) : PointStore.of(xs, ys, zs);
+        return new KDTree<>(points, slot -> (T) items[slot], leafSize);
+    }
+
+    /**
+     * Arrange the whole of a construction into tree order.
+     *
+     * @param construction the construction, whose coordinates have been populated.
+     * @param parallelism the number of threads to use, where {@code 1} arranges on the calling thread.
+     */
+    private static void arrange(final Construction construction, final int parallelism) {
+        final int size = construction.xs().length;
+        if (parallelism == 1 || size <= PARALLEL_THRESHOLD) {
+            construction.arrange(0, size, 0);
+        } else {
+            final ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                pool.invoke(new ArrangeTask(construction, 0, size, 0));
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Validate the options for the construction of a tree.
+     *
+     * @param leafSize the maximum number of points to hold in a single leaf bucket.
+     * @param parallelism the number of threads to use for construction.
+     * @throws IllegalArgumentException if {@code leafSize} or {@code parallelism} are not positive.
+     */
+    private static void checkOptions(final int leafSize, final int parallelism) {
+        if (leafSize < 1) {
+            throw new IllegalArgumentException("Leaf size must be positive: " + leafSize);
+        }
+
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+    }
+
+    /**
+     * Gets the number of items held in the tree.
+     *
+     * @return the number of items.
+     */
+    @Override
+    public int size() {
+        return points.size();
+    }
+
+    /**
+     * Gets the maximum number of points held in a single leaf bucket.
+     *
+     * @return the leaf size.
+     */
+    int leafSize() {
+        return leafSize;
+    }
+
+    @Override
+    public PointStore points() {
+        return points;
+    }
+
+    /**
+     * Gets the minimum ordinates of the points within each node of the tree.
+     *
+     * @return the bounds, indexed by node.
+     */
+    PointStore lowerBounds() {
+        return lowerBounds;
+    }
+
+    /**
+     * Gets the maximum ordinates of the points within each node of the tree.
+     *
+     * @return the bounds, indexed by node.
+     */
+    PointStore upperBounds() {
+        return upperBounds;
+    }
+
+    /**
+     * Calculate the number of entries needed to hold the bounds of every node of a tree, which is one more than the
+     * highest numbered node.
+     *
+     * @param size the number of points in the tree.
+     * @param leafSize the maximum number of points held in a single leaf bucket.
+     * @return the number of entries.
+     */
+    static long nodeCount(final int size, final int leafSize) {
+        return lastNode(0, size, leafSize) + 1;
+    }
+
+    /**
+     * Find the highest numbered node within a subtree.
+     *
+     * @param node the number of the subtree.
+     * @param size the number of points in the subtree.
+     * @param leafSize the maximum number of points held in a single leaf bucket.
+     * @return the highest node number.
+     */
+    private static long lastNode(final long node, final int size, final int leafSize) {
+        if (size <= leafSize) {
+            return node;
+        }
+
+        final int left = size >>> 1;
+        return Math.max(lastNode(2 * node + 1, left, leafSize), lastNode(2 * node + 2, size - left - 1, leafSize));
+    }
+
+    /**
+     * Calculate the bounds of every node of a tree.
+     *
+     * @param points the coordinates of the points in the tree, in tree order.
+     * @param leafSize the maximum number of points held in a single leaf bucket.
+     * @return the minimum x-axis, y-axis and z-axis ordinates, followed by the maximum x-axis, y-axis and z-axis
+     * ordinates, of the points within each node.
+     * @throws IllegalArgumentException if the tree has too many nodes for their bounds to be held in arrays.
+     */
+    private static double[][] calculateBounds(final PointStore points, final int leafSize) {
+        final long nodeCount = nodeCount(points.size(), leafSize);
+        if (nodeCount > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Too many nodes in tree: " + nodeCount);
+        }
+
+        // Numbers not used by any node, and nodes without any points, are left with empty bounds that nothing can
+        // intersect
+        final double[][] bounds = new double[2 * CartPoint3D.DIMENSIONS][(int) nodeCount];
+        for (int i = 0; i < bounds.length; i++) {
+            Arrays.fill(bounds[i], i < CartPoint3D.DIMENSIONS
+                    ? Double.POSITIVE_INFINITY
+                    : Double.NEGATIVE_INFINITY);
+        }
+
+        calculateBounds(points, leafSize, bounds, 0, 0, points.size());
+        return bounds;
+    }
+
+    /**
+     * Calculate the bounds of a subtree and every node within it.
+     *
+     * @param points the coordinates of the points in the tree, in tree order.
+     * @param leafSize the maximum number of points held in a single leaf bucket.
+     * @param bounds the bounds of each node, to populate.
+     * @param node the number of the subtree.
+     * @param lo the first slot of the subtree, inclusive.
+     * @param hi the last slot of the subtree, exclusive.
+     */
+    private static void calculateBounds(final PointStore points, final int leafSize, final double[][] bounds,
+                                        final int node, final int lo, final int hi) {
+        if (hi - lo <= leafSize) {
+            for (int i = lo; i < hi; i++) {
+                include(bounds, node, points.x(i), points.y(i), points.z(i));
+            }
+            return;
+        }
+
+        final int mid = (lo + hi) >>> 1;
+        calculateBounds(points, leafSize, bounds, 2 * node + 1, lo, mid);
+        calculateBounds(points, leafSize, bounds, 2 * node + 2, mid + 1, hi);
+
+        include(bounds, node, points.x(mid), points.y(mid), points.z(mid));
+        for (int child = 2 * node + 1; child <= 2 * node + 2; child++) {
+            for (int dimension = 0; dimension < CartPoint3D.DIMENSIONS; dimension++) {
+                final int upper = dimension + CartPoint3D.DIMENSIONS;
+                bounds[dimension][node] = Math.min(bounds[dimension][node], bounds[dimension][child]);
+                bounds[upper][node] = Math.max(bounds[upper][node], bounds[upper][child]);
+            }
+        }
+    }
+
+    /**
+     * Expand the bounds of a node to include the given point.
+     *
+     * @param bounds the bounds of each node.
+     * @param node the number of the node.
+     * @param x the x-axis ordinate of the point.
+     * @param y the y-axis ordinate of the point.
+     * @param z the z-axis ordinate of the point.
+     */
+    private static void include(final double[][] bounds, final int node, final double x, final double y,
+                                final double z) {
+        bounds[0][node] = Math.min(bounds[0][node], x);
+        bounds[1][node] = Math.min(bounds[1][node], y);
+        bounds[2][node] = Math.min(bounds[2][node], z);
+        bounds[3][node] = Math.max(bounds[3][node], x);
+        bounds[4][node] = Math.max(bounds[4][node], y);
+        bounds[5][node] = Math.max(bounds[5][node], z);
+    }
+
+    @Override
+    public KDTree<T> vectorised() {
+        final PointStore vectorised = points.vectorised();
+        return vectorised == points ? this : new KDTree<>(vectorised, lowerBounds, upperBounds, items, leafSize);
+    }
+
+    /**
+     * Search for the slots of the points contained by the range of the given {@link Search}, until it signals that the
+     * search should stop. The search itself allocates nothing, so a {@code Search} that is reused for many queries
+     * allows them to run without producing any garbage.
+     *
+     * @param search the range to search on and the function to invoke for each point found.
+     * @return {@code true} if the search ran to completion; or {@code false} if it was stopped.
+     */
+    @Override
+    public boolean search(final Search search) {
+        return size() == 0 || search(search, 0, 0, size());
+    }
+
+    /**
+     * Find points within the subtree covering the slots {@code [lo, hi)} that match the range of a search.
+     *
+     * @param search the range to search on and the function to invoke for each point found.
+     * @param node the number of the subtree.
+     * @param lo the first slot of the subtree, inclusive.
+     * @param hi the last slot of the subtree, exclusive.
+     * @return {@code true} if the search should continue; or {@code false} if it was stopped.
+     */
+    private boolean search(final Search search, final int node, final int lo, final int hi) {
+        final double minX = lowerBounds.x(node), minY = lowerBounds.y(node), minZ = lowerBounds.z(node);
+        final double maxX = upperBounds.x(node), maxY = upperBounds.y(node), maxZ = upperBounds.z(node);
+        if (!search.intersects(minX, minY, minZ, maxX, maxY, maxZ)) {
+            return true;
+        }
+
+        if (search.encloses(minX, minY, minZ, maxX, maxY, maxZ)) {
+            if (search.acceptNode(node, lo, hi)) {
+                return true;
+            }
+
+            for (int i = lo; i < hi; i++) {
+                if (!search.accept(i, points.x(i), points.y(i), points.z(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        if (hi - lo <= leafSize) {
+            return points.scan(search, lo, hi);
+        }
+
+        final int mid = (lo + hi) >>> 1;
+        final double x = points.x(mid), y = points.y(mid), z = points.z(mid);
+        if (search.contains(x, y, z) && !search.accept(mid, x, y, z)) {
+            return false;
+        }
+
+        return search(search, 2 * node + 1, lo, mid) && search(search, 2 * node + 2, mid + 1, hi);
+    }
+
+    @Override
+    public void expand(final SearchSpliterator<?> search, final int node, final int lo, final int hi) {
+        final double minX = lowerBounds.x(node), minY = lowerBounds.y(node), minZ = lowerBounds.z(node);
+        final double maxX = upperBounds.x(node), maxY = upperBounds.y(node), maxZ = upperBounds.z(node);
+        if (!search.intersects(minX, minY, minZ, maxX, maxY, maxZ)) {
+            return;
+        }
+
+        if (search.encloses(minX, minY, minZ, maxX, maxY, maxZ)) {
+            search.push(SearchSpliterator.TAKE, lo, hi);
+        } else if (hi - lo <= leafSize) {
+            search.push(SearchSpliterator.SCAN, lo, hi);
+        } else {
+            // Pushed in reverse of the order in which they are searched, and with the larger subtrees nearer the bottom
+            final int mid = (lo + hi) >>> 1;
+            search.push(2 * node + 2, mid + 1, hi);
+            search.push(2 * node + 1, lo, mid);
+            search.push(SearchSpliterator.SCAN, mid, mid + 1);
+        }
+    }
+
+    @Override
+    public ValueSummaries summarise(final double[] sums, final double[] mins, final double[] maxes) {
+        final ValueSummaries summaries = new ValueSummaries(sums, mins, maxes, (int) nodeCount(size(), leafSize));
+        summarise(summaries, 0, 0, size());
+        return summaries;
+    }
+
+    /**
+     * Summarise the subtree covering the slots {@code [lo, hi)}, and each of the subtrees within it.
+     *
+     * @param summaries the summaries to populate.
+     * @param node the number of the subtree.
+     * @param lo the first slot of the subtree, inclusive.
+     * @param hi the last slot of the subtree, exclusive.
+     */
+    private void summarise(final ValueSummaries summaries, final int node, final int lo, final int hi) {
+        if (hi - lo <= leafSize) {
+            summaries.summariseSlots(node, lo, hi);
+            return;
+        }
+
+        final int mid = (lo + hi) >>> 1;
+        summarise(summaries, 2 * node + 1, lo, mid);
+        summarise(summaries, 2 * node + 2, mid + 1, hi);
+        summaries.summariseNode(node, mid, 2 * node + 1, 2 * node + 2);
+    }
+
+    @Override
+    public IndexStatistics statistics() {
+        // The count of leaves, empty leaves and points in leaves, followed by the least and greatest leaf sizes and
+        // depths
+        final long[] totals = {0, 0, 0, Integer.MAX_VALUE, 0, Integer.MAX_VALUE, 0};
+        collectStatistics(totals, 0, size(), 0);
+        return new IndexStatistics(GeoPointIndex.Engine.KD_TREE,
+                                   size(),
+                                   (int) totals[0],
+                                   (int) totals[1],
+                                   (int) totals[3],
+                                   (int) totals[4],
+                                   (double) totals[2] / totals[0],
+                                   (int) totals[5],
+                                   (int) totals[6]);
+    }
+
+    /**
+     * Add the leaves of the subtree covering the slots {@code [lo, hi)} to the totals of the statistics of the tree.
+     *
+     * @param totals the count of leaves, empty leaves and points in leaves, followed by the least and greatest leaf
+     * sizes and depths.
+     * @param lo the first slot of the subtree, inclusive.
+     * @param hi the last slot of the subtree, exclusive.
+     * @param depth the depth of the subtree within the tree.
+     */
+    private void collectStatistics(final long[] totals, final int lo, final int hi, final int depth) {
+        if (hi - lo <= leafSize) {
+            totals[0]++;
+            totals[1] += hi == lo ? 1 : 0;
+            totals[2] += hi - lo;
+            totals[3] = Math.min(totals[3], hi - lo);
+            totals[4] = Math.max(totals[4], hi - lo);
+            totals[5] = Math.min(totals[5], depth);
+            totals[6] = Math.max(totals[6], depth);
+            return;
+        }
+
+        final int mid = (lo + hi) >>> 1;
+        collectStatistics(totals, lo, mid, depth + 1);
+        collectStatistics(totals, mid + 1, hi, depth + 1);
+    }
+
+    /**
+     * Find the items nearest to the given point, in order of increasing distance.
+     *
+     * @param x the x-axis ordinate of the point to search around.
+     * @param y the y-axis ordinate of the point to search around.
+     * @param z the z-axis ordinate of the point to search around.
+     * @param count the maximum number of items to find.
+     * @param maxDistanceSquared the square of the maximum straight-line distance from the point at which to find
+     * items.
+     * @return the items found.
+     */
+    @Override
+    public Neighbours nearest(final double x, final double y, final double z, final int count,
+                              final double maxDistanceSquared) {
+        return nearest(x, y, z, count, maxDistanceSquared, null);
+    }
+
+    /**
+     * Find the items nearest to the given point that satisfy a filter, in order of increasing distance.
+     *
+     * @param x the x-axis ordinate of the point to search around.
+     * @param y the y-axis ordinate of the point to search around.
+     * @param z the z-axis ordinate of the point to search around.
+     * @param count the maximum number of items to find.
+     * @param maxDistanceSquared the square of the maximum straight-line distance from the point at which to find
+     * items.
+     * @param filter a predicate that items must satisfy to be found, or {@code null} to find any item.
+     * @return the items found.
+     */
+    Neighbours nearest(final double x, final double y, final double z, final int count,
+                       final double maxDistanceSquared, final Predicate<? super T> filter) {
+        final Neighbours neighbours = new Neighbours(Math.min(count, size()), maxDistanceSquared);
+        if (size() > 0 && count > 0) {
+            nearest(x, y, z, neighbours, filter, 0, size(), 0);
+        }
+        neighbours.sort();
+        return neighbours;
+    }
+
+    /**
+     * Find the items nearest to the given point within the subtree covering the slots {@code [lo, hi)}.
+     *
+     * @param x the x-axis ordinate of the point to search around.
+     * @param y the y-axis ordinate of the point to search around.
+     * @param z the z-axis ordinate of the point to search around.
+     * @param neighbours the nearest items found so far.
+     * @param lo the first slot of the subtree, inclusive.
+     * @param hi the last slot of the subtree, exclusive.
+     * @param depth the current depth within the tree we are searching.
      */
-    private static <T> KDNode<T> createNode(final List<KDData<T>> items, final int depth) {
-        if (items.isEmpty()) {
-            return null;
+    private void nearest(final double x, final double y, final double z, final Neighbours neighbours,
+                         final Predicate<? super T> filter, final int lo, final int hi, final int depth) {
+        if (hi - lo <= leafSize) {
+            for (int i = lo; i < hi; i++) {
+                offer(neighbours, filter, i, distanceSquared(i, x, y, z));
+            }
+            return;
         }
 
-        final List<KDData<T>> sorted = new ArrayList<>(items);
-        sorted.sort(Comparator.comparing(d -> d.point().getOrdinate(depth % CartPoint3D.DIMENSIONS)));
+        final int mid = (lo + hi) >>> 1;
+        offer(neighbours, filter, mid, distanceSquared(mid, x, y, z));
 
-        final int halfwayIndex = sorted.size() / 2;
-        final KDData<T> currentData = sorted.get(halfwayIndex);
-        final KDNode<T> leftNode = createNode(sorted.subList(0, halfwayIndex), depth + 1);
-        final KDNode<T> rightNode = createNode(sorted.subList(halfwayIndex + 1, sorted.size()), depth + 1);
+        // Descend into the side of the split containing the search point first, since it is the most likely to hold
+        // the nearest items; the other side need only be visited if it could hold anything nearer than found so far
+        final int dimension = depth % CartPoint3D.DIMENSIONS;
+        final double offset = ordinate(dimension, x, y, z) - points.ordinate(dimension, mid);
 
-        return new KDNode<>(leftNode, rightNode, currentData);
+        if (offset <= 0) {
+            nearest(x, y, z, neighbours, filter, lo, mid, depth + 1);
+            if (offset * offset <= neighbours.bound()) {
+                nearest(x, y, z, neighbours, filter, mid + 1, hi, depth + 1);
+            }
+        } else {
+            nearest(x, y, z, neighbours, filter, mid + 1, hi, depth + 1);
+            if (offset * offset <= neighbours.bound()) {
+                nearest(x, y, z, neighbours, filter, lo, mid, depth + 1);
+            }
+        }
     }
 
     /**
-     * Search for all items having a {@link CartPoint3D} contained by the range described by the given
-     * {@link CartBox3D}.
+     * Consider the item at the given slot for inclusion in the nearest items found.
      *
-     * @param range the range to search on.
-     * @param callback a function to invoke for each item found.
+     * @param neighbours the nearest items found so far.
+     * @param filter a predicate that items must satisfy to be found, or {@code null} to find any item.
+     * @param slot the slot of the item within the tree.
+     * @param distanceSquared the squared straight-line distance to the item.
      */
-    void rangeSearch(final CartBox3D range, final BiConsumer<T, CartPoint3D> callback) {
-        if (root != null) {
-            root.rangeSearch(range, callback, 0);
+    private void offer(final Neighbours neighbours, final Predicate<? super T> filter, final int slot,
+                       final double distanceSquared) {
+        // Only consult the filter once we know the item would otherwise be accepted
+        if (distanceSquared <= neighbours.bound() && (filter == null || filter.test(item(slot)))) {
+            neighbours.offer(slot, distanceSquared);
         }
     }
 
     /**
-     * A single node within the tree.
+     * Prepare a join between two trees, finding every pair of points, one from each tree, within a given distance of
+     * each other.
+     * <p>
+     * Both trees are traversed together, so that each pair of subtrees whose bounds are too far apart is dismissed at
+     * once. The join is divided into tasks by splitting the left tree into up to the given number of subtrees, which
+     * may be run in any order and concurrently; the pairs found by the tasks together are every pair within the
+     * distance, each found exactly once.
      *
-     * @param left the child node on the left side, if any.
-     * @param right the child node on the right side, if any.
-     * @param data the item at this node.
-     * @param <T> the type of data in the tree.
+     * @param left the left tree.
+     * @param right the right tree.
+     * @param maxDistanceSquared the square of the maximum straight-line distance between the points of a pair.
+     * @param consumer a function to invoke for each pair found.
+     * @param partitions the number of subtrees into which to try to divide the left tree.
+     * @return the tasks which together perform the join.
      */
-    private record KDNode<T>(KDNode<T> left, KDNode<T> right, KDData<T> data) {
+    static List<Runnable> join(final KDTree<?> left, final KDTree<?> right, final double maxDistanceSquared,
+                               final PairConsumer consumer, final int partitions) {
+        final List<Runnable> tasks = new ArrayList<>();
+        if (left.size() == 0 || right.size() == 0) {
+            return tasks;
+        }
+
+        final Join join = new Join(left, right, maxDistanceSquared, consumer);
+        final int depth = 32 - Integer.numberOfLeadingZeros(Math.max(partitions, 1) - 1);
+        final List<Integer> nodePoints = new ArrayList<>();
+        left.partition(0, 0, left.size(), depth, tasks, nodePoints, join);
+        tasks.add(() -> {
+            for (final int slot : nodePoints) {
+                join.joinPoint(true, slot, 0, 0, right.size());
+            }
+        });
+        return tasks;
+    }
+
+    /**
+     * Divide a subtree of the left tree of a join into tasks covering its subtrees at a given depth, with the node
+     * points above that depth collected separately.
+     *
+     * @param node the number of the subtree.
+     * @param lo the first slot of the subtree, inclusive.
+     * @param hi the last slot of the subtree, exclusive.
+     * @param depth the number of levels further to descend before creating a task.
+     * @param tasks the tasks created, to add to.
+     * @param nodePoints the slots of the node points above the tasks, to add to.
+     * @param join the join being divided.
+     */
+    private void partition(final int node, final int lo, final int hi, final int depth, final List<Runnable> tasks,
+                           final List<Integer> nodePoints, final Join join) {
+        if (depth == 0 || hi - lo <= leafSize) {
+            tasks.add(() -> join.join(node, lo, hi, 0, 0, join.right().size()));
+            return;
+        }
+
+        final int mid = (lo + hi) >>> 1;
+        nodePoints.add(mid);
+        partition(2 * node + 1, lo, mid, depth - 1, tasks, nodePoints, join);
+        partition(2 * node + 2, mid + 1, hi, depth - 1, tasks, nodePoints, join);
+    }
+
+    /**
+     * Calculate the square of the straight-line distance between the nearest points of the bounds of two nodes.
+     *
+     * @param node the number of the node within this tree.
+     * @param other the tree of the other node.
+     * @param otherNode the number of the other node within its tree.
+     * @return the squared distance, which is zero if the bounds intersect, or infinite if either node is empty.
+     */
+    private double boundsDistanceSquared(final int node, final KDTree<?> other, final int otherNode) {
+        final double dX = Math.max(0, Math.max(lowerBounds.x(node) - other.upperBounds.x(otherNode),
+                                               other.lowerBounds.x(otherNode) - upperBounds.x(node)));
+        final double dY = Math.max(0, Math.max(lowerBounds.y(node) - other.upperBounds.y(otherNode),
+                                               other.lowerBounds.y(otherNode) - upperBounds.y(node)));
+        final double dZ = Math.max(0, Math.max(lowerBounds.z(node) - other.upperBounds.z(otherNode),
+                                               other.lowerBounds.z(otherNode) - upperBounds.z(node)));
+        return dX * dX + dY * dY + dZ * dZ;
+    }
+
+    /**
+     * Calculate the square of the straight-line distance between a point and the nearest point of the bounds of a
+     * node.
+     *
+     * @param node the number of the node.
+     * @param x the x-axis ordinate of the point.
+     * @param y the y-axis ordinate of the point.
+     * @param z the z-axis ordinate of the point.
+     * @return the squared distance, which is zero if the point is within the bounds, or infinite if the node is empty.
+     */
+    private double boundsDistanceSquared(final int node, final double x, final double y, final double z) {
+        final double dX = Math.max(0, Math.max(lowerBounds.x(node) - x, x - upperBounds.x(node)));
+        final double dY = Math.max(0, Math.max(lowerBounds.y(node) - y, y - upperBounds.y(node)));
+        final double dZ = Math.max(0, Math.max(lowerBounds.z(node) - z, z - upperBounds.z(node)));
+        return dX * dX + dY * dY + dZ * dZ;
+    }
+
+    /**
+     * Gets the item held at the given slot.
+     *
+     * @param slot the slot of the item within the tree.
+     * @return the item.
+     */
+    @Override
+    public T item(final int slot) {
+        return items.apply(slot);
+    }
+
+    /**
+     * Calculate the square of the straight-line distance between the point at the given slot and another point.
+     *
+     * @param slot the slot of the point within the tree.
+     * @param x the x-axis ordinate of the other point.
+     * @param y the y-axis ordinate of the other point.
+     * @param z the z-axis ordinate of the other point.
+     * @return the squared distance.
+     */
+    private double distanceSquared(final int slot, final double x, final double y, final double z) {
+        final double dX = points.x(slot) - x;
+        final double dY = points.y(slot) - y;
+        final double dZ = points.z(slot) - z;
+        return dX * dX + dY * dY + dZ * dZ;
+    }
+
+    /**
+     * Selects one of the given ordinates of a point by dimension.
+     *
+     * @param dimension {@code 0} for {@code x}, {@code 1} for {@code y}, {@code 2} for {@code z}.
+     * @param x the x-axis ordinate.
+     * @param y the y-axis ordinate.
+     * @param z the z-axis ordinate.
+     * @return the value of the ordinate.
+     */
+    private static double ordinate(final int dimension, final double x, final double y, final double z) {
+        return switch (dimension) {
+            case 0 -> x;
+            case 1 -> y;
+            default -> z;
+        };
+    }
+
+    /**
+     * Receives pairs of points found by a join of two trees.
+     */
+    @FunctionalInterface
+    interface PairConsumer {
 
         /**
-         * Find items that match the given range.
+         * Receive notification that a pair of points was found.
          *
-         * @param range the range to search on.
-         * @param callback the function to notify on finding a matching item.
-         * @param depth the current depth within the tree we are searching.
+         * @param leftSlot the slot of the point within the left tree.
+         * @param rightSlot the slot of the point within the right tree.
+         * @param distanceSquared the squared straight-line distance between the points.
          */
-        private void rangeSearch(final CartBox3D range, final BiConsumer<T, CartPoint3D> callback, int depth) {
-            final CartPoint3D point = data.point();
-            if (range.contains(point)) {
-                callback.accept(data.item(), point);
-            }
+        void accept(int leftSlot, int rightSlot, double distanceSquared);
+    }
 
-            final int dimension = depth % CartPoint3D.DIMENSIONS;
+    /**
+     * A join between two trees, which traverses both together to find every pair of points within a distance.
+     *
+     * @param left the left tree.
+     * @param right the right tree.
+     * @param maxDistanceSquared the square of the maximum straight-line distance between the points of a pair.
+     * @param consumer a function to invoke for each pair found.
+     */
+    private record Join(KDTree<?> left, KDTree<?> right, double maxDistanceSquared, PairConsumer consumer) {
 
-            if (left != null) {
-                final double ordinate = range.lower().getOrdinate(dimension);
-                if (ordinate <= point.getOrdinate(dimension)) {
-                    left.rangeSearch(range, callback, depth + 1);
+        /**
+         * Find the pairs between a subtree of the left tree and a subtree of the right tree.
+         *
+         * @param leftNode the number of the left subtree.
+         * @param leftLo the first slot of the left subtree, inclusive.
+         * @param leftHi the last slot of the left subtree, exclusive.
+         * @param rightNode the number of the right subtree.
+         * @param rightLo the first slot of the right subtree, inclusive.
+         * @param rightHi the last slot of the right subtree, exclusive.
+         */
+        void join(final int leftNode, final int leftLo, final int leftHi, final int rightNode, final int rightLo,
+                  final int rightHi) {
+            if (left.boundsDistanceSquared(leftNode, right, rightNode) > maxDistanceSquared) {
+                return;
+            }
+
+            final boolean leftLeaf = leftHi - leftLo <= left.leafSize;
+            final boolean rightLeaf = rightHi - rightLo <= right.leafSize;
+            if (leftLeaf && rightLeaf) {
+                for (int i = leftLo; i < leftHi; i++) {
+                    final double x = left.points.x(i), y = left.points.y(i), z = left.points.z(i);
+                    for (int j = rightLo; j < rightHi; j++) {
+                        final double distanceSquared = right.distanceSquared(j, x, y, z);
+                        if (distanceSquared <= maxDistanceSquared) {
+                            consumer.accept(i, j, distanceSquared);
+                        }
+                    }
                 }
+                return;
+            }
+
+            // Split whichever side is not a leaf, preferring the larger, into its node point and its two subtrees
+            if (rightLeaf || !leftLeaf && leftHi - leftLo >= rightHi - rightLo) {
+                final int mid = (leftLo + leftHi) >>> 1;
+                joinPoint(true, mid, rightNode, rightLo, rightHi);
+                join(2 * leftNode + 1, leftLo, mid, rightNode, rightLo, rightHi);
+                join(2 * leftNode + 2, mid + 1, leftHi, rightNode, rightLo, rightHi);
+            } else {
+                final int mid = (rightLo + rightHi) >>> 1;
+                joinPoint(false, mid, leftNode, leftLo, leftHi);
+                join(leftNode, leftLo, leftHi, 2 * rightNode + 1, rightLo, mid);
+                join(leftNode, leftLo, leftHi, 2 * rightNode + 2, mid + 1, rightHi);
+            }
+        }
+
+        /**
+         * Find the pairs between a single point of one tree and a subtree of the other.
+         *
+         * @param pointOnLeft {@code true} if the point is in the left tree and the subtree in the right; or
+         * {@code false} if the other way around.
+         * @param slot the slot of the point.
+         * @param node the number of the subtree.
+         * @param lo the first slot of the subtree, inclusive.
+         * @param hi the last slot of the subtree, exclusive.
+         */
+        void joinPoint(final boolean pointOnLeft, final int slot, final int node, final int lo, final int hi) {
+            final PointStore points = (pointOnLeft ? left : right).points;
+            joinPoint(pointOnLeft, slot, points.x(slot), points.y(slot), points.z(slot), node, lo, hi);
+        }
+
+        /**
+         * Find the pairs between a single point of one tree and a subtree of the other.
+         *
+         * @param pointOnLeft {@code true} if the point is in the left tree and the subtree in the right; or
+         * {@code false} if the other way around.
+         * @param slot the slot of the point.
+         * @param x the x-axis ordinate of the point.
+         * @param y the y-axis ordinate of the point.
+         * @param z the z-axis ordinate of the point.
+         * @param node the number of the subtree.
+         * @param lo the first slot of the subtree, inclusive.
+         * @param hi the last slot of the subtree, exclusive.
+         */
+        private void joinPoint(final boolean pointOnLeft, final int slot, final double x, final double y,
+                               final double z, final int node, final int lo, final int hi) {
+            final KDTree<?> tree = pointOnLeft ? right : left;
+            if (tree.boundsDistanceSquared(node, x, y, z) > maxDistanceSquared) {
+                return;
             }
 
-            if (right != null) {
-                final double ordinate = range.upper().getOrdinate(dimension);
-                if (ordinate >= point.getOrdinate(dimension)) {
-                    right.rangeSearch(range, callback, depth + 1);
+            if (hi - lo <= tree.leafSize) {
+                for (int i = lo; i < hi; i++) {
+                    final double distanceSquared = tree.distanceSquared(i, x, y, z);
+                    if (distanceSquared <= maxDistanceSquared) {
+                        consumer.accept(pointOnLeft ? slot : i, pointOnLeft ? i : slot, distanceSquared);
+                    }
                 }
+                return;
+            }
+
+            final int mid = (lo + hi) >>> 1;
+            final double distanceSquared = tree.distanceSquared(mid, x, y, z);
+            if (distanceSquared <= maxDistanceSquared) {
+                consumer.accept(pointOnLeft ? slot : mid, pointOnLeft ? mid : slot, distanceSquared);
             }
+            joinPoint(pointOnLeft, slot, x, y, z, 2 * node + 1, lo, mid);
+            joinPoint(pointOnLeft, slot, x, y, z, 2 * node + 2, mid + 1, hi);
         }
     }
 
     /**
-     * The data represented by a node.
-     * <p>
-     * This exists as separate from the {@link KDNode} so we can construct it ahead of time and keep the node
-     * immutable.
+     * The working state used while arranging the points of a tree into tree order during construction.
      *
-     * @param item the data item.
-     * @param point the point that characterises the item within the index.
-     * @param <T> the type of data.
+     * @param xs the x-axis ordinates of the points.
+     * @param ys the y-axis ordinates of the points.
+     * @param zs the z-axis ordinates of the points.
+     * @param items the items associated with each point, or {@code null} if the points are identified by {@code ids}.
+     * @param ids the identifiers of each point, or {@code null} if the points are identified by {@code items}.
+     * @param leafSize the maximum number of points to hold in a single leaf bucket.
      */
-    private record KDData<T>(T item, CartPoint3D point) {
+    private record Construction(double[] xs, double[] ys, double[] zs, Object[] items, long[] ids, int leafSize) {
+
+        /**
+         * Populate the coordinates of the points in the given range of slots from their items.
+         *
+         * @param extractor a function to extract a representative {@link CartPoint3D} for each item.
+         * @param lo the first slot to populate, inclusive.
+         * @param hi the last slot to populate, exclusive.
+         * @param <T> the type of items in the index.
+         */
+        @SuppressWarnings("unchecked")
+        <T> void extract(final Function<T, CartPoint3D> extractor, final int lo, final int hi) {
+            for (int i = lo; i < hi; i++) {
+                final CartPoint3D point = extractor.apply((T) items[i]);
+                xs[i] = point.x();
+                ys[i] = point.y();
+                zs[i] = point.z();
+            }
+        }
+
+        /**
+         * Recursively arrange the subtree covering the slots {@code [lo, hi)} in place into tree order.
+         *
+         * @param lo the first slot of the subtree, inclusive.
+         * @param hi the last slot of the subtree, exclusive.
+         * @param depth the zero-based depth of the current level of the tree.
+         */
+        void arrange(final int lo, final int hi, final int depth) {
+            if (hi - lo <= leafSize) {
+                return;
+            }
+
+            final int mid = split(lo, hi, depth);
+            arrange(lo, mid, depth + 1);
+            arrange(mid + 1, hi, depth + 1);
+        }
+
+        /**
+         * Partition the subtree covering the slots {@code [lo, hi)} around its median on the splitting dimension for
+         * the given depth.
+         *
+         * @param lo the first slot of the subtree, inclusive.
+         * @param hi the last slot of the subtree, exclusive.
+         * @param depth the zero-based depth of the subtree within the tree.
+         * @return the slot holding the median, which becomes the node point of the subtree.
+         */
+        int split(final int lo, final int hi, final int depth) {
+            final int mid = (lo + hi) >>> 1;
+            select(coordinates(depth % CartPoint3D.DIMENSIONS), lo, hi, mid);
+            return mid;
+        }
+
+        /**
+         * Rearrange the slots {@code [lo, hi)} such that slot {@code k} holds the point that would be there if the
+         * range were sorted on the given ordinates, with no greater point before it and no lesser point after it.
+         * <p>
+         * This is a quickselect using a median-of-three pivot, which runs in expected linear time and, having no
+         * random element, always produces the same arrangement for the same input.
+         *
+         * @param ordinates the ordinates on which to select.
+         * @param lo the first slot of the range, inclusive.
+         * @param hi the last slot of the range, exclusive.
+         * @param k the slot to select for.
+         */
+        private void select(final double[] ordinates, int lo, int hi, final int k) {
+            while (hi - lo > 1) {
+                final double pivot = medianOfThree(ordinates[lo], ordinates[(lo + hi) >>> 1], ordinates[hi - 1]);
+
+                int i = lo;
+                int j = hi - 1;
+                while (i <= j) {
+                    while (ordinates[i] < pivot) {
+                        i++;
+                    }
+                    while (ordinates[j] > pivot) {
+                        j--;
+                    }
+                    if (i <= j) {
+                        swap(i++, j--);
+                    }
+                }
+
+                // Slots [lo, j] are now <= pivot, [i, hi) are >= pivot, and any in between are equal to it
+                if (k <= j) {
+                    hi = j + 1;
+                } else if (k >= i) {
+                    lo = i;
+                } else {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Gets the ordinates of all points on the given dimension.
+         *
+         * @param dimension {@code 0} for {@code x}, {@code 1} for {@code y}, {@code 2} for {@code z}.
+         * @return the ordinate array.
+         */
+        private double[] coordinates(final int dimension) {
+            return switch (dimension) {
+                case 0 -> xs;
+                case 1 -> ys;
+                default -> zs;
+            };
+        }
+
+        /**
+         * Exchange the points and items or identifiers held in two slots.
+         *
+         * @param a the first slot.
+         * @param b the second slot.
+         */
+        private void swap(final int a, final int b) {
+            final double x = xs[a], y = ys[a], z = zs[a];
+            xs[a] = xs[b];
+            ys[a] = ys[b];
+            zs[a] = zs[b];
+            xs[b] = x;
+            ys[b] = y;
+            zs[b] = z;
+
+            if (items != null) {
+                final Object item = items[a];
+                items[a] = items[b];
+                items[b] = item;
+            } else {
+                final long id = ids[a];
+                ids[a] = ids[b];
+                ids[b] = id;
+            }
+        }
+
+        /**
+         * Gets the median of three values.
+         *
+         * @param a the first value.
+         * @param b the second value.
+         * @param c the third value.
+         * @return the value that is neither the least nor the greatest.
+         */
+        private static double medianOfThree(final double a, final double b, final double c) {
+            return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+        }
+    }
+
+    /** A task to arrange a subtree into tree order, splitting its children into parallel tasks where large enough. */
+    @SuppressWarnings("serial") // Tasks are never serialised
+    private static final class ArrangeTask extends RecursiveAction {
+
+        /** The working state of the tree being constructed. */
+        private final Construction construction;
+
+        /** The first slot of the subtree, inclusive. */
+        private final int lo;
+
+        /** The last slot of the subtree, exclusive. */
+        private final int hi;
+
+        /** The zero-based depth of the subtree within the tree. */
+        private final int depth;
+
+        /**
+         * Default constructor.
+         *
+         * @param construction the working state of the tree being constructed.
+         * @param lo the first slot of the subtree, inclusive.
+         * @param hi the last slot of the subtree, exclusive.
+         * @param depth the zero-based depth of the subtree within the tree.
+         */
+        private ArrangeTask(final Construction construction, final int lo, final int hi, final int depth) {
+            this.construction = construction;
+            this.lo = lo;
+            this.hi = hi;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= PARALLEL_THRESHOLD) {
+                construction.arrange(lo, hi, depth);
+            } else {
+                final int mid = construction.split(lo, hi, depth);
+                invokeAll(new ArrangeTask(construction, lo, mid, depth + 1),
+                          new ArrangeTask(construction, mid + 1, hi, depth + 1));
+            }
+        }
     }
 }
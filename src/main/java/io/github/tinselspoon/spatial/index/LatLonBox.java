@@ -0,0 +1,155 @@
+package io.github.tinselspoon.spatial.index;
+
+/**
+ * A region of the surface of the unit sphere bounded by a pair of parallels and a pair of meridians, being everything
+ * between a minimum and a maximum latitude and longitude.
+ * <p>
+ * On the unit sphere the band of latitudes is exactly a slab of the z-axis, and each bounding meridian is a plane
+ * through the z-axis, so the box can be tested without any trigonometry. Points lying exactly on the boundary may fall
+ * on either side of it due to rounding.
+ */
+final class LatLonBox implements Region {
+
+    /** The amount by which the coarse range is expanded so as not to exclude points on the boundary due to rounding. */
+    private static final double PADDING = 1E-9;
+
+    /** The minimum z-axis ordinate, being the sine of the minimum latitude. */
+    private final double minZ;
+
+    /** The maximum z-axis ordinate, being the sine of the maximum latitude. */
+    private final double maxZ;
+
+    /** The x-axis component of the normal of the plane of the minimum meridian, pointing into the box. */
+    private final double westNormalX;
+
+    /** The y-axis component of the normal of the plane of the minimum meridian, pointing into the box. */
+    private final double westNormalY;
+
+    /** The x-axis component of the normal of the plane of the maximum meridian, pointing into the box. */
+    private final double eastNormalX;
+
+    /** The y-axis component of the normal of the plane of the maximum meridian, pointing into the box. */
+    private final double eastNormalY;
+
+    /** Whether the box spans more than half of all longitudes, such that it is the union of the half-spaces. */
+    private final boolean wide;
+
+    /** Whether the box spans all longitudes, such that only the latitude need be tested. */
+    private final boolean global;
+
+    /** The minimum longitude in degrees. */
+    private final double minLongitude;
+
+    /** The span of longitudes in degrees, from the minimum eastwards to the maximum. */
+    private final double longitudeSpan;
+
+    /** The minimum latitude in degrees. */
+    private final double minLatitude;
+
+    /** The maximum latitude in degrees. */
+    private final double maxLatitude;
+
+    /**
+     * Construct a new instance. Where the minimum longitude is greater than the maximum, the box crosses the
+     * antimeridian.
+     *
+     * @param minLatitude the minimum latitude in degrees, [-90, +90].
+     * @param minLongitude the minimum (western) longitude in degrees, [-180, +180].
+     * @param maxLatitude the maximum latitude in degrees, [-90, +90].
+     * @param maxLongitude the maximum (eastern) longitude in degrees, [-180, +180].
+     * @throws IllegalArgumentException if any coordinate is out of range, or the minimum latitude is greater than the
+     * maximum.
+     */
+    LatLonBox(final double minLatitude, final double minLongitude, final double maxLatitude,
+              final double maxLongitude) {
+        CartPoint3D.checkLatLon(minLatitude, minLongitude);
+        CartPoint3D.checkLatLon(maxLatitude, maxLongitude);
+        if (minLatitude > maxLatitude) {
+            throw new IllegalArgumentException("Minimum latitude " + minLatitude + " is greater than maximum latitude "
+                                                       + maxLatitude);
+        }
+
+        this.minLatitude = minLatitude;
+        this.maxLatitude = maxLatitude;
+        this.minLongitude = minLongitude;
+        longitudeSpan = maxLongitude >= minLongitude ? maxLongitude - minLongitude : maxLongitude + 360 - minLongitude;
+        global = longitudeSpan >= 360;
+        wide = longitudeSpan > 180;
+
+        minZ = Math.sin(Math.toRadians(minLatitude));
+        maxZ = Math.sin(Math.toRadians(maxLatitude));
+
+        final double west = Math.toRadians(minLongitude);
+        final double east = Math.toRadians(maxLongitude);
+        westNormalX = -Math.sin(west);
+        westNormalY = Math.cos(west);
+        eastNormalX = Math.sin(east);
+        eastNormalY = -Math.cos(east);
+    }
+
+    @Override
+    public void bound(final Search search, final double tolerance) {
+        // Find the extremes of the cosine of the latitude, and the cosine and sine of the longitude, across the box;
+        // each is at one of the edges, unless the box contains the angle at which it peaks
+        final double cosMinLatitude = Math.cos(Math.toRadians(minLatitude));
+        final double cosMaxLatitude = Math.cos(Math.toRadians(maxLatitude));
+        final double maxCosLatitude = minLatitude <= 0 && maxLatitude >= 0
+                ? 1
+                : Math.max(cosMinLatitude, cosMaxLatitude);
+        final double minCosLatitude = Math.min(cosMinLatitude, cosMaxLatitude);
+
+        final double west = Math.toRadians(minLongitude);
+        final double east = Math.toRadians(minLongitude + longitudeSpan);
+        final double maxCosLongitude = containsLongitude(0) ? 1 : Math.max(Math.cos(west), Math.cos(east));
+        final double minCosLongitude = containsLongitude(180) ? -1 : Math.min(Math.cos(west), Math.cos(east));
+        final double maxSinLongitude = containsLongitude(90) ? 1 : Math.max(Math.sin(west), Math.sin(east));
+        final double minSinLongitude = containsLongitude(-90) ? -1 : Math.min(Math.sin(west), Math.sin(east));
+
+        final double padding = PADDING + tolerance;
+        search.setRange(extreme(minCosLongitude, minCosLatitude, maxCosLatitude) - padding,
+                        extreme(minSinLongitude, minCosLatitude, maxCosLatitude) - padding,
+                        minZ - padding,
+                        extreme(maxCosLongitude, maxCosLatitude, minCosLatitude) + padding,
+                        extreme(maxSinLongitude, maxCosLatitude, minCosLatitude) + padding,
+                        maxZ + padding);
+    }
+
+    @Override
+    public boolean contains(final double x, final double y, final double z) {
+        if (!(z >= minZ && z <= maxZ)) {
+            return false;
+        }
+
+        if (global) {
+            return true;
+        }
+
+        final boolean eastOfWest = westNormalX * x + westNormalY * y >= 0;
+        final boolean westOfEast = eastNormalX * x + eastNormalY * y >= 0;
+        return wide ? eastOfWest || westOfEast : eastOfWest && westOfEast;
+    }
+
+    /**
+     * Determines whether the box includes the given longitude.
+     *
+     * @param longitude the longitude in degrees, [-180, +180].
+     * @return {@code true} if the longitude is within the box; otherwise, {@code false}.
+     */
+    private boolean containsLongitude(final double longitude) {
+        final double offset = (longitude - minLongitude) % 360;
+        return (offset < 0 ? offset + 360 : offset) <= longitudeSpan;
+    }
+
+    /**
+     * Calculate an extreme of the product of a trigonometric function of the longitude with the cosine of the latitude.
+     *
+     * @param longitudeFactor the extreme of the function of the longitude.
+     * @param positiveFactor the extreme of the cosine of the latitude to use if {@code longitudeFactor} is positive.
+     * @param negativeFactor the extreme of the cosine of the latitude to use if {@code longitudeFactor} is negative.
+     * @return the product.
+     */
+    private static double extreme(final double longitudeFactor, final double positiveFactor,
+                                  final double negativeFactor) {
+        return longitudeFactor * (longitudeFactor >= 0 ? positiveFactor : negativeFactor);
+    }
+}
@@ -0,0 +1,238 @@
+package io.github.tinselspoon.spatial.index;
+
+import lombok.NonNull;
+
+/**
+ * A spatial index of geographic WGS84 latitude-longitude points that are each identified by a {@code long}, such as the
+ * primary key of a row in a database. Provides functionality to query the index to find the points that are within a
+ * specified distance to a given search point.
+ * <p>
+ * This is the equivalent of a {@link GeoPointIndex} for data held in columnar arrays rather than as objects. No object
+ * is created for any point either to build the index or to query it, so each point occupies little more memory than
+ * its coordinates and identifier. The index is immutable once constructed.
+ */
+public final class LongGeoPointIndex {
+
+    /** The underlying k-d tree that backs this index, which holds no items. */
+    private final KDTree<Void> tree;
+
+    /** The identifier of the point at each slot of the tree. */
+    private final long[] ids;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param tree the underlying k-d tree that backs this index.
+     * @param ids the identifier of the point at each slot of the tree.
+     */
+    private LongGeoPointIndex(final KDTree<Void> tree, final long[] ids) {
+        this.tree = tree;
+        this.ids = ids;
+    }
+
+    /**
+     * Construct a new {@code LongGeoPointIndex} that contains the specified points, building on the calling thread.
+     *
+     * @param ids the identifiers of the points.
+     * @param latitudes the latitudes of the points, of the same length as {@code ids}. Each must be between -90 and
+     * +90.
+     * @param longitudes the longitudes of the points, of the same length as {@code ids}. Each must be between -180 and
+     * +180.
+     * @return a new spatial index.
+     * @throws IllegalArgumentException if the arrays are of differing lengths, or any point is invalid.
+     */
+    public static LongGeoPointIndex build(@NonNull final long[] ids, @NonNull final double[] latitudes,
+                                          @NonNull final double[] longitudes) {
+        return build(ids, latitudes, longitudes, 1);
+    }
+
+    /**
+     * Construct a new {@code LongGeoPointIndex} that contains the specified points, using multiple threads. The
+     * resulting index is the same regardless of the number of threads used. The given arrays are not modified or
+     * retained.
+     *
+     * @param ids the identifiers of the points.
+     * @param latitudes the latitudes of the points, of the same length as {@code ids}. Each must be between -90 and
+     * +90.
+     * @param longitudes the longitudes of the points, of the same length as {@code ids}. Each must be between -180 and
+     * +180.
+     * @param parallelism the number of threads to use, where {@code 1} builds on the calling thread.
+     * @return a new spatial index.
+     * @throws IllegalArgumentException if the arrays are of differing lengths, any point is invalid, or
+     * {@code parallelism} is not positive.
+     */
+    public static LongGeoPointIndex build(@NonNull final long[] ids, @NonNull final double[] latitudes,
+                                          @NonNull final double[] longitudes, final int parallelism) {
+        if (latitudes.length != ids.length) {
+            throw new IllegalArgumentException("Latitudes length " + latitudes.length + " does not match ids length "
+                                                       + ids.length);
+        }
+
+        if (longitudes.length != ids.length) {
+            throw new IllegalArgumentException("Longitudes length " + longitudes.length
+                                                       + " does not match ids length " + ids.length);
+        }
+
+        final int size = ids.length;
+        final double[] xs = new double[size];
+        final double[] ys = new double[size];
+        final double[] zs = new double[size];
+        final double[] point = new double[CartPoint3D.DIMENSIONS];
+        for (int i = 0; i < size; i++) {
+            CartPoint3D.fromLatLon(latitudes[i], longitudes[i], point);
+            xs[i] = point[0];
+            ys[i] = point[1];
+            zs[i] = point[2];
+        }
+
+        final long[] treeIds = ids.clone();
+        return new LongGeoPointIndex(KDTree.create(xs, ys, zs, treeIds, KDTree.DEFAULT_LEAF_SIZE, parallelism),
+                                     treeIds);
+    }
+
+    /**
+     * Gets the number of points contained in the index.
+     *
+     * @return the number of points.
+     */
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * Find all points contained in the index that are within the given great circle distance of the specified point.
+     *
+     * @param latitude the latitude of the point to search around.
+     * @param longitude the longitude of the point to search around.
+     * @param distanceMeters the distance in meters around the point for which to return points.
+     * @param consumer a function that will be called upon finding each suitable point.
+     * @return {@code true} if any points were found; otherwise, {@code false}.
+     * @throws IllegalArgumentException if the point is invalid.
+     */
+    public boolean queryWithinDistance(final double latitude, final double longitude, final double distanceMeters,
+                                       @NonNull final WithinDistanceConsumer consumer) {
+        final WithinDistanceSearch search = WithinDistanceSearch.acquire(this);
+        try {
+            search.consumer = consumer;
+            return search.run(latitude, longitude, distanceMeters) > 0;
+        } finally {
+            search.release();
+        }
+    }
+
+    /**
+     * Determine whether there are any points contained in the index within the given great circle distance of the
+     * specified point. The search stops as soon as one is found.
+     *
+     * @param latitude the latitude of the point to search around.
+     * @param longitude the longitude of the point to search around.
+     * @param distanceMeters the distance in meters around the point in which to look for points.
+     * @return {@code true} if any points were found; otherwise, {@code false}.
+     * @throws IllegalArgumentException if the point is invalid.
+     */
+    public boolean anyWithinDistance(final double latitude, final double longitude, final double distanceMeters) {
+        final WithinDistanceSearch search = WithinDistanceSearch.acquire(this);
+        try {
+            return search.run(latitude, longitude, distanceMeters) > 0;
+        } finally {
+            search.release();
+        }
+    }
+
+    /**
+     * A distance query on the index, reused by each thread so that queries allocate nothing.
+     *
+     * @see GeoPointIndex
+     */
+    private static final class WithinDistanceSearch extends DistanceSearch {
+
+        /** The instance reused by each thread. */
+        private static final ThreadLocal<WithinDistanceSearch> CURRENT =
+                ThreadLocal.withInitial(WithinDistanceSearch::new);
+
+        /** The index being searched. */
+        private LongGeoPointIndex index;
+
+        /** The number of points found so far. */
+        private int found;
+
+        /** The function to call for each point found, or {@code null} to stop at the first. */
+        private WithinDistanceConsumer consumer;
+
+        /** Whether the instance is being used by a query. */
+        private boolean inUse;
+
+        /**
+         * Obtain an instance for the calling thread to run queries with, which must be released once they are done.
+         *
+         * @param index the index to search.
+         * @return an instance with no function set.
+         */
+        static WithinDistanceSearch acquire(final LongGeoPointIndex index) {
+            WithinDistanceSearch search = CURRENT.get();
+            if (search.inUse) {
+                // A query is being made from within the function of another on the same thread, so it cannot share
+                // the state of that query
+                search = new WithinDistanceSearch();
+            }
+
+            search.inUse = true;
+            search.index = index;
+            return search;
+        }
+
+        /** Release the instance so that it may be acquired again, without retaining anything from the query. */
+        void release() {
+            index = null;
+            consumer = null;
+            inUse = false;
+        }
+
+        /**
+         * Run a query around the given point.
+         *
+         * @param latitude the latitude of the point to search around.
+         * @param longitude the longitude of the point to search around.
+         * @param distanceMeters the distance in meters around the point for which to find points.
+         * @return the number of points found.
+         * @throws IllegalArgumentException if the point is invalid.
+         */
+        int run(final double latitude, final double longitude, final double distanceMeters) {
+            found = 0;
+
+            // The tree holds its points exactly, so neither sphere need allow for any tolerance
+            setDistance(latitude, longitude, distanceMeters, DistanceSearch.searchRadius(distanceMeters, 0),
+                        DistanceSearch.certainRadius(distanceMeters, 0));
+            index.tree.search(this);
+            return found;
+        }
+
+        @Override
+        boolean accept(final int slot, final double x, final double y, final double z) {
+            if (!withinDistance(slot, x, y, z)) {
+                return true;
+            }
+
+            found++;
+            if (consumer == null) {
+                return false;
+            }
+
+            consumer.accept(index.ids[slot], lastDistanceMeters(slot));
+            return true;
+        }
+    }
+
+    /** Defines a function to iteratively receive the results of a distance query on the index. */
+    @FunctionalInterface
+    public interface WithinDistanceConsumer {
+
+        /**
+         * Receive notification that a given point was located in the index.
+         *
+         * @param id the identifier of the point that was found.
+         * @param distanceMeters the great circle distance in meters from the search point to the point found.
+         */
+        void accept(long id, double distanceMeters);
+    }
+}
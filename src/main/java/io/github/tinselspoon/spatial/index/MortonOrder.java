@@ -0,0 +1,81 @@
+package io.github.tinselspoon.spatial.index;
+
+import java.util.Arrays;
+
+/**
+ * Orders points on the unit sphere along a Morton (Z-order) space-filling curve, so that points close together in
+ * space tend to be close together in the ordering.
+ */
+final class MortonOrder {
+
+    /** The number of bits to which each ordinate is quantised. */
+    private static final int BITS_PER_DIMENSION = 10;
+
+    /** The largest quantised ordinate value. */
+    private static final int MAX_QUANTISED = (1 << BITS_PER_DIMENSION) - 1;
+
+    /** Prevent instantiation. */
+    private MortonOrder() {
+    }
+
+    /**
+     * Determine the order in which the given points occur along the curve.
+     *
+     * @param xs the x-axis ordinates of the points, each in [-1, 1].
+     * @param ys the y-axis ordinates of the points, each in [-1, 1].
+     * @param zs the z-axis ordinates of the points, each in [-1, 1].
+     * @return the indices of the points in curve order. Points sharing a position on the curve retain their relative
+     * order.
+     */
+    static int[] sort(final double[] xs, final double[] ys, final double[] zs) {
+        // The curve position occupies the upper bits and the index the lower, so a plain sort orders on both at once
+        final long[] keys = new long[xs.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = ((long) code(xs[i], ys[i], zs[i]) << Integer.SIZE) | i;
+        }
+        Arrays.sort(keys);
+
+        final int[] order = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            order[i] = (int) keys[i];
+        }
+        return order;
+    }
+
+    /**
+     * Calculate the position of a point along the curve.
+     *
+     * @param x the x-axis ordinate, [-1, 1].
+     * @param y the y-axis ordinate, [-1, 1].
+     * @param z the z-axis ordinate, [-1, 1].
+     * @return the curve position, interleaving the bits of the quantised ordinates.
+     */
+    static int code(final double x, final double y, final double z) {
+        return spread(quantise(x)) | spread(quantise(y)) << 1 | spread(quantise(z)) << 2;
+    }
+
+    /**
+     * Map an ordinate on the unit sphere to an unsigned integer range.
+     *
+     * @param ordinate the ordinate, [-1, 1].
+     * @return the quantised value.
+     */
+    private static int quantise(final double ordinate) {
+        final int value = (int) ((ordinate + 1) / 2 * MAX_QUANTISED);
+        return Math.max(0, Math.min(MAX_QUANTISED, value));
+    }
+
+    /**
+     * Spread the lower bits of a value out such that there are two zero bits between each.
+     *
+     * @param value the value to spread.
+     * @return the spread value.
+     */
+    private static int spread(int value) {
+        value = (value | value << 16) & 0x030000FF;
+        value = (value | value << 8) & 0x0300F00F;
+        value = (value | value << 4) & 0x030C30C3;
+        value = (value | value << 2) & 0x09249249;
+        return value;
+    }
+}
@@ -0,0 +1,616 @@
+package io.github.tinselspoon.spatial.index;
+
+import io.github.tinselspoon.spatial.index.GeoPointIndex.Match;
+import io.github.tinselspoon.spatial.index.GeoPointIndex.WithinDistanceConsumer;
+import lombok.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * A spatial index for data items that can each be represented as geographic WGS84 latitude-longitude points, which
+ * unlike {@link GeoPointIndex} can be modified after construction by adding, removing and updating items.
+ * <p>
+ * Items are held in a forest of immutable k-d trees of geometrically increasing size, along with a small buffer of
+ * recently added items. Adding an item places it in the buffer, and once the buffer is full it is merged with the
+ * smaller trees into a new tree, so that each item is rebuilt only a logarithmic number of times. Removed items are
+ * marked as such and left in place until their tree is next rebuilt, or until they make up more than half of the
+ * index, at which point the whole index is rebuilt.
+ * <p>
+ * Queries are never blocked by modifications. Each query runs against the consistent snapshot of the index that was
+ * current when the query began, and does not observe modifications made while it is running. Modifications are
+ * serialised with respect to each other.
+ * <p>
+ * Items are identified by their {@link Object#equals(Object) equality}, and so each item may only be present in the
+ * index once. Items should not be modified in a way that changes their equality or location while in the index; to
+ * change the location of an item, use {@link #update(Object)} after it has been changed, provided its equality remains
+ * the same.
+ * <p>
+ * The same limitations as {@link GeoPointIndex} apply regarding the accuracy of distance calculations.
+ *
+ * @param <T> the type of items contained within the index.
+ */
+public class MutableGeoPointIndex<T> {
+
+    /** The number of items the buffer holds before it is merged into the trees. */
+    private static final int BUFFER_CAPACITY = 64;
+
+    /** The fewest removed items that will cause the whole index to be rebuilt. */
+    private static final int MIN_REBUILD_REMOVED = BUFFER_CAPACITY;
+
+    /** A function that will extract the latitude value from each of the items. */
+    private final ToDoubleFunction<T> latitudeExtractor;
+
+    /** A function that will extract the longitude value from each of the items. */
+    private final ToDoubleFunction<T> longitudeExtractor;
+
+    /** The lock held while modifying the index. */
+    private final Object writeLock = new Object();
+
+    /** The entries for each item currently in the index, guarded by {@link #writeLock}. */
+    private final Map<T, Entry<T>> entries = new HashMap<>();
+
+    /** The number of removed entries still held within the snapshot, guarded by {@link #writeLock}. */
+    private int removedCount;
+
+    /** The current state of the index, against which queries are run. */
+    private volatile Snapshot<T> snapshot = new Snapshot<>(0, newLevels(0), emptyBuffer(), 0);
+
+    /**
+     * Construct a new instance.
+     *
+     * @param latitudeExtractor a function that will extract the latitude value from each of the items.
+     * @param longitudeExtractor a function that will extract the longitude value from each of the items.
+     */
+    private MutableGeoPointIndex(final ToDoubleFunction<T> latitudeExtractor,
+                                 final ToDoubleFunction<T> longitudeExtractor) {
+        this.latitudeExtractor = latitudeExtractor;
+        this.longitudeExtractor = longitudeExtractor;
+    }
+
+    /**
+     * Construct a new, empty {@code MutableGeoPointIndex}.
+     *
+     * @param latitudeExtractor a function that will extract the latitude value from each of the items. This must
+     * provide a value between -90 and +90.
+     * @param longitudeExtractor a function that will extract the longitude value from each of the items, This must
+     * provide a value between -180 and +180.
+     * @param <T> the type of items in the index.
+     * @return a new spatial index.
+     */
+    public static <T> MutableGeoPointIndex<T> create(@NonNull final ToDoubleFunction<T> latitudeExtractor,
+                                                     @NonNull final ToDoubleFunction<T> longitudeExtractor) {
+        return new MutableGeoPointIndex<>(latitudeExtractor, longitudeExtractor);
+    }
+
+    /**
+     * Gets the number of items in the index.
+     *
+     * @return the number of items.
+     */
+    public int size() {
+        return snapshot.size();
+    }
+
+    /**
+     * Add an item to the index.
+     *
+     * @param item the item to add.
+     * @return {@code true} if the item was added; or {@code false} if it was already present, in which case the index
+     * is unchanged.
+     * @throws IllegalArgumentException if the location of the item is invalid.
+     */
+    public boolean add(@NonNull final T item) {
+        synchronized (writeLock) {
+            if (entries.containsKey(item)) {
+                return false;
+            }
+
+            final Entry<T> entry = createEntry(item);
+            entries.put(item, entry);
+            commit(List.of(entry));
+            return true;
+        }
+    }
+
+    /**
+     * Add many items to the index at once, which is more efficient than adding each individually.
+     *
+     * @param items the items to add. Any that are already present are ignored.
+     * @throws IllegalArgumentException if the location of any item is invalid, in which case the index is unchanged.
+     */
+    public void addAll(@NonNull final Collection<? extends T> items) {
+        synchronized (writeLock) {
+            final List<Entry<T>> added = new ArrayList<>(items.size());
+            final Map<T, Entry<T>> pending = new HashMap<>();
+            for (final T item : items) {
+                if (!entries.containsKey(item) && !pending.containsKey(item)) {
+                    final Entry<T> entry = createEntry(item);
+                    pending.put(item, entry);
+                    added.add(entry);
+                }
+            }
+
+            if (!added.isEmpty()) {
+                entries.putAll(pending);
+                commit(added);
+            }
+        }
+    }
+
+    /**
+     * Remove an item from the index.
+     *
+     * @param item the item to remove.
+     * @return {@code true} if the item was removed; or {@code false} if it was not present.
+     */
+    public boolean remove(@NonNull final T item) {
+        synchronized (writeLock) {
+            final Entry<T> entry = entries.remove(item);
+            if (entry == null) {
+                return false;
+            }
+
+            markRemoved(entry);
+            commit(List.of());
+            return true;
+        }
+    }
+
+    /**
+     * Update the location of an item in the index, such as after it has been modified, or add it if it is not already
+     * present.
+     *
+     * @param item the item to update.
+     * @return {@code true} if the item was already present; or {@code false} if it was added.
+     * @throws IllegalArgumentException if the location of the item is invalid, in which case the index is unchanged.
+     */
+    public boolean update(@NonNull final T item) {
+        synchronized (writeLock) {
+            // Create the new entry first, so that if the location is invalid we fail without removing the item
+            final Entry<T> entry = createEntry(item);
+            final Entry<T> previous = entries.put(item, entry);
+            if (previous != null) {
+                markRemoved(previous);
+            }
+
+            commit(List.of(entry));
+            return previous != null;
+        }
+    }
+
+    /**
+     * Find all items contained in the index that are within the given great circle distance of the specified point.
+     *
+     * @param latitude the latitude of the point to search around.
+     * @param longitude the longitude of the point to search around.
+     * @param distanceMeters the distance in meters around the point for which to return items.
+     * @param consumer a function that will be called upon finding each suitable item.
+     * @return {@code true} if any items were found; otherwise, {@code false}.
+     * @see GeoPointIndex#queryWithinDistance(double, double, double, WithinDistanceConsumer)
+     */
+    public boolean queryWithinDistance(final double latitude, final double longitude, final double distanceMeters,
+                                       @NonNull final WithinDistanceConsumer<T> consumer) {
+        final WithinDistanceSearch<T> search = WithinDistanceSearch.acquire(consumer);
+        try {
+            return search.run(snapshot, latitude, longitude, distanceMeters);
+        } finally {
+            search.release();
+        }
+    }
+
+    /**
+     * Find the items contained in the index that are nearest to the specified point.
+     *
+     * @param latitude the latitude of the point to search around.
+     * @param longitude the longitude of the point to search around.
+     * @param count the maximum number of items to return.
+     * @return the nearest items, in order of increasing great circle distance from the point.
+     * @throws IllegalArgumentException if {@code count} is not positive.
+     * @see GeoPointIndex#queryNearest(double, double, int)
+     */
+    public List<Match<T>> queryNearest(final double latitude, final double longitude, final int count) {
+        return queryNearest(latitude, longitude, count, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Find the items contained in the index that are nearest to the specified point, up to a maximum distance.
+     *
+     * @param latitude the latitude of the point to search around.
+     * @param longitude the longitude of the point to search around.
+     * @param count the maximum number of items to return.
+     * @param maxDistanceMeters the great circle distance in meters from the point beyond which items will not be
+     * returned.
+     * @return the nearest items, in order of increasing great circle distance from the point.
+     * @throws IllegalArgumentException if {@code count} is not positive.
+     * @see GeoPointIndex#queryNearest(double, double, int, double)
+     */
+    public List<Match<T>> queryNearest(final double latitude, final double longitude, final int count,
+                                       final double maxDistanceMeters) {
+        if (count < 1) {
+            throw new IllegalArgumentException("Count must be positive: " + count);
+        }
+
+        final CartPoint3D searchPoint = CartPoint3D.fromLatLon(latitude, longitude);
+        final double maxChord = DistanceSearch.searchRadius(maxDistanceMeters, 0);
+        final Snapshot<T> current = snapshot;
+        final long version = current.version();
+
+        // Find the nearest items in each tree independently, then take the nearest of those overall
+        final List<Match<T>> candidates = new ArrayList<>();
+        for (final KDTree<Entry<T>> level : current.levels()) {
+            if (level != null) {
+                final Neighbours neighbours = level.nearest(searchPoint.x(),
+                                                            searchPoint.y(),
+                                                            searchPoint.z(),
+                                                            count,
+                                                            maxChord * maxChord,
+                                                            entry -> entry.isPresentAt(version));
+                for (int i = 0; i < neighbours.size(); i++) {
+                    final double distanceToSearchPoint = CartPoint3D.arcMeters(Math.sqrt(neighbours.distanceSquared(
+                            i)));
+                    candidates.add(new Match<>(level.item(neighbours.slot(i)).item(), distanceToSearchPoint));
+                }
+            }
+        }
+
+        for (final Entry<T> entry : current.buffer()) {
+            if (entry.isPresentAt(version)) {
+                candidates.add(new Match<>(entry.item(), searchPoint.distanceMeters(entry.point())));
+            }
+        }
+
+        return candidates.stream()
+                         .filter(m -> m.distanceMeters() <= maxDistanceMeters)
+                         .sorted(Comparator.comparingDouble(Match::distanceMeters))
+                         .limit(count)
+                         .toList();
+    }
+
+    /**
+     * Create the entry representing an item in the index.
+     *
+     * @param item the item.
+     * @return the entry.
+     * @throws IllegalArgumentException if the location of the item is invalid.
+     */
+    private Entry<T> createEntry(final T item) {
+        return new Entry<>(item,
+                           CartPoint3D.fromLatLon(latitudeExtractor.applyAsDouble(item),
+                                                  longitudeExtractor.applyAsDouble(item)));
+    }
+
+    /**
+     * Record that an entry has been removed as of the next version of the index.
+     *
+     * @param entry the entry.
+     */
+    private void markRemoved(final Entry<T> entry) {
+        entry.removedVersion = snapshot.version() + 1;
+        removedCount++;
+    }
+
+    /**
+     * Publish the next version of the index, with the given entries added to it and any entries marked as removed
+     * since the last version removed from it.
+     *
+     * @param added the entries to add.
+     */
+    private void commit(final List<Entry<T>> added) {
+        final long version = snapshot.version() + 1;
+        if (removedCount >= MIN_REBUILD_REMOVED && removedCount > entries.size()) {
+            rebuild(version);
+        } else {
+            publish(version, added);
+        }
+    }
+
+    /**
+     * Publish a new snapshot with the given entries added to it, merging the buffer into the trees if it has
+     * overflowed.
+     *
+     * @param version the version of the new snapshot.
+     * @param added the entries to add.
+     */
+    private void publish(final long version, final List<Entry<T>> added) {
+        final KDTree<Entry<T>>[] levels = snapshot.levels();
+        final Entry<T>[] buffer = snapshot.buffer();
+        if (buffer.length + added.size() <= BUFFER_CAPACITY) {
+            final Entry<T>[] newBuffer = Arrays.copyOf(buffer, buffer.length + added.size());
+            for (int i = 0; i < added.size(); i++) {
+                newBuffer[buffer.length + i] = added.get(i);
+            }
+            snapshot = new Snapshot<>(version, levels, newBuffer, entries.size());
+            return;
+        }
+
+        // Carry the buffer up through the levels like a binary counter: merge it with each occupied level in turn
+        // until reaching an empty level that is large enough to hold everything carried
+        final List<Entry<T>> carried = new ArrayList<>(added);
+        addPresent(Arrays.asList(buffer), carried);
+
+        int level = 0;
+        while (level < levels.length && levels[level] != null || carried.size() > (long) BUFFER_CAPACITY << level) {
+            if (level < levels.length && levels[level] != null) {
+                addPresent(levels[level], carried);
+            }
+            level++;
+        }
+
+        final KDTree<Entry<T>>[] newLevels = Arrays.copyOf(levels, Math.max(levels.length, level + 1));
+        Arrays.fill(newLevels, 0, level, null);
+        newLevels[level] = KDTree.create(carried, Entry::point);
+        snapshot = new Snapshot<>(version, newLevels, emptyBuffer(), entries.size());
+    }
+
+    /**
+     * Publish a new snapshot in which all the items currently present are held in a single tree.
+     *
+     * @param version the version of the new snapshot.
+     */
+    private void rebuild(final long version) {
+        final List<Entry<T>> present = new ArrayList<>(entries.values());
+        int level = 0;
+        while (present.size() > (long) BUFFER_CAPACITY << level) {
+            level++;
+        }
+
+        final KDTree<Entry<T>>[] levels = newLevels(level + 1);
+        levels[level] = KDTree.create(present, Entry::point);
+        snapshot = new Snapshot<>(version, levels, emptyBuffer(), entries.size());
+        removedCount = 0;
+    }
+
+    /**
+     * Add the entries from a tree that have not been removed to a list. Since removed entries are not carried forward,
+     * they are no longer counted as being held within the snapshot.
+     *
+     * @param tree the tree.
+     * @param target the list to add to.
+     */
+    private void addPresent(final KDTree<Entry<T>> tree, final List<Entry<T>> target) {
+        for (int i = 0; i < tree.size(); i++) {
+            addPresent(tree.item(i), target);
+        }
+    }
+
+    /**
+     * Add the entries that have not been removed to a list.
+     *
+     * @param entries the entries.
+     * @param target the list to add to.
+     */
+    private void addPresent(final List<Entry<T>> entries, final List<Entry<T>> target) {
+        for (final Entry<T> entry : entries) {
+            addPresent(entry, target);
+        }
+    }
+
+    /**
+     * Add an entry to a list if it has not been removed.
+     *
+     * @param entry the entry.
+     * @param target the list to add to.
+     */
+    private void addPresent(final Entry<T> entry, final List<Entry<T>> target) {
+        if (entry.removedVersion == Long.MAX_VALUE) {
+            target.add(entry);
+        } else {
+            removedCount--;
+        }
+    }
+
+    /**
+     * Create an empty array of trees.
+     *
+     * @param length the length of the array.
+     * @return the array.
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private KDTree<Entry<T>>[] newLevels(final int length) {
+        return new KDTree[length];
+    }
+
+    /**
+     * Create an empty buffer.
+     *
+     * @return the buffer.
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private Entry<T>[] emptyBuffer() {
+        return new Entry[0];
+    }
+
+    /**
+     * An immutable state of the index against which queries can be run.
+     *
+     * @param version the version of the index this represents, which increases with each modification.
+     * @param levels the trees holding the items, where each is either {@code null} or holds up to twice as many items
+     * as the previous.
+     * @param buffer the recently added items not yet held in a tree.
+     * @param size the number of items present in this version of the index.
+     * @param <T> the type of items contained within the index.
+     */
+    private record Snapshot<T>(long version, KDTree<Entry<T>>[] levels, Entry<T>[] buffer, int size) {
+    }
+
+    /**
+     * The state of a distance query on the index, which searches each tree of a snapshot in turn, and then its buffer.
+     * Each thread reuses a single instance for its successive queries, in the same way as those of
+     * {@link GeoPointIndex}.
+     *
+     * @param <T> the type of items contained within the index.
+     */
+    private static final class WithinDistanceSearch<T> extends DistanceSearch {
+
+        /** The instance reused by each thread. */
+        private static final ThreadLocal<WithinDistanceSearch<?>> CURRENT =
+                ThreadLocal.withInitial(WithinDistanceSearch::new);
+
+        /** The version of the index being searched. */
+        private long version;
+
+        /** The tree being searched. */
+        private KDTree<Entry<T>> tree;
+
+        /** The function to call for each item found. */
+        private WithinDistanceConsumer<T> consumer;
+
+        /** Whether any items have been found so far. */
+        private boolean found;
+
+        /** Whether the instance is being used by a query. */
+        private boolean inUse;
+
+        /**
+         * Obtain an instance for the calling thread to run queries with, which must be released once they are done.
+         *
+         * @param consumer the function to call for each item found.
+         * @param <T> the type of items in the index.
+         * @return an instance.
+         */
+        @SuppressWarnings("unchecked")
+        static <T> WithinDistanceSearch<T> acquire(final WithinDistanceConsumer<T> consumer) {
+            WithinDistanceSearch<T> search = (WithinDistanceSearch<T>) CURRENT.get();
+            if (search.inUse) {
+                // A query is being made from within the function of another on the same thread, so it cannot share
+                // the state of that query
+                search = new WithinDistanceSearch<>();
+            }
+
+            search.inUse = true;
+            search.consumer = consumer;
+            return search;
+        }
+
+        /** Release the instance so that it may be acquired again, without retaining anything from the query. */
+        void release() {
+            tree = null;
+            consumer = null;
+            inUse = false;
+        }
+
+        /**
+         * Run a query around the given point.
+         *
+         * @param snapshot the snapshot of the index to search.
+         * @param latitude the latitude of the point to search around.
+         * @param longitude the longitude of the point to search around.
+         * @param distanceMeters the distance in meters around the point for which to find items.
+         * @return {@code true} if any items were found; otherwise, {@code false}.
+         * @throws IllegalArgumentException if the point is invalid.
+         */
+        boolean run(final Snapshot<T> snapshot, final double latitude, final double longitude,
+                    final double distanceMeters) {
+            version = snapshot.version();
+            found = false;
+
+            // The trees hold their points exactly, so neither sphere need allow for any tolerance
+            setDistance(latitude, longitude, distanceMeters, DistanceSearch.searchRadius(distanceMeters, 0),
+                        DistanceSearch.certainRadius(distanceMeters, 0));
+            for (final KDTree<Entry<T>> level : snapshot.levels()) {
+                if (level != null) {
+                    tree = level;
+                    level.search(this);
+                }
+            }
+
+            for (final Entry<T> entry : snapshot.buffer()) {
+                final CartPoint3D point = entry.point();
+                if (contains(point.x(), point.y(), point.z())) {
+                    accept(entry, -1, point.x(), point.y(), point.z());
+                }
+            }
+            return found;
+        }
+
+        @Override
+        boolean accept(final int slot, final double x, final double y, final double z) {
+            accept(tree.item(slot), slot, x, y, z);
+            return true;
+        }
+
+        /**
+         * Pass on an entry found within the sphere to the function that was given, if it is present in the version
+         * being searched and within the distance.
+         *
+         * @param entry the entry.
+         * @param slot the slot of the point within the tree being searched, or {@code -1} if it is in the buffer.
+         * @param x the x-axis ordinate of the point.
+         * @param y the y-axis ordinate of the point.
+         * @param z the z-axis ordinate of the point.
+         */
+        private void accept(final Entry<T> entry, final int slot, final double x, final double y, final double z) {
+            if (entry.isPresentAt(version) && withinDistance(slot, x, y, z)) {
+                consumer.accept(entry.item(), lastDistanceMeters(slot));
+                found = true;
+            }
+        }
+    }
+
+    /**
+     * An item held in the index.
+     * <p>
+     * The same entry is shared by every snapshot in which its item is present, so removal is recorded by the version
+     * of the index at which it occurred rather than as a flag. This allows snapshots from before the removal to
+     * continue to see the item.
+     *
+     * @param <T> the type of items contained within the index.
+     */
+    private static final class Entry<T> {
+
+        /** The item. */
+        private final T item;
+
+        /** The location of the item. */
+        private final CartPoint3D point;
+
+        /** The version of the index at which this entry was removed, or {@link Long#MAX_VALUE} if it has not been. */
+        private volatile long removedVersion = Long.MAX_VALUE;
+
+        /**
+         * Construct a new instance.
+         *
+         * @param item the item.
+         * @param point the location of the item.
+         */
+        private Entry(final T item, final CartPoint3D point) {
+            this.item = item;
+            this.point = point;
+        }
+
+        /**
+         * Gets the item.
+         *
+         * @return the item.
+         */
+        T item() {
+            return item;
+        }
+
+        /**
+         * Gets the location of the item.
+         *
+         * @return the location.
+         */
+        CartPoint3D point() {
+            return point;
+        }
+
+        /**
+         * Determines whether the entry is present in the given version of the index.
+         *
+         * @param version the version of the index.
+         * @return {@code true} if the entry had not been removed as of that version; otherwise, {@code false}.
+         */
+        boolean isPresentAt(final long version) {
+            return removedVersion > version;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package io.github.tinselspoon.spatial.index;
+
+/**
+ * A bounded collection of the nearest items to a point found by a {@link SpatialBackend}, held as a max-heap on
+ * distance while searching so that the furthest of them can be cheaply replaced by anything nearer.
+ */
+final class Neighbours {
+
+    /** The slots of the items found. */
+    private final int[] slots;
+
+    /** The squared straight-line distances of the items found. */
+    private final double[] distancesSquared;
+
+    /** The square of the maximum straight-line distance at which to accept an item. */
+    private final double maxDistanceSquared;
+
+    /** The number of items found so far. */
+    private int size;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param capacity the maximum number of items to hold.
+     * @param maxDistanceSquared the square of the maximum straight-line distance at which to accept an item.
+     */
+    Neighbours(final int capacity, final double maxDistanceSquared) {
+        this.slots = new int[Math.max(capacity, 0)];
+        this.distancesSquared = new double[slots.length];
+        this.maxDistanceSquared = maxDistanceSquared;
+    }
+
+    /**
+     * Gets the number of items found.
+     *
+     * @return the number of items.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Gets the slot of a found item.
+     *
+     * @param index the index of the item, where after searching {@code 0} is the nearest.
+     * @return the slot of the item within the backend.
+     */
+    int slot(final int index) {
+        return slots[index];
+    }
+
+    /**
+     * Gets the squared straight-line distance to a found item.
+     *
+     * @param index the index of the item, where after searching {@code 0} is the nearest.
+     * @return the squared distance.
+     */
+    double distanceSquared(final int index) {
+        return distancesSquared[index];
+    }
+
+    /**
+     * Gets the squared distance that any further item must be within to be accepted.
+     *
+     * @return the squared distance.
+     */
+    double bound() {
+        return size < slots.length ? maxDistanceSquared : distancesSquared[0];
+    }
+
+    /**
+     * Consider an item for inclusion, accepting it if it is nearer than the current bound.
+     *
+     * @param slot the slot of the item within the backend.
+     * @param distanceSquared the squared straight-line distance to the item.
+     */
+    void offer(final int slot, final double distanceSquared) {
+        if (distanceSquared > maxDistanceSquared) {
+            return;
+        }
+
+        if (size < slots.length) {
+            // Sift the new item up from the bottom of the heap
+            int child = size++;
+            while (child > 0) {
+                final int parent = (child - 1) >>> 1;
+                if (distancesSquared[parent] >= distanceSquared) {
+                    break;
+                }
+                slots[child] = slots[parent];
+                distancesSquared[child] = distancesSquared[parent];
+                child = parent;
+            }
+            slots[child] = slot;
+            distancesSquared[child] = distanceSquared;
+        } else if (distanceSquared < distancesSquared[0]) {
+            siftDown(slot, distanceSquared, size);
+        }
+    }
+
+    /**
+     * Replace the root of the heap with the given item and sift it down into position.
+     *
+     * @param slot the slot of the item within the backend.
+     * @param distanceSquared the squared straight-line distance to the item.
+     * @param heapSize the number of items within the heap.
+     */
+    private void siftDown(final int slot, final double distanceSquared, final int heapSize) {
+        int parent = 0;
+        while (true) {
+            int child = 2 * parent + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && distancesSquared[child + 1] > distancesSquared[child]) {
+                child++;
+            }
+            if (distancesSquared[child] <= distanceSquared) {
+                break;
+            }
+            slots[parent] = slots[child];
+            distancesSquared[parent] = distancesSquared[child];
+            parent = child;
+        }
+        slots[parent] = slot;
+        distancesSquared[parent] = distanceSquared;
+    }
+
+    /** Sort the items found in order of increasing distance, after which they can no longer be added to. */
+    void sort() {
+        for (int end = size - 1; end > 0; end--) {
+            final int slot = slots[end];
+            final double distanceSquared = distancesSquared[end];
+            slots[end] = slots[0];
+            distancesSquared[end] = distancesSquared[0];
+            siftDown(slot, distanceSquared, end);
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package io.github.tinselspoon.spatial.index;
+
+/**
+ * A region of the surface of the unit sphere within a given great circle distance of a path, being a sequence of
+ * vertices joined by the shortest great circle arcs between them, as with a route.
+ * <p>
+ * The arcs are held in a bounding sphere hierarchy: a balanced binary tree over runs of consecutive arcs, each node of
+ * which has a sphere enclosing its arcs. Consecutive arcs of a path lie close together, so the spheres are tight. The
+ * hierarchy lets a search of the index be pruned to the corridor around the path as a whole, by way of
+ * {@link Search#setCorridor}, and lets the distance from a point to the path be found by measuring only the arcs near
+ * it. A path of a single vertex is a circle around that vertex.
+ */
+final class PathCorridor implements Region {
+
+    /** The amount by which spheres are enlarged so as not to exclude points on the boundary due to rounding. */
+    private static final double PADDING = 1E-9;
+
+    /** The smallest length of the cross product of the vertices of an arc, below which they are taken to coincide. */
+    private static final double MIN_CROSS_LENGTH = 1E-15;
+
+    /** The distance in meters from the path within which the region lies. */
+    private final double distanceMeters;
+
+    /** The number of arcs, which is one for a path of a single vertex. */
+    private final int arcCount;
+
+    /** The x-axis ordinates of the vertices. */
+    private final double[] xs;
+
+    /** The y-axis ordinates of the vertices. */
+    private final double[] ys;
+
+    /** The z-axis ordinates of the vertices. */
+    private final double[] zs;
+
+    /** The x-axis components of the unit normal of the plane of each arc, which are all zero for a single point. */
+    private final double[] normalXs;
+
+    /** The y-axis components of the unit normal of the plane of each arc. */
+    private final double[] normalYs;
+
+    /** The z-axis components of the unit normal of the plane of each arc. */
+    private final double[] normalZs;
+
+    /** The greatest straight-line distance between each arc and its chord. */
+    private final double[] sagittas;
+
+    /** The x-axis ordinate of the centre of the sphere of each node of the hierarchy. */
+    private final double[] centreXs;
+
+    /** The y-axis ordinate of the centre of the sphere of each node of the hierarchy. */
+    private final double[] centreYs;
+
+    /** The z-axis ordinate of the centre of the sphere of each node of the hierarchy. */
+    private final double[] centreZs;
+
+    /** The radius of the sphere of each node of the hierarchy. */
+    private final double[] radii;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param latitudes the latitudes of the vertices in degrees, [-90, +90], in order along the path.
+     * @param longitudes the longitudes of the vertices in degrees, [-180, +180], of the same length as
+     * {@code latitudes}.
+     * @param distanceMeters the distance in meters from the path within which the region lies.
+     * @throws IllegalArgumentException if the arrays are of differing lengths, there are no vertices, any vertex is
+     * invalid, or any two consecutive vertices are antipodal, such that the arc between them is undefined.
+     */
+    PathCorridor(final double[] latitudes, final double[] longitudes, final double distanceMeters) {
+        if (longitudes.length != latitudes.length) {
+            throw new IllegalArgumentException("Longitudes length " + longitudes.length
+                                                       + " does not match latitudes length " + latitudes.length);
+        }
+
+        final int count = latitudes.length;
+        if (count < 1) {
+            throw new IllegalArgumentException("Path must have at least one vertex");
+        }
+
+        this.distanceMeters = distanceMeters;
+        xs = new double[count];
+        ys = new double[count];
+        zs = new double[count];
+        for (int i = 0; i < count; i++) {
+            final CartPoint3D vertex = CartPoint3D.fromLatLon(latitudes[i], longitudes[i]);
+            xs[i] = vertex.x();
+            ys[i] = vertex.y();
+            zs[i] = vertex.z();
+        }
+
+        arcCount = Math.max(1, count - 1);
+        normalXs = new double[arcCount];
+        normalYs = new double[arcCount];
+        normalZs = new double[arcCount];
+        sagittas = new double[arcCount];
+        for (int arc = 0; arc < arcCount; arc++) {
+            final int a = arc;
+            final int b = Math.min(arc + 1, count - 1);
+            final double crossX = ys[a] * zs[b] - zs[a] * ys[b];
+            final double crossY = zs[a] * xs[b] - xs[a] * zs[b];
+            final double crossZ = xs[a] * ys[b] - ys[a] * xs[b];
+            final double crossLength = Math.sqrt(crossX * crossX + crossY * crossY + crossZ * crossZ);
+            final double dot = xs[a] * xs[b] + ys[a] * ys[b] + zs[a] * zs[b];
+            if (crossLength >= MIN_CROSS_LENGTH) {
+                normalXs[arc] = crossX / crossLength;
+                normalYs[arc] = crossY / crossLength;
+                normalZs[arc] = crossZ / crossLength;
+            } else if (dot < 0) {
+                throw new IllegalArgumentException("Path must not have antipodal consecutive vertices: " + a + " and "
+                                                           + b);
+            }
+
+            // The arc bulges furthest from its chord at its middle, by the distance from there to the midpoint of
+            // the chord
+            final double midX = (xs[a] + xs[b]) / 2, midY = (ys[a] + ys[b]) / 2, midZ = (zs[a] + zs[b]) / 2;
+            sagittas[arc] = Math.max(0, 1 - Math.sqrt(midX * midX + midY * midY + midZ * midZ));
+        }
+
+        // The node numbering of a balanced binary tree split at the midpoint needs fewer than four nodes per arc
+        final int nodeCount = 4 * arcCount;
+        centreXs = new double[nodeCount];
+        centreYs = new double[nodeCount];
+        centreZs = new double[nodeCount];
+        radii = new double[nodeCount];
+        bound(0, 0, arcCount);
+    }
+
+    /**
+     * Calculate the spheres of the node covering the arcs {@code [lo, hi)}, and of each node within it.
+     *
+     * @param node the number of the node.
+     * @param lo the first arc of the node, inclusive.
+     * @param hi the last arc of the node, exclusive.
+     */
+    private void bound(final int node, final int lo, final int hi) {
+        if (hi - lo == 1) {
+            // Every point of the arc is within half of the chord and the sagitta of the midpoint of the chord
+            final int a = lo;
+            final int b = Math.min(lo + 1, xs.length - 1);
+            final double dX = xs[b] - xs[a], dY = ys[b] - ys[a], dZ = zs[b] - zs[a];
+            centreXs[node] = (xs[a] + xs[b]) / 2;
+            centreYs[node] = (ys[a] + ys[b]) / 2;
+            centreZs[node] = (zs[a] + zs[b]) / 2;
+            radii[node] = (Math.sqrt(dX * dX + dY * dY + dZ * dZ) / 2 + sagittas[lo]) * (1 + PADDING);
+            return;
+        }
+
+        final int mid = (lo + hi) >>> 1;
+        final int left = 2 * node + 1;
+        final int right = 2 * node + 2;
+        bound(left, lo, mid);
+        bound(right, mid, hi);
+
+        // The smallest sphere enclosing the spheres of both children
+        final double dX = centreXs[right] - centreXs[left];
+        final double dY = centreYs[right] - centreYs[left];
+        final double dZ = centreZs[right] - centreZs[left];
+        final double distance = Math.sqrt(dX * dX + dY * dY + dZ * dZ);
+        if (distance + radii[right] <= radii[left]) {
+            copySphere(node, left);
+        } else if (distance + radii[left] <= radii[right]) {
+            copySphere(node, right);
+        } else {
+            final double radius = (distance + radii[left] + radii[right]) / 2;
+            final double fraction = (radius - radii[left]) / distance;
+            centreXs[node] = centreXs[left] + dX * fraction;
+            centreYs[node] = centreYs[left] + dY * fraction;
+            centreZs[node] = centreZs[left] + dZ * fraction;
+            radii[node] = radius * (1 + PADDING);
+        }
+    }
+
+    /**
+     * Make the sphere of a node the same as that of another.
+     *
+     * @param node the number of the node whose sphere to set.
+     * @param other the number of the node whose sphere to copy.
+     */
+    private void copySphere(final int node, final int other) {
+        centreXs[node] = centreXs[other];
+        centreYs[node] = centreYs[other];
+        centreZs[node] = centreZs[other];
+        radii[node] = radii[other];
+    }
+
+    @Override
+    public void bound(final Search search, final double tolerance) {
+        // Every point within the distance of an arc is within the chord spanning that distance of the arc, and so of
+        // the sphere of each node holding the arc
+        final double reach = (CartPoint3D.chordLength(distanceMeters) + tolerance) * (1 + PADDING);
+        search.setSphere(centreXs[0], centreYs[0], centreZs[0], radii[0] + reach);
+        search.setCorridor(this, reach);
+    }
+
+    @Override
+    public boolean contains(final double x, final double y, final double z) {
+        return distanceMeters(x, y, z) <= distanceMeters;
+    }
+
+    /**
+     * Determines whether any point within the given bounds could be within a straight-line distance of any arc of the
+     * path. This may find that bounds near the path but not truly within the distance of it are, but never that
+     * bounds within the distance are not.
+     *
+     * @param minX the minimum x-axis ordinate of the bounds.
+     * @param minY the minimum y-axis ordinate of the bounds.
+     * @param minZ the minimum z-axis ordinate of the bounds.
+     * @param maxX the maximum x-axis ordinate of the bounds.
+     * @param maxY the maximum y-axis ordinate of the bounds.
+     * @param maxZ the maximum z-axis ordinate of the bounds.
+     * @param reach the straight-line distance from the path.
+     * @return {@code true} if the bounds may be within the distance of the path; otherwise, {@code false}.
+     */
+    boolean intersects(final double minX, final double minY, final double minZ, final double maxX, final double maxY,
+                       final double maxZ, final double reach) {
+        return intersects(0, 0, arcCount, minX, minY, minZ, maxX, maxY, maxZ, reach);
+    }
+
+    /**
+     * Determines whether any point within the given bounds could be within a straight-line distance of any arc of the
+     * node covering the arcs {@code [lo, hi)}.
+     *
+     * @param node the number of the node.
+     * @param lo the first arc of the node, inclusive.
+     * @param hi the last arc of the node, exclusive.
+     * @param minX the minimum x-axis ordinate of the bounds.
+     * @param minY the minimum y-axis ordinate of the bounds.
+     * @param minZ the minimum z-axis ordinate of the bounds.
+     * @param maxX the maximum x-axis ordinate of the bounds.
+     * @param maxY the maximum y-axis ordinate of the bounds.
+     * @param maxZ the maximum z-axis ordinate of the bounds.
+     * @param reach the straight-line distance from the path.
+     * @return {@code true} if the bounds may be within the distance of the arcs; otherwise, {@code false}.
+     */
+    private boolean intersects(final int node, final int lo, final int hi, final double minX, final double minY,
+                               final double minZ, final double maxX, final double maxY, final double maxZ,
+                               final double reach) {
+        // The distance from the centre of the sphere to the nearest point of the bounds
+        final double centreX = centreXs[node], centreY = centreYs[node], centreZ = centreZs[node];
+        final double dX = Math.max(0, Math.max(minX - centreX, centreX - maxX));
+        final double dY = Math.max(0, Math.max(minY - centreY, centreY - maxY));
+        final double dZ = Math.max(0, Math.max(minZ - centreZ, centreZ - maxZ));
+        final double limit = radii[node] + reach;
+        if (!(dX * dX + dY * dY + dZ * dZ <= limit * limit)) {
+            return false;
+        }
+
+        if (hi - lo > 1) {
+            final int mid = (lo + hi) >>> 1;
+            return intersects(2 * node + 1, lo, mid, minX, minY, minZ, maxX, maxY, maxZ, reach)
+                    || intersects(2 * node + 2, mid, hi, minX, minY, minZ, maxX, maxY, maxZ, reach);
+        }
+
+        // The sphere of a long arc is much wider than the corridor around it, so test the capsule around its chord,
+        // widened by the sagitta to hold the arc: any point of the bounds within it has the centre of the bounds
+        // within half of their diagonal of it
+        final double halfX = (maxX - minX) / 2, halfY = (maxY - minY) / 2, halfZ = (maxZ - minZ) / 2;
+        final double halfDiagonal = Math.sqrt(halfX * halfX + halfY * halfY + halfZ * halfZ);
+        final double chordDistance = chordDistance(lo, minX + halfX, minY + halfY, minZ + halfZ);
+        return chordDistance <= (halfDiagonal + sagittas[lo] + reach) * (1 + PADDING);
+    }
+
+    /**
+     * Calculate the straight-line distance from a point to the chord of an arc.
+     *
+     * @param arc the number of the arc.
+     * @param x the x-axis ordinate of the point.
+     * @param y the y-axis ordinate of the point.
+     * @param z the z-axis ordinate of the point.
+     * @return the distance.
+     */
+    private double chordDistance(final int arc, final double x, final double y, final double z) {
+        final int a = arc;
+        final int b = Math.min(arc + 1, xs.length - 1);
+        final double chordX = xs[b] - xs[a], chordY = ys[b] - ys[a], chordZ = zs[b] - zs[a];
+        final double toX = x - xs[a], toY = y - ys[a], toZ = z - zs[a];
+        final double lengthSquared = chordX * chordX + chordY * chordY + chordZ * chordZ;
+        final double along = lengthSquared > 0
+                ? Math.max(0, Math.min(1, (toX * chordX + toY * chordY + toZ * chordZ) / lengthSquared))
+                : 0;
+        final double dX = toX - chordX * along, dY = toY - chordY * along, dZ = toZ - chordZ * along;
+        return Math.sqrt(dX * dX + dY * dY + dZ * dZ);
+    }
+
+    /**
+     * Calculate the great circle distance from a point to the nearest point of the path, if it is within the distance
+     * of the region.
+     *
+     * @param x the x-axis ordinate of a point on the unit sphere.
+     * @param y the y-axis ordinate of a point on the unit sphere.
+     * @param z the z-axis ordinate of a point on the unit sphere.
+     * @return the distance in meters, or any distance greater than that of the region if the point is outside it.
+     */
+    double distanceMeters(final double x, final double y, final double z) {
+        return nearest(0, 0, arcCount, x, y, z, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Find the great circle distance from a point to the nearest arc of the node covering the arcs {@code [lo, hi)},
+     * skipping any arcs that cannot be nearer than the nearest found so far, nor within the distance of the region.
+     *
+     * @param node the number of the node.
+     * @param lo the first arc of the node, inclusive.
+     * @param hi the last arc of the node, exclusive.
+     * @param x the x-axis ordinate of a point on the unit sphere.
+     * @param y the y-axis ordinate of a point on the unit sphere.
+     * @param z the z-axis ordinate of a point on the unit sphere.
+     * @param nearest the distance in meters to the nearest arc found so far.
+     * @return the distance in meters to the nearest arc found, including those of the node.
+     */
+    private double nearest(final int node, final int lo, final int hi, final double x, final double y, final double z,
+                           final double nearest) {
+        // No point of the sphere is nearer than its surface, whose great circle distance is that of the chord to it
+        final double dX = x - centreXs[node], dY = y - centreYs[node], dZ = z - centreZs[node];
+        final double gap = Math.sqrt(dX * dX + dY * dY + dZ * dZ) - radii[node];
+        if (gap > 0 && CartPoint3D.arcMeters(Math.min(2, gap)) > Math.min(nearest, distanceMeters)) {
+            return nearest;
+        }
+
+        if (hi - lo == 1) {
+            return Math.min(nearest, arcMeters(lo, x, y, z));
+        }
+
+        final int mid = (lo + hi) >>> 1;
+        final int left = 2 * node + 1;
+        final int right = 2 * node + 2;
+        final double leftX = x - centreXs[left], leftY = y - centreYs[left], leftZ = z - centreZs[left];
+        final double rightX = x - centreXs[right], rightY = y - centreYs[right], rightZ = z - centreZs[right];
+        if (leftX * leftX + leftY * leftY + leftZ * leftZ <= rightX * rightX + rightY * rightY + rightZ * rightZ) {
+            return nearest(right, mid, hi, x, y, z, nearest(left, lo, mid, x, y, z, nearest));
+        }
+        return nearest(left, lo, mid, x, y, z, nearest(right, mid, hi, x, y, z, nearest));
+    }
+
+    /**
+     * Calculate the great circle distance from a point to the nearest point of an arc.
+     *
+     * @param arc the number of the arc.
+     * @param x the x-axis ordinate of a point on the unit sphere.
+     * @param y the y-axis ordinate of a point on the unit sphere.
+     * @param z the z-axis ordinate of a point on the unit sphere.
+     * @return the distance in meters.
+     */
+    private double arcMeters(final int arc, final double x, final double y, final double z) {
+        final int a = arc;
+        final int b = Math.min(arc + 1, xs.length - 1);
+        final double normalX = normalXs[arc], normalY = normalYs[arc], normalZ = normalZs[arc];
+
+        // The nearest point of the great circle lies between the vertices when the point is on the inner side of the
+        // planes through the normal and each vertex, in which case the distance is the angle to the plane of the arc
+        final double fromA = (ys[a] * z - zs[a] * y) * normalX
+                + (zs[a] * x - xs[a] * z) * normalY
+                + (xs[a] * y - ys[a] * x) * normalZ;
+        final double toB = (y * zs[b] - z * ys[b]) * normalX
+                + (z * xs[b] - x * zs[b]) * normalY
+                + (x * ys[b] - y * xs[b]) * normalZ;
+        if (fromA >= 0 && toB >= 0 && (normalX != 0 || normalY != 0 || normalZ != 0)) {
+            final double sine = Math.abs(x * normalX + y * normalY + z * normalZ);
+            return CartPoint3D.WGS84_RADIUS_METERS * Math.asin(Math.min(1, sine));
+        }
+
+        // Otherwise the nearest point of the arc is one of its vertices
+        final double aX = x - xs[a], aY = y - ys[a], aZ = z - zs[a];
+        final double bX = x - xs[b], bY = y - ys[b], bZ = z - zs[b];
+        return CartPoint3D.arcMeters(Math.sqrt(Math.min(aX * aX + aY * aY + aZ * aZ, bX * bX + bY * bY + bZ * bZ)));
+    }
+}
@@ -0,0 +1,350 @@
+package io.github.tinselspoon.spatial.index;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.DoubleBuffer;
+
+/**
+ * Storage for the coordinates of the points held in a {@link KDTree}, addressed by their slot within the tree.
+ * <p>
+ * The coordinates are usually held in primitive arrays on the heap, but may instead be held outside of it, such as
+ * in a memory-mapped file, so that a tree can be queried without first being loaded, or be quantised to reduce the
+ * memory they occupy at the cost of a small loss of precision.
+ */
+abstract class PointStore {
+
+    /**
+     * Create a store backed by the given arrays.
+     *
+     * @param xs the x-axis ordinates of the points.
+     * @param ys the y-axis ordinates of the points.
+     * @param zs the z-axis ordinates of the points.
+     * @return the store.
+     */
+    static PointStore of(final double[] xs, final double[] ys, final double[] zs) {
+        return new ArrayPointStore(xs, ys, zs);
+    }
+
+    /**
+     * Create a store backed by the given buffers. The buffers are read using absolute indices, so their positions are
+     * irrelevant.
+     *
+     * @param xs the x-axis ordinates of the points.
+     * @param ys the y-axis ordinates of the points.
+     * @param zs the z-axis ordinates of the points.
+     * @return the store.
+     */
+    static PointStore of(final DoubleBuffer xs, final DoubleBuffer ys, final DoubleBuffer zs) {
+        return new BufferPointStore(xs, ys, zs);
+    }
+
+    /**
+     * Create a store holding the coordinates of points on the unit sphere quantised to {@code int}s, in half of the
+     * memory of {@code double}s. The coordinates read back from the store are each no further than
+     * {@link #tolerance()} from those given.
+     *
+     * @param xs the x-axis ordinates of the points, in the range [-1, +1].
+     * @param ys the y-axis ordinates of the points, in the range [-1, +1].
+     * @param zs the z-axis ordinates of the points, in the range [-1, +1].
+     * @return the store.
+     */
+    static PointStore quantised(final double[] xs, final double[] ys, final double[] zs) {
+        return new QuantisedPointStore(QuantisedPointStore.quantise(xs),
+                                       QuantisedPointStore.quantise(ys),
+                                       QuantisedPointStore.quantise(zs));
+    }
+
+    /**
+     * Gets the number of points held in the store.
+     *
+     * @return the number of points.
+     */
+    abstract int size();
+
+    /**
+     * Gets the x-axis ordinate of a point.
+     *
+     * @param slot the slot of the point.
+     * @return the ordinate.
+     */
+    abstract double x(int slot);
+
+    /**
+     * Gets the y-axis ordinate of a point.
+     *
+     * @param slot the slot of the point.
+     * @return the ordinate.
+     */
+    abstract double y(int slot);
+
+    /**
+     * Gets the z-axis ordinate of a point.
+     *
+     * @param slot the slot of the point.
+     * @return the ordinate.
+     */
+    abstract double z(int slot);
+
+    /**
+     * Gets the greatest straight-line distance between any point as read back from the store and the point as it was
+     * originally given, due to any loss of precision in how the store holds its coordinates.
+     *
+     * @return the distance, which is {@code 0} if the coordinates are held exactly.
+     */
+    double tolerance() {
+        return 0;
+    }
+
+    /**
+     * Gets a store holding the same points that {@link #scan scans} them several at a time using the Vector API, if it
+     * is available and this store is able to.
+     *
+     * @return the store, which is this store if the Vector API cannot be used.
+     */
+    PointStore vectorised() {
+        return this;
+    }
+
+    /**
+     * Test each point within the given range of slots against the range of a search, and pass on those that it
+     * contains, in order of their slots, until the search signals that it should stop.
+     *
+     * @param search the range to search on and the function to invoke for each point found.
+     * @param lo the first slot to test, inclusive.
+     * @param hi the last slot to test, exclusive.
+     * @return {@code true} if the search should continue; or {@code false} if it was stopped.
+     */
+    boolean scan(final Search search, final int lo, final int hi) {
+        for (int i = lo; i < hi; i++) {
+            final double x = x(i), y = y(i), z = z(i);
+            if (search.contains(x, y, z) && !search.accept(i, x, y, z)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the ordinate of a point on the given dimension.
+     *
+     * @param dimension {@code 0} for {@code x}, {@code 1} for {@code y}, {@code 2} for {@code z}.
+     * @param slot the slot of the point.
+     * @return the ordinate.
+     */
+    double ordinate(final int dimension, final int slot) {
+        return switch (dimension) {
+            case 0 -> x(slot);
+            case 1 -> y(slot);
+            default -> z(slot);
+        };
+    }
+
+    /** A store holding its coordinates in arrays on the heap. */
+    private static final class ArrayPointStore extends PointStore {
+
+        /**
+         * Creates a store scanning the points of the given arrays using the Vector API, or {@code null} if it is not
+         * available. It requires the {@code jdk.incubator.vector} module to have been added to the JVM, and the
+         * library to have been built with the {@code vector} profile, which compiles the store.
+         */
+        private static final MethodHandle VECTORISED = vectorisedFactory();
+
+        /** The x-axis ordinates of the points. */
+        private final double[] xs;
+
+        /** The y-axis ordinates of the points. */
+        private final double[] ys;
+
+        /** The z-axis ordinates of the points. */
+        private final double[] zs;
+
+        /**
+         * Construct a new instance.
+         *
+         * @param xs the x-axis ordinates of the points.
+         * @param ys the y-axis ordinates of the points.
+         * @param zs the z-axis ordinates of the points.
+         */
+        private ArrayPointStore(final double[] xs, final double[] ys, final double[] zs) {
+            this.xs = xs;
+            this.ys = ys;
+            this.zs = zs;
+        }
+
+        @Override
+        int size() {
+            return xs.length;
+        }
+
+        @Override
+        double x(final int slot) {
+            return xs[slot];
+        }
+
+        @Override
+        double y(final int slot) {
+            return ys[slot];
+        }
+
+        @Override
+        double z(final int slot) {
+            return zs[slot];
+        }
+
+        /**
+         * Look up the factory of the vectorised store.
+         *
+         * @return the factory, or {@code null} if the Vector API or the store is not available.
+         */
+        private static MethodHandle vectorisedFactory() {
+            // The vectorised store is only loaded once the module it depends on is known to be present
+            if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+                return null;
+            }
+            try {
+                final Class<?> type = Class.forName(PointStore.class.getPackageName() + ".VectorPointStore");
+                return MethodHandles.lookup()
+                                    .findStatic(type, "of", MethodType.methodType(PointStore.class, double[].class,
+                                                                                  double[].class, double[].class));
+            } catch (final ReflectiveOperationException e) {
+                // The library was built without it
+                return null;
+            }
+        }
+
+        @Override
+        PointStore vectorised() {
+            if (VECTORISED == null) {
+                return this;
+            }
+            try {
+                return (PointStore) VECTORISED.invokeExact(xs, ys, zs);
+            } catch (final Throwable e) {
+                throw new IllegalStateException("Unable to create vectorised point store", e);
+            }
+        }
+    }
+
+    /** A store holding its coordinates in buffers, which may be outside the heap. */
+    private static final class BufferPointStore extends PointStore {
+
+        /** The x-axis ordinates of the points. */
+        private final DoubleBuffer xs;
+
+        /** The y-axis ordinates of the points. */
+        private final DoubleBuffer ys;
+
+        /** The z-axis ordinates of the points. */
+        private final DoubleBuffer zs;
+
+        /**
+         * Construct a new instance.
+         *
+         * @param xs the x-axis ordinates of the points.
+         * @param ys the y-axis ordinates of the points.
+         * @param zs the z-axis ordinates of the points.
+         */
+        private BufferPointStore(final DoubleBuffer xs, final DoubleBuffer ys, final DoubleBuffer zs) {
+            this.xs = xs;
+            this.ys = ys;
+            this.zs = zs;
+        }
+
+        @Override
+        int size() {
+            return xs.limit();
+        }
+
+        @Override
+        double x(final int slot) {
+            return xs.get(slot);
+        }
+
+        @Override
+        double y(final int slot) {
+            return ys.get(slot);
+        }
+
+        @Override
+        double z(final int slot) {
+            return zs.get(slot);
+        }
+    }
+
+    /** A store holding its coordinates quantised to {@code int}s in arrays on the heap. */
+    private static final class QuantisedPointStore extends PointStore {
+
+        /** The quantised value of an ordinate of {@code 1}. */
+        private static final double SCALE = Integer.MAX_VALUE;
+
+        /**
+         * The greatest distance of a point read back from the store from that given. Rounding each ordinate to the
+         * nearest step moves it by at most half a step, so the point by at most {@code sqrt(3) / 2} steps, which is
+         * about {@code 4.0E-10} or 2.6 mm on the surface of the Earth. This is rounded up to {@code 1E-9}, about
+         * 6.4 mm, to leave a margin for the rounding of the arithmetic on top.
+         */
+        private static final double TOLERANCE = 1E-9;
+
+        /** The x-axis ordinates of the points. */
+        private final int[] xs;
+
+        /** The y-axis ordinates of the points. */
+        private final int[] ys;
+
+        /** The z-axis ordinates of the points. */
+        private final int[] zs;
+
+        /**
+         * Construct a new instance.
+         *
+         * @param xs the quantised x-axis ordinates of the points.
+         * @param ys the quantised y-axis ordinates of the points.
+         * @param zs the quantised z-axis ordinates of the points.
+         */
+        private QuantisedPointStore(final int[] xs, final int[] ys, final int[] zs) {
+            this.xs = xs;
+            this.ys = ys;
+            this.zs = zs;
+        }
+
+        /**
+         * Quantise an array of ordinates.
+         *
+         * @param ordinates the ordinates, in the range [-1, +1].
+         * @return the quantised ordinates.
+         */
+        private static int[] quantise(final double[] ordinates) {
+            final int[] quantised = new int[ordinates.length];
+            for (int i = 0; i < ordinates.length; i++) {
+                quantised[i] = (int) Math.round(ordinates[i] * SCALE);
+            }
+            return quantised;
+        }
+
+        @Override
+        int size() {
+            return xs.length;
+        }
+
+        @Override
+        double x(final int slot) {
+            return xs[slot] / SCALE;
+        }
+
+        @Override
+        double y(final int slot) {
+            return ys[slot] / SCALE;
+        }
+
+        @Override
+        double z(final int slot) {
+            return zs[slot] / SCALE;
+        }
+
+        @Override
+        double tolerance() {
+            return TOLERANCE;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package io.github.tinselspoon.spatial.index;
+
+/**
+ * Receives the statistics of each query made on a {@link GeoPointIndex}, such as to export them to a metrics registry.
+ * A listener is set when building the index with {@link GeoPointIndex.Builder#listener(QueryListener)}; an index
+ * without one neither measures nor reports anything.
+ * <p>
+ * The listener is called on the thread that made the query, once the query has completed, and so must be thread-safe
+ * if the index is queried concurrently. It should return quickly, since its time is added to that of every query.
+ *
+ * @see QueryStatisticsCollector
+ */
+@FunctionalInterface
+public interface QueryListener {
+
+    /**
+     * Receive notification that a query has completed.
+     *
+     * @param statistics the statistics of the query.
+     */
+    void queryCompleted(QueryStatistics statistics);
+}
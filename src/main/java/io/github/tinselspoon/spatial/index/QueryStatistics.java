@@ -0,0 +1,54 @@
+package io.github.tinselspoon.spatial.index;
+
+/**
+ * The work done by a single query on a {@link GeoPointIndex}, as reported to a {@link QueryListener}.
+ * <p>
+ * A query first searches the index for the candidate points that lie within a simple range enclosing the area being
+ * queried, pruning any part of the index whose bounds lie outside of it. Each candidate is then checked against the
+ * area itself, and those within it are the hits returned by the query. Many nodes visited for few candidates suggests
+ * poor pruning, while many candidates for few hits suggests that the range fits the area poorly.
+ *
+ * @param type the type of query.
+ * @param nodesVisited the number of nodes of the index, such as subtrees of a k-d tree or cells of a grid, whose bounds
+ * were tested against the range.
+ * @param candidates the number of points found within the range and checked against the area being queried.
+ * @param hits the number of points found within the area being queried.
+ * @param elapsedNanos the time taken by the query in nanoseconds, including the time spent in the function given to
+ * receive its results.
+ */
+public record QueryStatistics(QueryType type, long nodesVisited, long candidates, long hits, long elapsedNanos) {
+
+    /**
+     * Gets the number of candidates that were not within the area being queried.
+     *
+     * @return the number of false positives.
+     */
+    public long falsePositives() {
+        return candidates - hits;
+    }
+
+    /**
+     * Gets the proportion of candidates that were not within the area being queried.
+     *
+     * @return the ratio, from {@code 0} to {@code 1}, which is {@code 0} if there were no candidates.
+     */
+    public double falsePositiveRatio() {
+        return candidates == 0 ? 0 : (double) falsePositives() / candidates;
+    }
+
+    /** The types of query that report their statistics. */
+    public enum QueryType {
+
+        /** A query for the items within a distance of a point, including each query of a batch. */
+        WITHIN_DISTANCE,
+
+        /** A query for the items within a latitude/longitude box. */
+        WITHIN_BOX,
+
+        /** A query for the items within a polygon. */
+        WITHIN_POLYGON,
+
+        /** A query for the items within a distance of a path. */
+        WITHIN_PATH
+    }
+}
@@ -0,0 +1,178 @@
+package io.github.tinselspoon.spatial.index;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link QueryListener} that aggregates the statistics of every query it receives, along with a histogram of their
+ * latencies. It may receive queries from any number of threads concurrently, and be read at any time, such as
+ * periodically by a metrics registry; the values read while queries are being received may not be from a single
+ * consistent point in time.
+ * <p>
+ * The latency histogram has {@value #BUCKETS} buckets of exponentially increasing width: bucket {@code 0} counts the
+ * queries taking less than 2 ns, and each bucket {@code i} above it counts those taking from {@code 2^i} ns up to, but
+ * not including, {@code 2^(i + 1)} ns.
+ */
+public final class QueryStatisticsCollector implements QueryListener {
+
+    /** The number of buckets in the latency histogram, which is enough to hold any latency. */
+    public static final int BUCKETS = 63;
+
+    /** The number of queries received. */
+    private final LongAdder queries = new LongAdder();
+
+    /** The total number of nodes visited by the queries. */
+    private final LongAdder nodesVisited = new LongAdder();
+
+    /** The total number of candidates checked by the queries. */
+    private final LongAdder candidates = new LongAdder();
+
+    /** The total number of hits found by the queries. */
+    private final LongAdder hits = new LongAdder();
+
+    /** The total time taken by the queries in nanoseconds. */
+    private final LongAdder elapsedNanos = new LongAdder();
+
+    /** The number of queries in each bucket of the latency histogram. */
+    private final LongAdder[] latencies = new LongAdder[BUCKETS];
+
+    /** Construct a new instance, having received no queries. */
+    public QueryStatisticsCollector() {
+        for (int i = 0; i < BUCKETS; i++) {
+            latencies[i] = new LongAdder();
+        }
+    }
+
+    @Override
+    public void queryCompleted(final QueryStatistics statistics) {
+        queries.increment();
+        nodesVisited.add(statistics.nodesVisited());
+        candidates.add(statistics.candidates());
+        hits.add(statistics.hits());
+        elapsedNanos.add(statistics.elapsedNanos());
+        latencies[bucket(statistics.elapsedNanos())].increment();
+    }
+
+    /**
+     * Find the bucket of the latency histogram that a latency falls into.
+     *
+     * @param nanos the latency in nanoseconds.
+     * @return the bucket.
+     */
+    private static int bucket(final long nanos) {
+        return nanos <= 0 ? 0 : 63 - Long.numberOfLeadingZeros(nanos);
+    }
+
+    /**
+     * Gets the number of queries received.
+     *
+     * @return the number of queries.
+     */
+    public long queryCount() {
+        return queries.sum();
+    }
+
+    /**
+     * Gets the total number of nodes visited by the queries received.
+     *
+     * @return the number of nodes.
+     * @see QueryStatistics#nodesVisited()
+     */
+    public long nodesVisited() {
+        return nodesVisited.sum();
+    }
+
+    /**
+     * Gets the total number of candidates checked by the queries received.
+     *
+     * @return the number of candidates.
+     * @see QueryStatistics#candidates()
+     */
+    public long candidates() {
+        return candidates.sum();
+    }
+
+    /**
+     * Gets the total number of hits found by the queries received.
+     *
+     * @return the number of hits.
+     * @see QueryStatistics#hits()
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the proportion of all candidates checked by the queries received that were not within the area queried.
+     *
+     * @return the ratio, from {@code 0} to {@code 1}, which is {@code 0} if there were no candidates.
+     */
+    public double falsePositiveRatio() {
+        final long candidateCount = candidates();
+        return candidateCount == 0 ? 0 : (double) (candidateCount - hits()) / candidateCount;
+    }
+
+    /**
+     * Gets the total time taken by the queries received.
+     *
+     * @return the time in nanoseconds.
+     */
+    public long elapsedNanos() {
+        return elapsedNanos.sum();
+    }
+
+    /**
+     * Gets the number of queries in each bucket of the latency histogram.
+     *
+     * @return a new array of {@value #BUCKETS} counts, indexed by bucket.
+     */
+    public long[] latencyHistogram() {
+        final long[] histogram = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram[i] = latencies[i].sum();
+        }
+        return histogram;
+    }
+
+    /**
+     * Estimate a percentile of the latencies of the queries received, as the upper limit of the bucket of the latency
+     * histogram in which it falls. The estimate is therefore no lower than the true percentile, and less than twice
+     * it.
+     *
+     * @param percentile the percentile, from {@code 0} to {@code 100}.
+     * @return the estimated latency in nanoseconds, or {@code 0} if no queries have been received.
+     * @throws IllegalArgumentException if {@code percentile} is out of range.
+     */
+    public long latencyPercentileNanos(final double percentile) {
+        if (!(percentile >= 0 && percentile <= 100)) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+        }
+
+        final long[] histogram = latencyHistogram();
+        long total = 0;
+        for (final long count : histogram) {
+            total += count;
+        }
+
+        final long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += histogram[i];
+            if (seen >= rank) {
+                return i == BUCKETS - 1 ? Long.MAX_VALUE : (2L << i) - 1;
+            }
+        }
+        return 0;
+    }
+
+    /** Discard the statistics of every query received so far. */
+    public void reset() {
+        queries.reset();
+        nodesVisited.reset();
+        candidates.reset();
+        hits.reset();
+        elapsedNanos.reset();
+        for (final LongAdder latency : latencies) {
+            latency.reset();
+        }
+    }
+}
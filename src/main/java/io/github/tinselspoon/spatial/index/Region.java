@@ -0,0 +1,31 @@
+package io.github.tinselspoon.spatial.index;
+
+/**
+ * A region of the surface of the unit sphere for which a {@link KDTree} can be searched.
+ * <p>
+ * A region is searched in two stages: the tree is first pruned against a coarse range that encloses the region, and
+ * each point found within that range is then tested precisely against the region itself.
+ */
+interface Region {
+
+    /**
+     * Sets the range of a search to one that encloses this region, which may be larger than it but must not exclude
+     * any part of it, or any point within the given distance of it.
+     *
+     * @param search the search on which to set the range.
+     * @param tolerance the straight-line distance from the region within which points must also be enclosed, to allow
+     * for points held approximately.
+     */
+    void bound(Search search, double tolerance);
+
+    /**
+     * Determines whether this region includes the given point.
+     *
+     * @param x the x-axis ordinate of a point on the unit sphere.
+     * @param y the y-axis ordinate of a point on the unit sphere.
+     * @param z the z-axis ordinate of a point on the unit sphere.
+     * @return {@code true} if the point is inside the region; otherwise, {@code false}. Points lying exactly on the
+     * boundary may be treated either way.
+     */
+    boolean contains(double x, double y, double z);
+}
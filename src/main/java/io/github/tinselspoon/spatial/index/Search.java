@@ -0,0 +1,362 @@
+package io.github.tinselspoon.spatial.index;
+
+/**
+ * A search of a {@link SpatialBackend} for the points contained by a range, described by mutable fields rather than by
+ * objects so that a single instance can be reused for any number of searches. The range is the intersection of a box
+ * and a sphere, either of which may be unbounded, and which may be further narrowed to a corridor around a path.
+ * Subclasses receive the slot of each point found rather than its item, so that items need only be obtained for the
+ * points that are ultimately wanted.
+ * <p>
+ * The methods testing points and bounds against the range are final, so that the calls to them from each engine are
+ * never dispatched dynamically whatever subclasses are in use.
+ */
+abstract class Search {
+
+    /** The minimum x-axis ordinate of the box. */
+    private double minX;
+
+    /** The minimum y-axis ordinate of the box. */
+    private double minY;
+
+    /** The minimum z-axis ordinate of the box. */
+    private double minZ;
+
+    /** The maximum x-axis ordinate of the box. */
+    private double maxX;
+
+    /** The maximum y-axis ordinate of the box. */
+    private double maxY;
+
+    /** The maximum z-axis ordinate of the box. */
+    private double maxZ;
+
+    /** The x-axis ordinate of the centre of the sphere. */
+    private double centreX;
+
+    /** The y-axis ordinate of the centre of the sphere. */
+    private double centreY;
+
+    /** The z-axis ordinate of the centre of the sphere. */
+    private double centreZ;
+
+    /** The square of the radius of the sphere. */
+    private double radiusSquared;
+
+    /** The square of the radius of the sphere within which bounds must lie for the range to enclose them. */
+    private double certainRadiusSquared;
+
+    /** The path around which the range is further narrowed, or {@code null} if it is not. */
+    private PathCorridor corridor;
+
+    /** The straight-line distance from the {@link #corridor path} within which bounds may intersect the range. */
+    private double corridorReach;
+
+    /** The number of nodes whose bounds have been tested against the range since the count was last reset. */
+    private int nodesVisited;
+
+    /**
+     * Sets the range to search on to a box.
+     *
+     * @param minX the minimum x-axis ordinate of the box.
+     * @param minY the minimum y-axis ordinate of the box.
+     * @param minZ the minimum z-axis ordinate of the box.
+     * @param maxX the maximum x-axis ordinate of the box.
+     * @param maxY the maximum y-axis ordinate of the box.
+     * @param maxZ the maximum z-axis ordinate of the box.
+     */
+    final void setRange(final double minX, final double minY, final double minZ, final double maxX,
+                        final double maxY, final double maxZ) {
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.maxZ = maxZ;
+        centreX = 0;
+        centreY = 0;
+        centreZ = 0;
+        radiusSquared = Double.POSITIVE_INFINITY;
+        certainRadiusSquared = Double.POSITIVE_INFINITY;
+        corridor = null;
+    }
+
+    /**
+     * Sets the range to search on to a sphere. A negative or {@code NaN} radius describes a range containing
+     * nothing.
+     *
+     * @param x the x-axis ordinate of the centre of the sphere.
+     * @param y the y-axis ordinate of the centre of the sphere.
+     * @param z the z-axis ordinate of the centre of the sphere.
+     * @param radius the radius of the sphere.
+     */
+    final void setSphere(final double x, final double y, final double z, final double radius) {
+        // The box bounding the sphere is kept alongside it, since it is cheaper to test against and so rejects
+        // most points that are far away more quickly
+        minX = x - radius;
+        minY = y - radius;
+        minZ = z - radius;
+        maxX = x + radius;
+        maxY = y + radius;
+        maxZ = z + radius;
+        centreX = x;
+        centreY = y;
+        centreZ = z;
+        radiusSquared = radius * radius;
+        certainRadiusSquared = radiusSquared;
+        corridor = null;
+    }
+
+    /**
+     * Shrinks the sphere within which bounds must lie for the range to {@link #encloses enclose} them, without
+     * changing the range itself. This suits a search whose range is padded to include points that may or may not be
+     * wanted, which must be checked individually, where only bounds certainly holding nothing but wanted points are to
+     * be treated as enclosed.
+     *
+     * @param radius the radius of the sphere, which is no greater than that of the range.
+     */
+    final void setCertainRadius(final double radius) {
+        certainRadiusSquared = radius * radius;
+    }
+
+    /**
+     * Narrows the range, which has already been set to a sphere enclosing a path, such that only bounds that may lie
+     * within a distance of the path itself {@link #intersects intersect} it. Points are still tested only against the
+     * sphere, so must be checked against the path individually, and no bounds are treated as enclosed.
+     *
+     * @param corridor the path.
+     * @param reach the straight-line distance from the path within which bounds may intersect the range.
+     */
+    final void setCorridor(final PathCorridor corridor, final double reach) {
+        this.corridor = corridor;
+        corridorReach = reach;
+        certainRadiusSquared = -1;
+    }
+
+    /**
+     * Sets the range to search on to that of another search.
+     *
+     * @param other the search whose range to copy.
+     */
+    final void copyRange(final Search other) {
+        minX = other.minX;
+        minY = other.minY;
+        minZ = other.minZ;
+        maxX = other.maxX;
+        maxY = other.maxY;
+        maxZ = other.maxZ;
+        centreX = other.centreX;
+        centreY = other.centreY;
+        centreZ = other.centreZ;
+        radiusSquared = other.radiusSquared;
+        certainRadiusSquared = other.certainRadiusSquared;
+        corridor = other.corridor;
+        corridorReach = other.corridorReach;
+    }
+
+    /**
+     * Gets the minimum x-axis ordinate of the box.
+     *
+     * @return the ordinate.
+     */
+    final double minX() {
+        return minX;
+    }
+
+    /**
+     * Gets the minimum y-axis ordinate of the box.
+     *
+     * @return the ordinate.
+     */
+    final double minY() {
+        return minY;
+    }
+
+    /**
+     * Gets the minimum z-axis ordinate of the box.
+     *
+     * @return the ordinate.
+     */
+    final double minZ() {
+        return minZ;
+    }
+
+    /**
+     * Gets the maximum x-axis ordinate of the box.
+     *
+     * @return the ordinate.
+     */
+    final double maxX() {
+        return maxX;
+    }
+
+    /**
+     * Gets the maximum y-axis ordinate of the box.
+     *
+     * @return the ordinate.
+     */
+    final double maxY() {
+        return maxY;
+    }
+
+    /**
+     * Gets the maximum z-axis ordinate of the box.
+     *
+     * @return the ordinate.
+     */
+    final double maxZ() {
+        return maxZ;
+    }
+
+    /**
+     * Gets the x-axis ordinate of the centre of the sphere.
+     *
+     * @return the ordinate.
+     */
+    final double centreX() {
+        return centreX;
+    }
+
+    /**
+     * Gets the y-axis ordinate of the centre of the sphere.
+     *
+     * @return the ordinate.
+     */
+    final double centreY() {
+        return centreY;
+    }
+
+    /**
+     * Gets the z-axis ordinate of the centre of the sphere.
+     *
+     * @return the ordinate.
+     */
+    final double centreZ() {
+        return centreZ;
+    }
+
+    /**
+     * Gets the square of the radius of the sphere, which is infinite if the sphere is unbounded.
+     *
+     * @return the square of the radius.
+     */
+    final double radiusSquared() {
+        return radiusSquared;
+    }
+
+    /**
+     * Gets the number of nodes whose bounds have been tested against the range since the count was last reset, which
+     * reflects how well the backend pruned the search.
+     *
+     * @return the number of nodes.
+     */
+    final int nodesVisited() {
+        return nodesVisited;
+    }
+
+    /** Resets the number of nodes visited to zero. */
+    final void resetNodesVisited() {
+        nodesVisited = 0;
+    }
+
+    /**
+     * Determines whether the range would include the given point.
+     *
+     * @param x the x-axis ordinate of the point.
+     * @param y the y-axis ordinate of the point.
+     * @param z the z-axis ordinate of the point.
+     * @return {@code true} if the point is inside or is touching the boundary of the range; otherwise,
+     * {@code false}.
+     */
+    final boolean contains(final double x, final double y, final double z) {
+        if (!(x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ)) {
+            return false;
+        }
+
+        final double dX = x - centreX;
+        final double dY = y - centreY;
+        final double dZ = z - centreZ;
+        return dX * dX + dY * dY + dZ * dZ <= radiusSquared;
+    }
+
+    /**
+     * Determines whether the range could include any point within the given bounds, counting the bounds as a node
+     * visited.
+     *
+     * @param minX the minimum x-axis ordinate of the bounds.
+     * @param minY the minimum y-axis ordinate of the bounds.
+     * @param minZ the minimum z-axis ordinate of the bounds.
+     * @param maxX the maximum x-axis ordinate of the bounds.
+     * @param maxY the maximum y-axis ordinate of the bounds.
+     * @param maxZ the maximum z-axis ordinate of the bounds.
+     * @return {@code true} if the bounds intersect the range; otherwise, {@code false}.
+     */
+    final boolean intersects(final double minX, final double minY, final double minZ, final double maxX,
+                             final double maxY, final double maxZ) {
+        nodesVisited++;
+        if (!(maxX >= this.minX && minX <= this.maxX && maxY >= this.minY && minY <= this.maxY
+                && maxZ >= this.minZ && minZ <= this.maxZ)) {
+            return false;
+        }
+
+        // The distance from the centre to the nearest point of the bounds
+        final double dX = Math.max(0, Math.max(minX - centreX, centreX - maxX));
+        final double dY = Math.max(0, Math.max(minY - centreY, centreY - maxY));
+        final double dZ = Math.max(0, Math.max(minZ - centreZ, centreZ - maxZ));
+        if (!(dX * dX + dY * dY + dZ * dZ <= radiusSquared)) {
+            return false;
+        }
+
+        return corridor == null || corridor.intersects(minX, minY, minZ, maxX, maxY, maxZ, corridorReach);
+    }
+
+    /**
+     * Determines whether the range would include every point within the given bounds.
+     *
+     * @param minX the minimum x-axis ordinate of the bounds.
+     * @param minY the minimum y-axis ordinate of the bounds.
+     * @param minZ the minimum z-axis ordinate of the bounds.
+     * @param maxX the maximum x-axis ordinate of the bounds.
+     * @param maxY the maximum y-axis ordinate of the bounds.
+     * @param maxZ the maximum z-axis ordinate of the bounds.
+     * @return {@code true} if the bounds lie entirely within the range; otherwise, {@code false}.
+     */
+    final boolean encloses(final double minX, final double minY, final double minZ, final double maxX,
+                           final double maxY, final double maxZ) {
+        if (!(minX >= this.minX && maxX <= this.maxX && minY >= this.minY && maxY <= this.maxY
+                && minZ >= this.minZ && maxZ <= this.maxZ)) {
+            return false;
+        }
+
+        // The distance from the centre to the furthest corner of the bounds
+        final double dX = Math.max(centreX - minX, maxX - centreX);
+        final double dY = Math.max(centreY - minY, maxY - centreY);
+        final double dZ = Math.max(centreZ - minZ, maxZ - centreZ);
+        return dX * dX + dY * dY + dZ * dZ <= certainRadiusSquared;
+    }
+
+    /**
+     * Receive notification that the range encloses every point of a node of the backend, which occupy the slots
+     * {@code [lo, hi)}, before they are passed on individually. A search may instead deal with the points of the node
+     * as a whole, such as to count them, in which case they are not passed on.
+     *
+     * @param node the number of the node, as understood by the backend.
+     * @param lo the first slot of the points of the node, inclusive.
+     * @param hi the last slot of the points of the node, exclusive.
+     * @return {@code true} if the points of the node have been dealt with as a whole; or {@code false} if they are to
+     * be passed on individually.
+     */
+    boolean acceptNode(final int node, final int lo, final int hi) {
+        return false;
+    }
+
+    /**
+     * Receive notification that a point was found within the range.
+     *
+     * @param slot the slot of the point within the tree.
+     * @param x the x-axis ordinate of the point.
+     * @param y the y-axis ordinate of the point.
+     * @param z the z-axis ordinate of the point.
+     * @return {@code true} to continue searching; or {@code false} to stop the search.
+     */
+    abstract boolean accept(int slot, double x, double y, double z);
+}
@@ -0,0 +1,215 @@
+package io.github.tinselspoon.spatial.index;
+
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A search of a {@link SpatialBackend} that finds its results one at a time on demand, rather than pushing every
+ * result to a callback. In place of the recursion used by {@link SpatialBackend#search(Search)}, the parts of the
+ * backend still to be searched are held on an explicit stack, so that the search can be suspended after each result
+ * and resumed later, and so that whole parts can be handed off to another instance to be searched in parallel.
+ * <p>
+ * Each entry on the stack is either a node of the backend, which the backend {@link SpatialBackend#expand expands}
+ * into the entries for the parts of it that may contain points in the range; a run of slots whose points must each be
+ * tested against the range; or a run of slots lying entirely within the range. The largest entries are expected to be
+ * at the bottom of the stack, which is where work is split off from.
+ *
+ * @param <R> the type of results.
+ */
+final class SearchSpliterator<R> extends Search implements Spliterator<R> {
+
+    /** The node number of a stack entry whose slots must each be tested against the range. */
+    static final int SCAN = -1;
+
+    /** The node number of a stack entry whose slots all lie within the range. */
+    static final int TAKE = -2;
+
+    /** The fewest slots that are worth handing off to be searched separately. */
+    private static final int MIN_SPLIT_SIZE = 16;
+
+    /** The backend being searched. */
+    private final SpatialBackend<?> backend;
+
+    /** The function to produce the result for each point found. */
+    private final SlotFunction<R> function;
+
+    /** The node number of each stack entry, or {@link #SCAN} or {@link #TAKE} for a run of slots. */
+    private int[] nodes = new int[64];
+
+    /** The first slot of each stack entry, inclusive. */
+    private int[] los = new int[64];
+
+    /** The last slot of each stack entry, exclusive. */
+    private int[] his = new int[64];
+
+    /** The number of entries on the stack. */
+    private int count;
+
+    /** The result produced for the most recently accepted point, or {@code null}. */
+    private R next;
+
+    /**
+     * Construct a search of the whole of a backend, which starts from its node {@code 0} covering every slot.
+     *
+     * @param backend the backend to search.
+     * @param function the function to produce the result for each point found.
+     */
+    SearchSpliterator(final SpatialBackend<?> backend, final SlotFunction<R> function) {
+        this.backend = backend;
+        this.function = function;
+        if (backend.size() > 0) {
+            push(0, 0, backend.size());
+        }
+    }
+
+    /**
+     * Construct a search of the same backend and range as another, but with nothing yet to search.
+     *
+     * @param parent the search from which to take the backend and range.
+     */
+    private SearchSpliterator(final SearchSpliterator<R> parent) {
+        backend = parent.backend;
+        function = parent.function;
+        copyRange(parent);
+    }
+
+    @Override
+    public boolean tryAdvance(final Consumer<? super R> action) {
+        while (count > 0) {
+            final int top = count - 1;
+            final int node = nodes[top];
+            if (node >= 0) {
+                count--;
+                backend.expand(this, node, los[top], his[top]);
+                continue;
+            }
+
+            final PointStore points = backend.points();
+            final int hi = his[top];
+            for (int i = los[top]; i < hi; i++) {
+                final double x = points.x(i), y = points.y(i), z = points.z(i);
+                if ((node == TAKE || contains(x, y, z)) && !accept(i, x, y, z)) {
+                    // Resume from the following slot next time
+                    los[top] = i + 1;
+                    final R result = next;
+                    next = null;
+                    action.accept(result);
+                    return true;
+                }
+            }
+            count--;
+        }
+        return false;
+    }
+
+    @Override
+    public Spliterator<R> trySplit() {
+        while (count == 1 && nodes[0] >= 0) {
+            count--;
+            backend.expand(this, nodes[0], los[0], his[0]);
+        }
+
+        if (count == 0) {
+            return null;
+        }
+
+        final SearchSpliterator<R> split = new SearchSpliterator<>(this);
+        if (count == 1) {
+            // A single run of slots, which can simply be halved
+            final int lo = los[0];
+            final int hi = his[0];
+            if (hi - lo <= MIN_SPLIT_SIZE) {
+                return null;
+            }
+
+            final int mid = (lo + hi) >>> 1;
+            split.push(nodes[0], mid, hi);
+            his[0] = mid;
+            return split;
+        }
+
+        // Hand off entries from the bottom of the stack for as long as doing so brings the two halves closer to being
+        // of equal size, while always keeping at least one
+        final long total = estimateSize();
+        long size = 0;
+        int taken = 0;
+        while (taken < count - 1 && 2 * size + (his[taken] - los[taken]) < total) {
+            size += his[taken] - los[taken];
+            taken++;
+        }
+
+        if (taken == 0 || size <= MIN_SPLIT_SIZE) {
+            return null;
+        }
+
+        for (int i = 0; i < taken; i++) {
+            split.push(nodes[i], los[i], his[i]);
+        }
+        count -= taken;
+        System.arraycopy(nodes, taken, nodes, 0, count);
+        System.arraycopy(los, taken, los, 0, count);
+        System.arraycopy(his, taken, his, 0, count);
+        return split;
+    }
+
+    @Override
+    public long estimateSize() {
+        long size = 0;
+        for (int i = 0; i < count; i++) {
+            size += his[i] - los[i];
+        }
+        return size;
+    }
+
+    @Override
+    public int characteristics() {
+        return NONNULL | IMMUTABLE;
+    }
+
+    @Override
+    boolean accept(final int slot, final double x, final double y, final double z) {
+        // Stopping the search is how a result is yielded, so the search continues past points not wanted
+        next = function.apply(slot, x, y, z);
+        return next == null;
+    }
+
+    /**
+     * Push an entry onto the top of the stack.
+     *
+     * @param node the node number of the entry, or {@link #SCAN} or {@link #TAKE} for a run of slots.
+     * @param lo the first slot of the entry, inclusive.
+     * @param hi the last slot of the entry, exclusive.
+     */
+    void push(final int node, final int lo, final int hi) {
+        if (count == nodes.length) {
+            nodes = Arrays.copyOf(nodes, count * 2);
+            los = Arrays.copyOf(los, count * 2);
+            his = Arrays.copyOf(his, count * 2);
+        }
+        nodes[count] = node;
+        los[count] = lo;
+        his[count] = hi;
+        count++;
+    }
+
+    /**
+     * Produces a result from a point found by a search.
+     *
+     * @param <R> the type of results.
+     */
+    @FunctionalInterface
+    interface SlotFunction<R> {
+
+        /**
+         * Produce the result for a given point.
+         *
+         * @param slot the slot of the point within the backend.
+         * @param x the x-axis ordinate of the point.
+         * @param y the y-axis ordinate of the point.
+         * @param z the z-axis ordinate of the point.
+         * @return the result; or {@code null} if the point is not wanted after all.
+         */
+        R apply(int slot, double x, double y, double z);
+    }
+}
@@ -0,0 +1,195 @@
+package io.github.tinselspoon.spatial.index;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An engine that holds the points of an index and searches them, on which {@link GeoPointIndex} is built.
+ * <p>
+ * A backend holds its points in a {@link PointStore} in an order of its own choosing, so each point and its item are
+ * addressed by their slot within that order. Every search is expressed in terms of points on the unit sphere, so a
+ * backend need know nothing of latitude, longitude or meters.
+ *
+ * @param <T> the type of items in the backend.
+ */
+interface SpatialBackend<T> {
+
+    /**
+     * Gets the number of items held in the backend.
+     *
+     * @return the number of items.
+     */
+    int size();
+
+    /**
+     * Gets the coordinates of the points in the backend, by slot.
+     *
+     * @return the points.
+     */
+    PointStore points();
+
+    /**
+     * Gets the item held at the given slot.
+     *
+     * @param slot the slot of the item.
+     * @return the item.
+     */
+    T item(int slot);
+
+    /**
+     * Gets the point held at the given slot.
+     *
+     * @param slot the slot of the point.
+     * @return the point.
+     */
+    default CartPoint3D point(final int slot) {
+        final PointStore points = points();
+        return new CartPoint3D(points.x(slot), points.y(slot), points.z(slot));
+    }
+
+    /**
+     * Gets the greatest straight-line distance between any point held in the backend and the point originally given
+     * for its item, due to any loss of precision in how the coordinates are held.
+     *
+     * @return the distance, which is {@code 0} if the coordinates are held exactly.
+     */
+    default double tolerance() {
+        return points().tolerance();
+    }
+
+    /**
+     * Gets a backend holding the same points and items that tests the points of each leaf it searches several at a
+     * time, as described by {@link PointStore#vectorised()}.
+     *
+     * @return the backend, which is this backend if its points cannot be tested several at a time.
+     */
+    SpatialBackend<T> vectorised();
+
+    /**
+     * Search for the slots of the points contained by the range of the given {@link Search}, until it signals that the
+     * search should stop. The search itself allocates nothing.
+     *
+     * @param search the range to search on and the function to invoke for each point found.
+     * @return {@code true} if the search ran to completion; or {@code false} if it was stopped.
+     */
+    boolean search(Search search);
+
+    /**
+     * Create a lazily evaluated search, whose results are obtained through the {@link java.util.Spliterator}
+     * interface. The range of the search must be set before any results are obtained.
+     *
+     * @param function a function to produce the result for each point found within the range.
+     * @param <R> the type of results.
+     * @return the search.
+     */
+    default <R> SearchSpliterator<R> spliterator(final SearchSpliterator.SlotFunction<R> function) {
+        return new SearchSpliterator<>(this, function);
+    }
+
+    /**
+     * Replace a node of the backend that a lazily evaluated search has reached with the entries for the parts of it
+     * that may contain points in the range of the search, by {@link SearchSpliterator#push pushing} them onto its
+     * stack in the reverse of the order in which they should be searched. Node {@code 0} covers every slot; the
+     * meaning of any other node number is up to the backend.
+     *
+     * @param search the search, from which the node has already been removed.
+     * @param node the node number.
+     * @param lo the first slot of the node, inclusive.
+     * @param hi the last slot of the node, exclusive.
+     */
+    void expand(SearchSpliterator<?> search, int node, int lo, int hi);
+
+    /**
+     * Find the items nearest to the given point, in order of increasing distance.
+     *
+     * @param x the x-axis ordinate of the point to search around.
+     * @param y the y-axis ordinate of the point to search around.
+     * @param z the z-axis ordinate of the point to search around.
+     * @param count the maximum number of items to find.
+     * @param maxDistanceSquared the square of the maximum straight-line distance from the point at which to find
+     * items.
+     * @return the items found.
+     */
+    Neighbours nearest(double x, double y, double z, int count, double maxDistanceSquared);
+
+    /**
+     * Summarise a value of each point within each node of the backend, so that searches enclosing a node can take its
+     * summary as a whole.
+     *
+     * @param values the value of each point, by slot.
+     * @return the summaries, numbered by the nodes that the backend passes to {@link Search#acceptNode}.
+     */
+    default ValueSummaries summarise(final double[] values) {
+        return summarise(values, values, values);
+    }
+
+    /**
+     * Summarise the values of each point within each node of the backend, where each point may have several values,
+     * such as those of several items sharing it.
+     *
+     * @param sums the sum of the values of each point, by slot.
+     * @param mins the least value of each point, by slot.
+     * @param maxes the greatest value of each point, by slot.
+     * @return the summaries, numbered by the nodes that the backend passes to {@link Search#acceptNode}.
+     */
+    ValueSummaries summarise(double[] sums, double[] mins, double[] maxes);
+
+    /**
+     * Describe the shape of the backend, by walking over its leaves.
+     *
+     * @return the statistics.
+     */
+    IndexStatistics statistics();
+
+    /**
+     * Prepare a join between two backends, finding every pair of points, one from each, within a given distance of
+     * each other. Two k-d trees are {@link KDTree#join joined} by traversing both together; otherwise the right
+     * backend is searched around each point of the left in turn.
+     *
+     * @param left the left backend.
+     * @param right the right backend.
+     * @param maxDistanceSquared the square of the maximum straight-line distance between the points of a pair.
+     * @param consumer a function to invoke for each pair found.
+     * @param partitions the number of tasks into which to try to divide the join.
+     * @return the tasks which together perform the join.
+     */
+    static List<Runnable> join(final SpatialBackend<?> left, final SpatialBackend<?> right,
+                               final double maxDistanceSquared, final KDTree.PairConsumer consumer,
+                               final int partitions) {
+        if (left instanceof KDTree<?> leftTree && right instanceof KDTree<?> rightTree) {
+            return KDTree.join(leftTree, rightTree, maxDistanceSquared, consumer, partitions);
+        }
+
+        final int size = left.size();
+        final int count = Math.max(1, Math.min(partitions, size));
+        final double maxDistance = Math.sqrt(maxDistanceSquared);
+        final List<Runnable> tasks = new ArrayList<>(count);
+        for (int partition = 0; partition < count; partition++) {
+            final int from = (int) ((long) size * partition / count);
+            final int to = (int) ((long) size * (partition + 1) / count);
+            tasks.add(() -> {
+                final PointStore points = left.points();
+                final int[] leftSlot = new int[1];
+                final Search search = new Search() {
+                    @Override
+                    boolean accept(final int slot, final double x, final double y, final double z) {
+                        final double dX = x - points.x(leftSlot[0]);
+                        final double dY = y - points.y(leftSlot[0]);
+                        final double dZ = z - points.z(leftSlot[0]);
+                        final double distanceSquared = dX * dX + dY * dY + dZ * dZ;
+                        if (distanceSquared <= maxDistanceSquared) {
+                            consumer.accept(leftSlot[0], slot, distanceSquared);
+                        }
+                        return true;
+                    }
+                };
+                for (int i = from; i < to; i++) {
+                    leftSlot[0] = i;
+                    search.setSphere(points.x(i), points.y(i), points.z(i), maxDistance);
+                    right.search(search);
+                }
+            });
+        }
+        return tasks;
+    }
+}
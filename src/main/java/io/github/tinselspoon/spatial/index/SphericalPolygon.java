@@ -0,0 +1,164 @@
+package io.github.tinselspoon.spatial.index;
+
+/**
+ * A region of the surface of the unit sphere bounded by a polygon whose edges are great circle arcs.
+ * <p>
+ * The polygon is tested by way of a gnomonic projection centred on the average of its vertices. This projection maps
+ * every great circle to a straight line, so within the hemisphere around its centre it maps the polygon exactly to a
+ * planar polygon, which can then be tested using the familiar even-odd rule. This places no restriction on the shape
+ * of the polygon other than that it must lie within that hemisphere. Points lying exactly on the boundary may fall on
+ * either side of it due to rounding.
+ */
+final class SphericalPolygon implements Region {
+
+    /** The smallest dot product between the centre and any vertex, below which a vertex is too far from the centre. */
+    private static final double MIN_CENTRE_DOT = 1E-6;
+
+    /** The x-axis ordinate of the centre of the projection. */
+    private final double centreX;
+
+    /** The y-axis ordinate of the centre of the projection. */
+    private final double centreY;
+
+    /** The z-axis ordinate of the centre of the projection. */
+    private final double centreZ;
+
+    /** The x-axis ordinate of the unit vector giving the first axis of the projection. */
+    private final double uX;
+
+    /** The y-axis ordinate of the unit vector giving the first axis of the projection. */
+    private final double uY;
+
+    /** The z-axis ordinate of the unit vector giving the first axis of the projection. */
+    private final double uZ;
+
+    /** The x-axis ordinate of the unit vector giving the second axis of the projection. */
+    private final double vX;
+
+    /** The y-axis ordinate of the unit vector giving the second axis of the projection. */
+    private final double vY;
+
+    /** The z-axis ordinate of the unit vector giving the second axis of the projection. */
+    private final double vZ;
+
+    /** The first projected ordinate of each vertex. */
+    private final double[] us;
+
+    /** The second projected ordinate of each vertex. */
+    private final double[] vs;
+
+    /** The radius of a sphere around the centre that encloses every vertex, and so the whole polygon. */
+    private final double radius;
+
+    /**
+     * Construct a new instance. The polygon is closed automatically, so the last vertex need not repeat the first,
+     * although it may.
+     *
+     * @param latitudes the latitudes of the vertices in degrees, [-90, +90].
+     * @param longitudes the longitudes of the vertices in degrees, [-180, +180], of the same length as
+     * {@code latitudes}.
+     * @throws IllegalArgumentException if the arrays are of differing lengths, any vertex is invalid, there are fewer
+     * than three distinct vertices, or the polygon does not lie well within the hemisphere around its centre.
+     */
+    SphericalPolygon(final double[] latitudes, final double[] longitudes) {
+        if (longitudes.length != latitudes.length) {
+            throw new IllegalArgumentException("Longitudes length " + longitudes.length
+                                                       + " does not match latitudes length " + latitudes.length);
+        }
+
+        int count = latitudes.length;
+        if (count > 1 && latitudes[0] == latitudes[count - 1] && longitudes[0] == longitudes[count - 1]) {
+            count--;
+        }
+
+        if (count < 3) {
+            throw new IllegalArgumentException("Polygon must have at least three vertices: " + count);
+        }
+
+        final CartPoint3D[] vertices = new CartPoint3D[count];
+        double sumX = 0;
+        double sumY = 0;
+        double sumZ = 0;
+        for (int i = 0; i < count; i++) {
+            vertices[i] = CartPoint3D.fromLatLon(latitudes[i], longitudes[i]);
+            sumX += vertices[i].x();
+            sumY += vertices[i].y();
+            sumZ += vertices[i].z();
+        }
+
+        final double length = Math.sqrt(sumX * sumX + sumY * sumY + sumZ * sumZ);
+        if (!(length > 0)) {
+            throw new IllegalArgumentException("Polygon has no well-defined centre");
+        }
+        centreX = sumX / length;
+        centreY = sumY / length;
+        centreZ = sumZ / length;
+
+        // Take the first axis perpendicular to both the centre and whichever coordinate axis is least aligned with it,
+        // then the second perpendicular to both the centre and the first
+        final double absX = Math.abs(centreX);
+        final double absY = Math.abs(centreY);
+        final double absZ = Math.abs(centreZ);
+        final double axisX = absX <= absY && absX <= absZ ? 1 : 0;
+        final double axisY = axisX == 0 && absY <= absZ ? 1 : 0;
+        final double axisZ = axisX == 0 && axisY == 0 ? 1 : 0;
+        final double crossX = centreY * axisZ - centreZ * axisY;
+        final double crossY = centreZ * axisX - centreX * axisZ;
+        final double crossZ = centreX * axisY - centreY * axisX;
+        final double crossLength = Math.sqrt(crossX * crossX + crossY * crossY + crossZ * crossZ);
+        uX = crossX / crossLength;
+        uY = crossY / crossLength;
+        uZ = crossZ / crossLength;
+        vX = centreY * uZ - centreZ * uY;
+        vY = centreZ * uX - centreX * uZ;
+        vZ = centreX * uY - centreY * uX;
+
+        us = new double[count];
+        vs = new double[count];
+        double maxChordSquared = 0;
+        for (int i = 0; i < count; i++) {
+            final CartPoint3D vertex = vertices[i];
+            final double dot = vertex.x() * centreX + vertex.y() * centreY + vertex.z() * centreZ;
+            if (dot < MIN_CENTRE_DOT) {
+                throw new IllegalArgumentException("Polygon must lie within a hemisphere: vertex " + i
+                                                           + " is too far from the centre of the polygon");
+            }
+            us[i] = (vertex.x() * uX + vertex.y() * uY + vertex.z() * uZ) / dot;
+            vs[i] = (vertex.x() * vX + vertex.y() * vY + vertex.z() * vZ) / dot;
+
+            final double dX = vertex.x() - centreX;
+            final double dY = vertex.y() - centreY;
+            final double dZ = vertex.z() - centreZ;
+            maxChordSquared = Math.max(maxChordSquared, dX * dX + dY * dY + dZ * dZ);
+        }
+
+        // Since the polygon lies within a hemisphere, the great circle arcs between its vertices cannot stray further
+        // from the centre than the furthest vertex
+        radius = Math.sqrt(maxChordSquared) * (1 + 1E-9);
+    }
+
+    @Override
+    public void bound(final Search search, final double tolerance) {
+        search.setSphere(centreX, centreY, centreZ, radius + tolerance);
+    }
+
+    @Override
+    public boolean contains(final double x, final double y, final double z) {
+        final double dot = x * centreX + y * centreY + z * centreZ;
+        if (!(dot > 0)) {
+            return false;
+        }
+
+        final double u = (x * uX + y * uY + z * uZ) / dot;
+        final double v = (x * vX + y * vY + z * vZ) / dot;
+
+        // Count the edges crossed by a ray from the point in the direction of increasing u
+        boolean inside = false;
+        for (int i = 0, j = us.length - 1; i < us.length; j = i++) {
+            if ((vs[i] > v) != (vs[j] > v) && u < (us[j] - us[i]) * (v - vs[i]) / (vs[j] - vs[i]) + us[i]) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+}
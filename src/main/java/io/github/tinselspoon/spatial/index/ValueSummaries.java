@@ -0,0 +1,142 @@
+package io.github.tinselspoon.spatial.index;
+
+import java.util.Arrays;
+
+/**
+ * The sum, minimum and maximum of the values of each point held in a {@link SpatialBackend}, addressed by slot,
+ * together with those of the points within each node of the backend, addressed by node. A search that encloses a node
+ * can then {@link Search#acceptNode take} the summary of the node as a whole, rather than visiting each of its points.
+ * A point usually has a single value, which is then its sum, minimum and maximum alike, but has several where several
+ * items share it.
+ * <p>
+ * The summaries are calculated by the backend, which alone knows which points each of its nodes holds.
+ */
+final class ValueSummaries {
+
+    /** The sum of the values of each point, by slot. */
+    private final double[] slotSums;
+
+    /** The least value of each point, by slot. */
+    private final double[] slotMins;
+
+    /** The greatest value of each point, by slot. */
+    private final double[] slotMaxes;
+
+    /** The sum of the values of the points within each node, by node. */
+    private final double[] sums;
+
+    /** The least value of the points within each node, by node, which is infinite for an empty node. */
+    private final double[] mins;
+
+    /** The greatest value of the points within each node, by node, which is negative infinity for an empty node. */
+    private final double[] maxes;
+
+    /**
+     * Construct a new instance whose nodes have yet to be summarised.
+     *
+     * @param slotSums the sum of the values of each point, by slot.
+     * @param slotMins the least value of each point, by slot.
+     * @param slotMaxes the greatest value of each point, by slot.
+     * @param nodeCount the number of nodes to summarise.
+     */
+    ValueSummaries(final double[] slotSums, final double[] slotMins, final double[] slotMaxes, final int nodeCount) {
+        this.slotSums = slotSums;
+        this.slotMins = slotMins;
+        this.slotMaxes = slotMaxes;
+        this.sums = new double[nodeCount];
+        this.mins = new double[nodeCount];
+        this.maxes = new double[nodeCount];
+        Arrays.fill(mins, Double.POSITIVE_INFINITY);
+        Arrays.fill(maxes, Double.NEGATIVE_INFINITY);
+    }
+
+    /**
+     * Summarise a node holding the points within the given range of slots.
+     *
+     * @param node the number of the node.
+     * @param lo the first slot of the points of the node, inclusive.
+     * @param hi the last slot of the points of the node, exclusive.
+     */
+    void summariseSlots(final int node, final int lo, final int hi) {
+        for (int slot = lo; slot < hi; slot++) {
+            sums[node] += slotSums[slot];
+            mins[node] = Math.min(mins[node], slotMins[slot]);
+            maxes[node] = Math.max(maxes[node], slotMaxes[slot]);
+        }
+    }
+
+    /**
+     * Summarise a node holding a single point along with the points of its two children, which have already been
+     * summarised.
+     *
+     * @param node the number of the node.
+     * @param slot the slot of the point held by the node itself.
+     * @param left the number of one child.
+     * @param right the number of the other child.
+     */
+    void summariseNode(final int node, final int slot, final int left, final int right) {
+        sums[node] = slotSums[slot] + sums[left] + sums[right];
+        mins[node] = Math.min(slotMins[slot], Math.min(mins[left], mins[right]));
+        maxes[node] = Math.max(slotMaxes[slot], Math.max(maxes[left], maxes[right]));
+    }
+
+    /**
+     * Gets the sum of the values of a point.
+     *
+     * @param slot the slot of the point.
+     * @return the sum.
+     */
+    double slotSum(final int slot) {
+        return slotSums[slot];
+    }
+
+    /**
+     * Gets the least value of a point.
+     *
+     * @param slot the slot of the point.
+     * @return the value.
+     */
+    double slotMin(final int slot) {
+        return slotMins[slot];
+    }
+
+    /**
+     * Gets the greatest value of a point.
+     *
+     * @param slot the slot of the point.
+     * @return the value.
+     */
+    double slotMax(final int slot) {
+        return slotMaxes[slot];
+    }
+
+    /**
+     * Gets the sum of the values of the points within a node.
+     *
+     * @param node the number of the node.
+     * @return the sum.
+     */
+    double sum(final int node) {
+        return sums[node];
+    }
+
+    /**
+     * Gets the least value of the points within a node.
+     *
+     * @param node the number of the node.
+     * @return the value, which is infinite if the node is empty.
+     */
+    double min(final int node) {
+        return mins[node];
+    }
+
+    /**
+     * Gets the greatest value of the points within a node.
+     *
+     * @param node the number of the node.
+     * @return the value, which is negative infinity if the node is empty.
+     */
+    double max(final int node) {
+        return maxes[node];
+    }
+}
@@ -0,0 +1,210 @@
+package io.github.tinselspoon.spatial.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Unit tests for {@link CellGrid}. */
+class CellGridTest {
+
+    /**
+     * Create random points on the unit sphere, along with points exactly on the poles and on the edges and corners of
+     * the faces of the cube.
+     */
+    private static List<Item> items(final long seed) {
+        final Random random = new Random(seed);
+        final double corner = 1 / Math.sqrt(3);
+        final double edge = 1 / Math.sqrt(2);
+        final Stream<CartPoint3D> special = Stream.of(new CartPoint3D(0, 0, 1),
+                                                      new CartPoint3D(0, 0, -1),
+                                                      new CartPoint3D(corner, corner, corner),
+                                                      new CartPoint3D(-corner, corner, -corner),
+                                                      new CartPoint3D(edge, -edge, 0),
+                                                      new CartPoint3D(0, edge, edge));
+        final Stream<CartPoint3D> randomPoints = IntStream.range(0, 5_000)
+                                                          .mapToObj(i -> CartPoint3D.fromLatLon(
+                                                                  random.nextDouble() * 180 - 90,
+                                                                  random.nextDouble() * 360 - 180));
+        final List<CartPoint3D> points = Stream.concat(special, randomPoints).toList();
+        return IntStream.range(0, points.size()).mapToObj(i -> new Item(Integer.toString(i), points.get(i))).toList();
+    }
+
+    private static boolean withinSphere(final Item item, final CartPoint3D centre, final double radius) {
+        final double dX = item.point().x() - centre.x();
+        final double dY = item.point().y() - centre.y();
+        final double dZ = item.point().z() - centre.z();
+        return dX * dX + dY * dY + dZ * dZ <= radius * radius;
+    }
+
+    @Test
+    void testSphereSearchMatchesLinearScan() {
+        // GIVEN a grid of points covering the sphere
+        final List<Item> items = items(29);
+        final CellGrid<Item> grid = CellGrid.create(items, Item::point, 4, false);
+
+        for (final Item centre : items.subList(0, 20)) {
+            for (final double radius : new double[] {0, 0.01, 0.3, 1.5, 2.5}) {
+                // WHEN searching a sphere around one of the points, which for the largest radius encloses them all
+                final List<Item> result = new ArrayList<>();
+                final Search search = new Search() {
+                    @Override
+                    boolean accept(final int slot, final double x, final double y, final double z) {
+                        return result.add(grid.item(slot));
+                    }
+                };
+                search.setSphere(centre.point().x(), centre.point().y(), centre.point().z(), radius);
+                assertTrue(grid.search(search));
+
+                // THEN exactly the points a linear scan would find are returned
+                final List<Item> expected = items.stream()
+                                                 .filter(i -> withinSphere(i, centre.point(), radius))
+                                                 .toList();
+                assertEquals(expected.size(), result.size());
+                assertTrue(result.containsAll(expected));
+            }
+        }
+    }
+
+    @Test
+    void testRangeSearchMatchesLinearScan() {
+        // GIVEN a quantised grid of points covering the sphere
+        final List<Item> items = items(31);
+        final CellGrid<Item> grid = CellGrid.create(items, Item::point, 16, true);
+
+        // WHEN searching boxes, including ones unbounded on some axes and one containing nothing
+        final double inf = Double.POSITIVE_INFINITY;
+        for (final double[] box : new double[][] {{-0.2, 0.1, -1, 0.3, 0.5, 1},
+                                                  {-inf, -inf, 0.9, inf, inf, inf},
+                                                  {-inf, -inf, -inf, inf, inf, inf},
+                                                  {0.5, 0.5, 0.5, 0.6, 0.6, 0.6},
+                                                  {2, 2, 2, 3, 3, 3}}) {
+            final List<Item> result = new ArrayList<>();
+            final Search search = new Search() {
+                @Override
+                boolean accept(final int slot, final double x, final double y, final double z) {
+                    return result.add(grid.item(slot));
+                }
+            };
+            search.setRange(box[0], box[1], box[2], box[3], box[4], box[5]);
+            assertTrue(grid.search(search));
+
+            // THEN exactly the points a linear scan of the points as held by the grid would find are returned
+            final List<Item> expected = new ArrayList<>();
+            for (int slot = 0; slot < grid.size(); slot++) {
+                final CartPoint3D point = grid.point(slot);
+                if (point.x() >= box[0] && point.y() >= box[1] && point.z() >= box[2]
+                        && point.x() <= box[3] && point.y() <= box[4] && point.z() <= box[5]) {
+                    expected.add(grid.item(slot));
+                }
+            }
+            assertEquals(expected.size(), result.size());
+            assertTrue(result.containsAll(expected));
+        }
+    }
+
+    @Test
+    void testSpliteratorMatchesLinearScan() {
+        // GIVEN a grid of points covering the sphere
+        final List<Item> items = items(37);
+        final CellGrid<Item> grid = CellGrid.create(items, Item::point, 8, false);
+        final CartPoint3D centre = items.get(100).point();
+
+        for (final double radius : new double[] {0, 0.05, 0.5, 2.5}) {
+            // WHEN searching a sphere lazily, splitting the search as far as it will go
+            final SearchSpliterator<Item> spliterator = grid.spliterator((slot, x, y, z) -> grid.item(slot));
+            spliterator.setSphere(centre.x(), centre.y(), centre.z(), radius);
+            final List<Spliterator<Item>> pending = new ArrayList<>(List.of(spliterator));
+            final List<Item> result = new ArrayList<>();
+            while (!pending.isEmpty()) {
+                final Spliterator<Item> next = pending.remove(pending.size() - 1);
+                final Spliterator<Item> split = next.trySplit();
+                if (split != null) {
+                    pending.add(next);
+                    pending.add(split);
+                } else {
+                    next.forEachRemaining(result::add);
+                }
+            }
+
+            // THEN exactly the points a linear scan would find are returned, each once
+            final List<Item> expected = items.stream().filter(i -> withinSphere(i, centre, radius)).toList();
+            assertEquals(expected.size(), result.size());
+            assertTrue(result.containsAll(expected));
+        }
+    }
+
+    @Test
+    void testNearestMatchesLinearScan() {
+        // GIVEN a grid of points covering the sphere
+        final List<Item> items = items(41);
+        final CellGrid<Item> grid = CellGrid.create(items, Item::point, 16, false);
+
+        final Random random = new Random(43);
+        for (int i = 0; i < 20; i++) {
+            final CartPoint3D point = CartPoint3D.fromLatLon(random.nextDouble() * 180 - 90,
+                                                             random.nextDouble() * 360 - 180);
+            final int count = 1 + random.nextInt(50);
+            final double maxDistance = i % 2 == 0 ? Double.POSITIVE_INFINITY : 0.1;
+
+            // WHEN finding the nearest points, sometimes within a maximum distance
+            final Neighbours neighbours = grid.nearest(point.x(), point.y(), point.z(), count,
+                                                       maxDistance * maxDistance);
+
+            // THEN the same distances as a linear scan are found, in order
+            final double[] expected = items.stream()
+                                           .filter(item -> withinSphere(item, point, maxDistance))
+                                           .mapToDouble(item -> {
+                                               final double dX = item.point().x() - point.x();
+                                               final double dY = item.point().y() - point.y();
+                                               final double dZ = item.point().z() - point.z();
+                                               return dX * dX + dY * dY + dZ * dZ;
+                                           })
+                                           .sorted()
+                                           .limit(count)
+                                           .toArray();
+            assertEquals(expected.length, neighbours.size());
+            for (int j = 0; j < expected.length; j++) {
+                assertEquals(expected[j], neighbours.distanceSquared(j), 1E-15);
+            }
+        }
+
+        // WHEN finding more points than there are
+        final Neighbours all = grid.nearest(0, 0, 1, items.size() * 2, Double.POSITIVE_INFINITY);
+
+        // THEN every point is found
+        assertEquals(items.size(), all.size());
+    }
+
+    @Test
+    void testEmptyGrid() {
+        final CellGrid<Item> grid = CellGrid.create(List.of(), Item::point, 16, false);
+        final Search search = new Search() {
+            @Override
+            boolean accept(final int slot, final double x, final double y, final double z) {
+                throw new AssertionError("No point should be found");
+            }
+        };
+        search.setSphere(0, 0, 1, 3);
+
+        assertEquals(0, grid.size());
+        assertTrue(grid.search(search));
+        assertEquals(0, grid.nearest(0, 0, 1, 5, Double.POSITIVE_INFINITY).size());
+    }
+
+    @Test
+    void testInvalidCellSize() {
+        assertThrows(IllegalArgumentException.class, () -> CellGrid.create(List.of(), Item::point, 0, false));
+    }
+
+    private record Item(String identifier, CartPoint3D point) {
+    }
+}
@@ -0,0 +1,76 @@
+package io.github.tinselspoon.spatial.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/** Unit tests for {@link DistanceQueryCache}. */
+class DistanceQueryCacheTest {
+
+    private final GeoPointIndex<Airport> index = GeoPointIndex.buildFrom(List.of(new Airport("A", 10, 20),
+                                                                                 new Airport("B", 10.1, 20),
+                                                                                 new Airport("C", -40, 150)),
+                                                                         Airport::latitude,
+                                                                         Airport::longitude);
+
+    @Test
+    void testRepeatedQueriesHitCache() {
+        // GIVEN an empty cache
+        final DistanceQueryCache<Airport> classUnderTest = DistanceQueryCache.of(index, 4, 1_000);
+
+        // WHEN querying twice from points a few meters apart, and then with a different distance
+        final List<Airport> first = new ArrayList<>();
+        classUnderTest.queryWithinDistance(10.00001, 20, 5_000, (airport, distance) -> first.add(airport));
+        final List<Airport> second = new ArrayList<>();
+        classUnderTest.queryWithinDistance(10.00002, 20, 5_000, (airport, distance) -> second.add(airport));
+        final List<Airport> third = new ArrayList<>();
+        classUnderTest.queryWithinDistance(10.00002, 20, 50_000, (airport, distance) -> third.add(airport));
+
+        // THEN only the second query is answered from the cache, and each finds what it should
+        assertEquals(1, classUnderTest.hitCount());
+        assertEquals(2, classUnderTest.missCount());
+        assertEquals(2, classUnderTest.size());
+        assertEquals(List.of(new Airport("A", 10, 20)), first);
+        assertEquals(first, second);
+        assertEquals(2, third.size());
+    }
+
+    @Test
+    void testEvictsWhenFull() {
+        // GIVEN a cache holding a single entry
+        final DistanceQueryCache<Airport> classUnderTest = DistanceQueryCache.of(index, 1, 1_000);
+
+        // WHEN querying around two places in turn
+        classUnderTest.queryWithinDistance(10, 20, 1_000, (airport, distance) -> { });
+        classUnderTest.queryWithinDistance(-40, 150, 1_000, (airport, distance) -> { });
+        classUnderTest.queryWithinDistance(10, 20, 1_000, (airport, distance) -> { });
+
+        // THEN each evicts the other
+        assertEquals(0, classUnderTest.hitCount());
+        assertEquals(2, classUnderTest.evictionCount());
+        assertEquals(1, classUnderTest.size());
+
+        // WHEN clearing the cache
+        classUnderTest.clear();
+
+        // THEN nothing is held, but the counts remain
+        assertEquals(0, classUnderTest.size());
+        assertEquals(3, classUnderTest.missCount());
+        assertEquals(0, classUnderTest.hitRatio());
+    }
+
+    @Test
+    void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> DistanceQueryCache.of(index, 0, 1_000));
+        assertThrows(IllegalArgumentException.class, () -> DistanceQueryCache.of(index, 10, 0.5));
+        assertThrows(IllegalArgumentException.class, () -> DistanceQueryCache.of(index, 10, Double.NaN));
+
+        final DistanceQueryCache<Airport> classUnderTest = DistanceQueryCache.of(index, 10, 1_000);
+        assertThrows(IllegalArgumentException.class,
+                     () -> classUnderTest.queryWithinDistance(91, 0, 1_000, (airport, distance) -> { }));
+    }
+}
@@ -0,0 +1,59 @@
+package io.github.tinselspoon.spatial.index;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Unit tests for {@link Ellipsoid}. */
+class EllipsoidTest {
+
+    private static double distanceMeters(final double lat1, final double lon1, final double lat2, final double lon2) {
+        final CartPoint3D start = CartPoint3D.fromLatLon(lat1, lon1);
+        final CartPoint3D end = CartPoint3D.fromLatLon(lat2, lon2);
+        return Ellipsoid.distanceMeters(start.x(), start.y(), start.z(), end.x(), end.y(), end.z());
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            // Flinders Peak to Buninyong, from Vincenty's paper
+            "-37.951033417, 144.424867889, -37.652821139, 143.926495528, 54972.271",
+            // Pole to pole, along a meridian
+            "90, 0, -90, 0, 20003931.4586",
+            // A quarter of the equator
+            "0, 0, 0, 90, 10018754.1714",
+            "0, 170, 0, -170, 2226389.8159",
+            "30, -140, 30, -140, 0" })
+    void testDistance(final double lat1, final double lon1, final double lat2, final double lon2,
+                      final double expectedDistance) {
+        assertEquals(expectedDistance, distanceMeters(lat1, lon1, lat2, lon2), 1E-3);
+        assertEquals(expectedDistance, distanceMeters(lat2, lon2, lat1, lon1), 1E-3);
+    }
+
+    @Test
+    void testScaleBoundsSphericalDistance() {
+        final Random random = new Random(67);
+        for (int i = 0; i < 100_000; i++) {
+            // GIVEN a pair of points, half of them close together and near a pole or the equator
+            final double lat1 = random.nextDouble() * 180 - 90;
+            final double lon1 = random.nextDouble() * 360 - 180;
+            final double spread = i % 2 == 0 ? 180 : 0.1;
+            final double lat2 = Math.max(-90, Math.min(90, (i % 4 < 2 ? lat1 : lat1 / 100)
+                    + (random.nextDouble() - 0.5) * spread));
+            final double lon2 = Math.max(-180, Math.min(180, lon1 + (random.nextDouble() - 0.5) * spread));
+
+            // WHEN calculating the distance between them on the ellipsoid and on the sphere
+            final double ellipsoidal = distanceMeters(lat1, lon1, lat2, lon2);
+            final double spherical = CartPoint3D.fromLatLon(lat1, lon1).distanceMeters(CartPoint3D.fromLatLon(lat2,
+                                                                                                             lon2));
+
+            // THEN the ratio between them is within the bounds the index relies on
+            assertTrue(ellipsoidal >= spherical * Ellipsoid.MIN_SCALE, () -> ellipsoidal + " " + spherical);
+            assertTrue(ellipsoidal <= spherical * Ellipsoid.MAX_SCALE, () -> ellipsoidal + " " + spherical);
+        }
+    }
+}
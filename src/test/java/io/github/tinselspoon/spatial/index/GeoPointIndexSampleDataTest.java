@@ -6,20 +6,37 @@ import io.github.tinselspoon.spatial.index.GeoPointIndex.WithinDistanceConsumer;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.EnumSource;
 import org.mockito.AdditionalMatchers;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.DoubleSummaryStatistics;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyDouble;
 import static org.mockito.ArgumentMatchers.eq;
@@ -100,6 +117,963 @@ class GeoPointIndexSampleDataTest {
         assertEquals(0, missingAirports.size(), "Missing airports: " + missingAirports);
     }
 
+    @Test
+    void testQueryMatchesLinearScan() {
+        final Random random = new Random(13);
+        for (int i = 0; i < 20; i++) {
+            // GIVEN the airports within a distance of a point as found by brute force
+            final double latitude = random.nextDouble() * 180 - 90;
+            final double longitude = random.nextDouble() * 360 - 180;
+            final double distanceMeters = random.nextDouble() * 500_000;
+            final CartPoint3D searchPoint = CartPoint3D.fromLatLon(latitude, longitude);
+            final Set<Airport> expected = new HashSet<>();
+            for (final Airport airport : airports) {
+                if (searchPoint.distanceMeters(CartPoint3D.fromLatLon(airport.latitude(), airport.longitude()))
+                        <= distanceMeters) {
+                    expected.add(airport);
+                }
+            }
+
+            // WHEN querying with and without distances
+            final Set<Airport> withDistances = new HashSet<>();
+            classUnderTest.queryWithinDistance(latitude,
+                                               longitude,
+                                               distanceMeters,
+                                               (airport, distance) -> withDistances.add(airport));
+            final Set<Airport> withoutDistances = new HashSet<>();
+            classUnderTest.queryItemsWithinDistance(latitude, longitude, distanceMeters, withoutDistances::add);
+
+            // THEN the same airports are found
+            assertEquals(expected, withDistances);
+            assertEquals(expected, withoutDistances);
+        }
+    }
+
+    @Test
+    void testStreamMatchesQuery() {
+        final Random random = new Random(29);
+        for (int i = 0; i < 20; i++) {
+            // GIVEN the airports within a distance of a point as found by a query
+            final double latitude = random.nextDouble() * 180 - 90;
+            final double longitude = random.nextDouble() * 360 - 180;
+            final double distanceMeters = random.nextDouble() * 2_000_000;
+            final Map<Airport, Double> expected = new HashMap<>();
+            classUnderTest.queryWithinDistance(latitude, longitude, distanceMeters, expected::put);
+
+            // WHEN streaming sequentially and in parallel
+            final Map<Airport, Double> sequential =
+                    classUnderTest.streamWithinDistance(latitude, longitude, distanceMeters)
+                                  .collect(Collectors.toMap(GeoPointIndex.Match::item,
+                                                            GeoPointIndex.Match::distanceMeters));
+            final Map<Airport, Double> parallel =
+                    classUnderTest.streamWithinDistance(latitude, longitude, distanceMeters)
+                                  .parallel()
+                                  .collect(Collectors.toConcurrentMap(GeoPointIndex.Match::item,
+                                                                      GeoPointIndex.Match::distanceMeters));
+
+            // THEN the same airports are found at the same distances
+            assertEquals(expected, sequential);
+            assertEquals(expected, parallel);
+        }
+    }
+
+    @Test
+    void testStreamShortCircuits() {
+        // GIVEN a search covering the whole world
+        final double distanceMeters = 30_000_000;
+
+        // WHEN taking only a few results
+        final List<GeoPointIndex.Match<Airport>> limited =
+                classUnderTest.streamWithinDistance(0, 0, distanceMeters).limit(10).toList();
+        final List<GeoPointIndex.Match<Airport>> limitedParallel =
+                classUnderTest.streamWithinDistance(0, 0, distanceMeters).parallel().limit(10).toList();
+
+        // THEN only those results are produced
+        assertEquals(10, limited.size());
+        assertEquals(10, limitedParallel.size());
+        final Airport egll = airports.stream().filter(a -> a.ident().equals("EGLL")).findFirst().orElseThrow();
+        assertEquals(egll,
+                     classUnderTest.streamWithinDistance(egll.latitude(), egll.longitude(), 1)
+                                   .findFirst()
+                                   .map(GeoPointIndex.Match::item)
+                                   .orElseThrow());
+        assertFalse(classUnderTest.streamWithinDistance(0, -160, 1000).findAny().isPresent());
+    }
+
+    @ParameterizedTest
+    @CsvSource({ "45, -5, 55, 10", // Western Europe
+            "-30, 170, 10, -170", // Across the antimeridian
+            "-60, -100, 60, 120", // Spanning more than half of all longitudes
+            "60, -180, 90, 180", // Around the north pole
+            "10, 20, 10, 20" }) // Degenerate
+    void testBoxQueryMatchesLinearScan(final double minLatitude, final double minLongitude, final double maxLatitude,
+                                       final double maxLongitude) {
+        // GIVEN the airports within a box as found by brute force
+        final Set<Airport> expected = new HashSet<>();
+        for (final Airport airport : airports) {
+            final boolean withinLongitude = minLongitude <= maxLongitude
+                    ? airport.longitude() >= minLongitude && airport.longitude() <= maxLongitude
+                    : airport.longitude() >= minLongitude || airport.longitude() <= maxLongitude;
+            if (airport.latitude() >= minLatitude && airport.latitude() <= maxLatitude && withinLongitude) {
+                expected.add(airport);
+            }
+        }
+
+        // WHEN querying the box
+        final Set<Airport> result = new HashSet<>();
+        final boolean found = classUnderTest.queryWithinBox(minLatitude,
+                                                            minLongitude,
+                                                            maxLatitude,
+                                                            maxLongitude,
+                                                            airport -> assertTrue(result.add(airport)));
+
+        // THEN the same airports are found
+        assertEquals(!expected.isEmpty(), found);
+        assertEquals(expected, result);
+    }
+
+    @Test
+    void testPolygonQuery() {
+        // GIVEN a triangle formed by the equator and two meridians meeting at the north pole, and the airports within
+        // it as found by brute force, leaving out any lying right on its edges
+        final Set<Airport> expected = new HashSet<>();
+        final Set<Airport> edges = new HashSet<>();
+        for (final Airport airport : airports) {
+            if (airport.latitude() >= 0 && airport.longitude() >= 0 && airport.longitude() <= 20) {
+                expected.add(airport);
+            }
+            if (Math.abs(airport.latitude()) < 1E-6 || Math.abs(airport.longitude()) < 1E-6
+                    || Math.abs(airport.longitude() - 20) < 1E-6) {
+                edges.add(airport);
+            }
+        }
+        expected.removeAll(edges);
+
+        // WHEN querying the polygon
+        final Set<Airport> result = new HashSet<>();
+        classUnderTest.queryWithinPolygon(new double[] {0, 0, 90}, new double[] {0, 20, 0}, result::add);
+        result.removeAll(edges);
+
+        // THEN the same airports are found
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, result);
+    }
+
+    @Test
+    void testAnyWithinDistance() {
+        assertTrue(classUnderTest.anyWithinDistance(51.47168589670692, -0.45898471100754595, 500));
+        assertFalse(classUnderTest.anyWithinDistance(51, 0.1, 500));
+    }
+
+    @Test
+    void testLimitedSearch() {
+        // WHEN querying a large area with a limit
+        final List<Airport> foundAirports = new ArrayList<>();
+        final int result = classUnderTest.queryWithinDistance(51,
+                                                              0.1,
+                                                              100_000,
+                                                              10,
+                                                              (airport, distance) -> foundAirports.add(airport));
+
+        // THEN only the limit is returned, despite there being more airports in the area
+        assertEquals(10, result);
+        assertEquals(10, foundAirports.size());
+    }
+
+    @Test
+    void testLimitedSearchBelowLimit() {
+        final int result = classUnderTest.queryWithinDistance(51.47168589670692,
+                                                              -0.45898471100754595,
+                                                              500,
+                                                              10,
+                                                              mockCallback);
+
+        assertEquals(1, result);
+    }
+
+    @Test
+    void testVisitorStopsSearch() {
+        // GIVEN a visitor that wants only airports in a particular hemisphere
+        final List<Airport> visited = new ArrayList<>();
+
+        // WHEN querying until the visitor is satisfied
+        final boolean result = classUnderTest.visitWithinDistance(51, 0.1, 100_000, (airport, distance) -> {
+            visited.add(airport);
+            return airport.longitude() < 0;
+        });
+
+        // THEN the search stops at the first airport to the east
+        assertTrue(result);
+        assertTrue(visited.get(visited.size() - 1).longitude() >= 0);
+        assertTrue(visited.subList(0, visited.size() - 1).stream().allMatch(a -> a.longitude() < 0));
+    }
+
+    @Test
+    void testQueryDoesNotAllocate() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        // GIVEN a consumer that itself allocates nothing, and a spread of points to search around
+        final double[] found = new double[1];
+        final WithinDistanceConsumer<Airport> consumer = (airport, distance) -> found[0] += distance;
+        final Random random = new Random(5);
+        final double[] latitudes = random.doubles(1_000, 35, 60).toArray();
+        final double[] longitudes = random.doubles(1_000, -10, 30).toArray();
+
+        // WHEN running enough queries for the query path to be compiled, and then measuring further queries
+        for (int i = 0; i < 50_000; i++) {
+            classUnderTest.queryWithinDistance(latitudes[i % 1_000], longitudes[i % 1_000], 50_000, consumer);
+        }
+        final long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 10_000; i++) {
+            classUnderTest.queryWithinDistance(latitudes[i % 1_000], longitudes[i % 1_000], 50_000, consumer);
+        }
+        final long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        // THEN nothing is allocated per query, allowing a little leeway for the measurement itself
+        assertTrue(found[0] > 0);
+        assertTrue(allocated < 1_000, "Allocated " + allocated + " bytes");
+    }
+
+    @Test
+    void testNestedQuery() {
+        // WHEN making a query from within the consumer of another
+        final List<Airport> outer = new ArrayList<>();
+        final List<Airport> inner = new ArrayList<>();
+        classUnderTest.queryWithinDistance(51.47168589670692, -0.45898471100754595, 500, (airport, distance) -> {
+            outer.add(airport);
+            classUnderTest.queryWithinDistance(40.639447, -73.779317, 500, (other, d) -> inner.add(other));
+        });
+
+        // THEN each query gets its own results
+        assertEquals(List.of("EGLL"), outer.stream().map(Airport::ident).toList());
+        assertEquals(List.of("KJFK"), inner.stream().map(Airport::ident).toList());
+    }
+
+    @Test
+    void testParallelBuild() {
+        // GIVEN an index built using multiple threads
+        final GeoPointIndex<Airport> parallelIndex = GeoPointIndex.builder(Airport::latitude, Airport::longitude)
+                                                                  .parallelism(4)
+                                                                  .build(airports);
+
+        // WHEN querying both it and the sequentially built index
+        final List<Airport> expected = new ArrayList<>();
+        classUnderTest.queryWithinDistance(51, 0.1, 1_000_000, (airport, distance) -> expected.add(airport));
+        final List<Airport> actual = new ArrayList<>();
+        parallelIndex.queryWithinDistance(51, 0.1, 1_000_000, (airport, distance) -> actual.add(airport));
+
+        // THEN the same results are found in the same order
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    void testNearest() {
+        // GIVEN the nearest airports to a point as found by brute force
+        final CartPoint3D searchPoint = CartPoint3D.fromLatLon(51, 0.1);
+        final List<Airport> expected = airports.stream()
+                                               .sorted(Comparator.comparingDouble(a -> searchPoint.distanceMeters(
+                                                       CartPoint3D.fromLatLon(a.latitude(), a.longitude()))))
+                                               .limit(10)
+                                               .toList();
+
+        // WHEN querying for the nearest airports
+        final List<GeoPointIndex.Match<Airport>> result = classUnderTest.queryNearest(51, 0.1, 10);
+
+        // THEN the same airports are found in order of increasing distance
+        assertEquals(expected, result.stream().map(GeoPointIndex.Match::item).toList());
+        for (int i = 1; i < result.size(); i++) {
+            assertTrue(result.get(i - 1).distanceMeters() <= result.get(i).distanceMeters());
+        }
+    }
+
+    @Test
+    void testNearestWithinDistance() {
+        final Airport egll = airports.stream().filter(a -> a.ident().equals("EGLL")).findFirst().orElseThrow();
+
+        final List<GeoPointIndex.Match<Airport>> result = classUnderTest.queryNearest(51.47168589670692,
+                                                                                     -0.45898471100754595,
+                                                                                     10,
+                                                                                     500);
+
+        assertEquals(List.of(new GeoPointIndex.Match<>(egll, result.get(0).distanceMeters())), result);
+        assertEquals(237.715073, result.get(0).distanceMeters(), 1E-6);
+    }
+
+    @Test
+    void testBatchQuery() {
+        // GIVEN a batch of search points with varying distances
+        final Random random = new Random(1);
+        final int size = 2_000;
+        final double[] latitudes = new double[size];
+        final double[] longitudes = new double[size];
+        final double[] distances = new double[size];
+        for (int i = 0; i < size; i++) {
+            latitudes[i] = random.nextDouble() * 180 - 90;
+            longitudes[i] = random.nextDouble() * 360 - 180;
+            distances[i] = random.nextDouble() * 200_000;
+        }
+
+        // WHEN querying the batch
+        final Set<String> actual = ConcurrentHashMap.newKeySet();
+        classUnderTest.queryWithinDistance(latitudes,
+                                           longitudes,
+                                           distances,
+                                           (queryIndex, airport, distance) -> actual.add(queryIndex + ":"
+                                                                                                 + airport.ident()
+                                                                                                 + ":" + distance));
+
+        // THEN the results are the same as querying each point individually
+        final Set<String> expected = new HashSet<>();
+        for (int i = 0; i < size; i++) {
+            final int queryIndex = i;
+            classUnderTest.queryWithinDistance(latitudes[i],
+                                               longitudes[i],
+                                               distances[i],
+                                               (airport, distance) -> expected.add(queryIndex + ":" + airport.ident()
+                                                                                           + ":" + distance));
+        }
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    void testBatchQueryOnExecutor() {
+        final Airport egll = airports.stream().filter(a -> a.ident().equals("EGLL")).findFirst().orElseThrow();
+        final List<Airport> found = new ArrayList<>();
+
+        classUnderTest.queryWithinDistance(new double[] { 0, 51.47168589670692 },
+                                           new double[] { -30, -0.45898471100754595 },
+                                           500,
+                                           Runnable::run,
+                                           (queryIndex, airport, distance) -> {
+                                               assertEquals(1, queryIndex);
+                                               found.add(airport);
+                                           });
+
+        assertEquals(List.of(egll), found);
+    }
+
+    @Test
+    void testBatchQueryMismatchedLengths() {
+        assertThrows(IllegalArgumentException.class,
+                     () -> classUnderTest.queryWithinDistance(new double[2],
+                                                              new double[1],
+                                                              100,
+                                                              (queryIndex, airport, distance) -> {
+                                                              }));
+        assertThrows(IllegalArgumentException.class,
+                     () -> classUnderTest.queryWithinDistance(new double[2],
+                                                              new double[2],
+                                                              new double[1],
+                                                              (queryIndex, airport, distance) -> {
+                                                              }));
+    }
+
+    @Test
+    void testJoin() {
+        // GIVEN an index of random points, and the airports within a distance of each as found by single queries
+        final Random random = new Random(17);
+        final List<Airport> points = IntStream.range(0, 2_000)
+                                              .mapToObj(i -> new Airport(Integer.toString(i),
+                                                                         random.nextDouble() * 180 - 90,
+                                                                         random.nextDouble() * 360 - 180))
+                                              .toList();
+        final GeoPointIndex<Airport> pointIndex = GeoPointIndex.buildFrom(points,
+                                                                          Airport::latitude,
+                                                                          Airport::longitude);
+        final Set<List<Airport>> expected = new HashSet<>();
+        for (final Airport point : points) {
+            classUnderTest.queryWithinDistance(point.latitude(),
+                                               point.longitude(),
+                                               20_000,
+                                               (airport, distance) -> expected.add(List.of(point, airport)));
+        }
+
+        // WHEN joining the indexes, both on the calling thread and in parallel
+        final Set<List<Airport>> sequential = new HashSet<>();
+        pointIndex.joinWithinDistance(classUnderTest,
+                                      20_000,
+                                      (point, airport, distance) -> assertTrue(sequential.add(List.of(point,
+                                                                                                      airport))));
+        final Set<List<Airport>> parallel = ConcurrentHashMap.newKeySet();
+        pointIndex.joinWithinDistance(classUnderTest,
+                                      20_000,
+                                      ForkJoinPool.commonPool(),
+                                      (point, airport, distance) -> assertTrue(parallel.add(List.of(point,
+                                                                                                    airport))));
+
+        // THEN the same pairs are found each time
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, sequential);
+        assertEquals(expected, parallel);
+    }
+
+    @Test
+    void testCompactIndexMatchesExactIndex() {
+        // GIVEN an index holding its points compactly
+        final GeoPointIndex<Airport> compact = GeoPointIndex.builder(Airport::latitude, Airport::longitude)
+                                                            .compact()
+                                                            .build(airports);
+
+        final Random random = new Random(37);
+        for (int i = 0; i < 50; i++) {
+            // GIVEN a search whose boundary passes exactly through an airport
+            final double latitude = random.nextDouble() * 180 - 90;
+            final double longitude = random.nextDouble() * 360 - 180;
+            final Airport boundary = airports.get(random.nextInt(airports.size()));
+            final double distanceMeters =
+                    CartPoint3D.fromLatLon(latitude, longitude)
+                               .distanceMeters(CartPoint3D.fromLatLon(boundary.latitude(), boundary.longitude()));
+
+            // WHEN querying both indexes
+            final Map<Airport, Double> expected = new HashMap<>();
+            classUnderTest.queryWithinDistance(latitude, longitude, distanceMeters, expected::put);
+            final Map<Airport, Double> result = new HashMap<>();
+            compact.queryWithinDistance(latitude, longitude, distanceMeters, result::put);
+            final Set<Airport> streamed = compact.streamWithinDistance(latitude, longitude, distanceMeters)
+                                                 .map(GeoPointIndex.Match::item)
+                                                 .collect(Collectors.toSet());
+
+            // THEN the same airports are found at the same distances
+            assertTrue(expected.containsKey(boundary));
+            assertEquals(expected, result);
+            assertEquals(expected.keySet(), streamed);
+
+            // THEN the nearest airports are found at the same distances
+            final List<GeoPointIndex.Match<Airport>> nearest = compact.queryNearest(latitude, longitude, 5);
+            final List<GeoPointIndex.Match<Airport>> expectedNearest = classUnderTest.queryNearest(latitude,
+                                                                                                   longitude,
+                                                                                                   5);
+            for (int j = 0; j < nearest.size(); j++) {
+                assertEquals(expectedNearest.get(j).distanceMeters(), nearest.get(j).distanceMeters());
+            }
+        }
+
+        // THEN box queries and joins find the same airports too
+        final Set<Airport> expectedBox = new HashSet<>();
+        classUnderTest.queryWithinBox(45, -5, 55, 10, expectedBox::add);
+        final Set<Airport> box = new HashSet<>();
+        compact.queryWithinBox(45, -5, 55, 10, box::add);
+        assertEquals(expectedBox, box);
+
+        final int[] counts = new int[2];
+        classUnderTest.joinWithinDistance(classUnderTest, 1_000, (airport, other, distance) -> counts[0]++);
+        compact.joinWithinDistance(compact, 1_000, (airport, other, distance) -> counts[1]++);
+        assertEquals(counts[0], counts[1]);
+    }
+
+    @Test
+    void testCellGridMatchesKDTree() {
+        // GIVEN an index built with the cell grid engine
+        final GeoPointIndex<Airport> grid = GeoPointIndex.builder(Airport::latitude, Airport::longitude)
+                                                         .engine(GeoPointIndex.Engine.CELL_GRID)
+                                                         .build(airports);
+
+        final Random random = new Random(41);
+        for (int i = 0; i < 50; i++) {
+            final double latitude = random.nextDouble() * 180 - 90;
+            final double longitude = random.nextDouble() * 360 - 180;
+            final double distanceMeters = random.nextDouble() * 2_000_000;
+
+            // WHEN querying both indexes
+            final Map<Airport, Double> expected = new HashMap<>();
+            classUnderTest.queryWithinDistance(latitude, longitude, distanceMeters, expected::put);
+            final Map<Airport, Double> result = new HashMap<>();
+            grid.queryWithinDistance(latitude, longitude, distanceMeters, result::put);
+            final Set<Airport> streamed = grid.streamWithinDistance(latitude, longitude, distanceMeters)
+                                              .parallel()
+                                              .map(GeoPointIndex.Match::item)
+                                              .collect(Collectors.toSet());
+
+            // THEN the same airports are found at the same distances
+            assertEquals(expected, result);
+            assertEquals(expected.keySet(), streamed);
+
+            // THEN the nearest airports are found at the same distances
+            final List<GeoPointIndex.Match<Airport>> nearest = grid.queryNearest(latitude, longitude, 5);
+            final List<GeoPointIndex.Match<Airport>> expectedNearest = classUnderTest.queryNearest(latitude,
+                                                                                                   longitude,
+                                                                                                   5);
+            assertEquals(expectedNearest.size(), nearest.size());
+            for (int j = 0; j < nearest.size(); j++) {
+                assertEquals(expectedNearest.get(j).distanceMeters(), nearest.get(j).distanceMeters());
+            }
+        }
+
+        // THEN box queries and joins, including a join with an index of the other engine, find the same airports too
+        final Set<Airport> expectedBox = new HashSet<>();
+        classUnderTest.queryWithinBox(45, 170, 70, -170, expectedBox::add);
+        final Set<Airport> box = new HashSet<>();
+        grid.queryWithinBox(45, 170, 70, -170, box::add);
+        assertFalse(expectedBox.isEmpty());
+        assertEquals(expectedBox, box);
+
+        final int[] counts = new int[3];
+        classUnderTest.joinWithinDistance(classUnderTest, 1_000, (airport, other, distance) -> counts[0]++);
+        grid.joinWithinDistance(grid, 1_000, (airport, other, distance) -> counts[1]++);
+        grid.joinWithinDistance(classUnderTest, 1_000, (airport, other, distance) -> counts[2]++);
+        assertEquals(counts[0], counts[1]);
+        assertEquals(counts[0], counts[2]);
+
+        // THEN only the k-d tree can be written to a file
+        assertThrows(UnsupportedOperationException.class, () -> grid.writeTo(Path.of("unused"), airport -> 0));
+    }
+
+    @ParameterizedTest
+    @CsvSource({"KD_TREE,-1", "KD_TREE,0", "KD_TREE,1000", "CELL_GRID,-1", "CELL_GRID,1000000"})
+    void testStreamingBuildMatchesListBuild(final GeoPointIndex.Engine engine, final int sizeHint) {
+        // GIVEN an index built from a list, and others built from a stream of unknown size and an iterator
+        final GeoPointIndex.Builder<Airport> builder = GeoPointIndex.builder(Airport::latitude, Airport::longitude)
+                                                                   .engine(engine);
+        if (sizeHint >= 0) {
+            builder.sizeHint(sizeHint);
+        }
+
+        final GeoPointIndex<Airport> expected = builder.build(airports);
+        final GeoPointIndex<Airport> streamed = builder.build(airports.stream().filter(airport -> true));
+        final GeoPointIndex<Airport> iterated = builder.compact().build(airports.iterator());
+
+        // THEN each holds every airport, in the same shape
+        assertEquals(airports.size(), streamed.statistics().size());
+        assertEquals(airports.size(), iterated.statistics().size());
+        assertEquals(expected.statistics(), streamed.statistics());
+
+        final Random random = new Random(47);
+        for (int i = 0; i < 20; i++) {
+            final double latitude = random.nextDouble() * 180 - 90;
+            final double longitude = random.nextDouble() * 360 - 180;
+
+            // WHEN querying each index
+            final Map<Airport, Double> expectedResult = new HashMap<>();
+            expected.queryWithinDistance(latitude, longitude, 500_000, expectedResult::put);
+            final Map<Airport, Double> streamedResult = new HashMap<>();
+            streamed.queryWithinDistance(latitude, longitude, 500_000, streamedResult::put);
+            final Map<Airport, Double> iteratedResult = new HashMap<>();
+            iterated.queryWithinDistance(latitude, longitude, 500_000, iteratedResult::put);
+
+            // THEN the same airports are found at the same distances
+            assertEquals(expectedResult, streamedResult);
+            assertEquals(expectedResult, iteratedResult);
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(GeoPointIndex.Engine.class)
+    void testVectorisedMatchesScalar(final GeoPointIndex.Engine engine) {
+        // GIVEN indexes built with each engine, testing points one at a time and several at a time
+        final GeoPointIndex.Builder<Airport> builder = GeoPointIndex.builder(Airport::latitude, Airport::longitude)
+                                                                   .engine(engine);
+        final GeoPointIndex<Airport> scalar = builder.build(airports);
+        final GeoPointIndex<Airport> vectorised = builder.vectorised().build(airports);
+
+        final Random random = new Random(59);
+        for (int i = 0; i < 50; i++) {
+            final double latitude = random.nextDouble() * 180 - 90;
+            final double longitude = random.nextDouble() * 360 - 180;
+            final double distanceMeters = random.nextDouble() * 5_000_000;
+
+            // WHEN querying both indexes
+            final List<Airport> expected = new ArrayList<>();
+            scalar.queryWithinDistance(latitude, longitude, distanceMeters, (airport, d) -> expected.add(airport));
+            final List<Airport> result = new ArrayList<>();
+            vectorised.queryWithinDistance(latitude, longitude, distanceMeters, (airport, d) -> result.add(airport));
+
+            // THEN the same airports are found in the same order
+            assertEquals(expected, result);
+        }
+
+        // THEN box queries find the same airports too
+        final List<Airport> expectedBox = new ArrayList<>();
+        scalar.queryWithinBox(45, 170, 70, -170, expectedBox::add);
+        final List<Airport> box = new ArrayList<>();
+        vectorised.queryWithinBox(45, 170, 70, -170, box::add);
+        assertEquals(expectedBox, box);
+    }
+
+    @ParameterizedTest
+    @CsvSource({"KD_TREE,false", "KD_TREE,true", "CELL_GRID,false", "CELL_GRID,true"})
+    void testCountAndSummariseMatchQuery(final GeoPointIndex.Engine engine, final boolean compact) {
+        // GIVEN an index summarising the latitude of each airport
+        final GeoPointIndex.Builder<Airport> builder = GeoPointIndex.builder(Airport::latitude, Airport::longitude)
+                                                                   .engine(engine)
+                                                                   .summarising(Airport::latitude);
+        final GeoPointIndex<Airport> index = (compact ? builder.compact() : builder).build(airports);
+
+        final Random random = new Random(61);
+        for (int i = 0; i < 50; i++) {
+            final double latitude = random.nextDouble() * 180 - 90;
+            final double longitude = random.nextDouble() * 360 - 180;
+            final double distanceMeters = i == 0 ? 20_100_000 : random.nextDouble() * 5_000_000;
+
+            // WHEN counting and summarising the airports within a distance
+            final long count = index.countWithinDistance(latitude, longitude, distanceMeters);
+            final DoubleSummaryStatistics result = index.summariseWithinDistance(latitude, longitude, distanceMeters);
+
+            // THEN they agree with the airports found by a query, but for rounding of the sum
+            final DoubleSummaryStatistics expected = new DoubleSummaryStatistics();
+            classUnderTest.queryWithinDistance(latitude, longitude, distanceMeters,
+                                               (airport, distance) -> expected.accept(airport.latitude()));
+            assertEquals(expected.getCount(), count);
+            assertEquals(expected.getCount(), result.getCount());
+            assertEquals(expected.getMin(), result.getMin());
+            assertEquals(expected.getMax(), result.getMax());
+            assertEquals(expected.getSum(), result.getSum(), 1E-6 * Math.max(1, count));
+        }
+
+        // THEN the whole world holds every airport
+        assertEquals(airports.size(), index.countWithinDistance(0, 0, 20_100_000));
+    }
+
+    @ParameterizedTest
+    @CsvSource({"KD_TREE,false", "KD_TREE,true", "CELL_GRID,false", "CELL_GRID,true"})
+    void testCollapsingMatchesDistinctPoints(final GeoPointIndex.Engine engine, final boolean compact) {
+        // GIVEN the airports with up to three copies of each at the same location, indexed with and without
+        // collapsing the copies
+        final Random random = new Random(67);
+        final List<Airport> items = new ArrayList<>();
+        for (final Airport airport : airports) {
+            for (int copy = random.nextInt(4); copy >= 0; copy--) {
+                items.add(new Airport(airport.ident() + "/" + copy, airport.latitude(), airport.longitude()));
+            }
+        }
+        final GeoPointIndex.Builder<Airport> builder = GeoPointIndex.builder(Airport::latitude, Airport::longitude)
+                                                                   .engine(engine)
+                                                                   .summarising(Airport::latitude);
+        final GeoPointIndex<Airport> distinct = (compact ? builder.compact() : builder).build(items);
+        final GeoPointIndex<Airport> collapsed = builder.collapsing().build(items.iterator());
+        final long locations = airports.stream().map(a -> List.of(a.latitude(), a.longitude())).distinct().count();
+        assertEquals(locations, collapsed.statistics().size());
+
+        for (int i = 0; i < 30; i++) {
+            final double latitude = random.nextDouble() * 180 - 90;
+            final double longitude = random.nextDouble() * 360 - 180;
+            final double distanceMeters = random.nextDouble() * 2_000_000;
+
+            // WHEN querying, streaming, counting, summarising and finding the nearest in both indexes
+            final Map<Airport, Double> expected = new HashMap<>();
+            distinct.queryWithinDistance(latitude, longitude, distanceMeters, expected::put);
+            final Map<Airport, Double> result = new HashMap<>();
+            collapsed.queryWithinDistance(latitude, longitude, distanceMeters, result::put);
+            final Map<Airport, Double> streamed =
+                    collapsed.streamWithinDistance(latitude, longitude, distanceMeters)
+                             .parallel()
+                             .collect(Collectors.toConcurrentMap(GeoPointIndex.Match::item,
+                                                                 GeoPointIndex.Match::distanceMeters));
+            final DoubleSummaryStatistics expectedSummary =
+                    distinct.summariseWithinDistance(latitude, longitude, distanceMeters);
+            final DoubleSummaryStatistics summary =
+                    collapsed.summariseWithinDistance(latitude, longitude, distanceMeters);
+            final List<GeoPointIndex.Match<Airport>> expectedNearest = distinct.queryNearest(latitude, longitude, 7);
+            final List<GeoPointIndex.Match<Airport>> nearest = collapsed.queryNearest(latitude, longitude, 7);
+
+            // THEN the same airports are found at the same distances
+            assertEquals(expected, result);
+            assertEquals(expected, streamed);
+            assertEquals(expected.size(), collapsed.countWithinDistance(latitude, longitude, distanceMeters));
+            assertEquals(expectedSummary.getCount(), summary.getCount());
+            assertEquals(expectedSummary.getMin(), summary.getMin());
+            assertEquals(expectedSummary.getMax(), summary.getMax());
+            assertEquals(expectedSummary.getSum(), summary.getSum(), 1E-6 * Math.max(1, summary.getCount()));
+            assertEquals(7, nearest.size());
+            for (int j = 0; j < 7; j++) {
+                assertEquals(expectedNearest.get(j).distanceMeters(), nearest.get(j).distanceMeters(), 1E-9);
+            }
+        }
+
+        // THEN box queries and joins find the same airports too
+        final Set<Airport> expectedBox = new HashSet<>();
+        distinct.queryWithinBox(45, 170, 70, -170, expectedBox::add);
+        final List<Airport> box = new ArrayList<>();
+        collapsed.queryWithinBox(45, 170, 70, -170, box::add);
+        assertEquals(expectedBox.size(), box.size());
+        assertEquals(expectedBox, new HashSet<>(box));
+
+        final Set<List<Airport>> expectedPairs = new HashSet<>();
+        distinct.joinWithinDistance(classUnderTest, 5_000, (item, airport, d) -> expectedPairs.add(List.of(item,
+                                                                                                           airport)));
+        final List<List<Airport>> pairs = new ArrayList<>();
+        collapsed.joinWithinDistance(classUnderTest, 5_000, (item, airport, d) -> pairs.add(List.of(item, airport)));
+        assertEquals(expectedPairs.size(), pairs.size());
+        assertEquals(expectedPairs, new HashSet<>(pairs));
+    }
+
+    @ParameterizedTest
+    @CsvSource({"KD_TREE,false", "KD_TREE,true", "CELL_GRID,false", "CELL_GRID,true"})
+    void testPathQueryMatchesDenseScan(final GeoPointIndex.Engine engine, final boolean compact) {
+        final GeoPointIndex.Builder<Airport> builder = GeoPointIndex.builder(Airport::latitude, Airport::longitude)
+                                                                   .engine(engine);
+        final GeoPointIndex<Airport> index = (compact ? builder.compact() : builder).build(airports);
+
+        final Random random = new Random(73);
+        for (int i = 0; i < 10; i++) {
+            // GIVEN a winding path of a few hundred vertices, some crossing the antimeridian, and the distance from
+            // each airport to many points densely spaced along it, which is no more than 10 m further than the
+            // distance to the path itself
+            final int vertexCount = 50 + random.nextInt(250);
+            final double[] latitudes = new double[vertexCount];
+            final double[] longitudes = new double[vertexCount];
+            latitudes[0] = random.nextDouble() * 120 - 60;
+            longitudes[0] = i % 2 == 0 ? 179 : random.nextDouble() * 360 - 180;
+            for (int j = 1; j < vertexCount; j++) {
+                latitudes[j] = Math.max(-89, Math.min(89, latitudes[j - 1] + random.nextGaussian() * 0.2));
+                longitudes[j] = longitudes[j - 1] + random.nextGaussian() * 0.2;
+                longitudes[j] = longitudes[j] > 180 ? longitudes[j] - 360 : longitudes[j];
+                longitudes[j] = longitudes[j] < -180 ? longitudes[j] + 360 : longitudes[j];
+            }
+            final double distanceMeters = 1_000 + random.nextDouble() * 50_000;
+            final Map<Airport, Double> dense = denseDistances(latitudes, longitudes, 10);
+
+            // WHEN querying within a distance of the path
+            final Map<Airport, Double> result = new HashMap<>();
+            index.queryWithinDistanceOfPath(latitudes, longitudes, distanceMeters,
+                                            (airport, distance) -> assertEquals(null, result.put(airport, distance)));
+
+            // THEN each airport certainly within the distance is found once, no airport certainly outside it is, and
+            // the distances agree
+            for (final Map.Entry<Airport, Double> entry : dense.entrySet()) {
+                final double expected = entry.getValue();
+                if (expected <= distanceMeters) {
+                    assertTrue(result.containsKey(entry.getKey()));
+                } else if (expected > distanceMeters + 10) {
+                    assertFalse(result.containsKey(entry.getKey()));
+                }
+            }
+            result.forEach((airport, distance) -> {
+                assertTrue(distance <= distanceMeters);
+                assertEquals(dense.get(airport), distance, 10);
+                assertTrue(distance <= dense.get(airport) + 1E-6);
+            });
+        }
+
+        // THEN a path of a single vertex finds the same as a distance query
+        final Map<Airport, Double> expected = new HashMap<>();
+        index.queryWithinDistance(51.47, -0.46, 300_000, expected::put);
+        final Map<Airport, Double> single = new HashMap<>();
+        index.queryWithinDistanceOfPath(new double[] {51.47}, new double[] {-0.46}, 300_000, single::put);
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, single);
+    }
+
+    /**
+     * Calculate the distance from each airport to the nearest of many points densely spaced along a path.
+     *
+     * @param latitudes the latitudes of the vertices of the path.
+     * @param longitudes the longitudes of the vertices of the path.
+     * @param spacingMeters the greatest distance between consecutive points along the path.
+     * @return the distance to each airport in meters.
+     */
+    private static Map<Airport, Double> denseDistances(final double[] latitudes, final double[] longitudes,
+                                                       final double spacingMeters) {
+        final List<CartPoint3D> points = new ArrayList<>();
+        for (int i = 0; i + 1 < latitudes.length; i++) {
+            final CartPoint3D a = CartPoint3D.fromLatLon(latitudes[i], longitudes[i]);
+            final CartPoint3D b = CartPoint3D.fromLatLon(latitudes[i + 1], longitudes[i + 1]);
+            final double angle = a.distanceMeters(b) / CartPoint3D.WGS84_RADIUS_METERS;
+            final int steps = Math.max(1, (int) Math.ceil(a.distanceMeters(b) / spacingMeters));
+            for (int step = 0; step <= steps; step++) {
+                // Spherical linear interpolation along the arc
+                final double t = (double) step / steps;
+                final double wa = angle > 0 ? Math.sin((1 - t) * angle) / Math.sin(angle) : 1 - t;
+                final double wb = angle > 0 ? Math.sin(t * angle) / Math.sin(angle) : t;
+                points.add(new CartPoint3D(wa * a.x() + wb * b.x(), wa * a.y() + wb * b.y(), wa * a.z() + wb * b.z()));
+            }
+        }
+
+        final GeoPointIndex<CartPoint3D> pathIndex = GeoPointIndex.buildFrom(points,
+                                                                             p -> Math.toDegrees(Math.asin(p.z())),
+                                                                             p -> Math.toDegrees(Math.atan2(p.y(),
+                                                                                                            p.x())));
+        final Map<Airport, Double> distances = new HashMap<>();
+        for (final Airport airport : airports) {
+            final List<GeoPointIndex.Match<CartPoint3D>> nearest = pathIndex.queryNearest(airport.latitude(),
+                                                                                          airport.longitude(),
+                                                                                          1,
+                                                                                          200_000);
+            if (!nearest.isEmpty()) {
+                distances.put(airport, nearest.get(0).distanceMeters());
+            }
+        }
+        return distances;
+    }
+
+    @ParameterizedTest
+    @CsvSource({"KD_TREE,false", "KD_TREE,true", "CELL_GRID,false"})
+    void testEllipsoidalMatchesLinearScan(final GeoPointIndex.Engine engine, final boolean compact) {
+        // GIVEN an index measuring distances on the ellipsoid
+        final GeoPointIndex.Builder<Airport> builder = GeoPointIndex.builder(Airport::latitude, Airport::longitude)
+                                                                   .engine(engine)
+                                                                   .ellipsoidal();
+        final GeoPointIndex<Airport> index = (compact ? builder.compact() : builder).build(airports);
+
+        final Random random = new Random(71);
+        for (int i = 0; i < 20; i++) {
+            final double latitude = random.nextDouble() * 180 - 90;
+            final double longitude = random.nextDouble() * 360 - 180;
+            final double distanceMeters = random.nextDouble() * 3_000_000;
+
+            // WHEN querying, counting and finding the nearest airports
+            final Map<Airport, Double> result = new HashMap<>();
+            index.queryWithinDistance(latitude, longitude, distanceMeters, result::put);
+            final long count = index.countWithinDistance(latitude, longitude, distanceMeters);
+            final List<GeoPointIndex.Match<Airport>> nearest = index.queryNearest(latitude, longitude, 5);
+
+            // THEN they agree with the distance on the ellipsoid to every airport
+            final CartPoint3D searchPoint = CartPoint3D.fromLatLon(latitude, longitude);
+            final Map<Airport, Double> distances = new HashMap<>();
+            for (final Airport airport : airports) {
+                final CartPoint3D point = CartPoint3D.fromLatLon(airport.latitude(), airport.longitude());
+                distances.put(airport, Ellipsoid.distanceMeters(point.x(), point.y(), point.z(),
+                                                                searchPoint.x(), searchPoint.y(), searchPoint.z()));
+            }
+
+            final Map<Airport, Double> expected = new HashMap<>(distances);
+            expected.values().removeIf(distance -> distance > distanceMeters);
+            assertEquals(expected.keySet(), result.keySet());
+            result.forEach((airport, distance) -> assertEquals(expected.get(airport), distance, 1E-6));
+            assertEquals(expected.size(), count);
+
+            final List<Double> expectedNearest = distances.values().stream().sorted().limit(5).toList();
+            assertEquals(5, nearest.size());
+            for (int j = 0; j < 5; j++) {
+                assertEquals(expectedNearest.get(j), nearest.get(j).distanceMeters(), 1E-6);
+            }
+        }
+    }
+
+    @Test
+    void testQueryListener() {
+        // GIVEN an index reporting to a listener
+        final List<QueryStatistics> reported = new ArrayList<>();
+        final GeoPointIndex<Airport> index = GeoPointIndex.builder(Airport::latitude, Airport::longitude)
+                                                          .listener(reported::add)
+                                                          .build(airports);
+
+        // WHEN making a distance query and a box query
+        final List<Airport> found = new ArrayList<>();
+        index.queryWithinDistance(51.5, -0.1, 100_000, (airport, distance) -> found.add(airport));
+        index.queryWithinBox(45, -5, 55, 10, found::add);
+
+        // THEN each query reports the items it found, having visited nodes and tested candidates
+        assertEquals(2, reported.size());
+        final QueryStatistics distanceQuery = reported.get(0);
+        final QueryStatistics boxQuery = reported.get(1);
+        assertEquals(QueryStatistics.QueryType.WITHIN_DISTANCE, distanceQuery.type());
+        assertEquals(QueryStatistics.QueryType.WITHIN_BOX, boxQuery.type());
+        assertEquals(found.size(), distanceQuery.hits() + boxQuery.hits());
+        for (final QueryStatistics statistics : reported) {
+            assertTrue(statistics.nodesVisited() > 0);
+            assertTrue(statistics.candidates() >= statistics.hits());
+            assertTrue(statistics.elapsedNanos() > 0);
+        }
+
+        // THEN the sphere searched for a distance fits it almost exactly, while the range searched for a box includes
+        // points beyond its edges
+        assertTrue(distanceQuery.falsePositiveRatio() < 0.01);
+        assertTrue(boxQuery.falsePositiveRatio() > 0 && boxQuery.falsePositiveRatio() < 1);
+    }
+
+    @Test
+    void testQueryListenerIgnoresNearestQuery() {
+        // GIVEN an ellipsoidal index reporting to a listener
+        final List<QueryStatistics> reported = new ArrayList<>();
+        final GeoPointIndex<Airport> index = GeoPointIndex.builder(Airport::latitude, Airport::longitude)
+                                                          .ellipsoidal()
+                                                          .listener(reported::add)
+                                                          .build(airports);
+
+        // WHEN finding the nearest airports, which also searches within a distance of them
+        final List<GeoPointIndex.Match<Airport>> nearest = index.queryNearest(51.5, -0.1, 5);
+
+        // THEN nothing is reported
+        assertEquals(5, nearest.size());
+        assertEquals(List.of(), reported);
+    }
+
+    @Test
+    void testIndexStatistics() {
+        // GIVEN indexes built with each engine
+        final GeoPointIndex<Airport> grid = GeoPointIndex.builder(Airport::latitude, Airport::longitude)
+                                                         .engine(GeoPointIndex.Engine.CELL_GRID)
+                                                         .build(airports);
+
+        // WHEN describing them
+        final IndexStatistics treeStatistics = classUnderTest.statistics();
+        final IndexStatistics gridStatistics = grid.statistics();
+
+        // THEN the tree is balanced, with no leaf bigger than a bucket
+        assertEquals(GeoPointIndex.Engine.KD_TREE, treeStatistics.engine());
+        assertEquals(airports.size(), treeStatistics.size());
+        assertTrue(treeStatistics.maxDepth() - treeStatistics.minDepth() <= 1);
+        assertTrue(treeStatistics.maxLeafSize() <= KDTree.DEFAULT_LEAF_SIZE);
+        assertTrue(treeStatistics.meanLeafSize() > 1);
+
+        // THEN the grid holds every airport in its cells, which with real-world data are unevenly filled
+        assertEquals(GeoPointIndex.Engine.CELL_GRID, gridStatistics.engine());
+        assertEquals(airports.size(), gridStatistics.size());
+        assertEquals(airports.size(), Math.round(gridStatistics.meanLeafSize() * gridStatistics.leafCount()));
+        assertTrue(gridStatistics.emptyLeafCount() > 0);
+        assertEquals(0, gridStatistics.minLeafSize());
+        assertTrue(gridStatistics.maxLeafSize() > CellGrid.DEFAULT_CELL_SIZE);
+    }
+
+    @Test
+    void testDistanceQueryCacheMatchesIndex() {
+        // GIVEN a cache of queries on the index, holding fewer entries than the cells and distances queried
+        final DistanceQueryCache<Airport> cache = DistanceQueryCache.of(classUnderTest, 4, 5_000);
+
+        final Random random = new Random(43);
+        for (int i = 0; i < 500; i++) {
+            // GIVEN a query from somewhere near one of a few hotspots, at one of a couple of distances
+            final Airport hotspot = airports.get(random.nextInt(3) * 1_000);
+            final double latitude = Math.max(-90, Math.min(90, hotspot.latitude() + random.nextGaussian() * 0.002));
+            final double longitude = hotspot.longitude() + random.nextGaussian() * 0.002;
+            final double distanceMeters = random.nextBoolean() ? 25_000 : 100_000;
+
+            // WHEN querying through the cache
+            final Map<Airport, Double> expected = new HashMap<>();
+            final boolean expectedFound = classUnderTest.queryWithinDistance(latitude, longitude, distanceMeters,
+                                                                             expected::put);
+            final Map<Airport, Double> result = new HashMap<>();
+            final boolean found = cache.queryWithinDistance(latitude, longitude, distanceMeters, result::put);
+
+            // THEN exactly the same airports are found at exactly the same distances
+            assertEquals(expected, result);
+            assertEquals(expectedFound, found);
+        }
+
+        // THEN most queries were answered from the cache, which stayed within its bound
+        assertEquals(500, cache.hitCount() + cache.missCount());
+        assertTrue(cache.hitRatio() > 0.5);
+        assertTrue(cache.evictionCount() > 0);
+        assertEquals(4, cache.size());
+    }
+
+    @Test
+    void testWriteAndOpen(@TempDir final Path directory) throws IOException {
+        // GIVEN the index written to a file, identifying each airport by its position in the list
+        final Map<Airport, Integer> ordinals = new IdentityHashMap<>();
+        for (int i = 0; i < airports.size(); i++) {
+            ordinals.put(airports.get(i), i);
+        }
+        final Path file = directory.resolve("airports.idx");
+        classUnderTest.writeTo(file, ordinals::get);
+
+        // WHEN opening the file
+        final GeoPointIndex<Airport> opened = GeoPointIndex.open(file, airports::get);
+
+        // THEN queries find the same results
+        final List<Airport> expected = new ArrayList<>();
+        classUnderTest.queryWithinDistance(51, 0.1, 1_000_000, (airport, distance) -> expected.add(airport));
+        final List<Airport> actual = new ArrayList<>();
+        opened.queryWithinDistance(51, 0.1, 1_000_000, (airport, distance) -> actual.add(airport));
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, actual);
+        assertEquals(classUnderTest.queryNearest(51, 0.1, 10), opened.queryNearest(51, 0.1, 10));
+    }
+
     @ParameterizedTest
     @CsvSource({
             // These points are a spherical projection from the location of EGLL (51.4706, -0.461941)
@@ -135,5 +1109,10 @@ class GeoPointIndexSampleDataTest {
 
         assertTrue(result);
         verify(mockCallback).accept(eq(egll), AdditionalMatchers.eq(100, 1E-7));
+
+        // The same item should be found when its distance is not needed
+        final List<Airport> found = new ArrayList<>();
+        assertTrue(classUnderTest.queryItemsWithinDistance(searchLatitude, searchLongitude, 100, found::add));
+        assertEquals(List.of(egll), found);
     }
 }
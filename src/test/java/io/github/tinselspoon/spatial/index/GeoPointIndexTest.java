@@ -3,14 +3,35 @@ package io.github.tinselspoon.spatial.index;
 import io.github.tinselspoon.spatial.index.GeoPointIndex.WithinDistanceConsumer;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.mockito.AdditionalMatchers;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 
@@ -33,4 +54,259 @@ class GeoPointIndexTest {
         verify(mockConsumer, never()).accept(any(), anyDouble());
     }
 
+    @Test
+    void testWriteAndOpenEmptyIndex(@TempDir final Path directory) throws IOException {
+        final Path file = directory.resolve("empty.idx");
+        GeoPointIndex.<Airport>buildFrom(Collections.emptyList(), Airport::latitude, Airport::longitude)
+                     .writeTo(file, airport -> 0);
+
+        final GeoPointIndex<Airport> classUnderTest = GeoPointIndex.open(file, ordinal -> null);
+
+        assertFalse(classUnderTest.queryWithinDistance(0, 1, 100_000, mockConsumer));
+    }
+
+    @Test
+    void testOpenInvalidFile(@TempDir final Path directory) throws IOException {
+        final Path file = directory.resolve("invalid.idx");
+        Files.writeString(file, "not an index");
+
+        assertThrows(IOException.class, () -> GeoPointIndex.open(file, ordinal -> null));
+    }
+
+    @ParameterizedTest
+    @CsvSource({ "2, 1", "2, 1024", "5, 1" })
+    void testOpenFileWithCorruptHeader(final int headerIndex, final int value, @TempDir final Path directory)
+            throws IOException {
+        // GIVEN a file whose header has one value damaged, such that its length is still consistent with the header
+        final List<Airport> airports = IntStream.range(0, 100)
+                                                .mapToObj(i -> new Airport(Integer.toString(i), i * 0.5, i))
+                                                .toList();
+        final Path file = directory.resolve("corrupt.idx");
+        GeoPointIndex.buildFrom(airports, Airport::latitude, Airport::longitude).writeTo(file, airports::indexOf);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN).putInt(0, value),
+                          (long) headerIndex * Integer.BYTES);
+        }
+
+        // WHEN opening it, THEN it is rejected rather than failing when first searched
+        final IOException e = assertThrows(IOException.class, () -> GeoPointIndex.open(file, airports::get));
+        assertTrue(e.getMessage().contains("corrupt"));
+    }
+
+    @Test
+    void testConcavePolygonQuery() {
+        // GIVEN a U-shaped polygon, and points in each part of it and in the notch between its arms
+        final Airport westArm = new Airport("W", 2, 0.5);
+        final Airport eastArm = new Airport("E", 2, 2.5);
+        final Airport base = new Airport("B", 0.5, 1.5);
+        final Airport notch = new Airport("N", 2, 1.5);
+        final Airport outside = new Airport("O", 4, 1.5);
+        final GeoPointIndex<Airport> classUnderTest = GeoPointIndex.buildFrom(List.of(westArm,
+                                                                                      eastArm,
+                                                                                      base,
+                                                                                      notch,
+                                                                                      outside),
+                                                                              Airport::latitude,
+                                                                              Airport::longitude);
+
+        // WHEN querying the polygon, with its first vertex repeated at the end
+        final Set<Airport> result = new HashSet<>();
+        final boolean found = classUnderTest.queryWithinPolygon(new double[] {0, 0, 3, 3, 1, 1, 3, 3, 0},
+                                                                new double[] {0, 3, 3, 2, 2, 1, 1, 0, 0},
+                                                                result::add);
+
+        // THEN only the points within the polygon are found
+        assertTrue(found);
+        assertEquals(Set.of(westArm, eastArm, base), result);
+    }
+
+    @Test
+    void testInvalidPolygon() {
+        final GeoPointIndex<Airport> classUnderTest = GeoPointIndex.buildFrom(Collections.emptyList(),
+                                                                              Airport::latitude,
+                                                                              Airport::longitude);
+
+        assertThrows(IllegalArgumentException.class,
+                     () -> classUnderTest.queryWithinPolygon(new double[] {0, 1}, new double[] {0, 1}, a -> {
+                     }));
+        assertThrows(IllegalArgumentException.class,
+                     () -> classUnderTest.queryWithinPolygon(new double[] {0, 1, 2}, new double[] {0, 1}, a -> {
+                     }));
+        assertThrows(IllegalArgumentException.class,
+                     () -> classUnderTest.queryWithinPolygon(new double[] {0, 0, 0, 0},
+                                                             new double[] {0, 90, 180, -90},
+                                                             a -> {
+                                                             }));
+    }
+
+    @Test
+    void testInvalidBox() {
+        final GeoPointIndex<Airport> classUnderTest = GeoPointIndex.buildFrom(Collections.emptyList(),
+                                                                              Airport::latitude,
+                                                                              Airport::longitude);
+
+        assertThrows(IllegalArgumentException.class, () -> classUnderTest.queryWithinBox(10, 0, 0, 10, a -> {
+        }));
+        assertThrows(IllegalArgumentException.class, () -> classUnderTest.queryWithinBox(0, 0, 10, 181, a -> {
+        }));
+    }
+
+    @Test
+    void testInvalidLimit() {
+        final GeoPointIndex<Airport> classUnderTest = GeoPointIndex.buildFrom(Collections.emptyList(),
+                                                                              Airport::latitude,
+                                                                              Airport::longitude);
+
+        assertThrows(IllegalArgumentException.class,
+                     () -> classUnderTest.queryWithinDistance(0, 1, 100_000, 0, mockConsumer));
+    }
+
+    @Test
+    void testPathQuery() {
+        // GIVEN an airport beside the middle of a long arc, far from either of its vertices, and one near the path
+        // alongside two of its arcs
+        final Airport beside = new Airport("A", 0.1, 5);
+        final Airport corner = new Airport("B", 0.05, 10.05);
+        final Airport far = new Airport("C", 1, 5);
+        final GeoPointIndex<Airport> classUnderTest = GeoPointIndex.buildFrom(List.of(beside, corner, far),
+                                                                              Airport::latitude,
+                                                                              Airport::longitude);
+
+        // WHEN querying within a distance of the path
+        final boolean result = classUnderTest.queryWithinDistanceOfPath(new double[] {0, 0, 1},
+                                                                        new double[] {0, 10, 10},
+                                                                        20_000,
+                                                                        mockConsumer);
+
+        // THEN each airport near the path is found once, at its distance from the nearest arc
+        assertTrue(result);
+        verify(mockConsumer).accept(eq(beside), AdditionalMatchers.eq(Math.toRadians(0.1) * 6371e3, 1E-6));
+        verify(mockConsumer).accept(eq(corner), AdditionalMatchers.eq(Math.toRadians(0.05) * 6371e3, 1));
+        verify(mockConsumer, never()).accept(eq(far), anyDouble());
+    }
+
+    @Test
+    void testInvalidPath() {
+        final GeoPointIndex<Airport> classUnderTest = GeoPointIndex.buildFrom(Collections.emptyList(),
+                                                                              Airport::latitude,
+                                                                              Airport::longitude);
+
+        assertThrows(IllegalArgumentException.class,
+                     () -> classUnderTest.queryWithinDistanceOfPath(new double[] {0, 1}, new double[] {0},
+                                                                    100_000, mockConsumer));
+        assertThrows(IllegalArgumentException.class,
+                     () -> classUnderTest.queryWithinDistanceOfPath(new double[0], new double[0],
+                                                                    100_000, mockConsumer));
+        assertThrows(IllegalArgumentException.class,
+                     () -> classUnderTest.queryWithinDistanceOfPath(new double[] {0, 0}, new double[] {0, 180},
+                                                                    100_000, mockConsumer));
+        assertThrows(IllegalArgumentException.class,
+                     () -> classUnderTest.queryWithinDistanceOfPath(new double[] {0, 91}, new double[] {0, 0},
+                                                                    100_000, mockConsumer));
+    }
+
+    @Test
+    void testNearestEmptyIndex() {
+        final GeoPointIndex<Airport> classUnderTest = GeoPointIndex.buildFrom(Collections.emptyList(),
+                                                                              Airport::latitude,
+                                                                              Airport::longitude);
+
+        assertTrue(classUnderTest.queryNearest(0, 1, 5).isEmpty());
+    }
+
+    @Test
+    void testNearestFewerItemsThanCount() {
+        final Airport a = new Airport("A", 10, 10);
+        final Airport b = new Airport("B", 10, 11);
+        final GeoPointIndex<Airport> classUnderTest = GeoPointIndex.buildFrom(List.of(b, a),
+                                                                              Airport::latitude,
+                                                                              Airport::longitude);
+
+        final List<GeoPointIndex.Match<Airport>> result = classUnderTest.queryNearest(10, 9, 5);
+
+        assertEquals(List.of(a, b), result.stream().map(GeoPointIndex.Match::item).toList());
+    }
+
+    @Test
+    void testNearestInvalidCount() {
+        final GeoPointIndex<Airport> classUnderTest = GeoPointIndex.buildFrom(Collections.emptyList(),
+                                                                              Airport::latitude,
+                                                                              Airport::longitude);
+
+        assertThrows(IllegalArgumentException.class, () -> classUnderTest.queryNearest(0, 1, 0));
+    }
+
+    @Test
+    void testBuildFromStream() {
+        // GIVEN a stream of airports of known size
+        final Stream<Airport> airports = Stream.of(new Airport("A", 10, 10), new Airport("B", 10, 11));
+
+        // WHEN building indexes from the stream, and from an empty iterator with a size hint
+        final GeoPointIndex<Airport> classUnderTest = GeoPointIndex.builder(Airport::latitude, Airport::longitude)
+                                                                   .build(airports);
+        final GeoPointIndex<Airport> empty = GeoPointIndex.builder(Airport::latitude, Airport::longitude)
+                                                          .sizeHint(1)
+                                                          .build(Collections.<Airport>emptyIterator());
+
+        // THEN each holds what it was given
+        assertEquals(2, classUnderTest.statistics().size());
+        assertEquals("A", classUnderTest.queryNearest(10, 9, 1).get(0).item().ident());
+        assertEquals(0, empty.statistics().size());
+    }
+
+    @Test
+    void testBuildFromInvalidStream() {
+        final GeoPointIndex.Builder<Airport> builder = GeoPointIndex.builder(Airport::latitude, Airport::longitude);
+
+        assertThrows(IllegalArgumentException.class, () -> builder.sizeHint(-1));
+        assertThrows(IllegalArgumentException.class, () -> builder.build(Stream.of(new Airport("A", 91, 0))));
+    }
+
+    @Test
+    void testCountAndSummariseEmptyIndex() {
+        final GeoPointIndex<Airport> classUnderTest = GeoPointIndex.builder(Airport::latitude, Airport::longitude)
+                                                                   .summarising(Airport::latitude)
+                                                                   .build(Collections.emptyList());
+
+        assertEquals(0, classUnderTest.countWithinDistance(0, 1, 100_000));
+        assertEquals(0, classUnderTest.summariseWithinDistance(0, 1, 100_000).getCount());
+    }
+
+    @Test
+    void testSummariseWithoutValue() {
+        final GeoPointIndex<Airport> classUnderTest = GeoPointIndex.buildFrom(List.of(new Airport("A", 10, 10)),
+                                                                              Airport::latitude,
+                                                                              Airport::longitude);
+
+        assertEquals(1, classUnderTest.countWithinDistance(10, 10, 0));
+        assertThrows(IllegalStateException.class, () -> classUnderTest.summariseWithinDistance(10, 10, 100_000));
+        assertThrows(IllegalArgumentException.class, () -> classUnderTest.countWithinDistance(91, 10, 100_000));
+    }
+
+    @Test
+    void testCollapsingDuplicates(@TempDir final Path directory) {
+        // GIVEN an index collapsing three airports at one location and another nearby
+        final Airport a = new Airport("A", 10, 10);
+        final Airport b = new Airport("B", 10, 10);
+        final Airport c = new Airport("C", 10, 10);
+        final Airport d = new Airport("D", 10, 10.1);
+        final GeoPointIndex<Airport> classUnderTest = GeoPointIndex.builder(Airport::latitude, Airport::longitude)
+                                                                   .collapsing()
+                                                                   .build(List.of(a, d, b, c));
+
+        // WHEN querying it
+        final List<GeoPointIndex.Match<Airport>> nearest = classUnderTest.queryNearest(10, 9, 2);
+        final List<Airport> limited = new ArrayList<>();
+        classUnderTest.queryWithinDistance(10, 10, 100_000, 2, (airport, distance) -> limited.add(airport));
+
+        // THEN it holds two locations, finding the airports sharing one together and in the order given
+        assertEquals(2, classUnderTest.statistics().size());
+        assertEquals(4, classUnderTest.countWithinDistance(10, 10, 100_000));
+        assertEquals(List.of(a, b), nearest.stream().map(GeoPointIndex.Match::item).toList());
+        assertEquals(nearest.get(0).distanceMeters(), nearest.get(1).distanceMeters());
+        assertEquals(List.of(a, b), limited);
+        assertThrows(UnsupportedOperationException.class,
+                     () -> classUnderTest.writeTo(directory.resolve("collapsed.idx"), airport -> 0));
+    }
+
 }
@@ -5,6 +5,10 @@ import org.junit.jupiter.api.Test;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -32,8 +36,7 @@ class KDTreeTest {
         CartPoint3D upper = new CartPoint3D(6, 8, 6);
 
         // WHEN searching
-        List<Item> result = new ArrayList<>();
-        classUnderTest.rangeSearch(new CartBox3D(lower, upper), (item, point) -> result.add(item));
+        List<Item> result = rangeSearch(classUnderTest, new CartBox3D(lower, upper));
 
         // THEN we get the points (2, 3, 4), (4, 5, 6), (6, 5, 4)
         assertEquals(3, result.size());
@@ -49,8 +52,7 @@ class KDTreeTest {
         final CartPoint3D upper = new CartPoint3D(15, 15, 15);
 
         // WHEN searching
-        List<Item> result = new ArrayList<>();
-        classUnderTest.rangeSearch(new CartBox3D(lower, upper), (item, point) -> result.add(item));
+        List<Item> result = rangeSearch(classUnderTest, new CartBox3D(lower, upper));
 
         // THEN no points should be in the range
         assertTrue(result.isEmpty());
@@ -63,8 +65,7 @@ class KDTreeTest {
         final CartPoint3D upper = new CartPoint3D(10, 12, 13);
 
         // WHEN searching
-        List<Item> result = new ArrayList<>();
-        classUnderTest.rangeSearch(new CartBox3D(lower, upper), (item, point) -> result.add(item));
+        List<Item> result = rangeSearch(classUnderTest, new CartBox3D(lower, upper));
 
         // THEN all points should be in the range
         assertEquals(8, result.size());
@@ -77,8 +78,7 @@ class KDTreeTest {
         final CartPoint3D upper = new CartPoint3D(8, 9, 10);
 
         // WHEN searching
-        List<Item> result = new ArrayList<>();
-        classUnderTest.rangeSearch(new CartBox3D(lower, upper), (item, point) -> result.add(item));
+        List<Item> result = rangeSearch(classUnderTest, new CartBox3D(lower, upper));
 
         // THEN matching points should be within the range
         assertEquals(2, result.size());
@@ -92,8 +92,7 @@ class KDTreeTest {
         final CartPoint3D exact = new CartPoint3D(3, 2, 1);
 
         // WHEN searching
-        List<Item> result = new ArrayList<>();
-        classUnderTest.rangeSearch(new CartBox3D(exact, exact), (item, point) -> result.add(item));
+        List<Item> result = rangeSearch(classUnderTest, new CartBox3D(exact, exact));
 
         // THEN matching points should be within the range
         assertEquals(2, result.size());
@@ -108,8 +107,7 @@ class KDTreeTest {
         final CartPoint3D upper = new CartPoint3D(7, 8, 9);
 
         // WHEN searching
-        List<Item> result = new ArrayList<>();
-        classUnderTest.rangeSearch(new CartBox3D(lower, upper), (item, point) -> result.add(item));
+        List<Item> result = rangeSearch(classUnderTest, new CartBox3D(lower, upper));
 
         // THEN matching points should be within the range
         assertEquals(2, result.size());
@@ -117,6 +115,229 @@ class KDTreeTest {
         assertTrue(result.contains(new Item("d", new CartPoint3D(7, 8, 9))));
     }
 
+    @Test
+    void testRangeSearchMatchesLinearScan() {
+        // GIVEN a tree with many points split across multiple levels of small leaf buckets
+        final Random random = new Random(42);
+        final List<Item> items = IntStream.range(0, 5_000)
+                                          .mapToObj(i -> new Item(Integer.toString(i),
+                                                                  new CartPoint3D(random.nextInt(100),
+                                                                                  random.nextInt(100),
+                                                                                  random.nextInt(100))))
+                                          .toList();
+        final KDTree<Item> tree = KDTree.create(items, Item::point, 4, 1);
+        final CartBox3D range = new CartBox3D(new CartPoint3D(10, 20, 30), new CartPoint3D(40, 50, 60));
+
+        // WHEN searching
+        final List<Item> result = rangeSearch(tree, range);
+
+        // THEN exactly the points a linear scan would find are returned
+        final List<Item> expected = items.stream().filter(i -> range.contains(i.point())).toList();
+        assertEquals(expected.size(), result.size());
+        assertTrue(result.containsAll(expected));
+    }
+
+    @Test
+    void testSphereSearchMatchesLinearScan() {
+        // GIVEN a tree with many points split across multiple levels of small leaf buckets
+        final Random random = new Random(11);
+        final List<Item> items = IntStream.range(0, 5_000)
+                                          .mapToObj(i -> new Item(Integer.toString(i),
+                                                                  new CartPoint3D(random.nextInt(100),
+                                                                                  random.nextInt(100),
+                                                                                  random.nextInt(100))))
+                                          .toList();
+        final KDTree<Item> tree = KDTree.create(items, Item::point, 4, 1);
+
+        for (final double radius : new double[] {0, 5, 30, 200}) {
+            // WHEN searching a sphere, which for the largest radius encloses the whole tree
+            final List<Item> result = new ArrayList<>();
+            final Search search = new Search() {
+                @Override
+                boolean accept(final int slot, final double x, final double y, final double z) {
+                    return result.add(tree.item(slot));
+                }
+            };
+            search.setSphere(40, 50, 60, radius);
+            assertTrue(tree.search(search));
+
+            // THEN exactly the points a linear scan would find are returned
+            final CartPoint3D centre = new CartPoint3D(40, 50, 60);
+            final List<Item> expected = items.stream().filter(i -> {
+                final double dX = i.point().x() - centre.x();
+                final double dY = i.point().y() - centre.y();
+                final double dZ = i.point().z() - centre.z();
+                return dX * dX + dY * dY + dZ * dZ <= radius * radius;
+            }).toList();
+            assertEquals(expected.size(), result.size());
+            assertTrue(result.containsAll(expected));
+        }
+    }
+
+    @Test
+    void testNegativeRadiusSphereSearch() {
+        final List<Item> result = new ArrayList<>();
+        final Search search = new Search() {
+            @Override
+            boolean accept(final int slot, final double x, final double y, final double z) {
+                return result.add(classUnderTest.item(slot));
+            }
+        };
+        search.setSphere(3, 2, 1, -5);
+
+        classUnderTest.search(search);
+
+        assertTrue(result.isEmpty());
+    }
+
+    @Test
+    void testSpliteratorMatchesLinearScan() {
+        // GIVEN a tree with many points split across multiple levels of small leaf buckets
+        final Random random = new Random(23);
+        final List<Item> items = IntStream.range(0, 5_000)
+                                          .mapToObj(i -> new Item(Integer.toString(i),
+                                                                  new CartPoint3D(random.nextInt(100),
+                                                                                  random.nextInt(100),
+                                                                                  random.nextInt(100))))
+                                          .toList();
+        final KDTree<Item> tree = KDTree.create(items, Item::point, 4, 1);
+
+        for (final double radius : new double[] {0, 5, 30, 200}) {
+            // WHEN searching a sphere lazily, splitting the search as far as it will go
+            final SearchSpliterator<Item> spliterator = tree.spliterator((slot, x, y, z) -> tree.item(slot));
+            spliterator.setSphere(40, 50, 60, radius);
+            final List<Spliterator<Item>> pending = new ArrayList<>(List.of(spliterator));
+            final List<Item> result = new ArrayList<>();
+            while (!pending.isEmpty()) {
+                final Spliterator<Item> next = pending.remove(pending.size() - 1);
+                final Spliterator<Item> split = next.trySplit();
+                if (split != null) {
+                    pending.add(next);
+                    pending.add(split);
+                } else {
+                    next.forEachRemaining(result::add);
+                }
+            }
+
+            // THEN exactly the points a linear scan would find are returned, each once
+            final List<Item> expected = items.stream().filter(i -> {
+                final double dX = i.point().x() - 40;
+                final double dY = i.point().y() - 50;
+                final double dZ = i.point().z() - 60;
+                return dX * dX + dY * dY + dZ * dZ <= radius * radius;
+            }).toList();
+            assertEquals(expected.size(), result.size());
+            assertTrue(result.containsAll(expected));
+        }
+    }
+
+    @Test
+    void testSpliteratorSearchesLazily() {
+        // GIVEN a lazy search enclosing every point, which counts the points it is offered
+        final AtomicInteger offered = new AtomicInteger();
+        final SearchSpliterator<Item> spliterator = classUnderTest.spliterator((slot, x, y, z) -> {
+            offered.incrementAndGet();
+            return classUnderTest.item(slot);
+        });
+        spliterator.setRange(0, 0, 0, 20, 20, 20);
+
+        // WHEN taking a single result
+        assertTrue(spliterator.tryAdvance(item -> { }));
+
+        // THEN only a single point has been offered
+        assertEquals(1, offered.get());
+
+        // WHEN taking the rest
+        final List<Item> rest = new ArrayList<>();
+        spliterator.forEachRemaining(rest::add);
+
+        // THEN every other point is found
+        assertEquals(7, rest.size());
+        assertEquals(8, offered.get());
+        assertFalse(spliterator.tryAdvance(item -> { }));
+    }
+
+    @Test
+    void testJoinMatchesLinearScan() {
+        // GIVEN two trees with small leaf buckets and differing shapes
+        final Random random = new Random(19);
+        final List<Item> leftItems = IntStream.range(0, 1_000)
+                                              .mapToObj(i -> new Item("l" + i,
+                                                                      new CartPoint3D(random.nextInt(100),
+                                                                                      random.nextInt(100),
+                                                                                      random.nextInt(100))))
+                                              .toList();
+        final List<Item> rightItems = IntStream.range(0, 300)
+                                               .mapToObj(i -> new Item("r" + i,
+                                                                       new CartPoint3D(random.nextInt(100),
+                                                                                       random.nextInt(100),
+                                                                                       random.nextInt(100))))
+                                               .toList();
+        final KDTree<Item> left = KDTree.create(leftItems, Item::point, 2, 1);
+        final KDTree<Item> right = KDTree.create(rightItems, Item::point, 3, 1);
+
+        // WHEN joining them, split into several tasks
+        final List<String> result = new ArrayList<>();
+        for (final Runnable task : KDTree.join(left, right, 100, (leftSlot, rightSlot, distanceSquared) -> result.add(
+                left.item(leftSlot).identifier() + right.item(rightSlot).identifier()), 8)) {
+            task.run();
+        }
+
+        // THEN exactly the pairs a linear scan would find are returned, each once
+        final List<String> expected = new ArrayList<>();
+        for (final Item l : leftItems) {
+            for (final Item r : rightItems) {
+                final double dX = l.point().x() - r.point().x();
+                final double dY = l.point().y() - r.point().y();
+                final double dZ = l.point().z() - r.point().z();
+                if (dX * dX + dY * dY + dZ * dZ <= 100) {
+                    expected.add(l.identifier() + r.identifier());
+                }
+            }
+        }
+        assertFalse(expected.isEmpty());
+        assertEquals(expected.size(), result.size());
+        assertTrue(result.containsAll(expected));
+    }
+
+    @Test
+    void testParallelConstructionIsDeterministic() {
+        // GIVEN enough points for construction to be split into parallel tasks
+        final Random random = new Random(7);
+        final List<Item> items = IntStream.range(0, KDTree.PARALLEL_THRESHOLD * 4)
+                                          .mapToObj(i -> new Item(Integer.toString(i),
+                                                                  new CartPoint3D(random.nextInt(50),
+                                                                                  random.nextInt(50),
+                                                                                  random.nextInt(50))))
+                                          .toList();
+        final CartBox3D everything = new CartBox3D(new CartPoint3D(0, 0, 0), new CartPoint3D(50, 50, 50));
+
+        // WHEN building the tree both sequentially and in parallel
+        final List<Item> sequential = rangeSearch(KDTree.create(items, Item::point, KDTree.DEFAULT_LEAF_SIZE, 1),
+                                                  everything);
+        final List<Item> parallel = rangeSearch(KDTree.create(items, Item::point, KDTree.DEFAULT_LEAF_SIZE, 4),
+                                                everything);
+
+        // THEN both trees hold every item in exactly the same arrangement
+        assertEquals(items.size(), sequential.size());
+        assertEquals(sequential, parallel);
+    }
+
+    /** Find the items of a tree within a box, in the order in which the tree finds them. */
+    private static List<Item> rangeSearch(final KDTree<Item> tree, final CartBox3D range) {
+        final List<Item> result = new ArrayList<>();
+        final Search search = new Search() {
+            @Override
+            boolean accept(final int slot, final double x, final double y, final double z) {
+                return result.add(tree.item(slot));
+            }
+        };
+        search.setRange(range.lower().x(), range.lower().y(), range.lower().z(), range.upper().x(),
+                        range.upper().y(), range.upper().z());
+        tree.search(search);
+        return result;
+    }
+
     /**
      * Simple wrapper to simulate data attached to a point.
      *
@@ -0,0 +1,102 @@
+package io.github.tinselspoon.spatial.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Unit tests for {@link LongGeoPointIndex}. */
+class LongGeoPointIndexTest {
+
+    @Test
+    void testQueryMatchesLinearScan() {
+        // GIVEN an index of random points, built in parallel so that construction is split into tasks
+        final Random random = new Random(31);
+        final int size = KDTree.PARALLEL_THRESHOLD * 4;
+        final long[] ids = new long[size];
+        final double[] latitudes = new double[size];
+        final double[] longitudes = new double[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = random.nextLong();
+            latitudes[i] = random.nextDouble() * 180 - 90;
+            longitudes[i] = random.nextDouble() * 360 - 180;
+        }
+        final long[] originalIds = ids.clone();
+        final LongGeoPointIndex index = LongGeoPointIndex.build(ids, latitudes, longitudes, 4);
+
+        for (int i = 0; i < 20; i++) {
+            final double latitude = random.nextDouble() * 180 - 90;
+            final double longitude = random.nextDouble() * 360 - 180;
+            final double distanceMeters = random.nextDouble() * 500_000;
+
+            // WHEN querying around a point
+            final Map<Long, Double> result = new HashMap<>();
+            final boolean found = index.queryWithinDistance(latitude, longitude, distanceMeters, result::put);
+
+            // THEN exactly the points a linear scan would find are returned at their distances
+            final CartPoint3D searchPoint = CartPoint3D.fromLatLon(latitude, longitude);
+            final Map<Long, Double> expected = new HashMap<>();
+            for (int j = 0; j < size; j++) {
+                final double distance = searchPoint.distanceMeters(CartPoint3D.fromLatLon(latitudes[j],
+                                                                                          longitudes[j]));
+                if (distance <= distanceMeters) {
+                    expected.put(ids[j], distance);
+                }
+            }
+            assertEquals(expected.keySet(), result.keySet());
+            expected.forEach((id, distance) -> assertEquals(distance, result.get(id), 1E-6));
+            assertEquals(!expected.isEmpty(), found);
+            assertEquals(found, index.anyWithinDistance(latitude, longitude, distanceMeters));
+        }
+
+        // THEN the given arrays are left untouched
+        assertEquals(size, index.size());
+        assertArrayEquals(originalIds, ids);
+    }
+
+    @Test
+    void testEmptyIndex() {
+        final LongGeoPointIndex index = LongGeoPointIndex.build(new long[0], new double[0], new double[0]);
+
+        assertEquals(0, index.size());
+        assertFalse(index.queryWithinDistance(0, 0, 1_000_000, (id, distance) -> { }));
+        assertFalse(index.anyWithinDistance(0, 0, 1_000_000));
+    }
+
+    @Test
+    void testNestedQuery() {
+        // GIVEN an index of two points
+        final LongGeoPointIndex index = LongGeoPointIndex.build(new long[] {1, 2},
+                                                                new double[] {10, 10.001},
+                                                                new double[] {20, 20});
+
+        // WHEN querying again from within a query
+        final Map<Long, Long> pairs = new HashMap<>();
+        index.queryWithinDistance(10, 20, 1, (id, distance) -> {
+            index.queryWithinDistance(10.001, 20, 1, (other, otherDistance) -> pairs.put(id, other));
+        });
+
+        // THEN each query sees its own results
+        assertEquals(Map.of(1L, 2L), pairs);
+        assertTrue(index.anyWithinDistance(10, 20, 200));
+    }
+
+    @Test
+    void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class,
+                     () -> LongGeoPointIndex.build(new long[1], new double[2], new double[1]));
+        assertThrows(IllegalArgumentException.class,
+                     () -> LongGeoPointIndex.build(new long[1], new double[1], new double[2]));
+        assertThrows(IllegalArgumentException.class,
+                     () -> LongGeoPointIndex.build(new long[] {1}, new double[] {91}, new double[] {0}));
+        assertThrows(IllegalArgumentException.class,
+                     () -> LongGeoPointIndex.build(new long[1], new double[1], new double[1], 0));
+    }
+}
@@ -0,0 +1,266 @@
+package io.github.tinselspoon.spatial.index;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Unit tests for the {@link MutableGeoPointIndex}. */
+class MutableGeoPointIndexTest {
+
+    private MutableGeoPointIndex<Vehicle> classUnderTest;
+
+    @BeforeEach
+    void setUp() {
+        classUnderTest = MutableGeoPointIndex.create(Vehicle::latitude, Vehicle::longitude);
+    }
+
+    @Test
+    void testAddAndRemove() {
+        final Vehicle vehicle = new Vehicle("a", 51.47, -0.46);
+
+        assertTrue(classUnderTest.add(vehicle));
+        assertFalse(classUnderTest.add(vehicle));
+        assertEquals(1, classUnderTest.size());
+        assertEquals(Set.of(vehicle), query(51.47, -0.46, 100));
+
+        assertTrue(classUnderTest.remove(vehicle));
+        assertFalse(classUnderTest.remove(vehicle));
+        assertEquals(0, classUnderTest.size());
+        assertEquals(Set.of(), query(51.47, -0.46, 100));
+    }
+
+    @Test
+    void testUpdate() {
+        final Vehicle vehicle = new Vehicle("a", 51.47, -0.46);
+        classUnderTest.add(vehicle);
+
+        vehicle.latitude = 40.64;
+        vehicle.longitude = -73.78;
+        assertTrue(classUnderTest.update(vehicle));
+
+        assertEquals(1, classUnderTest.size());
+        assertEquals(Set.of(), query(51.47, -0.46, 100));
+        assertEquals(Set.of(vehicle), query(40.64, -73.78, 100));
+    }
+
+    @Test
+    void testInvalidUpdateLeavesItemInPlace() {
+        final Vehicle vehicle = new Vehicle("a", 51.47, -0.46);
+        classUnderTest.add(vehicle);
+
+        vehicle.latitude = 91;
+        assertThrows(IllegalArgumentException.class, () -> classUnderTest.update(vehicle));
+
+        assertEquals(Set.of(vehicle), query(51.47, -0.46, 100));
+    }
+
+    @Test
+    void testRandomModificationsMatchLinearScan() {
+        // GIVEN a long sequence of random additions, removals and updates, enough to cause merges and rebuilds
+        final Random random = new Random(3);
+        final Map<String, Vehicle> expected = new HashMap<>();
+        for (int i = 0; i < 20_000; i++) {
+            final String identifier = Integer.toString(random.nextInt(3_000));
+            final Vehicle existing = expected.get(identifier);
+            final int operation = random.nextInt(3);
+            if (existing == null) {
+                final Vehicle vehicle = new Vehicle(identifier, random.nextDouble() * 20, random.nextDouble() * 20);
+                assertTrue(classUnderTest.add(vehicle));
+                expected.put(identifier, vehicle);
+            } else if (operation == 0) {
+                assertTrue(classUnderTest.remove(existing));
+                expected.remove(identifier);
+            } else {
+                existing.latitude = random.nextDouble() * 20;
+                existing.longitude = random.nextDouble() * 20;
+                assertTrue(classUnderTest.update(existing));
+            }
+        }
+
+        // WHEN querying
+        final Set<Vehicle> result = query(10, 10, 300_000);
+
+        // THEN the results are those of a linear scan of the items present
+        final CartPoint3D searchPoint = CartPoint3D.fromLatLon(10, 10);
+        final Set<Vehicle> scanned = new HashSet<>();
+        for (final Vehicle vehicle : expected.values()) {
+            if (searchPoint.distanceMeters(CartPoint3D.fromLatLon(vehicle.latitude, vehicle.longitude)) <= 300_000) {
+                scanned.add(vehicle);
+            }
+        }
+        assertEquals(expected.size(), classUnderTest.size());
+        assertFalse(scanned.isEmpty());
+        assertEquals(scanned, result);
+    }
+
+    @Test
+    void testNearest() {
+        final List<Vehicle> vehicles = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            vehicles.add(new Vehicle(Integer.toString(i), i * 0.01, 0));
+        }
+        classUnderTest.addAll(vehicles);
+        classUnderTest.remove(vehicles.get(100));
+
+        final List<GeoPointIndex.Match<Vehicle>> result = classUnderTest.queryNearest(1.001, 0, 3);
+
+        assertEquals(List.of(vehicles.get(101), vehicles.get(99), vehicles.get(102)),
+                     result.stream().map(GeoPointIndex.Match::item).toList());
+    }
+
+    @Test
+    void testNearestWithinDistance() {
+        classUnderTest.add(new Vehicle("a", 0, 0));
+        classUnderTest.add(new Vehicle("b", 0, 1));
+
+        final List<GeoPointIndex.Match<Vehicle>> result = classUnderTest.queryNearest(0, 0.1, 5, 20_000);
+
+        assertEquals(1, result.size());
+        assertEquals("a", result.get(0).item().identifier);
+    }
+
+    @Test
+    void testQueryWithinQuery() {
+        // GIVEN enough vehicles to fill some trees as well as the buffer
+        for (int i = 0; i < 200; i++) {
+            classUnderTest.add(new Vehicle(Integer.toString(i), 51 + i * 0.001, -0.46));
+        }
+
+        // WHEN querying around each vehicle found from within the function of another query
+        final Set<Vehicle> outer = new HashSet<>();
+        final Set<Vehicle> inner = new HashSet<>();
+        classUnderTest.queryWithinDistance(51, -0.46, 1_000, (vehicle, distance) -> {
+            outer.add(vehicle);
+            inner.addAll(query(vehicle.latitude, vehicle.longitude, 0));
+        });
+
+        // THEN each query finds its own results
+        assertEquals(9, outer.size());
+        assertEquals(outer, inner);
+    }
+
+    @Test
+    void testQueriesSeeConsistentSnapshotsDuringModification() throws Exception {
+        // GIVEN a fixed set of vehicles that are never removed
+        final List<Vehicle> fixed = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            fixed.add(new Vehicle("fixed" + i, 10 + i * 0.001, 10));
+        }
+        classUnderTest.addAll(fixed);
+
+        // WHEN readers query the area around them while a writer keeps adding, removing and updating other vehicles
+        // in the same area, and updating the fixed vehicles in place, enough to cause merges and rebuilds
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final Future<?> writer = executor.submit(() -> {
+                final Random random = new Random(5);
+                final Map<String, Vehicle> others = new HashMap<>();
+                while (writing.get()) {
+                    final String identifier = Integer.toString(random.nextInt(1_000));
+                    final Vehicle existing = others.remove(identifier);
+                    if (existing != null) {
+                        assertTrue(classUnderTest.remove(existing));
+                    } else {
+                        final Vehicle vehicle = new Vehicle(identifier, 10 + random.nextDouble() * 0.1, 10);
+                        assertTrue(classUnderTest.add(vehicle));
+                        others.put(identifier, vehicle);
+                    }
+                    assertTrue(classUnderTest.update(fixed.get(random.nextInt(fixed.size()))));
+                }
+            });
+
+            final List<Future<?>> readers = new ArrayList<>();
+            for (int reader = 0; reader < 3; reader++) {
+                readers.add(executor.submit(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        final List<Vehicle> found = new ArrayList<>();
+                        classUnderTest.queryWithinDistance(10, 10, 20_000, (vehicle, distance) -> found.add(vehicle));
+                        assertFoundOnce(fixed, found);
+
+                        final List<Vehicle> nearest = classUnderTest.queryNearest(10, 10, 10_000, 20_000)
+                                                                    .stream()
+                                                                    .map(GeoPointIndex.Match::item)
+                                                                    .toList();
+                        assertFoundOnce(fixed, nearest);
+                    }
+                }));
+            }
+
+            // THEN every query finds each fixed vehicle exactly once, and nothing twice
+            for (final Future<?> reader : readers) {
+                reader.get(1, TimeUnit.MINUTES);
+            }
+            writing.set(false);
+            writer.get(1, TimeUnit.MINUTES);
+        } finally {
+            writing.set(false);
+            executor.shutdownNow();
+        }
+    }
+
+    private static void assertFoundOnce(final List<Vehicle> expected, final List<Vehicle> found) {
+        assertEquals(found.size(), new HashSet<>(found).size());
+        assertTrue(found.containsAll(expected));
+    }
+
+    private Set<Vehicle> query(final double latitude, final double longitude, final double distanceMeters) {
+        final Set<Vehicle> result = new HashSet<>();
+        classUnderTest.queryWithinDistance(latitude,
+                                           longitude,
+                                           distanceMeters,
+                                           (vehicle, distance) -> assertTrue(result.add(vehicle)));
+        return result;
+    }
+
+    /** Example mutable data object identified only by its identifier. */
+    private static final class Vehicle {
+
+        private final String identifier;
+
+        private double latitude;
+
+        private double longitude;
+
+        private Vehicle(final String identifier, final double latitude, final double longitude) {
+            this.identifier = identifier;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+
+        double latitude() {
+            return latitude;
+        }
+
+        double longitude() {
+            return longitude;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            return o instanceof Vehicle other && identifier.equals(other.identifier);
+        }
+
+        @Override
+        public int hashCode() {
+            return identifier.hashCode();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package io.github.tinselspoon.spatial.index;
+
+import io.github.tinselspoon.spatial.index.QueryStatistics.QueryType;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/** Unit tests for {@link QueryStatisticsCollector}. */
+class QueryStatisticsCollectorTest {
+
+    @Test
+    void testAggregatesQueries() {
+        // GIVEN a collector that has received three queries
+        final QueryStatisticsCollector classUnderTest = new QueryStatisticsCollector();
+        classUnderTest.queryCompleted(new QueryStatistics(QueryType.WITHIN_DISTANCE, 10, 8, 6, 1_000));
+        classUnderTest.queryCompleted(new QueryStatistics(QueryType.WITHIN_BOX, 20, 12, 4, 3_000));
+        classUnderTest.queryCompleted(new QueryStatistics(QueryType.WITHIN_DISTANCE, 5, 0, 0, 1));
+
+        // THEN the totals are of all three
+        assertEquals(3, classUnderTest.queryCount());
+        assertEquals(35, classUnderTest.nodesVisited());
+        assertEquals(20, classUnderTest.candidates());
+        assertEquals(10, classUnderTest.hits());
+        assertEquals(0.5, classUnderTest.falsePositiveRatio());
+        assertEquals(4_001, classUnderTest.elapsedNanos());
+
+        // THEN each latency is counted in the bucket of its power of two
+        final long[] histogram = classUnderTest.latencyHistogram();
+        assertEquals(QueryStatisticsCollector.BUCKETS, histogram.length);
+        assertEquals(1, histogram[0]);
+        assertEquals(1, histogram[9]);
+        assertEquals(1, histogram[11]);
+        assertEquals(3, Arrays.stream(histogram).sum());
+
+        // THEN percentiles are estimated by the upper limit of their bucket
+        assertEquals(1, classUnderTest.latencyPercentileNanos(0));
+        assertEquals(1_023, classUnderTest.latencyPercentileNanos(50));
+        assertEquals(4_095, classUnderTest.latencyPercentileNanos(100));
+
+        // WHEN resetting the collector
+        classUnderTest.reset();
+
+        // THEN nothing has been received
+        assertEquals(0, classUnderTest.queryCount());
+        assertEquals(0, classUnderTest.falsePositiveRatio());
+        assertEquals(0, classUnderTest.latencyPercentileNanos(99));
+    }
+
+    @Test
+    void testInvalidPercentile() {
+        final QueryStatisticsCollector classUnderTest = new QueryStatisticsCollector();
+
+        assertThrows(IllegalArgumentException.class, () -> classUnderTest.latencyPercentileNanos(-1));
+        assertThrows(IllegalArgumentException.class, () -> classUnderTest.latencyPercentileNanos(101));
+        assertThrows(IllegalArgumentException.class, () -> classUnderTest.latencyPercentileNanos(Double.NaN));
+    }
+}
@@ -0,0 +1,92 @@
+package io.github.tinselspoon.spatial.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Unit tests for {@code VectorPointStore}, which is only tested when the build uses the {@code vector} profile, which
+ * compiles it and runs the tests with the Vector API available to use.
+ */
+class VectorPointStoreTest {
+
+    /** Create a search that records the slots of the points it receives, stopping after the given number. */
+    private static Search recordingSearch(final List<Integer> slots, final int limit) {
+        return new Search() {
+            @Override
+            boolean accept(final int slot, final double x, final double y, final double z) {
+                slots.add(slot);
+                return slots.size() < limit;
+            }
+        };
+    }
+
+    @Test
+    void testScanMatchesScalarScan() {
+        // GIVEN random points on the unit sphere, held by a store and by its vectorised counterpart
+        final Random random = new Random(53);
+        final int size = 1_000;
+        final double[] xs = new double[size];
+        final double[] ys = new double[size];
+        final double[] zs = new double[size];
+        for (int i = 0; i < size; i++) {
+            final CartPoint3D point = CartPoint3D.fromLatLon(random.nextDouble() * 180 - 90,
+                                                             random.nextDouble() * 360 - 180);
+            xs[i] = point.x();
+            ys[i] = point.y();
+            zs[i] = point.z();
+        }
+        final PointStore scalar = PointStore.of(xs, ys, zs);
+        final PointStore classUnderTest = scalar.vectorised();
+        assumeTrue(Boolean.getBoolean("vector"), "The vector profile is not in use");
+        assertNotEquals(scalar, classUnderTest);
+
+        for (int i = 0; i < 200; i++) {
+            // WHEN scanning a random range of slots, with a random sphere or box, including ones touching points
+            final int lo = random.nextInt(size);
+            final int hi = lo + random.nextInt(size - lo + 1);
+            final List<Integer> expected = new ArrayList<>();
+            final Search expectedSearch = recordingSearch(expected, Integer.MAX_VALUE);
+            final List<Integer> result = new ArrayList<>();
+            final Search search = recordingSearch(result, Integer.MAX_VALUE);
+            final int on = random.nextInt(size);
+            if (i % 2 == 0) {
+                final double radius = i % 4 == 0 ? random.nextDouble() : 0;
+                expectedSearch.setSphere(xs[on], ys[on], zs[on], radius);
+                search.setSphere(xs[on], ys[on], zs[on], radius);
+            } else {
+                expectedSearch.setRange(xs[on], -1, -1, 1, ys[on], zs[on]);
+                search.setRange(xs[on], -1, -1, 1, ys[on], zs[on]);
+            }
+            scalar.scan(expectedSearch, lo, hi);
+            classUnderTest.scan(search, lo, hi);
+
+            // THEN the same points are found in the same order
+            assertEquals(expected, result);
+        }
+
+        // WHEN scanning everything with a search that stops after a few points
+        final List<Integer> result = new ArrayList<>();
+        final Search search = recordingSearch(result, 70);
+        search.setSphere(0, 0, 0, 2);
+
+        // THEN the scan stops too
+        assertFalse(classUnderTest.scan(search, 0, size));
+        assertEquals(70, result.size());
+        assertEquals(69, result.get(69));
+    }
+
+    @Test
+    void testOnlyArrayStoresAreVectorised() {
+        final PointStore quantised = PointStore.quantised(new double[] {1}, new double[] {0}, new double[] {0});
+
+        assertEquals(quantised, quantised.vectorised());
+    }
+}
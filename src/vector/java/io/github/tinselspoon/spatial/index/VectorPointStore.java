@@ -0,0 +1,149 @@
+package io.github.tinselspoon.spatial.index;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A store holding its coordinates in arrays on the heap, which {@link #scan scans} them using the Vector API, testing
+ * as many points at once as the widest vectors supported by the processor hold, such as 4 with AVX2 or 8 with AVX-512.
+ * <p>
+ * The Vector API is an incubating feature of the JDK, so this class may only be loaded once the
+ * {@code jdk.incubator.vector} module is known to be present, which requires the JVM to be started with
+ * {@code --add-modules jdk.incubator.vector}. It is compiled separately from the rest of the library, by the
+ * {@code vector} profile, so that the library otherwise builds without the incubating module; stores look it up
+ * reflectively, and test points one at a time when it is absent. Each point is tested with exactly the same
+ * arithmetic as {@link Search#contains}, so a scan finds exactly the same points as that of any other store.
+ */
+final class VectorPointStore extends PointStore {
+
+    /** The shape of the vectors to test points with. */
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    /** The greatest number of points to test before passing on those found, being the number of bits in a mask. */
+    private static final int BATCH_SIZE = Long.SIZE;
+
+    /** The x-axis ordinates of the points. */
+    private final double[] xs;
+
+    /** The y-axis ordinates of the points. */
+    private final double[] ys;
+
+    /** The z-axis ordinates of the points. */
+    private final double[] zs;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param xs the x-axis ordinates of the points.
+     * @param ys the y-axis ordinates of the points.
+     * @param zs the z-axis ordinates of the points.
+     */
+    private VectorPointStore(final double[] xs, final double[] ys, final double[] zs) {
+        this.xs = xs;
+        this.ys = ys;
+        this.zs = zs;
+    }
+
+    /**
+     * Create a store backed by the given arrays.
+     *
+     * @param xs the x-axis ordinates of the points.
+     * @param ys the y-axis ordinates of the points.
+     * @param zs the z-axis ordinates of the points.
+     * @return the store.
+     */
+    static PointStore of(final double[] xs, final double[] ys, final double[] zs) {
+        return new VectorPointStore(xs, ys, zs);
+    }
+
+    @Override
+    int size() {
+        return xs.length;
+    }
+
+    @Override
+    double x(final int slot) {
+        return xs[slot];
+    }
+
+    @Override
+    double y(final int slot) {
+        return ys[slot];
+    }
+
+    @Override
+    double z(final int slot) {
+        return zs[slot];
+    }
+
+    @Override
+    PointStore vectorised() {
+        return this;
+    }
+
+    @Override
+    boolean scan(final Search search, final int lo, final int hi) {
+        for (int from = lo; from < hi; from += BATCH_SIZE) {
+            final int to = Math.min(hi, from + BATCH_SIZE);
+
+            // Test the batch into a mask of the points found, then pass them on in order
+            long found = test(search, from, to);
+            while (found != 0) {
+                final int i = from + Long.numberOfTrailingZeros(found);
+                if (!search.accept(i, xs[i], ys[i], zs[i])) {
+                    return false;
+                }
+                found &= found - 1;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Test each point within the given range of slots against the range of a search.
+     *
+     * @param search the range to search on.
+     * @param from the first slot to test, inclusive.
+     * @param to the last slot to test, exclusive, which is no more than {@link #BATCH_SIZE} after {@code from}.
+     * @return a mask with bit {@code i} set if the point at slot {@code from + i} is contained by the range.
+     */
+    private long test(final Search search, final int from, final int to) {
+        final double minX = search.minX(), minY = search.minY(), minZ = search.minZ();
+        final double maxX = search.maxX(), maxY = search.maxY(), maxZ = search.maxZ();
+        final double centreX = search.centreX(), centreY = search.centreY(), centreZ = search.centreZ();
+        final double radiusSquared = search.radiusSquared();
+
+        long found = 0;
+        final int bound = from + SPECIES.loopBound(to - from);
+        int i = from;
+        for (; i < bound; i += SPECIES.length()) {
+            final DoubleVector x = DoubleVector.fromArray(SPECIES, xs, i);
+            final DoubleVector y = DoubleVector.fromArray(SPECIES, ys, i);
+            final DoubleVector z = DoubleVector.fromArray(SPECIES, zs, i);
+            final DoubleVector dX = x.sub(centreX);
+            final DoubleVector dY = y.sub(centreY);
+            final DoubleVector dZ = z.sub(centreZ);
+            final VectorMask<Double> contained = x.compare(VectorOperators.GE, minX)
+                                                  .and(x.compare(VectorOperators.LE, maxX))
+                                                  .and(y.compare(VectorOperators.GE, minY))
+                                                  .and(y.compare(VectorOperators.LE, maxY))
+                                                  .and(z.compare(VectorOperators.GE, minZ))
+                                                  .and(z.compare(VectorOperators.LE, maxZ))
+                                                  .and(dX.mul(dX)
+                                                         .add(dY.mul(dY))
+                                                         .add(dZ.mul(dZ))
+                                                         .compare(VectorOperators.LE, radiusSquared));
+            found |= contained.toLong() << (i - from);
+        }
+
+        // Points left over that do not fill a vector are tested one at a time
+        for (; i < to; i++) {
+            if (search.contains(xs[i], ys[i], zs[i])) {
+                found |= 1L << (i - from);
+            }
+        }
+        return found;
+    }
+}